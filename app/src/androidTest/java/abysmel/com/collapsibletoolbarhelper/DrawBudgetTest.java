@@ -0,0 +1,106 @@
+package abysmel.com.collapsibletoolbarhelper;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+import android.view.LayoutInflater;
+import android.view.View;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import abysmel.com.collapsibletoolbarhelper.helpers.DrawAccountingCanvas;
+import abysmel.com.collapsibletoolbarhelper.widgets.CollapsibleToolbarHelper;
+import abysmel.com.collapsibletoolbarhelper.widgets.HeaderFixture;
+import abysmel.com.collapsibletoolbarhelper.widgets.MetaballMenu;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Draws the widgets of the landing screen into an accounting canvas in each of their states (idle,
+ * animating and collapsed) and holds them to a draw budget: the number of draw operations of a frame
+ * and the average overdraw. The report of each frame is written to the log.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DrawBudgetTest {
+    private static final String TAG = "DrawBudgetTest";
+    private static final int WIDTH = HeaderFixture.WIDTH;
+    private static final int HEIGHT = HeaderFixture.HEIGHT;
+
+    /**
+     * The budgets, per widget. Scrolling moves and fades what is already there, so the budget of a
+     * state never goes above the one of the idle, expanded header by more than the title split
+     */
+    private static final int HEADER_MAX_OPS = 24;
+    private static final float HEADER_MAX_OVERDRAW = 3.0f;
+    private static final int TITLE_MAX_OPS = 4;
+    private static final float TITLE_MAX_OVERDRAW = 2.0f;
+    private static final int MENU_MAX_OPS = 8;
+    private static final int MENU_ANIMATING_MAX_OPS = 10;
+    private static final float MENU_MAX_OVERDRAW = 3.0f;
+    private static final int TITLE_SPLIT_OPS = 2;
+
+    @Test
+    public void headerStaysWithinBudget() {
+        final Context context = HeaderFixture.createContext(InstrumentationRegistry.getTargetContext());
+        final CollapsibleToolbarHelper header = HeaderFixture.createHeader(context, true);
+        final View title = header.findViewById(R.id.hello_text);
+        final int nScrollRange = HeaderFixture.getScrollRange(header);
+
+        final DrawAccountingCanvas headerCanvas = DrawAccountingCanvas.forView(header);
+        final DrawAccountingCanvas titleCanvas = DrawAccountingCanvas.forView(title);
+
+        // Idle, expanded
+        HeaderFixture.dispatchOffset(header, 0, nScrollRange);
+        final int nIdleOps = check("header idle", headerCanvas.account(header), HEADER_MAX_OPS, HEADER_MAX_OVERDRAW);
+        check("title idle", titleCanvas.account(title), TITLE_MAX_OPS, TITLE_MAX_OVERDRAW);
+
+        // Half way through a scroll
+        HeaderFixture.dispatchOffset(header, -nScrollRange / 2, nScrollRange);
+        final int nAnimatingOps = check("header animating", headerCanvas.account(header), HEADER_MAX_OPS,
+                HEADER_MAX_OVERDRAW);
+        check("title animating", titleCanvas.account(title), TITLE_MAX_OPS, TITLE_MAX_OVERDRAW);
+        assertTrue("scrolling added draw operations", nAnimatingOps <= nIdleOps + TITLE_SPLIT_OPS);
+
+        // Collapsed
+        HeaderFixture.dispatchOffset(header, -nScrollRange, nScrollRange);
+        final int nCollapsedOps = check("header collapsed", headerCanvas.account(header), HEADER_MAX_OPS,
+                HEADER_MAX_OVERDRAW);
+        check("title collapsed", titleCanvas.account(title), TITLE_MAX_OPS, TITLE_MAX_OVERDRAW);
+        assertTrue("collapsing added draw operations", nCollapsedOps <= nIdleOps + TITLE_SPLIT_OPS);
+    }
+
+    @Test
+    public void menuStaysWithinBudget() {
+        final Context context = HeaderFixture.createContext(InstrumentationRegistry.getTargetContext());
+        final MetaballMenu menu = (MetaballMenu) LayoutInflater.from(context).inflate(R.layout.menu, null);
+        menu.setElevationRequired(true);
+        menu.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.AT_MOST),
+                View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.AT_MOST));
+        menu.layout(0, 0, menu.getMeasuredWidth(), menu.getMeasuredHeight());
+
+        final DrawAccountingCanvas canvas = DrawAccountingCanvas.forView(menu);
+
+        // Idle: the elevated background, the selector and the items
+        check("menu idle", canvas.account(menu), MENU_MAX_OPS, MENU_MAX_OVERDRAW);
+        assertTrue(canvas.getSummary(), canvas.getOpCount(DrawAccountingCanvas.OP_CIRCLE) == 1);
+
+        // Animating: the transitional and destination circles. The blob joining them is only traced once
+        // the animation has stepped, which it does not off screen
+        menu.findViewById(R.id.menuitem2).performClick();
+        check("menu animating", canvas.account(menu), MENU_ANIMATING_MAX_OPS, MENU_MAX_OVERDRAW);
+        assertTrue(canvas.getSummary(), canvas.getOpCount(DrawAccountingCanvas.OP_CIRCLE) == 2);
+    }
+
+    /**
+     * Log the report of a frame and hold it to its budget
+     *
+     * @return the number of draw operations of the frame
+     */
+    private static int check(String sLabel, DrawAccountingCanvas canvas, int nMaxOps, float fMaxOverdraw) {
+        Log.i(TAG, sLabel + ": " + canvas.getSummary());
+        canvas.assertWithinBudget(sLabel, nMaxOps, fMaxOverdraw);
+        return canvas.getOpCount();
+    }
+}
@@ -0,0 +1,161 @@
+package abysmel.com.collapsibletoolbarhelper;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.RelativeLayout;
+import android.widget.TextView;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import abysmel.com.collapsibletoolbarhelper.widgets.CollapsibleToolbarHelper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the PercentRelativeLayout and the single pass layout engine on a 20 child header. Both
+ * engines have to place the children at the same spot. The time per measure + layout pass of each is
+ * written to the log.
+ */
+@RunWith(AndroidJUnit4.class)
+public class LayoutEngineBenchmark {
+    private static final String TAG = "LayoutEngineBenchmark";
+    private static final int CHILD_COUNT = 20;
+    private static final int WARMUP_PASSES = 50;
+    private static final int MEASURED_PASSES = 500;
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 600;
+
+    @Test
+    public void compareEngines() {
+        final Context context = InstrumentationRegistry.getTargetContext();
+        final CollapsibleToolbarHelper relative = createHeader(context, false);
+        final CollapsibleToolbarHelper singlePass = createHeader(context, true);
+
+        final long lRelativeNanos = timePasses(relative);
+        final long lSinglePassNanos = timePasses(singlePass);
+
+        Log.i(TAG, "PercentRelativeLayout: " + lRelativeNanos + " ns / pass, single pass engine: " +
+                lSinglePassNanos + " ns / pass");
+
+        // The engine must have handled the header itself, measuring every child once per pass. Every
+        // child is forced to measure again, so none of them is a measure cache hit
+        assertTrue(singlePass.isSinglePassLayout());
+        assertEquals(CHILD_COUNT * (WARMUP_PASSES + MEASURED_PASSES),
+                singlePass.getSinglePassLayoutEngine().getMeasureCacheMissCount());
+        assertEquals(0, singlePass.getSinglePassLayoutEngine().getMeasureCacheHitCount());
+        assertEquals(0, relative.getMeasureCacheHitCount());
+
+        for (int nCtr = 0; nCtr < CHILD_COUNT; nCtr++) {
+            final View expected = relative.getChildAt(nCtr);
+            final View actual = singlePass.getChildAt(nCtr);
+            assertEquals("left of child " + nCtr, expected.getLeft(), actual.getLeft());
+            assertEquals("top of child " + nCtr, expected.getTop(), actual.getTop());
+            assertEquals("width of child " + nCtr, expected.getWidth(), actual.getWidth());
+            assertEquals("height of child " + nCtr, expected.getHeight(), actual.getHeight());
+        }
+    }
+
+    /**
+     * Measure and lay out the header over and over, forcing every child to measure again each time
+     *
+     * @return the average time of a pass in nanoseconds
+     */
+    private static long timePasses(CollapsibleToolbarHelper header) {
+        final int nWidthSpec = View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY);
+        final int nHeightSpec = View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY);
+
+        for (int nCtr = 0; nCtr < WARMUP_PASSES; nCtr++) {
+            runPass(header, nWidthSpec, nHeightSpec);
+        }
+
+        final long lStart = SystemClock.elapsedRealtimeNanos();
+        for (int nCtr = 0; nCtr < MEASURED_PASSES; nCtr++) {
+            runPass(header, nWidthSpec, nHeightSpec);
+        }
+        return (SystemClock.elapsedRealtimeNanos() - lStart) / MEASURED_PASSES;
+    }
+
+    private static void runPass(CollapsibleToolbarHelper header, int nWidthSpec, int nHeightSpec) {
+        header.forceLayout();
+        for (int nChild = 0, count = header.getChildCount(); nChild < count; nChild++) {
+            header.getChildAt(nChild).forceLayout();
+        }
+        header.measure(nWidthSpec, nHeightSpec);
+        header.layout(0, 0, header.getMeasuredWidth(), header.getMeasuredHeight());
+    }
+
+    /**
+     * A header the way ours are usually built: a backdrop, a pinned row along the top and the right,
+     * and a grid of chips below and to the right of the avatar
+     */
+    private static CollapsibleToolbarHelper createHeader(Context context, boolean bSinglePass) {
+        final CollapsibleToolbarHelper header = new CollapsibleToolbarHelper(context);
+        header.setSinglePassLayout(bSinglePass);
+
+        for (int nCtr = 0; nCtr < CHILD_COUNT; nCtr++) {
+            final TextView child = new TextView(context);
+            child.setId(nCtr + 1);
+            child.setText("Chip " + nCtr);
+
+            final CollapsibleToolbarHelper.LayoutParams params;
+            if (nCtr == 0) {
+                // Backdrop
+                params = new CollapsibleToolbarHelper.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT,
+                        ViewGroup.LayoutParams.MATCH_PARENT);
+                params.setCollapseMode(CollapsibleToolbarHelper.LayoutParams.PARALLAX_ON_SCROLL);
+            }
+            else if (nCtr == 1) {
+                // Avatar
+                params = new CollapsibleToolbarHelper.LayoutParams(200, 200);
+                params.addRule(RelativeLayout.ALIGN_PARENT_LEFT);
+                params.addRule(RelativeLayout.ALIGN_PARENT_TOP);
+                params.leftMargin = 16;
+                params.topMargin = 16;
+            }
+            else if (nCtr == 2) {
+                // Action on the top right
+                params = new CollapsibleToolbarHelper.LayoutParams(ViewGroup.LayoutParams.WRAP_CONTENT,
+                        ViewGroup.LayoutParams.WRAP_CONTENT);
+                params.addRule(RelativeLayout.ALIGN_PARENT_RIGHT);
+                params.addRule(RelativeLayout.ALIGN_PARENT_TOP);
+                params.rightMargin = 16;
+            }
+            else if (nCtr == 3) {
+                // Centered title
+                params = new CollapsibleToolbarHelper.LayoutParams(ViewGroup.LayoutParams.WRAP_CONTENT,
+                        ViewGroup.LayoutParams.WRAP_CONTENT);
+                params.addRule(RelativeLayout.CENTER_IN_PARENT);
+            }
+            else if ((nCtr % 2) == 0) {
+                // Chips below the avatar
+                params = new CollapsibleToolbarHelper.LayoutParams(ViewGroup.LayoutParams.WRAP_CONTENT,
+                        ViewGroup.LayoutParams.WRAP_CONTENT);
+                params.addRule(RelativeLayout.BELOW, 2);
+                params.addRule(RelativeLayout.ALIGN_PARENT_LEFT);
+                params.leftMargin = 8 * nCtr;
+                params.topMargin = 4;
+                params.setCollapseMode(CollapsibleToolbarHelper.LayoutParams.HIDE_ON_COLLAPSE);
+            }
+            else {
+                // Badges to the right of the avatar
+                params = new CollapsibleToolbarHelper.LayoutParams(ViewGroup.LayoutParams.WRAP_CONTENT,
+                        ViewGroup.LayoutParams.WRAP_CONTENT);
+                params.addRule(RelativeLayout.RIGHT_OF, 2);
+                params.addRule(RelativeLayout.ALIGN_PARENT_TOP);
+                params.leftMargin = 8;
+                params.topMargin = 6 * nCtr;
+                params.setCollapseMode(CollapsibleToolbarHelper.LayoutParams.SHOW_ON_COLLAPSE);
+            }
+
+            header.addView(child, params);
+        }
+        return header;
+    }
+}
@@ -0,0 +1,695 @@
+package abysmel.com.collapsibletoolbarhelper.helpers;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.PorterDuff;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.os.Build;
+import android.view.View;
+
+/**
+ * Created by Melvin Lobo on 12/02/2015.
+ *
+ * Debug canvas which records every draw call made on it along with the area it covers on the canvas.
+ * Draw a widget into it with {@link #account(View)} to find out how many draw operations one frame of
+ * the widget takes, how many pixels they paint and how many times each pixel gets painted over. The
+ * widget draws exactly as it would on screen, so {@code onDraw}, {@code draw} and the backgrounds (the
+ * elevation shadows included) are all accounted for.
+ *
+ * The bounds are those of the geometry, mapped through the current matrix and clipped, so the overdraw
+ * is an estimate: a circle counts as its bounding square and translucent pixels count as painted. The
+ * coverage is kept on a grid of {@link #CELL_SIZE} pixel cells. Calls which another draw call makes
+ * internally are only counted once.
+ *
+ * The canvas draws into a bitmap of its own, so it lives in the debug source set: debug builds and the
+ * instrumentation tests can use it, and it never ships in a release build.
+ */
+public class DrawAccountingCanvas extends Canvas {
+	//////////////////////////////////// CLASS MEMBERS /////////////////////////////////////////////
+	/**
+	 * Static Definitions
+	 */
+	public static final int     OP_CIRCLE        = 0;
+	public static final int     OP_PATH          = 1;
+	public static final int     OP_TEXT          = 2;
+	public static final int     OP_BITMAP        = 3;
+	public static final int     OP_RECT          = 4;
+	public static final int     OP_ROUND_RECT    = 5;
+	public static final int     OP_OVAL          = 6;
+	public static final int     OP_ARC           = 7;
+	public static final int     OP_LINE          = 8;
+	public static final int     OP_FILL          = 9;
+	public static final int     OP_TYPE_COUNT    = 10;
+
+	private static final String[] OP_NAMES = {
+			"circle", "path", "text", "bitmap", "rect", "roundRect", "oval", "arc", "line", "fill"
+	};
+
+	public static final int     CELL_SIZE        = 4;
+	private static final int    INITIAL_CAPACITY = 32;
+
+	/**
+	 * The bitmap drawn into and the size of the canvas
+	 */
+	private final Bitmap    mBitmap;
+	private final int       mnWidth;
+	private final int       mnHeight;
+
+	/**
+	 * The recorded operations: the type of each and its bounds on the canvas (left, top, right, bottom)
+	 */
+	private int[]   mnOpTypes   = new int[INITIAL_CAPACITY];
+	private float[] mfOpBounds  = new float[INITIAL_CAPACITY * 4];
+	private int     mnOpCount   = 0;
+	private final int[] mnOpCountByType = new int[OP_TYPE_COUNT];
+
+	/**
+	 * The number of times each cell of the coverage grid has been painted
+	 */
+	private final int   mnCellColumns;
+	private final int   mnCellRows;
+	private final int[] mnCellCoverage;
+
+	/**
+	 * The depth of the draw calls in progress. A draw call made by another one is not recorded
+	 */
+	private int mnDepth = 0;
+
+	/**
+	 * Scratch objects to map the bounds, so that recording does not allocate
+	 */
+	private final Matrix    mMatrix     = new Matrix();
+	private final RectF     mBounds     = new RectF();
+	private final Rect      mClipBounds = new Rect();
+
+	//////////////////////////////////// CLASS METHODS /////////////////////////////////////////////
+
+	/**
+	 * Create a canvas of the given size
+	 *
+	 * @param nWidth
+	 *      The width of the canvas in pixels
+	 * @param nHeight
+	 *      The height of the canvas in pixels
+	 *
+	 * @author Melvin Lobo
+	 */
+	public DrawAccountingCanvas(int nWidth, int nHeight) {
+		this(Bitmap.createBitmap(Math.max(1, nWidth), Math.max(1, nHeight), Bitmap.Config.ARGB_8888));
+	}
+
+	private DrawAccountingCanvas(Bitmap bitmap) {
+		super(bitmap);
+		mBitmap = bitmap;
+		mnWidth = bitmap.getWidth();
+		mnHeight = bitmap.getHeight();
+		mnCellColumns = (mnWidth + CELL_SIZE - 1) / CELL_SIZE;
+		mnCellRows = (mnHeight + CELL_SIZE - 1) / CELL_SIZE;
+		mnCellCoverage = new int[mnCellColumns * mnCellRows];
+	}
+
+	/**
+	 * Create a canvas the size of a view that has been laid out
+	 *
+	 * @param view
+	 *      The view
+	 * @return
+	 *      The canvas
+	 *
+	 * @author Melvin Lobo
+	 */
+	public static DrawAccountingCanvas forView(View view) {
+		return new DrawAccountingCanvas(view.getWidth(), view.getHeight());
+	}
+
+	/**
+	 * Draw one frame of a view, and its children, into the canvas. The previous records are dropped
+	 * first, so the canvas then holds the report of that frame
+	 *
+	 * @param view
+	 *      The view to draw. It is drawn at the top left corner of the canvas
+	 * @return
+	 *      This canvas, to read the report from
+	 *
+	 * @author Melvin Lobo
+	 */
+	public DrawAccountingCanvas account(View view) {
+		reset();
+		final int nSaveCount = save();
+		view.draw(this);
+		restoreToCount(nSaveCount);
+		return this;
+	}
+
+	/**
+	 * Drop the records and clear the bitmap
+	 *
+	 * @author Melvin Lobo
+	 */
+	public void reset() {
+		mnOpCount = 0;
+		mnDepth = 0;
+		for (int nCtr = 0; nCtr < OP_TYPE_COUNT; nCtr++) {
+			mnOpCountByType[nCtr] = 0;
+		}
+		for (int nCtr = 0; nCtr < mnCellCoverage.length; nCtr++) {
+			mnCellCoverage[nCtr] = 0;
+		}
+		mBitmap.eraseColor(0);
+	}
+
+	/**
+	 * @return The number of draw operations recorded
+	 */
+	public int getOpCount() {
+		return mnOpCount;
+	}
+
+	/**
+	 * @return The number of draw operations of a type ({@link #OP_CIRCLE}, {@link #OP_TEXT}...) recorded
+	 */
+	public int getOpCount(int nType) {
+		return mnOpCountByType[nType];
+	}
+
+	/**
+	 * @return The type of a recorded draw operation
+	 */
+	public int getOpType(int nIndex) {
+		return mnOpTypes[nIndex];
+	}
+
+	/**
+	 * Get the area a recorded draw operation covers on the canvas
+	 *
+	 * @param nIndex
+	 *      The index of the operation
+	 * @param bounds
+	 *      Set to the bounds of the operation. Empty if it was clipped out entirely
+	 *
+	 * @author Melvin Lobo
+	 */
+	public void getOpBounds(int nIndex, RectF bounds) {
+		final int nBase = nIndex * 4;
+		bounds.set(mfOpBounds[nBase], mfOpBounds[nBase + 1], mfOpBounds[nBase + 2], mfOpBounds[nBase + 3]);
+	}
+
+	/**
+	 * @return The number of pixels painted by all the operations together. A pixel painted twice counts twice
+	 */
+	public long getPixelsPainted() {
+		long lCells = 0;
+		for (int nCoverage : mnCellCoverage) {
+			lCells += nCoverage;
+		}
+		return lCells * CELL_SIZE * CELL_SIZE;
+	}
+
+	/**
+	 * @return The number of distinct pixels painted at least once
+	 */
+	public long getPixelsCovered() {
+		long lCells = 0;
+		for (int nCoverage : mnCellCoverage) {
+			if (nCoverage > 0) {
+				lCells++;
+			}
+		}
+		return lCells * CELL_SIZE * CELL_SIZE;
+	}
+
+	/**
+	 * @return The average number of times a covered pixel is painted. 1 means no overdraw at all, 0 that
+	 * nothing was painted
+	 */
+	public float getOverdraw() {
+		final long lCovered = getPixelsCovered();
+		return (lCovered == 0) ? 0.0f : getPixelsPainted() / (float) lCovered;
+	}
+
+	/**
+	 * @return The largest number of times any one pixel is painted
+	 */
+	public int getMaxOverdraw() {
+		int nMax = 0;
+		for (int nCoverage : mnCellCoverage) {
+			nMax = Math.max(nMax, nCoverage);
+		}
+		return nMax;
+	}
+
+	/**
+	 * Describe the report in one line, for logs and failures
+	 *
+	 * @return
+	 *      The number of operations of each type, the pixels covered and the overdraw
+	 *
+	 * @author Melvin Lobo
+	 */
+	public String getSummary() {
+		final StringBuilder summary = new StringBuilder();
+		summary.append(mnOpCount).append(" op(s) [");
+		boolean bFirst = true;
+		for (int nCtr = 0; nCtr < OP_TYPE_COUNT; nCtr++) {
+			if (mnOpCountByType[nCtr] > 0) {
+				if (!bFirst) {
+					summary.append(", ");
+				}
+				summary.append(OP_NAMES[nCtr]).append(' ').append(mnOpCountByType[nCtr]);
+				bFirst = false;
+			}
+		}
+		summary.append("], ").append(getPixelsCovered()).append(" px covered, overdraw ")
+				.append(getOverdraw()).append(" (max ").append(getMaxOverdraw()).append(')');
+		return summary.toString();
+	}
+
+	/**
+	 * Fail the test if the frame recorded goes over a draw budget
+	 *
+	 * @param sLabel
+	 *      What was drawn, e.g. the widget and its state, for the failure message
+	 * @param nMaxOps
+	 *      The largest number of draw operations allowed
+	 * @param fMaxOverdraw
+	 *      The largest average overdraw allowed, see {@link #getOverdraw()}
+	 *
+	 * @author Melvin Lobo
+	 */
+	public void assertWithinBudget(String sLabel, int nMaxOps, float fMaxOverdraw) {
+		if ((mnOpCount > nMaxOps) || (getOverdraw() > fMaxOverdraw)) {
+			throw new AssertionError(sLabel + " is over its draw budget of " + nMaxOps + " op(s) and overdraw " +
+					fMaxOverdraw + ": " + getSummary());
+		}
+	}
+
+	/**
+	 * Record a draw operation, unless it is made from within another one
+	 *
+	 * @param nType
+	 *      The type of the operation
+	 * @param fLeft
+	 *      The left of the geometry in the current co-ordinates of the canvas
+	 * @param fTop
+	 *      The top of the geometry
+	 * @param fRight
+	 *      The right of the geometry
+	 * @param fBottom
+	 *      The bottom of the geometry
+	 * @param paint
+	 *      The paint of the operation, to account for the stroke. May be null
+	 *
+	 * @author Melvin Lobo
+	 */
+	private void record(int nType, float fLeft, float fTop, float fRight, float fBottom, Paint paint) {
+		if (mnDepth > 0) {
+			return;
+		}
+
+		mBounds.set(fLeft, fTop, fRight, fBottom);
+		if ((paint != null) && (paint.getStyle() != Paint.Style.FILL)) {
+			// A stroke is centered on the outline. A hairline still paints a pixel
+			final float fHalfStroke = Math.max(paint.getStrokeWidth(), 1.0f) / 2;
+			mBounds.inset(-fHalfStroke, -fHalfStroke);
+		}
+		recordBounds(nType);
+	}
+
+	/**
+	 * Record a draw operation which covers {@link #mBounds}. The bounds are clipped, mapped to the canvas
+	 * and added to the coverage grid
+	 *
+	 * @author Melvin Lobo
+	 */
+	@SuppressWarnings("deprecation")
+	private void recordBounds(int nType) {
+		if (mnDepth > 0) {
+			return;
+		}
+
+		if (!getClipBounds(mClipBounds) || !mBounds.intersect(mClipBounds.left, mClipBounds.top,
+				mClipBounds.right, mClipBounds.bottom)) {
+			mBounds.setEmpty();
+		}
+		else {
+			// Fine on a bitmap canvas, which is the only kind this is
+			getMatrix(mMatrix);
+			mMatrix.mapRect(mBounds);
+			if (!mBounds.intersect(0, 0, mnWidth, mnHeight)) {
+				mBounds.setEmpty();
+			}
+		}
+
+		if (mnOpCount == mnOpTypes.length) {
+			grow();
+		}
+		final int nBase = mnOpCount * 4;
+		mnOpTypes[mnOpCount] = nType;
+		mfOpBounds[nBase] = mBounds.left;
+		mfOpBounds[nBase + 1] = mBounds.top;
+		mfOpBounds[nBase + 2] = mBounds.right;
+		mfOpBounds[nBase + 3] = mBounds.bottom;
+		mnOpCount++;
+		mnOpCountByType[nType]++;
+
+		if (!mBounds.isEmpty()) {
+			// A cell counts if the bounds reach its center
+			final int nFirstColumn = Math.round(mBounds.left / CELL_SIZE);
+			final int nLastColumn = Math.min(Math.round(mBounds.right / CELL_SIZE), mnCellColumns);
+			final int nFirstRow = Math.round(mBounds.top / CELL_SIZE);
+			final int nLastRow = Math.min(Math.round(mBounds.bottom / CELL_SIZE), mnCellRows);
+			for (int nRow = nFirstRow; nRow < nLastRow; nRow++) {
+				final int nRowStart = nRow * mnCellColumns;
+				for (int nColumn = nFirstColumn; nColumn < nLastColumn; nColumn++) {
+					mnCellCoverage[nRowStart + nColumn]++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Record a run of text. The width comes from the paint, the height from its font metrics
+	 *
+	 * @author Melvin Lobo
+	 */
+	private void recordText(float fWidth, float fX, float fY, Paint paint, boolean bAligned) {
+		if (mnDepth > 0) {
+			return;
+		}
+
+		float fLeft = fX;
+		if (bAligned) {
+			final Paint.Align align = paint.getTextAlign();
+			if (align == Paint.Align.CENTER) {
+				fLeft -= fWidth / 2;
+			}
+			else if (align == Paint.Align.RIGHT) {
+				fLeft -= fWidth;
+			}
+		}
+		record(OP_TEXT, fLeft, fY + paint.ascent(), fLeft + fWidth, fY + paint.descent(), null);
+	}
+
+	/**
+	 * Double the capacity of the operation arrays
+	 *
+	 * @author Melvin Lobo
+	 */
+	private void grow() {
+		final int nCapacity = mnOpTypes.length * 2;
+		final int[] nTypes = new int[nCapacity];
+		final float[] fBounds = new float[nCapacity * 4];
+		System.arraycopy(mnOpTypes, 0, nTypes, 0, mnOpCount);
+		System.arraycopy(mfOpBounds, 0, fBounds, 0, mnOpCount * 4);
+		mnOpTypes = nTypes;
+		mfOpBounds = fBounds;
+	}
+
+	/////////////////////////////////////// DRAW CALLS /////////////////////////////////////////////
+
+	@Override
+	public void drawCircle(float cx, float cy, float radius, Paint paint) {
+		record(OP_CIRCLE, cx - radius, cy - radius, cx + radius, cy + radius, paint);
+		mnDepth++;
+		super.drawCircle(cx, cy, radius, paint);
+		mnDepth--;
+	}
+
+	@Override
+	public void drawPath(Path path, Paint paint) {
+		if (mnDepth == 0) {
+			path.computeBounds(mBounds, true);
+			record(OP_PATH, mBounds.left, mBounds.top, mBounds.right, mBounds.bottom, paint);
+		}
+		mnDepth++;
+		super.drawPath(path, paint);
+		mnDepth--;
+	}
+
+	@Override
+	public void drawText(String text, float x, float y, Paint paint) {
+		if (mnDepth == 0) {
+			recordText(paint.measureText(text), x, y, paint, true);
+		}
+		mnDepth++;
+		super.drawText(text, x, y, paint);
+		mnDepth--;
+	}
+
+	@Override
+	public void drawText(String text, int start, int end, float x, float y, Paint paint) {
+		if (mnDepth == 0) {
+			recordText(paint.measureText(text, start, end), x, y, paint, true);
+		}
+		mnDepth++;
+		super.drawText(text, start, end, x, y, paint);
+		mnDepth--;
+	}
+
+	@Override
+	public void drawText(CharSequence text, int start, int end, float x, float y, Paint paint) {
+		if (mnDepth == 0) {
+			recordText(paint.measureText(text, start, end), x, y, paint, true);
+		}
+		mnDepth++;
+		super.drawText(text, start, end, x, y, paint);
+		mnDepth--;
+	}
+
+	@Override
+	public void drawText(char[] text, int index, int count, float x, float y, Paint paint) {
+		if (mnDepth == 0) {
+			recordText(paint.measureText(text, index, count), x, y, paint, true);
+		}
+		mnDepth++;
+		super.drawText(text, index, count, x, y, paint);
+		mnDepth--;
+	}
+
+	@Override
+	@TargetApi(Build.VERSION_CODES.M)
+	public void drawTextRun(char[] text, int index, int count, int contextIndex, int contextCount, float x, float y,
+			boolean isRtl, Paint paint) {
+		if (mnDepth == 0) {
+			recordText(paint.measureText(text, index, count), x, y, paint, false);
+		}
+		mnDepth++;
+		super.drawTextRun(text, index, count, contextIndex, contextCount, x, y, isRtl, paint);
+		mnDepth--;
+	}
+
+	@Override
+	@TargetApi(Build.VERSION_CODES.M)
+	public void drawTextRun(CharSequence text, int start, int end, int contextStart, int contextEnd, float x, float y,
+			boolean isRtl, Paint paint) {
+		if (mnDepth == 0) {
+			recordText(paint.measureText(text, start, end), x, y, paint, false);
+		}
+		mnDepth++;
+		super.drawTextRun(text, start, end, contextStart, contextEnd, x, y, isRtl, paint);
+		mnDepth--;
+	}
+
+	@Override
+	public void drawBitmap(Bitmap bitmap, float left, float top, Paint paint) {
+		record(OP_BITMAP, left, top, left + bitmap.getWidth(), top + bitmap.getHeight(), null);
+		mnDepth++;
+		super.drawBitmap(bitmap, left, top, paint);
+		mnDepth--;
+	}
+
+	@Override
+	public void drawBitmap(Bitmap bitmap, Rect src, Rect dst, Paint paint) {
+		record(OP_BITMAP, dst.left, dst.top, dst.right, dst.bottom, null);
+		mnDepth++;
+		super.drawBitmap(bitmap, src, dst, paint);
+		mnDepth--;
+	}
+
+	@Override
+	public void drawBitmap(Bitmap bitmap, Rect src, RectF dst, Paint paint) {
+		record(OP_BITMAP, dst.left, dst.top, dst.right, dst.bottom, null);
+		mnDepth++;
+		super.drawBitmap(bitmap, src, dst, paint);
+		mnDepth--;
+	}
+
+	@Override
+	public void drawBitmap(Bitmap bitmap, Matrix matrix, Paint paint) {
+		if (mnDepth == 0) {
+			mBounds.set(0, 0, bitmap.getWidth(), bitmap.getHeight());
+			matrix.mapRect(mBounds);
+			recordBounds(OP_BITMAP);
+		}
+		mnDepth++;
+		super.drawBitmap(bitmap, matrix, paint);
+		mnDepth--;
+	}
+
+	@Override
+	public void drawRect(Rect r, Paint paint) {
+		record(OP_RECT, r.left, r.top, r.right, r.bottom, paint);
+		mnDepth++;
+		super.drawRect(r, paint);
+		mnDepth--;
+	}
+
+	@Override
+	public void drawRect(RectF rect, Paint paint) {
+		record(OP_RECT, rect.left, rect.top, rect.right, rect.bottom, paint);
+		mnDepth++;
+		super.drawRect(rect, paint);
+		mnDepth--;
+	}
+
+	@Override
+	public void drawRect(float left, float top, float right, float bottom, Paint paint) {
+		record(OP_RECT, left, top, right, bottom, paint);
+		mnDepth++;
+		super.drawRect(left, top, right, bottom, paint);
+		mnDepth--;
+	}
+
+	@Override
+	public void drawRoundRect(RectF rect, float rx, float ry, Paint paint) {
+		record(OP_ROUND_RECT, rect.left, rect.top, rect.right, rect.bottom, paint);
+		mnDepth++;
+		super.drawRoundRect(rect, rx, ry, paint);
+		mnDepth--;
+	}
+
+	@Override
+	@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+	public void drawRoundRect(float left, float top, float right, float bottom, float rx, float ry, Paint paint) {
+		record(OP_ROUND_RECT, left, top, right, bottom, paint);
+		mnDepth++;
+		super.drawRoundRect(left, top, right, bottom, rx, ry, paint);
+		mnDepth--;
+	}
+
+	@Override
+	public void drawOval(RectF oval, Paint paint) {
+		record(OP_OVAL, oval.left, oval.top, oval.right, oval.bottom, paint);
+		mnDepth++;
+		super.drawOval(oval, paint);
+		mnDepth--;
+	}
+
+	@Override
+	@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+	public void drawOval(float left, float top, float right, float bottom, Paint paint) {
+		record(OP_OVAL, left, top, right, bottom, paint);
+		mnDepth++;
+		super.drawOval(left, top, right, bottom, paint);
+		mnDepth--;
+	}
+
+	@Override
+	public void drawArc(RectF oval, float startAngle, float sweepAngle, boolean useCenter, Paint paint) {
+		record(OP_ARC, oval.left, oval.top, oval.right, oval.bottom, paint);
+		mnDepth++;
+		super.drawArc(oval, startAngle, sweepAngle, useCenter, paint);
+		mnDepth--;
+	}
+
+	@Override
+	@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+	public void drawArc(float left, float top, float right, float bottom, float startAngle, float sweepAngle,
+			boolean useCenter, Paint paint) {
+		record(OP_ARC, left, top, right, bottom, paint);
+		mnDepth++;
+		super.drawArc(left, top, right, bottom, startAngle, sweepAngle, useCenter, paint);
+		mnDepth--;
+	}
+
+	@Override
+	public void drawLine(float startX, float startY, float stopX, float stopY, Paint paint) {
+		record(OP_LINE, Math.min(startX, stopX), Math.min(startY, stopY), Math.max(startX, stopX),
+				Math.max(startY, stopY), paint);
+		mnDepth++;
+		super.drawLine(startX, startY, stopX, stopY, paint);
+		mnDepth--;
+	}
+
+	@Override
+	public void drawLines(float[] pts, int offset, int count, Paint paint) {
+		if ((mnDepth == 0) && (count >= 2)) {
+			float fLeft = pts[offset], fRight = fLeft;
+			float fTop = pts[offset + 1], fBottom = fTop;
+			for (int nCtr = offset + 2; nCtr + 1 < offset + count; nCtr += 2) {
+				fLeft = Math.min(fLeft, pts[nCtr]);
+				fRight = Math.max(fRight, pts[nCtr]);
+				fTop = Math.min(fTop, pts[nCtr + 1]);
+				fBottom = Math.max(fBottom, pts[nCtr + 1]);
+			}
+			record(OP_LINE, fLeft, fTop, fRight, fBottom, paint);
+		}
+		mnDepth++;
+		super.drawLines(pts, offset, count, paint);
+		mnDepth--;
+	}
+
+	@Override
+	public void drawLines(float[] pts, Paint paint) {
+		drawLines(pts, 0, pts.length, paint);
+	}
+
+	@Override
+	public void drawPaint(Paint paint) {
+		recordFill();
+		mnDepth++;
+		super.drawPaint(paint);
+		mnDepth--;
+	}
+
+	@Override
+	public void drawColor(int color) {
+		recordFill();
+		mnDepth++;
+		super.drawColor(color);
+		mnDepth--;
+	}
+
+	@Override
+	public void drawColor(int color, PorterDuff.Mode mode) {
+		recordFill();
+		mnDepth++;
+		super.drawColor(color, mode);
+		mnDepth--;
+	}
+
+	@Override
+	public void drawARGB(int a, int r, int g, int b) {
+		recordFill();
+		mnDepth++;
+		super.drawARGB(a, r, g, b);
+		mnDepth--;
+	}
+
+	@Override
+	public void drawRGB(int r, int g, int b) {
+		recordFill();
+		mnDepth++;
+		super.drawRGB(r, g, b);
+		mnDepth--;
+	}
+
+	/**
+	 * Record an operation which fills the whole clip
+	 *
+	 * @author Melvin Lobo
+	 */
+	private void recordFill() {
+		if (mnDepth == 0) {
+			if (!getClipBounds(mClipBounds)) {
+				mClipBounds.setEmpty();
+			}
+			record(OP_FILL, mClipBounds.left, mClipBounds.top, mClipBounds.right, mClipBounds.bottom, null);
+		}
+	}
+}
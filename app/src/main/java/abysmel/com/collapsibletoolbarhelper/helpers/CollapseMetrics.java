@@ -0,0 +1,304 @@
+package abysmel.com.collapsibletoolbarhelper.helpers;
+
+/**
+ * Created by Melvin Lobo on 12/02/2015.
+ *
+ * Frame cost metrics of a collapsing toolbar: latency histograms of the offset dispatch, the layout
+ * pass and the collapsing text update, plus counters of offset events, alpha animations and
+ * elevation swaps. Recording is a couple of array increments with no allocation, so the metrics can
+ * stay on in production. Take a {@link Snapshot} to export them.
+ *
+ * The metrics are recorded on the UI thread and are not synchronized.
+ */
+public class CollapseMetrics {
+	//////////////////////////////////// CLASS MEMBERS /////////////////////////////////////////////
+	/**
+	 * The latency histograms
+	 */
+	private final LatencyHistogram mOffsetDispatch = new LatencyHistogram();
+	private final LatencyHistogram mLayout         = new LatencyHistogram();
+	private final LatencyHistogram mTextUpdate     = new LatencyHistogram();
+
+	/**
+	 * The counters
+	 */
+	private long mlOffsetEvents       = 0;
+	private long mlAlphaAnimations    = 0;
+	private long mlElevationSwaps     = 0;
+
+	//////////////////////////////////// CLASS METHODS /////////////////////////////////////////////
+
+	/**
+	 * Record the time taken to move the children for one offset
+	 *
+	 * @param lNanos
+	 *      The time taken in nanoseconds
+	 *
+	 * @author Melvin Lobo
+	 */
+	public void recordOffsetDispatch(long lNanos) {
+		mOffsetDispatch.record(lNanos);
+	}
+
+	/**
+	 * Record the time taken by a layout pass
+	 *
+	 * @param lNanos
+	 *      The time taken in nanoseconds
+	 *
+	 * @author Melvin Lobo
+	 */
+	public void recordLayout(long lNanos) {
+		mLayout.record(lNanos);
+	}
+
+	/**
+	 * Record the time taken to update a collapsing text to a new scroll offset
+	 *
+	 * @param lNanos
+	 *      The time taken in nanoseconds
+	 *
+	 * @author Melvin Lobo
+	 */
+	public void recordTextUpdate(long lNanos) {
+		mTextUpdate.record(lNanos);
+	}
+
+	/**
+	 * Count an offset event received from the AppBarLayout
+	 *
+	 * @author Melvin Lobo
+	 */
+	public void countOffsetEvent() {
+		mlOffsetEvents++;
+	}
+
+	/**
+	 * Count an alpha animation started on a child
+	 *
+	 * @author Melvin Lobo
+	 */
+	public void countAlphaAnimation() {
+		mlAlphaAnimations++;
+	}
+
+	/**
+	 * Count a swap of the elevation (or the elevated background) of the AppBarLayout
+	 *
+	 * @author Melvin Lobo
+	 */
+	public void countElevationSwap() {
+		mlElevationSwaps++;
+	}
+
+	/**
+	 * Take a copy of the metrics recorded so far
+	 *
+	 * @return
+	 *      The snapshot
+	 *
+	 * @author Melvin Lobo
+	 */
+	public Snapshot snapshot() {
+		return new Snapshot(this);
+	}
+
+	/**
+	 * Clear all the metrics
+	 *
+	 * @author Melvin Lobo
+	 */
+	public void reset() {
+		mOffsetDispatch.reset();
+		mLayout.reset();
+		mTextUpdate.reset();
+		mlOffsetEvents = 0;
+		mlAlphaAnimations = 0;
+		mlElevationSwaps = 0;
+	}
+
+	/**
+	 * A histogram of latencies with fixed power of two buckets. Bucket 0 holds latencies below 2ns, and
+	 * bucket n (n > 0) holds the latencies in [2^n, 2^(n+1)) nanoseconds. The last bucket also holds
+	 * everything above it.
+	 *
+	 * @author Melvin Lobo
+	 */
+	public static class LatencyHistogram {
+		/**
+		 * Number of buckets. 2^32ns is over 4 seconds, way more than anything on a frame
+		 */
+		public static final int BUCKET_COUNT = 32;
+
+		private final long[] mlBuckets = new long[BUCKET_COUNT];
+		private long mlCount = 0;
+		private long mlTotalNanos = 0;
+		private long mlMaxNanos = 0;
+
+		/**
+		 * Record a latency
+		 *
+		 * @param lNanos
+		 *      The latency in nanoseconds
+		 */
+		private void record(long lNanos) {
+			if (lNanos < 0) {
+				lNanos = 0;
+			}
+			final int nBucket = 63 - Long.numberOfLeadingZeros(lNanos | 1);
+			mlBuckets[(nBucket < BUCKET_COUNT) ? nBucket : (BUCKET_COUNT - 1)]++;
+			mlCount++;
+			mlTotalNanos += lNanos;
+			if (lNanos > mlMaxNanos) {
+				mlMaxNanos = lNanos;
+			}
+		}
+
+		/**
+		 * @return The number of latencies recorded
+		 */
+		public long getCount() {
+			return mlCount;
+		}
+
+		/**
+		 * @return The sum of the latencies recorded, in nanoseconds
+		 */
+		public long getTotalNanos() {
+			return mlTotalNanos;
+		}
+
+		/**
+		 * @return The largest latency recorded, in nanoseconds
+		 */
+		public long getMaxNanos() {
+			return mlMaxNanos;
+		}
+
+		/**
+		 * @return The mean latency in nanoseconds, or 0 if nothing was recorded
+		 */
+		public long getMeanNanos() {
+			return (mlCount == 0) ? 0 : (mlTotalNanos / mlCount);
+		}
+
+		/**
+		 * Get the number of latencies in a bucket
+		 *
+		 * @param nBucket
+		 *      The bucket, from 0 to {@link #BUCKET_COUNT} - 1
+		 * @return
+		 *      The number of latencies in the bucket
+		 */
+		public long getBucketCount(int nBucket) {
+			return mlBuckets[nBucket];
+		}
+
+		/**
+		 * Get the upper bound of the bucket holding the given percentile. As precise as the buckets are,
+		 * so within a factor of two of the actual value
+		 *
+		 * @param fPercentile
+		 *      The percentile, from 0 to 100
+		 * @return
+		 *      The upper bound of the bucket in nanoseconds (capped at the max), or 0 if nothing was
+		 *      recorded
+		 */
+		public long getPercentileNanos(float fPercentile) {
+			if (mlCount == 0) {
+				return 0;
+			}
+			final long lRank = (long) Math.ceil(mlCount * (fPercentile / 100.0f));
+			long lSeen = 0;
+			for (int nBucket = 0; nBucket < BUCKET_COUNT; nBucket++) {
+				lSeen += mlBuckets[nBucket];
+				if ((lSeen >= lRank) && (lSeen > 0)) {
+					return Math.min((2L << nBucket) - 1, mlMaxNanos);
+				}
+			}
+			return mlMaxNanos;
+		}
+
+		private void copyFrom(LatencyHistogram source) {
+			System.arraycopy(source.mlBuckets, 0, mlBuckets, 0, BUCKET_COUNT);
+			mlCount = source.mlCount;
+			mlTotalNanos = source.mlTotalNanos;
+			mlMaxNanos = source.mlMaxNanos;
+		}
+
+		private void reset() {
+			for (int nBucket = 0; nBucket < BUCKET_COUNT; nBucket++) {
+				mlBuckets[nBucket] = 0;
+			}
+			mlCount = 0;
+			mlTotalNanos = 0;
+			mlMaxNanos = 0;
+		}
+	}
+
+	/**
+	 * A copy of the metrics at one point in time. It does not change when more metrics are recorded,
+	 * so it can be handed over to telemetry as is
+	 *
+	 * @author Melvin Lobo
+	 */
+	public static class Snapshot {
+		private final LatencyHistogram mOffsetDispatch = new LatencyHistogram();
+		private final LatencyHistogram mLayout         = new LatencyHistogram();
+		private final LatencyHistogram mTextUpdate     = new LatencyHistogram();
+		private final long mlOffsetEvents;
+		private final long mlAlphaAnimations;
+		private final long mlElevationSwaps;
+
+		Snapshot(CollapseMetrics metrics) {
+			mOffsetDispatch.copyFrom(metrics.mOffsetDispatch);
+			mLayout.copyFrom(metrics.mLayout);
+			mTextUpdate.copyFrom(metrics.mTextUpdate);
+			mlOffsetEvents = metrics.mlOffsetEvents;
+			mlAlphaAnimations = metrics.mlAlphaAnimations;
+			mlElevationSwaps = metrics.mlElevationSwaps;
+		}
+
+		/**
+		 * @return The latencies of moving the children for an offset
+		 */
+		public LatencyHistogram getOffsetDispatch() {
+			return mOffsetDispatch;
+		}
+
+		/**
+		 * @return The latencies of the layout passes
+		 */
+		public LatencyHistogram getLayout() {
+			return mLayout;
+		}
+
+		/**
+		 * @return The latencies of the collapsing text updates
+		 */
+		public LatencyHistogram getTextUpdate() {
+			return mTextUpdate;
+		}
+
+		/**
+		 * @return The number of offset events received from the AppBarLayout
+		 */
+		public long getOffsetEventCount() {
+			return mlOffsetEvents;
+		}
+
+		/**
+		 * @return The number of alpha animations started
+		 */
+		public long getAlphaAnimationCount() {
+			return mlAlphaAnimations;
+		}
+
+		/**
+		 * @return The number of elevation swaps of the AppBarLayout
+		 */
+		public long getElevationSwapCount() {
+			return mlElevationSwaps;
+		}
+	}
+}
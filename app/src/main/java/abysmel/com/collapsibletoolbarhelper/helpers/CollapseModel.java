@@ -0,0 +1,572 @@
+package abysmel.com.collapsibletoolbarhelper.helpers;
+
+/**
+ * Created by Melvin Lobo on 12/02/2015.
+ *
+ * The collapse math of the {@code CollapsibleToolbarHelper}, without any View. It takes a geometry
+ * table (one row per child: collapse mode, parallax multiplier, height, alpha mode, fade range) plus
+ * the geometry of the toolbar, and for every offset of the AppBarLayout works out:
+ * - the top and bottom offset of each child that has to move,
+ * - the alpha of each child whose alpha has to change, either as a value (scrubbed) or as the target
+ *   of an animation (when the child crosses its trigger),
+ * - the fraction of the collapsing text.
+ * The results are written into primitive arrays which the view layer applies as is. Nothing is
+ * allocated once the table has grown to the child count, so the model can be driven over millions of
+ * offsets on a plain JVM.
+ *
+ * The collapse states (for the alpha animations) and the last height dispatched are kept here, so a
+ * model has to be fed the offsets in the order they happen.
+ */
+public class CollapseModel {
+	//////////////////////////////////// CLASS MEMBERS /////////////////////////////////////////////
+	/**
+	 * The collapse modes. Same values as the ones of CollapsibleToolbarHelper.LayoutParams
+	 */
+	public static final int MODE_PARALLAX_ON_SCROLL = 0;
+	public static final int MODE_MOVE_ON_SCROLL     = 1;
+	public static final int MODE_PIN_ON_SCROLL      = 2;
+	public static final int MODE_HIDE_ON_COLLAPSE   = 3;
+	public static final int MODE_SHOW_ON_COLLAPSE   = 4;
+
+	/**
+	 * The alpha modes. Same values as the ones of CollapsibleToolbarHelper.LayoutParams
+	 */
+	public static final int ALPHA_MODE_ANIMATE = 0;
+	public static final int ALPHA_MODE_SCRUB   = 1;
+
+	/**
+	 * What has to be done with the alpha of a child after an offset
+	 */
+	public static final int ALPHA_ACTION_NONE    = 0;     // Nothing, the child keeps its alpha
+	public static final int ALPHA_ACTION_SET     = 1;     // Set the alpha to the value right away
+	public static final int ALPHA_ACTION_ANIMATE = 2;     // Animate the alpha to the value
+
+	/**
+	 * The collapse state of a child with respect to its show / hide trigger. A child starts as
+	 * UNKNOWN and only flips between EXPANDED and COLLAPSED when it crosses the hysteresis band
+	 */
+	private static final int COLLAPSE_STATE_UNKNOWN   = 0;
+	private static final int COLLAPSE_STATE_EXPANDED  = 1;
+	private static final int COLLAPSE_STATE_COLLAPSED = 2;
+
+	/**
+	 * The geometry table, one slot per child
+	 */
+	private int         mnCount             = 0;
+	private int[]       mnModes             = new int[0];
+	private float[]     mfMultipliers       = new float[0];
+	private int[]       mnTriggerHeights    = new int[0];
+	private int[]       mnChildHeights      = new int[0];
+	private int[]       mnAlphaModes        = new int[0];
+	private int[]       mnFadeRanges        = new int[0];
+	private boolean[]   mbTexts             = new boolean[0];
+	private int[]       mnCollapseStates    = new int[0];
+
+	/**
+	 * The geometry of the toolbar
+	 */
+	private int mnHeight      = 0;
+	private int mnInsetTop    = 0;
+	private int mnExpandRange = 0;
+	private int mnHysteresis  = 0;
+
+	/**
+	 * The threshold index of the table, so that an offset only visits the children that can change:
+	 * - Continuous children are moved on every offset (parallax, pin, show / hide and text children)
+	 * - Move children, sorted by the offset from which they start moving. Only the prefix that has
+	 *   started moving is visited
+	 * - Toggle children (the ones with an alpha change), sorted by their trigger height. Only the
+	 *   ones whose trigger band lies between the previous and the current height are visited
+	 */
+	private int[]   mnContinuous         = new int[0];
+	private int[]   mnMoveOrder          = new int[0];
+	private int[]   mnMoveThresholds     = new int[0];
+	private int[]   mnToggleOrder        = new int[0];
+	private int[]   mnToggleTriggers     = new int[0];
+	private int[]   mnTextOrder          = new int[0];
+	private int     mnContinuousCount    = 0;
+	private int     mnMoveCount          = 0;
+	private int     mnToggleCount        = 0;
+	private int     mnTextCount          = 0;
+	private int     mnMaxFadeRange       = 0;
+	private int     mnLastHeight         = 0;
+	private boolean mbFullToggle         = true;     // The next offset has to visit every toggle child
+	private int     mnVisitCount         = 0;        // The rows visited by the last offset
+
+	/**
+	 * The output of the last offset. The offset and alpha lists hold child indices, the values are
+	 * indexed by child
+	 */
+	private int[]   mnOffsetChildren     = new int[0];
+	private int     mnOffsetChildCount   = 0;
+	private int[]   mnOffsets            = new int[0];
+	private int[]   mnAlphaChildren      = new int[0];
+	private int     mnAlphaChildCount    = 0;
+	private int[]   mnAlphaActions       = new int[0];
+	private float[] mfAlphas             = new float[0];
+	private float   mfTextFraction       = 0.0f;
+
+	//////////////////////////////////// CLASS METHODS /////////////////////////////////////////////
+
+	/**
+	 * Start a new geometry table. Follow with {@link #setChild} for each child and end with
+	 * {@link #endTable()}. The collapse states of the children are kept, use
+	 * {@link #resetCollapseState(int)} for a child that has to work its state out afresh
+	 *
+	 * @param nChildCount
+	 *      The number of children in the table
+	 * @param nHeight
+	 *      The height of the toolbar
+	 * @param nMinimumHeight
+	 *      The height the toolbar collapses to
+	 * @param nInsetTop
+	 *      The top system window inset, 0 if none
+	 * @param nShowHideTriggerHeight
+	 *      The height below which the show / hide children flip, not counting the inset
+	 *
+	 * @author Melvin Lobo
+	 */
+	public void beginTable(int nChildCount, int nHeight, int nMinimumHeight, int nInsetTop, int nShowHideTriggerHeight) {
+		ensureCapacity(nChildCount);
+
+		// Reset the states of the slots that were not part of the previous table
+		for (int nCtr = mnCount; nCtr < nChildCount; nCtr++) {
+			mnCollapseStates[nCtr] = COLLAPSE_STATE_UNKNOWN;
+		}
+
+		mnCount = nChildCount;
+		mnHeight = nHeight;
+		mnInsetTop = nInsetTop;
+		mnExpandRange = nHeight - nMinimumHeight - nInsetTop;
+
+		final int nTriggerHeight = nShowHideTriggerHeight + nInsetTop;
+		for (int nCtr = 0; nCtr < nChildCount; nCtr++) {
+			mnTriggerHeights[nCtr] = nTriggerHeight;
+		}
+	}
+
+	/**
+	 * Set a row of the geometry table
+	 *
+	 * @param nIndex
+	 *      The index of the child
+	 * @param nMode
+	 *      The collapse mode, one of the MODE_ constants
+	 * @param fMultiplier
+	 *      The parallax multiplier
+	 * @param nChildHeight
+	 *      The height of the child
+	 * @param nAlphaMode
+	 *      The alpha mode, one of the ALPHA_MODE_ constants
+	 * @param nFadeRange
+	 *      The fade range of a scrubbed alpha in pixels
+	 * @param bText
+	 *      True if the child is a collapsing text, which gets the text fraction on every offset
+	 *
+	 * @author Melvin Lobo
+	 */
+	public void setChild(int nIndex, int nMode, float fMultiplier, int nChildHeight, int nAlphaMode, int nFadeRange, boolean bText) {
+		mnModes[nIndex] = nMode;
+		mfMultipliers[nIndex] = fMultiplier;
+		mnChildHeights[nIndex] = nChildHeight;
+		mnAlphaModes[nIndex] = nAlphaMode;
+		mnFadeRanges[nIndex] = nFadeRange;
+		mbTexts[nIndex] = bText;
+	}
+
+	/**
+	 * Forget the collapse state of a child, so that its alpha is worked out afresh on the next offset
+	 *
+	 * @param nIndex
+	 *      The index of the child
+	 *
+	 * @author Melvin Lobo
+	 */
+	public void resetCollapseState(int nIndex) {
+		mnCollapseStates[nIndex] = COLLAPSE_STATE_UNKNOWN;
+	}
+
+	/**
+	 * End the geometry table and sort the children into the threshold index. The move and toggle
+	 * lists are kept sorted by their threshold so that an offset can binary search them. The next
+	 * offset visits every toggle child, since their states may have been reset
+	 *
+	 * @author Melvin Lobo
+	 */
+	public void endTable() {
+		mnContinuousCount = 0;
+		mnMoveCount = 0;
+		mnToggleCount = 0;
+		mnTextCount = 0;
+		mnMaxFadeRange = 0;
+
+		for (int nCtr = 0; nCtr < mnCount; nCtr++) {
+			final int nMode = mnModes[nCtr];
+
+			// A text child has to get its fraction on every offset, whatever its mode
+			if ((nMode == MODE_MOVE_ON_SCROLL) && !mbTexts[nCtr]) {
+				// Starts moving once the visible height reaches the bottom of the child
+				insertSorted(mnMoveOrder, mnMoveThresholds, mnMoveCount++, nCtr,
+						mnChildHeights[nCtr] - mnHeight + mnInsetTop);
+			}
+			else {
+				mnContinuous[mnContinuousCount++] = nCtr;
+			}
+
+			if (mbTexts[nCtr]) {
+				mnTextOrder[mnTextCount++] = nCtr;
+			}
+
+			if ((nMode == MODE_PARALLAX_ON_SCROLL) || (nMode == MODE_HIDE_ON_COLLAPSE) || (nMode == MODE_SHOW_ON_COLLAPSE)) {
+				insertSorted(mnToggleOrder, mnToggleTriggers, mnToggleCount++, nCtr, mnTriggerHeights[nCtr]);
+				if (mnAlphaModes[nCtr] == ALPHA_MODE_SCRUB) {
+					mnMaxFadeRange = Math.max(mnMaxFadeRange, mnFadeRanges[nCtr]);
+				}
+			}
+		}
+
+		mbFullToggle = true;
+	}
+
+	/**
+	 * Set the hysteresis band around the show / hide trigger height
+	 *
+	 * @param nHysteresis
+	 *      The band in pixels
+	 *
+	 * @author Melvin Lobo
+	 */
+	public void setShowHideHysteresis(int nHysteresis) {
+		mnHysteresis = Math.max(0, nHysteresis);
+	}
+
+	/**
+	 * Work out the offsets, alphas and text fraction for an offset of the AppBarLayout. Read them back
+	 * with the getters until the next call
+	 *
+	 * @param nVerticalOffset
+	 *      The vertical offset of the AppBarLayout (0 or negative)
+	 *
+	 * @author Melvin Lobo
+	 */
+	public void applyOffset(int nVerticalOffset) {
+		final int nHeight = mnHeight;
+		mnOffsetChildCount = 0;
+		mnAlphaChildCount = 0;
+		mfTextFraction = Math.abs(nVerticalOffset) / (float) mnExpandRange;
+
+		for (int nCtr = 0; nCtr < mnContinuousCount; nCtr++) {
+			final int nIndex = mnContinuous[nCtr];
+
+			switch (mnModes[nIndex]) {
+				case MODE_MOVE_ON_SCROLL:
+
+					/*
+					 * The idea is to avoid movement till the size of the collapse reached the bottom
+					 * of children with these collapse mode options. Once it hits their bottom, these
+					 * children will move up / down to / from the min height of the collapse
+					 */
+					if (nHeight - mnInsetTop + nVerticalOffset >= mnChildHeights[nIndex]) {
+						addOffset(nIndex, -nVerticalOffset);
+					}
+					break;
+				case MODE_PARALLAX_ON_SCROLL:
+
+					/* Move the child with respect to the parallax multiplier only if visible. Note that we offset this child even
+					 * if the alpha is zero because we need it to be in the right position when the control expands it self
+					 * and all child views are visible
+					 */
+					addOffset(nIndex, Math.round(-nVerticalOffset * mfMultipliers[nIndex]));
+					break;
+				case MODE_PIN_ON_SCROLL:
+				case MODE_HIDE_ON_COLLAPSE:
+				case MODE_SHOW_ON_COLLAPSE:
+
+					/*
+					 * Keep offsetting the view in the opposite direction of the movement so that
+					 * it looks pinned. The alpha of the show / hide children is taken care of below
+					 */
+					addOffset(nIndex, -nVerticalOffset);
+					break;
+			}
+		}
+
+		// MOVE_ON_SCROLL children that have started moving
+		final int nMoving = upperBound(mnMoveThresholds, mnMoveCount, nVerticalOffset);
+		for (int nCtr = 0; nCtr < nMoving; nCtr++) {
+			addOffset(mnMoveOrder[nCtr], -nVerticalOffset);
+		}
+
+		/*
+		 * A child can only change its alpha if the height has been within its band (hysteresis or
+		 * fade range) since the last offset, so only the triggers within the band of the covered
+		 * heights are visited
+		 */
+		final int nCurrentHeight = nHeight + nVerticalOffset;
+		int nFirst = 0;
+		int nLast = mnToggleCount;
+		if (!mbFullToggle) {
+			final int nBand = Math.max(mnHysteresis, mnMaxFadeRange) + 1;
+			final int nLow = Math.min(mnLastHeight, nCurrentHeight) - nBand;
+			final int nHigh = Math.max(mnLastHeight, nCurrentHeight) + nBand;
+			nFirst = upperBound(mnToggleTriggers, mnToggleCount, nLow - 1);
+			nLast = upperBound(mnToggleTriggers, mnToggleCount, nHigh);
+		}
+		for (int nCtr = nFirst; nCtr < nLast; nCtr++) {
+			final int nIndex = mnToggleOrder[nCtr];
+			if (mnAlphaModes[nIndex] == ALPHA_MODE_SCRUB) {
+				scrubAlpha(nIndex, nCurrentHeight);
+			}
+			else {
+				updateCollapseState(nIndex, nCurrentHeight);
+			}
+		}
+		mnLastHeight = nCurrentHeight;
+		mbFullToggle = false;
+		mnVisitCount = mnContinuousCount + nMoving + (nLast - nFirst);
+	}
+
+	/**
+	 * @return The number of children to move after the last offset
+	 */
+	public int getOffsetChildCount() {
+		return mnOffsetChildCount;
+	}
+
+	/**
+	 * @return The index of the nth child to move
+	 */
+	public int getOffsetChild(int n) {
+		return mnOffsetChildren[n];
+	}
+
+	/**
+	 * @return The top and bottom offset of a child, valid if it is in the list of children to move
+	 */
+	public int getOffset(int nIndex) {
+		return mnOffsets[nIndex];
+	}
+
+	/**
+	 * @return The number of children whose alpha was looked at for the last offset
+	 */
+	public int getAlphaChildCount() {
+		return mnAlphaChildCount;
+	}
+
+	/**
+	 * @return The index of the nth child whose alpha was looked at
+	 */
+	public int getAlphaChild(int n) {
+		return mnAlphaChildren[n];
+	}
+
+	/**
+	 * @return What has to be done with the alpha of a child, one of the ALPHA_ACTION_ constants
+	 */
+	public int getAlphaAction(int nIndex) {
+		return mnAlphaActions[nIndex];
+	}
+
+	/**
+	 * @return The alpha (or the target of the animation) of a child
+	 */
+	public float getAlpha(int nIndex) {
+		return mfAlphas[nIndex];
+	}
+
+	/**
+	 * @return The number of collapsing text children
+	 */
+	public int getTextChildCount() {
+		return mnTextCount;
+	}
+
+	/**
+	 * @return The index of the nth collapsing text child
+	 */
+	public int getTextChild(int n) {
+		return mnTextOrder[n];
+	}
+
+	/**
+	 * @return The fraction of the collapsing text for the last offset, 0 expanded and 1 collapsed
+	 */
+	public float getTextFraction() {
+		return mfTextFraction;
+	}
+
+	/**
+	 * @return The number of rows of the table the last offset looked at: the continuous children, the
+	 * move children that have started moving and the toggle children within their band. A row is
+	 * counted once per list it is visited in
+	 */
+	public int getVisitCount() {
+		return mnVisitCount;
+	}
+
+	/**
+	 * @return The collapse mode of a child in the table
+	 */
+	public int getMode(int nIndex) {
+		return mnModes[nIndex];
+	}
+
+	/**
+	 * @return The alpha mode of a child in the table
+	 */
+	public int getAlphaMode(int nIndex) {
+		return mnAlphaModes[nIndex];
+	}
+
+	/**
+	 * @return The number of children in the table
+	 */
+	public int getChildCount() {
+		return mnCount;
+	}
+
+	private void addOffset(int nIndex, int nOffset) {
+		mnOffsets[nIndex] = nOffset;
+		mnOffsetChildren[mnOffsetChildCount++] = nIndex;
+	}
+
+	private void addAlpha(int nIndex, int nAction, float fAlpha) {
+		mnAlphaActions[nIndex] = nAction;
+		mfAlphas[nIndex] = fAlpha;
+		mnAlphaChildren[mnAlphaChildCount++] = nIndex;
+	}
+
+	/**
+	 * Work out the alpha of a child as a pure function of the current height. The child fades over
+	 * its fade range, centered on the trigger height
+	 *
+	 * @author Melvin Lobo
+	 */
+	private void scrubAlpha(int nIndex, int nCurrentHeight) {
+		final int nFadeRange = mnFadeRanges[nIndex];
+		final int nFadeStart = mnTriggerHeights[nIndex] - (nFadeRange / 2);
+
+		// The fraction of the fade range that is still expanded. 1 above the range, 0 below it
+		float fExpandedFraction;
+		if (nFadeRange <= 0) {
+			fExpandedFraction = (nCurrentHeight < nFadeStart) ? 0.0f : 1.0f;
+		}
+		else {
+			fExpandedFraction = (nCurrentHeight - nFadeStart) / (float) nFadeRange;
+			fExpandedFraction = (fExpandedFraction < 0.0f) ? 0.0f : ((fExpandedFraction > 1.0f) ? 1.0f : fExpandedFraction);
+		}
+
+		// SHOW_ON_COLLAPSE children are visible when collapsed, the others when expanded
+		addAlpha(nIndex, ALPHA_ACTION_SET,
+				(mnModes[nIndex] == MODE_SHOW_ON_COLLAPSE) ? (1.0f - fExpandedFraction) : fExpandedFraction);
+	}
+
+	/**
+	 * Move a child to its new collapse state and ask for an alpha animation only if the state actually
+	 * changed. Within the hysteresis band around the trigger height, the child keeps whatever state it
+	 * had, so sitting near the trigger does not restart the animations.
+	 *
+	 * @author Melvin Lobo
+	 */
+	private void updateCollapseState(int nIndex, int nCurrentHeight) {
+		final int nTriggerHeight = mnTriggerHeights[nIndex];
+		final int nState = mnCollapseStates[nIndex];
+		final int nNewState;
+
+		if (nState == COLLAPSE_STATE_UNKNOWN) {
+			// No state yet, so there is nothing to hold on to. Use the trigger as is
+			nNewState = (nCurrentHeight < nTriggerHeight) ? COLLAPSE_STATE_COLLAPSED : COLLAPSE_STATE_EXPANDED;
+		}
+		else if (nCurrentHeight < (nTriggerHeight - mnHysteresis)) {
+			nNewState = COLLAPSE_STATE_COLLAPSED;
+		}
+		else if (nCurrentHeight >= (nTriggerHeight + mnHysteresis)) {
+			nNewState = COLLAPSE_STATE_EXPANDED;
+		}
+		else {
+			return;         // Inside the band. Keep the current state
+		}
+
+		if (nNewState == nState) {
+			return;
+		}
+		mnCollapseStates[nIndex] = nNewState;
+
+		// SHOW_ON_COLLAPSE children are visible when collapsed, the others when expanded
+		final boolean bShowWhenCollapsed = (mnModes[nIndex] == MODE_SHOW_ON_COLLAPSE);
+		final boolean bVisible = (nNewState == COLLAPSE_STATE_COLLAPSED) == bShowWhenCollapsed;
+		addAlpha(nIndex, ALPHA_ACTION_ANIMATE, bVisible ? 1.0f : 0.0f);
+	}
+
+	/**
+	 * Insert an index into a list kept sorted by its key (insertion sort, no allocation)
+	 *
+	 * @author Melvin Lobo
+	 */
+	private static void insertSorted(int[] order, int[] keys, int nCount, int nIndex, int nKey) {
+		int nPos = nCount;
+		while ((nPos > 0) && (keys[nPos - 1] > nKey)) {
+			order[nPos] = order[nPos - 1];
+			keys[nPos] = keys[nPos - 1];
+			nPos--;
+		}
+		order[nPos] = nIndex;
+		keys[nPos] = nKey;
+	}
+
+	/**
+	 * Find the number of keys of a sorted list that are less than or equal to a value
+	 *
+	 * @author Melvin Lobo
+	 */
+	private static int upperBound(int[] keys, int nCount, int nValue) {
+		int nLow = 0;
+		int nHigh = nCount;
+		while (nLow < nHigh) {
+			final int nMid = (nLow + nHigh) >>> 1;
+			if (keys[nMid] <= nValue) {
+				nLow = nMid + 1;
+			}
+			else {
+				nHigh = nMid;
+			}
+		}
+		return nLow;
+	}
+
+	/**
+	 * Grow the arrays if the child count has outgrown them, keeping the collapse states. The arrays
+	 * are never shrunk, so a new table with the same children does not allocate
+	 *
+	 * @author Melvin Lobo
+	 */
+	private void ensureCapacity(int nCapacity) {
+		if (mnModes.length >= nCapacity) {
+			return;
+		}
+
+		final int[] nStates = new int[nCapacity];
+		System.arraycopy(mnCollapseStates, 0, nStates, 0, mnCount);
+		mnCollapseStates = nStates;
+
+		mnModes = new int[nCapacity];
+		mfMultipliers = new float[nCapacity];
+		mnTriggerHeights = new int[nCapacity];
+		mnChildHeights = new int[nCapacity];
+		mnAlphaModes = new int[nCapacity];
+		mnFadeRanges = new int[nCapacity];
+		mbTexts = new boolean[nCapacity];
+		mnContinuous = new int[nCapacity];
+		mnMoveOrder = new int[nCapacity];
+		mnMoveThresholds = new int[nCapacity];
+		mnToggleOrder = new int[nCapacity];
+		mnToggleTriggers = new int[nCapacity];
+		mnTextOrder = new int[nCapacity];
+		mnOffsetChildren = new int[nCapacity];
+		mnOffsets = new int[nCapacity];
+		mnAlphaChildren = new int[nCapacity];
+		mnAlphaActions = new int[nCapacity];
+		mfAlphas = new float[nCapacity];
+	}
+}
@@ -0,0 +1,331 @@
+package abysmel.com.collapsibletoolbarhelper.helpers;
+
+import android.animation.ObjectAnimator;
+import android.graphics.drawable.Drawable;
+import android.graphics.drawable.LayerDrawable;
+import android.os.Build;
+import android.support.v4.view.ViewCompat;
+import android.support.v4.view.animation.FastOutSlowInInterpolator;
+import android.util.TypedValue;
+import android.view.View;
+
+/**
+ * Created by Melvin Lobo on 12/02/2015.
+ *
+ * Controls the "pinned" elevation of a View (usually the AppBarLayout). On Lollipop and above, the
+ * elevation is set on the view. On older devices, the background is swapped for a layered shadow
+ * drawable. The view is only touched when the pinned state actually flips, and the shadow drawable
+ * is only built again if the display density changes, so staying pinned while the content scrolls
+ * costs nothing.
+ */
+public class ElevationController {
+	//////////////////////////////////// CLASS MEMBERS /////////////////////////////////////////////
+	/**
+	 * Static Definitions
+	 */
+	private static final int    SHAPE_1_COLOR                = 0x10000000;
+	private static final int    SHAPE_2_COLOR                = 0x13000000;
+	private static final int    SHAPE_3_COLOR                = 0x20000000;
+	private static final int    ELEVATION_ANIMATION_DURATION = 150;
+
+	private static final int    STATE_UNKNOWN  = 0;
+	private static final int    STATE_PINNED   = 1;
+	private static final int    STATE_UNPINNED = 2;
+
+	/**
+	 * The view whose elevation is controlled
+	 */
+	private final View mView;
+
+	/**
+	 * The original background of the view. This is put back when the view is not pinned
+	 */
+	private final Drawable mOriginalBackground;
+
+	/**
+	 * The original elevation of the view, on Lollipop and above. This is put back on release
+	 */
+	private final float mfOriginalElevation;
+
+	/**
+	 * The cached elevated background for pre lollipop devices, and the density it was built for
+	 */
+	private Drawable mElevatedBackground = null;
+	private float    mfElevatedBackgroundDensity = 0.0f;
+
+	/**
+	 * The current pinned state
+	 */
+	private int mnState = STATE_UNKNOWN;
+
+	/**
+	 * The elevation to use when pinned, on Lollipop and above
+	 */
+	private float mfPinnedElevation = 0.0f;
+
+	/**
+	 * Animate the elevation change on Lollipop and above
+	 */
+	private boolean mbAnimate = false;
+
+	/**
+	 * The elevation animator. Created once and re-used for every flip
+	 */
+	private ObjectAnimator mElevationAnimator = null;
+
+	/**
+	 * Number of times the view has actually been changed. Useful to check that scrolling in a stable
+	 * state does not touch the view
+	 */
+	private int mnSwapCount = 0;
+
+	//////////////////////////////////// CLASS METHODS /////////////////////////////////////////////
+
+	/**
+	 * Constructor
+	 *
+	 * @param view
+	 *      The view whose elevation is to be controlled. Its current background is treated as the
+	 *      un-elevated background, and its current elevation is put back on release
+	 *
+	 * @author Melvin Lobo
+	 */
+	public ElevationController(View view) {
+		mView = view;
+		mOriginalBackground = view.getBackground();
+		mfOriginalElevation = ViewCompat.getElevation(view);
+	}
+
+	/**
+	 * Set the elevation used when pinned on Lollipop and above. If the view is currently pinned, the
+	 * new elevation is applied right away
+	 *
+	 * @param fElevation
+	 *      The elevation in pixels
+	 *
+	 * @author Melvin Lobo
+	 */
+	public void setPinnedElevation(float fElevation) {
+		if (mfPinnedElevation != fElevation) {
+			mfPinnedElevation = fElevation;
+			if (mnState == STATE_PINNED) {
+				mnState = STATE_UNKNOWN;
+				setPinned(true);
+			}
+		}
+	}
+
+	/**
+	 * Animate the elevation change on Lollipop and above. Pre lollipop, the background is swapped
+	 * without animation
+	 *
+	 * @param bAnimate
+	 *      True to animate, false otherwise
+	 *
+	 * @author Melvin Lobo
+	 */
+	public void setAnimate(boolean bAnimate) {
+		mbAnimate = bAnimate;
+	}
+
+	/**
+	 * Set the pinned state. Nothing happens if the state has not changed
+	 *
+	 * @param bPinned
+	 *      True if the view is pinned (fully collapsed) and should show an elevation
+	 * @return
+	 *      True if the view was changed, false if it already was in that state
+	 *
+	 * @author Melvin Lobo
+	 */
+	public boolean setPinned(boolean bPinned) {
+		final int nState = bPinned ? STATE_PINNED : STATE_UNPINNED;
+		if (mnState == nState) {
+			return false;
+		}
+		mnState = nState;
+		mnSwapCount++;
+
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+			applyElevation(bPinned ? mfPinnedElevation : 0.0f);
+		}
+		else {
+			setBackground(bPinned ? getElevatedBackground() : mOriginalBackground);
+		}
+		return true;
+	}
+
+	/**
+	 * Check if the view is currently pinned
+	 *
+	 * @return
+	 *      True if pinned, false otherwise
+	 *
+	 * @author Melvin Lobo
+	 */
+	public boolean isPinned() {
+		return mnState == STATE_PINNED;
+	}
+
+	/**
+	 * Get the number of times the view has actually been changed
+	 *
+	 * @return
+	 *      The number of elevation / background swaps
+	 *
+	 * @author Melvin Lobo
+	 */
+	public int getSwapCount() {
+		return mnSwapCount;
+	}
+
+	/**
+	 * Put the view back the way it was found (its original background, or its original elevation on
+	 * Lollipop and above) and let go of the cached drawable. Call this when the controller is no longer
+	 * used, so that the view does not keep the elevated background around
+	 *
+	 * @author Melvin Lobo
+	 */
+	public void release() {
+		if (mElevationAnimator != null) {
+			mElevationAnimator.cancel();
+		}
+
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+			// Unpinned is flat as well, so the elevation has to be put back whatever the state
+			if (mnState != STATE_UNKNOWN) {
+				ViewCompat.setElevation(mView, mfOriginalElevation);
+			}
+		}
+		else if (mnState == STATE_PINNED) {
+			setBackground(mOriginalBackground);
+		}
+
+		mnState = STATE_UNKNOWN;
+		mElevatedBackground = null;
+	}
+
+	/**
+	 * Apply the elevation on Lollipop and above, animating if required
+	 *
+	 * @param fElevation
+	 *      The target elevation
+	 *
+	 * @author Melvin Lobo
+	 */
+	private void applyElevation(float fElevation) {
+		if (!mbAnimate) {
+			if (mElevationAnimator != null) {
+				mElevationAnimator.cancel();
+			}
+			ViewCompat.setElevation(mView, fElevation);
+			return;
+		}
+
+		if (mElevationAnimator == null) {
+			mElevationAnimator = ObjectAnimator.ofFloat(mView, "elevation", ViewCompat.getElevation(mView), fElevation);
+			mElevationAnimator.setDuration(ELEVATION_ANIMATION_DURATION);
+			mElevationAnimator.setInterpolator(new FastOutSlowInInterpolator());
+		}
+		else {
+			mElevationAnimator.cancel();
+			mElevationAnimator.setFloatValues(ViewCompat.getElevation(mView), fElevation);
+		}
+		mElevationAnimator.start();
+	}
+
+	/**
+	 * Get the elevated background, building it only if we do not have one for the current density
+	 *
+	 * @return
+	 *      The elevated background
+	 *
+	 * @author Melvin Lobo
+	 */
+	private Drawable getElevatedBackground() {
+		final float fDensity = mView.getResources().getDisplayMetrics().density;
+		if ((mElevatedBackground == null) || (mfElevatedBackgroundDensity != fDensity)) {
+			Tracing.beginSection(Tracing.SECTION_BACKGROUND_REBUILD);
+			mElevatedBackground = createElevatedBackgroundShape(mOriginalBackground);
+			mfElevatedBackgroundDensity = fDensity;
+			Tracing.endSection(Tracing.SECTION_BACKGROUND_REBUILD);
+		}
+		return mElevatedBackground;
+	}
+
+	/**
+	 * Set the background drawable
+	 *
+	 * @param backgroundDrawable
+	 *      The background drawable
+	 *
+	 * @author Melvin Lobo
+	 */
+	private void setBackground(Drawable backgroundDrawable) {
+
+        /*
+         * A very nasty bug that exists pre-kitkat which I spent hours figuring out. If we assign a
+         * Layerdrawable or a 9-patch, the view loses its padding (weird!). It works for a png or a shape
+         * as expected. So, we need to get the padding, set the background resource and re-set the padding
+         * back to the original values we retrieved. This should give the background shapre to pre-lollipop devices
+         */
+		int pL = mView.getPaddingLeft();
+		int pR = mView.getPaddingRight();
+		int pT = mView.getPaddingTop();
+		int pB = mView.getPaddingBottom();
+
+		mView.setBackground(backgroundDrawable);
+
+		//Re-set the padding back again
+		mView.setPadding(pL, pT, pR, pB);
+	}
+
+    /**
+     * Create the background shape / Layer -List programmatically. TO have the shadow effect, we need
+     * shapes placed on top of the other with varying Alphas and with an inset, to give an illusion of elevation
+     * The shadow stack (starting from bottom) is: Shape1, Shape2, Shape3, Shape4 and is pre-rendered into a
+     * single stretchable bitmap by the {@link ShadowCache}. Only the foreground is layered on top of it.
+     * The layers stretch with the bounds, so the same drawable works for any size of the view.
+     *
+     * @author Melvin Lobo
+     */
+    private Drawable createElevatedBackgroundShape(Drawable foreground) {
+        final int[] colors = {SHAPE_1_COLOR, SHAPE_2_COLOR, SHAPE_3_COLOR, SHAPE_2_COLOR};
+        final int[] insets = {
+                0, 0, 0, 0,
+                0, 0, 0, (int) d2x(1),
+                0, 0, 0, (int) d2x(2),
+                0, 0, 0, (int) d2x(3)
+        };
+        final Drawable shadow = ShadowCache.getDrawable(
+                new ShadowCache.Key(0.0f, mView.getResources().getDisplayMetrics().density, colors, insets));
+
+	    //No foreground, so the shadow is all there is
+	    if(foreground == null) {
+		    return shadow;
+	    }
+
+        //Create an array of shapes for the layer list
+        Drawable[] layerArray = {shadow, foreground};
+
+        LayerDrawable drawable = new LayerDrawable(layerArray);
+
+        //Set the insets to get the elevated shadow effect
+        drawable.setLayerInset(0, 0, 0, 0, 0);
+        drawable.setLayerInset(1, 0, 0, 0, (int) d2x(4));
+
+        return drawable;
+    }
+
+    /**
+     * Convert dip to pixels
+     *
+     * param size
+     *            The size to be converted
+     *
+     * @author Melvin Lobo
+     */
+    private float d2x(int size) {
+        return TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, size, mView.getResources().getDisplayMetrics());
+    }
+}
@@ -0,0 +1,160 @@
+package abysmel.com.collapsibletoolbarhelper.helpers;
+
+import android.os.SystemClock;
+import android.view.View;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Created by Melvin Lobo on 12/02/2015.
+ *
+ * Debug helper which records the layout requests that reach a view while it is armed, along with the
+ * stack trace of the caller. A child asking for a layout propagates the request up to its parent, so
+ * arming the auditor on a parent covers its whole subtree. Arm it around a scroll to verify that
+ * collapsing and expanding never asks for a layout pass.
+ *
+ * Only the first request of the subtree per layout pass is seen. A view passes a request on to its
+ * parent only while the parent has no layout pending, so once one request has reached the audited view,
+ * further requests from its children stop below it until the next layout. A request from the audited
+ * view itself is always seen. To catch every request, lay the view out between the steps audited, as a
+ * frame would. A single recorded request is enough to fail {@link #assertNoRequests()}, so the check
+ * of a scroll does not miss anything either way.
+ */
+public class LayoutRequestAuditor {
+	//////////////////////////////////// CLASS MEMBERS /////////////////////////////////////////////
+	/**
+	 * True if the layout requests are being recorded
+	 */
+	private boolean mbArmed = false;
+
+	/**
+	 * The layout requests recorded while armed
+	 */
+	private final ArrayList<Request> mRequests = new ArrayList<>();
+
+	//////////////////////////////////// CLASS METHODS /////////////////////////////////////////////
+
+	/**
+	 * Start recording the layout requests. The previous records are dropped
+	 *
+	 * @author Melvin Lobo
+	 */
+	public void arm() {
+		mRequests.clear();
+		mbArmed = true;
+	}
+
+	/**
+	 * Stop recording the layout requests. The records are kept until the next {@link #arm()}
+	 *
+	 * @author Melvin Lobo
+	 */
+	public void disarm() {
+		mbArmed = false;
+	}
+
+	/**
+	 * Check if the auditor is recording
+	 *
+	 * @return
+	 *      True if armed, false otherwise
+	 *
+	 * @author Melvin Lobo
+	 */
+	public boolean isArmed() {
+		return mbArmed;
+	}
+
+	/**
+	 * Called by the audited view whenever a layout is requested on it. Records the request along with
+	 * the current stack trace if armed, and does nothing otherwise
+	 *
+	 * @param view
+	 *      The view on which the layout was requested
+	 *
+	 * @author Melvin Lobo
+	 */
+	public void onLayoutRequested(View view) {
+		if (mbArmed) {
+			mRequests.add(new Request(view, SystemClock.uptimeMillis(), new Throwable("requestLayout")));
+		}
+	}
+
+	/**
+	 * Get the layout requests recorded so far
+	 *
+	 * @return
+	 *      The recorded requests, oldest first
+	 *
+	 * @author Melvin Lobo
+	 */
+	public List<Request> getRequests() {
+		return Collections.unmodifiableList(mRequests);
+	}
+
+	/**
+	 * Get the number of layout requests recorded so far
+	 *
+	 * @return
+	 *      The number of requests
+	 *
+	 * @author Melvin Lobo
+	 */
+	public int getRequestCount() {
+		return mRequests.size();
+	}
+
+	/**
+	 * Throw if any layout request has been recorded. The first request is reported as the cause, so
+	 * the failure points straight at the code that asked for the layout
+	 *
+	 * @author Melvin Lobo
+	 */
+	public void assertNoRequests() {
+		if (!mRequests.isEmpty()) {
+			final Request request = mRequests.get(0);
+			throw new IllegalStateException(mRequests.size() + " layout request(s) recorded, first on " +
+					request.getViewName(), request.getTrace());
+		}
+	}
+
+	/**
+	 * A recorded layout request
+	 *
+	 * @author Melvin Lobo
+	 */
+	public static class Request {
+		private final String    mViewName;
+		private final long      mlUptimeMillis;
+		private final Throwable mTrace;
+
+		Request(View view, long lUptimeMillis, Throwable trace) {
+			mViewName = view.getClass().getName();
+			mlUptimeMillis = lUptimeMillis;
+			mTrace = trace;
+		}
+
+		/**
+		 * @return The class name of the view on which the layout was requested
+		 */
+		public String getViewName() {
+			return mViewName;
+		}
+
+		/**
+		 * @return The uptime at which the layout was requested
+		 */
+		public long getUptimeMillis() {
+			return mlUptimeMillis;
+		}
+
+		/**
+		 * @return The stack trace of the caller which requested the layout
+		 */
+		public Throwable getTrace() {
+			return mTrace;
+		}
+	}
+}
@@ -0,0 +1,161 @@
+package abysmel.com.collapsibletoolbarhelper.helpers;
+
+import android.view.View;
+import android.view.ViewGroup;
+
+import java.util.Arrays;
+
+/**
+ * Created by Melvin Lobo on 12/02/2015.
+ *
+ * Counts the measure cache hits and misses of the children of a RelativeLayout (or
+ * PercentRelativeLayout), the counterpart of the counts of the {@link SinglePassLayoutEngine}.
+ *
+ * RelativeLayout hands its children their specs itself, so the specs are not seen here. They are worked
+ * out from the specs of the parent, the layout params of the child and the sizes of the siblings it
+ * depends on. So a child gets the same specs as in the last pass if the parent got the same specs, its
+ * layout params have not changed (setting them asks for a layout) and no sibling which asked for a
+ * layout changed size. View#measure skips such a child if it has not asked for a layout itself, which
+ * counts as a hit. Anything else counts as a miss. Each child counts once per pass, although
+ * RelativeLayout measures it twice.
+ *
+ * Call {@link #onMeasureStart(ViewGroup, int, int)} before the RelativeLayout measures its children,
+ * and {@link #onMeasureEnd(ViewGroup)} after. Call {@link #forgetLastPass()} when the children are
+ * measured some other way.
+ */
+public class MeasureCacheTracker {
+	//////////////////////////////////// CLASS MEMBERS /////////////////////////////////////////////
+	/**
+	 * The specs of the parent in the last pass, and the child at each index then (null if gone)
+	 */
+	private int    mnLastWidthSpec  = 0;
+	private int    mnLastHeightSpec = 0;
+	private View[] mLastChildren    = new View[0];
+
+	/**
+	 * True if the parent got the same specs in this pass as in the last one
+	 */
+	private boolean mbSameSpecs = false;
+
+	/**
+	 * Whether each child had asked for a layout before this pass, and its size then
+	 */
+	private boolean[] mbLayoutRequested = new boolean[0];
+	private int[]     mnWidthBefore     = new int[0];
+	private int[]     mnHeightBefore    = new int[0];
+
+	/**
+	 * Number of children the RelativeLayout measured with the same specs as in the last pass, which had
+	 * not asked for a layout, and the number of the others
+	 */
+	private int mnMeasureCacheHits   = 0;
+	private int mnMeasureCacheMisses = 0;
+
+	//////////////////////////////////// CLASS METHODS /////////////////////////////////////////////
+
+	/**
+	 * Note the state of the children before the parent measures them
+	 *
+	 * @param parent
+	 *      The layout about to measure its children
+	 * @param widthMeasureSpec
+	 *      The width measure spec of the parent
+	 * @param heightMeasureSpec
+	 *      The height measure spec of the parent
+	 *
+	 * @author Melvin Lobo
+	 */
+	public void onMeasureStart(ViewGroup parent, int widthMeasureSpec, int heightMeasureSpec) {
+		final int count = parent.getChildCount();
+		if (mLastChildren.length < count) {
+			final View[] lastChildren = new View[count];
+			System.arraycopy(mLastChildren, 0, lastChildren, 0, mLastChildren.length);
+			mLastChildren = lastChildren;
+			mbLayoutRequested = new boolean[count];
+			mnWidthBefore = new int[count];
+			mnHeightBefore = new int[count];
+		}
+
+		mbSameSpecs = (mnLastWidthSpec == widthMeasureSpec) && (mnLastHeightSpec == heightMeasureSpec);
+		mnLastWidthSpec = widthMeasureSpec;
+		mnLastHeightSpec = heightMeasureSpec;
+
+		for (int nCtr = 0; nCtr < count; nCtr++) {
+			final View child = parent.getChildAt(nCtr);
+			mbLayoutRequested[nCtr] = child.isLayoutRequested();
+			mnWidthBefore[nCtr] = child.getMeasuredWidth();
+			mnHeightBefore[nCtr] = child.getMeasuredHeight();
+		}
+	}
+
+	/**
+	 * Count the hits and misses of the children the parent has just measured
+	 *
+	 * @param parent
+	 *      The layout which has measured its children
+	 *
+	 * @author Melvin Lobo
+	 */
+	public void onMeasureEnd(ViewGroup parent) {
+		final int count = parent.getChildCount();
+
+		// A sibling that asked for a layout and changed size moves the space the others get
+		boolean bSiblingResized = false;
+		for (int nCtr = 0; (nCtr < count) && !bSiblingResized; nCtr++) {
+			final View child = parent.getChildAt(nCtr);
+			bSiblingResized = mbLayoutRequested[nCtr] && ((child.getMeasuredWidth() != mnWidthBefore[nCtr]) ||
+					(child.getMeasuredHeight() != mnHeightBefore[nCtr]));
+		}
+
+		for (int nCtr = 0; nCtr < count; nCtr++) {
+			final View child = parent.getChildAt(nCtr);
+			if (child.getVisibility() == View.GONE) {
+				mLastChildren[nCtr] = null;
+				continue;
+			}
+
+			if (mbSameSpecs && !bSiblingResized && (mLastChildren[nCtr] == child) && !mbLayoutRequested[nCtr]) {
+				mnMeasureCacheHits++;
+			}
+			else {
+				mnMeasureCacheMisses++;
+			}
+			mLastChildren[nCtr] = child;
+		}
+	}
+
+	/**
+	 * Forget the last pass, when the children have been measured by something else since
+	 *
+	 * @author Melvin Lobo
+	 */
+	public void forgetLastPass() {
+		Arrays.fill(mLastChildren, null);
+	}
+
+	/**
+	 * @return The number of children measured so far with the same specs as in the last pass, which had
+	 * not asked for a layout. View#measure returns right away from these
+	 */
+	public int getMeasureCacheHitCount() {
+		return mnMeasureCacheHits;
+	}
+
+	/**
+	 * @return The number of children measured so far with new specs, or which had asked for a layout.
+	 * The child runs its onMeasure for these
+	 */
+	public int getMeasureCacheMissCount() {
+		return mnMeasureCacheMisses;
+	}
+
+	/**
+	 * Reset the measure cache counts
+	 *
+	 * @author Melvin Lobo
+	 */
+	public void resetMeasureCounts() {
+		mnMeasureCacheHits = 0;
+		mnMeasureCacheMisses = 0;
+	}
+}
@@ -0,0 +1,136 @@
+package abysmel.com.collapsibletoolbarhelper.helpers;
+
+/**
+ * Created by Melvin Lobo on 12/02/2015.
+ *
+ * The contour math of the metaball transition of the {@code MetaballMenu}, on plain floats. It works
+ * out the two bezier curves that join the transitional circle to the destination circle, so that the
+ * menu only has to trace them on a path. The result is written into a float array, nothing is
+ * allocated.
+ *
+ * The math is based on the references mentioned in the MetaballMenu.
+ */
+public class MetaballGeometry {
+	//////////////////////////////////// CLASS MEMBERS /////////////////////////////////////////////
+	/**
+	 * Static Definitions
+	 */
+	private static final float  SPREAD           = 0.5f;
+	private static final float  HANDLE_LEN_RATE  = 2.4f;
+	private static final float  HALF_PI          = (float) (Math.PI / 2);
+
+	/**
+	 * The number of floats in a contour. The contour holds 8 points (x, y):
+	 * <pre>
+	 *   0  start of curve 1, on the origin circle (p1a)
+	 *   1  first control point of curve 1
+	 *   2  second control point of curve 1
+	 *   3  end of curve 1, on the destination circle (p2a)
+	 *   4  start of curve 2, on the destination circle (p2b)
+	 *   5  first control point of curve 2
+	 *   6  second control point of curve 2
+	 *   7  end of curve 2, on the origin circle (p1b)
+	 * </pre>
+	 * The path is curve 1, a line to the start of curve 2, curve 2 and a line back to the start
+	 */
+	public static final int     CONTOUR_SIZE     = 16;
+
+	//////////////////////////////////// CLASS METHODS /////////////////////////////////////////////
+
+	/**
+	 * Work out the contour joining the two circles
+	 *
+	 * @param fOriginX
+	 *      The x co-ordinate of the center of the origin (transitional) circle
+	 * @param fOriginY
+	 *      The y co-ordinate of the center of the origin circle
+	 * @param fOriginRadius
+	 *      The radius of the origin circle
+	 * @param fDestinationX
+	 *      The x co-ordinate of the center of the destination circle
+	 * @param fDestinationY
+	 *      The y co-ordinate of the center of the destination circle
+	 * @param fDestinationRadius
+	 *      The radius of the destination circle
+	 * @param fDistance
+	 *      The distance between the two centers, as the menu measures it
+	 * @param contour
+	 *      The array to write the contour into, at least {@link #CONTOUR_SIZE} long
+	 * @return
+	 *      False if one of the circles has no radius, in which case there is nothing to draw
+	 *
+	 * @author Melvin Lobo
+	 */
+	public static boolean computeContour(float fOriginX, float fOriginY, float fOriginRadius, float fDestinationX,
+			float fDestinationY, float fDestinationRadius, float fDistance, float[] contour) {
+		if ((fOriginRadius == 0) || (fDestinationRadius == 0)) {
+			return false;
+		}
+
+		final float fRadiusSum = fOriginRadius + fDestinationRadius;
+
+		// The arcs of the circles that overlap, if they do
+		float fArc1 = 0.0f;
+		float fArc2 = 0.0f;
+		if (fDistance < fRadiusSum) {
+			fArc1 = (float) Math.acos(((fOriginRadius * fOriginRadius) + (fDistance * fDistance) - (fDestinationRadius * fDestinationRadius)) /
+					(2 * fOriginRadius * fDistance));
+
+			fArc2 = (float) Math.acos(((fDestinationRadius * fDestinationRadius) + (fDistance * fDistance) - (fOriginRadius * fOriginRadius)) /
+					(2 * fDestinationRadius * fDistance));
+		}
+
+		// The angle of the line between the centres, in radians
+		final float fAngle1 = (float) Math.atan2(fDestinationY - fOriginY, fDestinationX - fOriginX);
+		final float fAngle2 = (float) Math.acos((fOriginRadius - fDestinationRadius) / fDistance);
+
+		final float fAngle1a = fAngle1 + fArc1 + (fAngle2 - fArc1) * SPREAD;
+		final float fAngle1b = fAngle1 - fArc1 - (fAngle2 - fArc1) * SPREAD;
+		final float fAngle2a = (float) (fAngle1 + Math.PI - fArc2 - (Math.PI - fArc2 - fAngle2) * SPREAD);
+		final float fAngle2b = (float) (fAngle1 - Math.PI + fArc2 + (Math.PI - fArc2 - fAngle2) * SPREAD);
+
+		// The points where the curves meet the circles
+		final float fP1aX = vectorX(fAngle1a, fOriginRadius) + fOriginX;
+		final float fP1aY = vectorY(fAngle1a, fOriginRadius) + fOriginY;
+		final float fP1bX = vectorX(fAngle1b, fOriginRadius) + fOriginX;
+		final float fP1bY = vectorY(fAngle1b, fOriginRadius) + fOriginY;
+		final float fP2aX = vectorX(fAngle2a, fDestinationRadius) + fDestinationX;
+		final float fP2aY = vectorY(fAngle2a, fDestinationRadius) + fDestinationY;
+		final float fP2bX = vectorX(fAngle2b, fDestinationRadius) + fDestinationX;
+		final float fP2bY = vectorY(fAngle2b, fDestinationRadius) + fDestinationY;
+
+		// Define the handle length by the distance between both ends of the curve
+		final float fDiffX = fP1aX - fP2aX;
+		final float fDiffY = fP1aY - fP2aY;
+		float fMinDist = Math.min(SPREAD * HANDLE_LEN_RATE, ((float) Math.sqrt((fDiffX * fDiffX) + (fDiffY * fDiffY))) / fRadiusSum);
+
+		// In case circles are overlapping
+		fMinDist *= Math.min(1, (fDistance * 2) / fRadiusSum);
+
+		final float fHandle1 = fOriginRadius * fMinDist;
+		final float fHandle2 = fDestinationRadius * fMinDist;
+
+		setPoint(contour, 0, fP1aX, fP1aY);
+		setPoint(contour, 1, fP1aX + vectorX(fAngle1a - HALF_PI, fHandle1), fP1aY + vectorY(fAngle1a - HALF_PI, fHandle1));
+		setPoint(contour, 2, fP2aX + vectorX(fAngle2a + HALF_PI, fHandle2), fP2aY + vectorY(fAngle2a + HALF_PI, fHandle2));
+		setPoint(contour, 3, fP2aX, fP2aY);
+		setPoint(contour, 4, fP2bX, fP2bY);
+		setPoint(contour, 5, fP2bX + vectorX(fAngle2b - HALF_PI, fHandle2), fP2bY + vectorY(fAngle2b - HALF_PI, fHandle2));
+		setPoint(contour, 6, fP1bX + vectorX(fAngle1b + HALF_PI, fHandle1), fP1bY + vectorY(fAngle1b + HALF_PI, fHandle1));
+		setPoint(contour, 7, fP1bX, fP1bY);
+		return true;
+	}
+
+	private static float vectorX(float fRadianAngle, float fLength) {
+		return (float) (Math.cos(fRadianAngle) * fLength);
+	}
+
+	private static float vectorY(float fRadianAngle, float fLength) {
+		return (float) (Math.sin(fRadianAngle) * fLength);
+	}
+
+	private static void setPoint(float[] contour, int nPoint, float fX, float fY) {
+		contour[nPoint * 2] = fX;
+		contour[(nPoint * 2) + 1] = fY;
+	}
+}
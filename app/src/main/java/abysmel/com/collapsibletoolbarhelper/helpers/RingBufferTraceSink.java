@@ -0,0 +1,206 @@
+package abysmel.com.collapsibletoolbarhelper.helpers;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Created by Melvin Lobo on 12/02/2015.
+ *
+ * A trace sink which records the sections into a preallocated ring buffer of primitives, for devices
+ * where systrace is not available. Recording claims a slot with a single atomic increment and writes
+ * three primitives, so there is no lock and no allocation. Once the buffer is full, the oldest events
+ * are overwritten.
+ *
+ * The buffer can be dumped to a compact binary file for offline analysis. The format (big endian) is:
+ * <pre>
+ *   int     magic 0x43544852 ("CTHR")
+ *   byte    version (1)
+ *   byte    number of sections, followed by the name of each section (modified UTF-8, as writeUTF)
+ *   int     number of events
+ *   long    timestamp of the first event, in nanoseconds (System.nanoTime)
+ *   events, oldest first:
+ *     byte    section id, with the high bit set for the end of a section
+ *     varint  thread id
+ *     varint  zigzag encoded nanoseconds since the previous event
+ * </pre>
+ * Dumping while sections are being recorded may pick up a partly written event at the head of the
+ * buffer. Dump when the UI is idle to avoid it.
+ */
+public class RingBufferTraceSink implements TraceSink {
+	//////////////////////////////////// CLASS MEMBERS /////////////////////////////////////////////
+	/**
+	 * Static Definitions
+	 */
+	public static final int     MAGIC          = 0x43544852;
+	public static final int     VERSION        = 1;
+	public static final int     FLAG_END       = 0x80;
+
+	/**
+	 * The events. One slot per event, in the three arrays
+	 */
+	private final long[]        mlTimestamps;
+	private final int[]         mnEvents;
+	private final int[]         mnThreads;
+	private final int           mnMask;
+
+	/**
+	 * The sequence number of the next event. The slot is the sequence number masked to the capacity
+	 */
+	private final AtomicLong    mSequence = new AtomicLong();
+
+	//////////////////////////////////// CLASS METHODS /////////////////////////////////////////////
+
+	/**
+	 * Constructor
+	 *
+	 * @param nCapacity
+	 *      The number of events to hold. Rounded up to a power of two
+	 *
+	 * @author Melvin Lobo
+	 */
+	public RingBufferTraceSink(int nCapacity) {
+		if (nCapacity <= 0) {
+			throw new IllegalArgumentException("Capacity must be positive");
+		}
+		final int nSize = (nCapacity == 1) ? 1 : Integer.highestOneBit(nCapacity - 1) << 1;
+		mlTimestamps = new long[nSize];
+		mnEvents = new int[nSize];
+		mnThreads = new int[nSize];
+		mnMask = nSize - 1;
+	}
+
+	@Override
+	public void beginSection(int nSection) {
+		record(nSection);
+	}
+
+	@Override
+	public void endSection(int nSection) {
+		record(nSection | FLAG_END);
+	}
+
+	/**
+	 * Record an event into the next slot
+	 *
+	 * @param nEvent
+	 *      The section id, with {@link #FLAG_END} for the end of a section
+	 *
+	 * @author Melvin Lobo
+	 */
+	private void record(int nEvent) {
+		final int nSlot = (int) (mSequence.getAndIncrement() & mnMask);
+		mlTimestamps[nSlot] = System.nanoTime();
+		mnEvents[nSlot] = nEvent;
+		mnThreads[nSlot] = (int) Thread.currentThread().getId();
+	}
+
+	/**
+	 * @return The number of events the buffer can hold
+	 */
+	public int getCapacity() {
+		return mnMask + 1;
+	}
+
+	/**
+	 * @return The number of events in the buffer
+	 */
+	public int getEventCount() {
+		return (int) Math.min(mSequence.get(), mnMask + 1);
+	}
+
+	/**
+	 * @return The number of events recorded since the last clear, including the overwritten ones
+	 */
+	public long getRecordedCount() {
+		return mSequence.get();
+	}
+
+	/**
+	 * Drop all the events
+	 *
+	 * @author Melvin Lobo
+	 */
+	public void clear() {
+		mSequence.set(0);
+	}
+
+	/**
+	 * Write the events in the buffer, oldest first, in the binary format described above
+	 *
+	 * @param outputStream
+	 *      The stream to write to. It is flushed but not closed
+	 *
+	 * @throws IOException
+	 *      If the stream could not be written to
+	 *
+	 * @author Melvin Lobo
+	 */
+	public void dump(OutputStream outputStream) throws IOException {
+		final DataOutputStream out = new DataOutputStream(outputStream);
+		final long lEnd = mSequence.get();
+		final int nCount = (int) Math.min(lEnd, mnMask + 1);
+		final long lStart = lEnd - nCount;
+
+		out.writeInt(MAGIC);
+		out.writeByte(VERSION);
+		out.writeByte(Tracing.SECTION_COUNT);
+		for (int nSection = 0; nSection < Tracing.SECTION_COUNT; nSection++) {
+			out.writeUTF(Tracing.getSectionName(nSection));
+		}
+
+		out.writeInt(nCount);
+		long lPrevious = (nCount > 0) ? mlTimestamps[(int) (lStart & mnMask)] : 0;
+		out.writeLong(lPrevious);
+
+		for (long lSequence = lStart; lSequence < lEnd; lSequence++) {
+			final int nSlot = (int) (lSequence & mnMask);
+			final long lTimestamp = mlTimestamps[nSlot];
+			final long lDelta = lTimestamp - lPrevious;
+			lPrevious = lTimestamp;
+
+			out.writeByte(mnEvents[nSlot]);
+			writeVarLong(out, mnThreads[nSlot] & 0xFFFFFFFFL);
+			writeVarLong(out, (lDelta << 1) ^ (lDelta >> 63));
+		}
+		out.flush();
+	}
+
+	/**
+	 * Write the events in the buffer to a file
+	 *
+	 * @param file
+	 *      The file to write to. It is overwritten
+	 *
+	 * @throws IOException
+	 *      If the file could not be written to
+	 *
+	 * @author Melvin Lobo
+	 */
+	public void dump(File file) throws IOException {
+		final OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+		try {
+			dump(out);
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Write an unsigned variable length long: 7 bits per byte, high bit set on all but the last byte
+	 *
+	 * @author Melvin Lobo
+	 */
+	private static void writeVarLong(DataOutputStream out, long lValue) throws IOException {
+		while ((lValue & ~0x7FL) != 0) {
+			out.writeByte((int) ((lValue & 0x7F) | 0x80));
+			lValue >>>= 7;
+		}
+		out.writeByte((int) lValue);
+	}
+}
@@ -0,0 +1,230 @@
+package abysmel.com.collapsibletoolbarhelper.helpers;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Created by Melvin Lobo on 12/02/2015.
+ *
+ * A recorded sequence of AppBarLayout offsets: the time of each offset event, the vertical offset and
+ * the total scroll range in effect. Record one from a device through
+ * {@code CollapsibleToolbarHelper#setScrollTraceRecorder}, save it, and replay it in tests to get the
+ * exact same fling again.
+ *
+ * The binary format (big endian) is:
+ * <pre>
+ *   int     magic 0x43545354 ("CTST")
+ *   byte    version (1)
+ *   int     number of samples
+ *   long    time of the first sample, in nanoseconds
+ *   samples, oldest first, each value as a zigzag varint of its delta from the previous sample:
+ *     time in nanoseconds, vertical offset, total scroll range
+ * </pre>
+ */
+public class ScrollTrace {
+	//////////////////////////////////// CLASS MEMBERS /////////////////////////////////////////////
+	/**
+	 * Static Definitions
+	 */
+	public static final int     MAGIC            = 0x43545354;
+	public static final int     VERSION          = 1;
+	private static final int    INITIAL_CAPACITY = 256;
+
+	/**
+	 * The samples
+	 */
+	private long[]  mlTimes       = new long[INITIAL_CAPACITY];
+	private int[]   mnOffsets     = new int[INITIAL_CAPACITY];
+	private int[]   mnScrollRanges = new int[INITIAL_CAPACITY];
+	private int     mnCount       = 0;
+
+	//////////////////////////////////// CLASS METHODS /////////////////////////////////////////////
+
+	/**
+	 * Record a sample
+	 *
+	 * @param lTimeNanos
+	 *      The time of the offset event in nanoseconds
+	 * @param nVerticalOffset
+	 *      The vertical offset of the AppBarLayout
+	 * @param nScrollRange
+	 *      The total scroll range of the AppBarLayout at that time
+	 *
+	 * @author Melvin Lobo
+	 */
+	public void record(long lTimeNanos, int nVerticalOffset, int nScrollRange) {
+		if (mnCount == mlTimes.length) {
+			grow();
+		}
+		mlTimes[mnCount] = lTimeNanos;
+		mnOffsets[mnCount] = nVerticalOffset;
+		mnScrollRanges[mnCount] = nScrollRange;
+		mnCount++;
+	}
+
+	/**
+	 * @return The number of samples
+	 */
+	public int getCount() {
+		return mnCount;
+	}
+
+	/**
+	 * @return The time of a sample in nanoseconds
+	 */
+	public long getTimeNanos(int nIndex) {
+		return mlTimes[nIndex];
+	}
+
+	/**
+	 * @return The vertical offset of a sample
+	 */
+	public int getVerticalOffset(int nIndex) {
+		return mnOffsets[nIndex];
+	}
+
+	/**
+	 * @return The total scroll range in effect for a sample
+	 */
+	public int getScrollRange(int nIndex) {
+		return mnScrollRanges[nIndex];
+	}
+
+	/**
+	 * Drop all the samples
+	 *
+	 * @author Melvin Lobo
+	 */
+	public void clear() {
+		mnCount = 0;
+	}
+
+	/**
+	 * Write the samples in the binary format described above
+	 *
+	 * @param outputStream
+	 *      The stream to write to. It is flushed but not closed
+	 *
+	 * @throws IOException
+	 *      If the stream could not be written to
+	 *
+	 * @author Melvin Lobo
+	 */
+	public void write(OutputStream outputStream) throws IOException {
+		final DataOutputStream out = new DataOutputStream(outputStream);
+		out.writeInt(MAGIC);
+		out.writeByte(VERSION);
+		out.writeInt(mnCount);
+		out.writeLong((mnCount > 0) ? mlTimes[0] : 0);
+
+		long lPreviousTime = (mnCount > 0) ? mlTimes[0] : 0;
+		int nPreviousOffset = 0;
+		int nPreviousRange = 0;
+		for (int nCtr = 0; nCtr < mnCount; nCtr++) {
+			writeZigZag(out, mlTimes[nCtr] - lPreviousTime);
+			writeZigZag(out, mnOffsets[nCtr] - nPreviousOffset);
+			writeZigZag(out, mnScrollRanges[nCtr] - nPreviousRange);
+			lPreviousTime = mlTimes[nCtr];
+			nPreviousOffset = mnOffsets[nCtr];
+			nPreviousRange = mnScrollRanges[nCtr];
+		}
+		out.flush();
+	}
+
+	/**
+	 * Read a trace written by {@link #write(OutputStream)}
+	 *
+	 * @param inputStream
+	 *      The stream to read from. It is not closed
+	 * @return
+	 *      The trace
+	 *
+	 * @throws IOException
+	 *      If the stream could not be read, or does not hold a trace of this version
+	 *
+	 * @author Melvin Lobo
+	 */
+	public static ScrollTrace read(InputStream inputStream) throws IOException {
+		final DataInputStream in = new DataInputStream(inputStream);
+		if (in.readInt() != MAGIC) {
+			throw new IOException("Not a scroll trace");
+		}
+		final int nVersion = in.readUnsignedByte();
+		if (nVersion != VERSION) {
+			throw new IOException("Unsupported scroll trace version " + nVersion);
+		}
+
+		final int nCount = in.readInt();
+		if (nCount < 0) {
+			throw new IOException("Corrupt scroll trace");
+		}
+
+		final ScrollTrace trace = new ScrollTrace();
+		long lTime = in.readLong();
+		int nOffset = 0;
+		int nRange = 0;
+		for (int nCtr = 0; nCtr < nCount; nCtr++) {
+			lTime += readZigZag(in);
+			nOffset += (int) readZigZag(in);
+			nRange += (int) readZigZag(in);
+			trace.record(lTime, nOffset, nRange);
+		}
+		return trace;
+	}
+
+	/**
+	 * Double the capacity of the sample arrays
+	 *
+	 * @author Melvin Lobo
+	 */
+	private void grow() {
+		final int nCapacity = mlTimes.length * 2;
+		final long[] lTimes = new long[nCapacity];
+		final int[] nOffsets = new int[nCapacity];
+		final int[] nRanges = new int[nCapacity];
+		System.arraycopy(mlTimes, 0, lTimes, 0, mnCount);
+		System.arraycopy(mnOffsets, 0, nOffsets, 0, mnCount);
+		System.arraycopy(mnScrollRanges, 0, nRanges, 0, mnCount);
+		mlTimes = lTimes;
+		mnOffsets = nOffsets;
+		mnScrollRanges = nRanges;
+	}
+
+	/**
+	 * Write a signed value as a zigzag encoded varint: 7 bits per byte, high bit set on all but the
+	 * last byte
+	 *
+	 * @author Melvin Lobo
+	 */
+	private static void writeZigZag(DataOutputStream out, long lValue) throws IOException {
+		long lEncoded = (lValue << 1) ^ (lValue >> 63);
+		while ((lEncoded & ~0x7FL) != 0) {
+			out.writeByte((int) ((lEncoded & 0x7F) | 0x80));
+			lEncoded >>>= 7;
+		}
+		out.writeByte((int) lEncoded);
+	}
+
+	/**
+	 * Read a value written by {@link #writeZigZag(DataOutputStream, long)}
+	 *
+	 * @author Melvin Lobo
+	 */
+	private static long readZigZag(DataInputStream in) throws IOException {
+		long lEncoded = 0;
+		int nShift = 0;
+		int nByte;
+		do {
+			if (nShift > 63) {
+				throw new IOException("Corrupt scroll trace");
+			}
+			nByte = in.readUnsignedByte();
+			lEncoded |= (long) (nByte & 0x7F) << nShift;
+			nShift += 7;
+		} while ((nByte & 0x80) != 0);
+		return (lEncoded >>> 1) ^ -(lEncoded & 1);
+	}
+}
@@ -0,0 +1,334 @@
+package abysmel.com.collapsibletoolbarhelper.helpers;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.drawable.Drawable;
+import android.support.v4.util.LruCache;
+
+import java.util.Arrays;
+
+/**
+ * Created by Melvin Lobo on 12/04/2015.
+ *
+ * A process wide cache of pre-rendered "elevation" backgrounds. The widgets used to fake an elevation
+ * by stacking translucent shapes with increasing insets in a LayerDrawable, which meant up to 5 layers
+ * of overdraw per pixel, rebuilt for every instance. Here, the stack is rendered once into the smallest
+ * bitmap that can be stretched like a nine-patch (fixed corners, one stretchable row and column) and
+ * every instance with the same {@link Key} draws that single bitmap.
+ *
+ * The bitmaps are held in an LRU cache with a fixed memory budget.
+ */
+public class ShadowCache {
+	//////////////////////////////////// CLASS MEMBERS /////////////////////////////////////////////
+	/**
+	 * The memory budget for the cached bitmaps
+	 */
+	private static final int MAX_CACHE_BYTES = 512 * 1024;
+
+	/**
+	 * The cache. Keyed by the shape description, valued by the rendered bitmap
+	 */
+	private static final LruCache<Key, Bitmap> sBitmapCache = new LruCache<Key, Bitmap>(MAX_CACHE_BYTES) {
+		@Override
+		protected int sizeOf(Key key, Bitmap bitmap) {
+			return bitmap.getRowBytes() * bitmap.getHeight();
+		}
+	};
+
+	//////////////////////////////////// CLASS METHODS /////////////////////////////////////////////
+
+	private ShadowCache() { }
+
+	/**
+	 * Get a drawable for the layered shape described by the key. The bitmap behind it is rendered only
+	 * if it is not in the cache already. The drawable itself is light and can be given to one view,
+	 * while the bitmap is shared across all of them
+	 *
+	 * @param key
+	 *      The description of the layered shape
+	 *
+	 * @return
+	 *      A drawable that stretches the cached bitmap to its bounds
+	 *
+	 * @author Melvin Lobo
+	 */
+	public static Drawable getDrawable(Key key) {
+		Bitmap bitmap = sBitmapCache.get(key);
+		if (bitmap == null) {
+			bitmap = render(key);
+			sBitmapCache.put(key, bitmap);
+		}
+		return new StretchableBitmapDrawable(bitmap, key.mnFixedLeft, key.mnFixedTop, key.mnFixedRight, key.mnFixedBottom);
+	}
+
+	/**
+	 * Drop all the cached bitmaps. Drawables that are already in use keep their bitmap
+	 *
+	 * @author Melvin Lobo
+	 */
+	public static void clear() {
+		sBitmapCache.evictAll();
+	}
+
+	/**
+	 * Get the number of bytes currently held by the cache
+	 *
+	 * @return
+	 *      The size of the cache in bytes
+	 *
+	 * @author Melvin Lobo
+	 */
+	public static int getCacheSize() {
+		return sBitmapCache.size();
+	}
+
+	/**
+	 * Render the layered shape into the smallest stretchable bitmap. The fixed edges are large enough
+	 * to hold every layer's inset and corner, so the single stretchable row and column only ever cut
+	 * through the straight parts of the layers
+	 *
+	 * @param key
+	 *      The description of the layered shape
+	 *
+	 * @return
+	 *      The rendered bitmap
+	 *
+	 * @author Melvin Lobo
+	 */
+	private static Bitmap render(Key key) {
+		final int nWidth = key.mnFixedLeft + 1 + key.mnFixedRight;
+		final int nHeight = key.mnFixedTop + 1 + key.mnFixedBottom;
+
+		final Bitmap bitmap = Bitmap.createBitmap(nWidth, nHeight, Bitmap.Config.ARGB_8888);
+		final Canvas canvas = new Canvas(bitmap);
+		final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+		final RectF rect = new RectF();
+
+		// Draw the layers bottom up, just as the layer list would have
+		for (int nLayer = 0; nLayer < key.mColors.length; nLayer++) {
+			final int nInset = nLayer * 4;
+			rect.set(key.mInsets[nInset], key.mInsets[nInset + 1], nWidth - key.mInsets[nInset + 2], nHeight - key.mInsets[nInset + 3]);
+			paint.setColor(key.mColors[nLayer]);
+
+			if (key.mfCornerRadius > 0) {
+				canvas.drawRoundRect(rect, key.mfCornerRadius, key.mfCornerRadius, paint);
+			}
+			else {
+				canvas.drawRect(rect, paint);
+			}
+		}
+
+		return bitmap;
+	}
+
+	//////////////////////////////////// INNER CLASSES /////////////////////////////////////////////
+	/**
+	 * The description of a layered shape. Every layer is the same (round) rect with its own color and
+	 * inset. Two keys with the same values share the same bitmap
+	 *
+	 * @author Melvin Lobo
+	 */
+	public static final class Key {
+		//////////////////////////////// CLASS MEMBERS ////////////////////////////////////////////
+		private final float mfCornerRadius;
+		private final float mfDensity;
+		private final int[] mColors;
+		private final int[] mInsets;
+		private final int   mnHashCode;
+
+		/**
+		 * The fixed (non stretching) edges of the rendered bitmap
+		 */
+		private final int   mnFixedLeft;
+		private final int   mnFixedTop;
+		private final int   mnFixedRight;
+		private final int   mnFixedBottom;
+
+		//////////////////////////////// CLASS METHODS ////////////////////////////////////////////
+		/**
+		 * Constructor
+		 *
+		 * @param fCornerRadius
+		 *      The corner radius of every layer in pixels. 0 for a plain rect
+		 * @param fDensity
+		 *      The display density the insets and radius were computed for
+		 * @param colors
+		 *      The color of each layer, bottom layer first
+		 * @param insets
+		 *      The left, top, right and bottom inset in pixels of each layer, bottom layer first
+		 *
+		 * @author Melvin Lobo
+		 */
+		public Key(float fCornerRadius, float fDensity, int[] colors, int[] insets) {
+			if (insets.length != colors.length * 4) {
+				throw new IllegalArgumentException("Every layer needs a left, top, right and bottom inset");
+			}
+
+			mfCornerRadius = fCornerRadius;
+			mfDensity = fDensity;
+			mColors = colors.clone();
+			mInsets = insets.clone();
+
+			// Each edge has to hold the largest inset plus the corner
+			final int nRadius = (int) Math.ceil(fCornerRadius);
+			int nLeft = 0, nTop = 0, nRight = 0, nBottom = 0;
+			for (int nCtr = 0; nCtr < mInsets.length; nCtr += 4) {
+				nLeft = Math.max(nLeft, mInsets[nCtr] + nRadius);
+				nTop = Math.max(nTop, mInsets[nCtr + 1] + nRadius);
+				nRight = Math.max(nRight, mInsets[nCtr + 2] + nRadius);
+				nBottom = Math.max(nBottom, mInsets[nCtr + 3] + nRadius);
+			}
+			mnFixedLeft = nLeft;
+			mnFixedTop = nTop;
+			mnFixedRight = nRight;
+			mnFixedBottom = nBottom;
+
+			int nHash = Float.floatToIntBits(mfCornerRadius);
+			nHash = 31 * nHash + Float.floatToIntBits(mfDensity);
+			nHash = 31 * nHash + Arrays.hashCode(mColors);
+			nHash = 31 * nHash + Arrays.hashCode(mInsets);
+			mnHashCode = nHash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof Key)) {
+				return false;
+			}
+
+			final Key key = (Key) o;
+			return (mfCornerRadius == key.mfCornerRadius) && (mfDensity == key.mfDensity) &&
+					Arrays.equals(mColors, key.mColors) && Arrays.equals(mInsets, key.mInsets);
+		}
+
+		@Override
+		public int hashCode() {
+			return mnHashCode;
+		}
+	}
+
+	/**
+	 * A drawable that stretches a bitmap like a nine-patch. The fixed edges are drawn as is and the
+	 * rest of the bitmap is stretched to fill the bounds
+	 *
+	 * @author Melvin Lobo
+	 */
+	public static class StretchableBitmapDrawable extends Drawable {
+		//////////////////////////////// CLASS MEMBERS ////////////////////////////////////////////
+		private final Bitmap mBitmap;
+		private final Paint  mPaint = new Paint();      // No filtering, the stretched slices are uniform
+		private final int    mnFixedLeft;
+		private final int    mnFixedTop;
+		private final int    mnFixedRight;
+		private final int    mnFixedBottom;
+
+		/**
+		 * The slice edges of the source bitmap and of the bounds, computed when the bounds change so
+		 * that draw does not allocate
+		 */
+		private final int[]  mSrcX = new int[4];
+		private final int[]  mSrcY = new int[4];
+		private final int[]  mDstX = new int[4];
+		private final int[]  mDstY = new int[4];
+		private final Rect   mSrcRect = new Rect();
+		private final Rect   mDstRect = new Rect();
+
+		//////////////////////////////// CLASS METHODS ////////////////////////////////////////////
+		/**
+		 * Constructor
+		 *
+		 * @param bitmap
+		 *      The bitmap to stretch
+		 * @param nFixedLeft
+		 *      The width of the fixed left edge
+		 * @param nFixedTop
+		 *      The height of the fixed top edge
+		 * @param nFixedRight
+		 *      The width of the fixed right edge
+		 * @param nFixedBottom
+		 *      The height of the fixed bottom edge
+		 *
+		 * @author Melvin Lobo
+		 */
+		public StretchableBitmapDrawable(Bitmap bitmap, int nFixedLeft, int nFixedTop, int nFixedRight, int nFixedBottom) {
+			mBitmap = bitmap;
+			mnFixedLeft = nFixedLeft;
+			mnFixedTop = nFixedTop;
+			mnFixedRight = nFixedRight;
+			mnFixedBottom = nFixedBottom;
+
+			mSrcX[0] = 0;
+			mSrcX[1] = nFixedLeft;
+			mSrcX[2] = bitmap.getWidth() - nFixedRight;
+			mSrcX[3] = bitmap.getWidth();
+			mSrcY[0] = 0;
+			mSrcY[1] = nFixedTop;
+			mSrcY[2] = bitmap.getHeight() - nFixedBottom;
+			mSrcY[3] = bitmap.getHeight();
+		}
+
+		@Override
+		protected void onBoundsChange(Rect bounds) {
+			super.onBoundsChange(bounds);
+
+			// If the bounds are smaller than the fixed edges, split the space between them
+			final int nFixedWidth = Math.min(mnFixedLeft + mnFixedRight, bounds.width());
+			final int nLeft = (mnFixedLeft + mnFixedRight == 0) ? 0 : (nFixedWidth * mnFixedLeft) / (mnFixedLeft + mnFixedRight);
+			final int nFixedHeight = Math.min(mnFixedTop + mnFixedBottom, bounds.height());
+			final int nTop = (mnFixedTop + mnFixedBottom == 0) ? 0 : (nFixedHeight * mnFixedTop) / (mnFixedTop + mnFixedBottom);
+
+			mDstX[0] = bounds.left;
+			mDstX[1] = bounds.left + nLeft;
+			mDstX[2] = bounds.right - (nFixedWidth - nLeft);
+			mDstX[3] = bounds.right;
+			mDstY[0] = bounds.top;
+			mDstY[1] = bounds.top + nTop;
+			mDstY[2] = bounds.bottom - (nFixedHeight - nTop);
+			mDstY[3] = bounds.bottom;
+		}
+
+		@Override
+		public void draw(Canvas canvas) {
+			for (int nRow = 0; nRow < 3; nRow++) {
+				if ((mDstY[nRow + 1] <= mDstY[nRow]) || (mSrcY[nRow + 1] <= mSrcY[nRow])) {
+					continue;
+				}
+
+				for (int nCol = 0; nCol < 3; nCol++) {
+					if ((mDstX[nCol + 1] <= mDstX[nCol]) || (mSrcX[nCol + 1] <= mSrcX[nCol])) {
+						continue;
+					}
+
+					mSrcRect.set(mSrcX[nCol], mSrcY[nRow], mSrcX[nCol + 1], mSrcY[nRow + 1]);
+					mDstRect.set(mDstX[nCol], mDstY[nRow], mDstX[nCol + 1], mDstY[nRow + 1]);
+					canvas.drawBitmap(mBitmap, mSrcRect, mDstRect, mPaint);
+				}
+			}
+		}
+
+		@Override
+		public void setAlpha(int alpha) {
+			mPaint.setAlpha(alpha);
+			invalidateSelf();
+		}
+
+		@Override
+		public void setColorFilter(ColorFilter colorFilter) {
+			mPaint.setColorFilter(colorFilter);
+			invalidateSelf();
+		}
+
+		@Override
+		public int getOpacity() {
+			return PixelFormat.TRANSLUCENT;
+		}
+	}
+}
@@ -0,0 +1,447 @@
+package abysmel.com.collapsibletoolbarhelper.helpers;
+
+import android.support.percent.PercentLayoutHelper;
+import android.support.v4.view.ViewCompat;
+import android.view.Gravity;
+import android.view.View;
+import android.view.View.MeasureSpec;
+import android.view.ViewGroup;
+import android.widget.RelativeLayout;
+
+import java.util.Arrays;
+
+/**
+ * Created by Melvin Lobo on 12/02/2015.
+ *
+ * A lightweight measure / layout engine for a RelativeLayout (or PercentRelativeLayout) which only
+ * uses a subset of the rules. RelativeLayout sorts its children into a dependency graph and measures
+ * them twice (horizontally and then vertically), and the percent layout may measure them all over
+ * again. This engine measures each child exactly once.
+ *
+ * The supported subset is what a collapsible header usually needs:
+ * - Percent sizes and margins
+ * - alignParentLeft / Top / Right / Bottom, centerInParent / Horizontal / Vertical
+ * - below and toRightOf, a single level deep (the anchor must not be below or to the right of
+ *   another child)
+ *
+ * {@link #measure(RelativeLayout, int, int, int)} returns false for anything outside the subset, in which
+ * case the layout should fall back to its own measure and layout.
+ *
+ * Each child gets a single pair of measure specs per pass, so View#measure skips the children whose
+ * specs have not changed and which have not asked for a layout themselves, on every API level.
+ * Collapsing does not change the constraints of the children, so when a single child asks for a layout
+ * during a scroll, only that child runs its onMeasure again. RelativeLayout measures each child with two
+ * different pairs of specs, which defeats that check below API 19, where View has no measure cache.
+ */
+public class SinglePassLayoutEngine {
+	//////////////////////////////////// CLASS MEMBERS /////////////////////////////////////////////
+	/**
+	 * Static Definitions
+	 */
+	private static final int    DEFAULT_GRAVITY = Gravity.START | Gravity.TOP;
+
+	/**
+	 * The rules this engine understands. Any other rule makes it fall back
+	 */
+	private static final int[]  SUPPORTED_RULES = {
+			RelativeLayout.RIGHT_OF,
+			RelativeLayout.BELOW,
+			RelativeLayout.ALIGN_PARENT_LEFT,
+			RelativeLayout.ALIGN_PARENT_TOP,
+			RelativeLayout.ALIGN_PARENT_RIGHT,
+			RelativeLayout.ALIGN_PARENT_BOTTOM,
+			RelativeLayout.CENTER_IN_PARENT,
+			RelativeLayout.CENTER_HORIZONTAL,
+			RelativeLayout.CENTER_VERTICAL
+	};
+
+	/**
+	 * The positions worked out for the children in the last measure pass, indexed like the children
+	 */
+	private int[] mnChildLeft = new int[0];
+	private int[] mnChildTop  = new int[0];
+
+	/**
+	 * The size worked out for the parent in the last measure pass
+	 */
+	private int mnMeasuredWidth  = 0;
+	private int mnMeasuredHeight = 0;
+
+	/**
+	 * The child at each index in the last measure pass, and the specs the engine gave it then
+	 */
+	private View[] mLastChildren         = new View[0];
+	private int[]  mnLastChildWidthSpec  = new int[0];
+	private int[]  mnLastChildHeightSpec = new int[0];
+
+	/**
+	 * Number of child measure calls which View#measure could skip (same specs as the last pass and no
+	 * layout asked for by the child), and the number of the others
+	 */
+	private int mnMeasureCacheHits   = 0;
+	private int mnMeasureCacheMisses = 0;
+
+	//////////////////////////////////// CLASS METHODS /////////////////////////////////////////////
+
+	/**
+	 * Measure the children of the parent and work out their positions, in a single pass
+	 *
+	 * @param parent
+	 *      The layout whose children are to be measured
+	 * @param nGravity
+	 *      The gravity of the layout. Only the default of start and top is supported. RelativeLayout
+	 *      has no getter for it before API 24, so the layout has to keep track of it
+	 * @param widthMeasureSpec
+	 *      The width measure spec of the parent
+	 * @param heightMeasureSpec
+	 *      The height measure spec of the parent
+	 * @return
+	 *      True if measured. False if the children use something outside of the supported subset, in
+	 *      which case nothing has been measured
+	 *
+	 * @author Melvin Lobo
+	 */
+	public boolean measure(RelativeLayout parent, int nGravity, int widthMeasureSpec, int heightMeasureSpec) {
+		final int nWidthMode = MeasureSpec.getMode(widthMeasureSpec);
+		final int nHeightMode = MeasureSpec.getMode(heightMeasureSpec);
+		if ((nGravity != DEFAULT_GRAVITY) || !canMeasure(parent, nWidthMode, nHeightMode)) {
+			// The layout gives the children specs of its own then, so the ones kept here are stale
+			Arrays.fill(mLastChildren, null);
+			return false;
+		}
+
+		final int count = parent.getChildCount();
+		if (mnChildLeft.length < count) {
+			mnChildLeft = new int[count];
+			mnChildTop = new int[count];
+			mLastChildren = new View[count];
+			mnLastChildWidthSpec = new int[count];
+			mnLastChildHeightSpec = new int[count];
+		}
+
+		final int nWidth = MeasureSpec.getSize(widthMeasureSpec);
+		final int nHeight = MeasureSpec.getSize(heightMeasureSpec);
+
+		// The anchors go first, so that the children below / to the right of them know where they are
+		for (int nCtr = 0; nCtr < count; nCtr++) {
+			final View child = parent.getChildAt(nCtr);
+			if ((child.getVisibility() != View.GONE) && !isDependent(getRules(child))) {
+				measureChild(parent, nCtr, child, nWidth, nWidthMode, nHeight, nHeightMode);
+			}
+		}
+		for (int nCtr = 0; nCtr < count; nCtr++) {
+			final View child = parent.getChildAt(nCtr);
+			if ((child.getVisibility() != View.GONE) && isDependent(getRules(child))) {
+				measureChild(parent, nCtr, child, nWidth, nWidthMode, nHeight, nHeightMode);
+			}
+		}
+
+		// Wrap the children if the size is not exact
+		if (nWidthMode == MeasureSpec.EXACTLY) {
+			mnMeasuredWidth = nWidth;
+		}
+		else {
+			int nRight = 0;
+			for (int nCtr = 0; nCtr < count; nCtr++) {
+				final View child = parent.getChildAt(nCtr);
+				if (child.getVisibility() != View.GONE) {
+					final ViewGroup.MarginLayoutParams lp = (ViewGroup.MarginLayoutParams) child.getLayoutParams();
+					nRight = Math.max(nRight, mnChildLeft[nCtr] + child.getMeasuredWidth() + lp.rightMargin);
+				}
+			}
+			nRight = Math.max(nRight + parent.getPaddingRight(), ViewCompat.getMinimumWidth(parent));
+			mnMeasuredWidth = View.resolveSize(nRight, widthMeasureSpec);
+		}
+
+		if (nHeightMode == MeasureSpec.EXACTLY) {
+			mnMeasuredHeight = nHeight;
+		}
+		else {
+			int nBottom = 0;
+			for (int nCtr = 0; nCtr < count; nCtr++) {
+				final View child = parent.getChildAt(nCtr);
+				if (child.getVisibility() != View.GONE) {
+					final ViewGroup.MarginLayoutParams lp = (ViewGroup.MarginLayoutParams) child.getLayoutParams();
+					nBottom = Math.max(nBottom, mnChildTop[nCtr] + child.getMeasuredHeight() + lp.bottomMargin);
+				}
+			}
+			nBottom = Math.max(nBottom + parent.getPaddingBottom(), ViewCompat.getMinimumHeight(parent));
+			mnMeasuredHeight = View.resolveSize(nBottom, heightMeasureSpec);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Lay the children out at the positions worked out in the last successful measure pass
+	 *
+	 * @param parent
+	 *      The layout whose children are to be laid out
+	 *
+	 * @author Melvin Lobo
+	 */
+	public void layout(ViewGroup parent) {
+		for (int nCtr = 0, count = parent.getChildCount(); nCtr < count; nCtr++) {
+			final View child = parent.getChildAt(nCtr);
+			if (child.getVisibility() != View.GONE) {
+				final int nLeft = mnChildLeft[nCtr];
+				final int nTop = mnChildTop[nCtr];
+				child.layout(nLeft, nTop, nLeft + child.getMeasuredWidth(), nTop + child.getMeasuredHeight());
+			}
+		}
+	}
+
+	/**
+	 * @return The width of the parent worked out in the last successful measure pass
+	 */
+	public int getMeasuredWidth() {
+		return mnMeasuredWidth;
+	}
+
+	/**
+	 * @return The height of the parent worked out in the last successful measure pass
+	 */
+	public int getMeasuredHeight() {
+		return mnMeasuredHeight;
+	}
+
+	/**
+	 * @return The number of child measure calls so far with the same specs as the child got in the last
+	 * pass, to a child which has not asked for a layout. View#measure returns right away from these
+	 */
+	public int getMeasureCacheHitCount() {
+		return mnMeasureCacheHits;
+	}
+
+	/**
+	 * @return The number of child measure calls so far with new specs, or to a child which has asked
+	 * for a layout. The child runs its onMeasure for these
+	 */
+	public int getMeasureCacheMissCount() {
+		return mnMeasureCacheMisses;
+	}
+
+	/**
+	 * Reset the measure cache counts
+	 *
+	 * @author Melvin Lobo
+	 */
+	public void resetMeasureCounts() {
+		mnMeasureCacheHits = 0;
+		mnMeasureCacheMisses = 0;
+	}
+
+	/**
+	 * Check if the engine can measure the children of the parent: only the supported rules, anchors
+	 * which are visible and not dependent themselves, and no parent relative placement along a size
+	 * that is not exact (RelativeLayout moves those children again once it knows its own size)
+	 *
+	 * @author Melvin Lobo
+	 */
+	private boolean canMeasure(RelativeLayout parent, int nWidthMode, int nHeightMode) {
+		for (int nCtr = 0, count = parent.getChildCount(); nCtr < count; nCtr++) {
+			final View child = parent.getChildAt(nCtr);
+			if (child.getVisibility() == View.GONE) {
+				continue;
+			}
+			if (!(child.getLayoutParams() instanceof RelativeLayout.LayoutParams)) {
+				return false;
+			}
+
+			final int[] rules = getRules(child);
+			for (int nRule = 0; nRule < rules.length; nRule++) {
+				if ((rules[nRule] != 0) && !isSupported(nRule)) {
+					return false;
+				}
+			}
+
+			if ((nWidthMode != MeasureSpec.EXACTLY) && ((rules[RelativeLayout.ALIGN_PARENT_RIGHT] != 0) ||
+					(rules[RelativeLayout.CENTER_IN_PARENT] != 0) || (rules[RelativeLayout.CENTER_HORIZONTAL] != 0))) {
+				return false;
+			}
+			if ((nHeightMode != MeasureSpec.EXACTLY) && ((rules[RelativeLayout.ALIGN_PARENT_BOTTOM] != 0) ||
+					(rules[RelativeLayout.CENTER_IN_PARENT] != 0) || (rules[RelativeLayout.CENTER_VERTICAL] != 0))) {
+				return false;
+			}
+
+			if (!isValidAnchor(parent, rules[RelativeLayout.RIGHT_OF]) ||
+					!isValidAnchor(parent, rules[RelativeLayout.BELOW])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Check that an anchor, if any, is a visible child which does not depend on another child
+	 *
+	 * @author Melvin Lobo
+	 */
+	private boolean isValidAnchor(ViewGroup parent, int nAnchorId) {
+		if (nAnchorId == 0) {
+			return true;
+		}
+		final int nAnchor = findChild(parent, nAnchorId);
+		if (nAnchor < 0) {
+			return false;
+		}
+		final View anchor = parent.getChildAt(nAnchor);
+		return (anchor.getVisibility() != View.GONE) &&
+				(anchor.getLayoutParams() instanceof RelativeLayout.LayoutParams) &&
+				!isDependent(getRules(anchor));
+	}
+
+	/**
+	 * Measure one child exactly once and work out its position
+	 *
+	 * @author Melvin Lobo
+	 */
+	private void measureChild(ViewGroup parent, int nIndex, View child, int nWidth, int nWidthMode,
+	                          int nHeight, int nHeightMode) {
+		final RelativeLayout.LayoutParams lp = (RelativeLayout.LayoutParams) child.getLayoutParams();
+		final int[] rules = lp.getRules();
+
+		// Resolve the percentages against the space inside the padding, as PercentLayoutHelper does
+		final PercentLayoutHelper.PercentLayoutInfo info = (lp instanceof PercentLayoutHelper.PercentLayoutParams) ?
+				((PercentLayoutHelper.PercentLayoutParams) lp).getPercentLayoutInfo() : null;
+		if (info != null) {
+			info.fillMarginLayoutParams(lp, nWidth - parent.getPaddingLeft() - parent.getPaddingRight(),
+					nHeight - parent.getPaddingTop() - parent.getPaddingBottom());
+		}
+
+		// The space the child can use, between the parent (or its anchor) and the parent
+		int nStart = parent.getPaddingLeft();
+		if (rules[RelativeLayout.RIGHT_OF] != 0) {
+			final int nAnchor = findChild(parent, rules[RelativeLayout.RIGHT_OF]);
+			final View anchor = parent.getChildAt(nAnchor);
+			nStart = mnChildLeft[nAnchor] + anchor.getMeasuredWidth() +
+					((ViewGroup.MarginLayoutParams) anchor.getLayoutParams()).rightMargin;
+		}
+		final int nEnd = nWidth - parent.getPaddingRight();
+
+		int nTopEdge = parent.getPaddingTop();
+		if (rules[RelativeLayout.BELOW] != 0) {
+			final int nAnchor = findChild(parent, rules[RelativeLayout.BELOW]);
+			final View anchor = parent.getChildAt(nAnchor);
+			nTopEdge = mnChildTop[nAnchor] + anchor.getMeasuredHeight() +
+					((ViewGroup.MarginLayoutParams) anchor.getLayoutParams()).bottomMargin;
+		}
+		final int nBottomEdge = nHeight - parent.getPaddingBottom();
+
+		// Pinned on both sides means the child has to fill the space in between
+		final boolean bFillWidth = (rules[RelativeLayout.ALIGN_PARENT_RIGHT] != 0) &&
+				((rules[RelativeLayout.ALIGN_PARENT_LEFT] != 0) || (rules[RelativeLayout.RIGHT_OF] != 0));
+		final boolean bFillHeight = (rules[RelativeLayout.ALIGN_PARENT_BOTTOM] != 0) &&
+				((rules[RelativeLayout.ALIGN_PARENT_TOP] != 0) || (rules[RelativeLayout.BELOW] != 0));
+
+		final int nChildWidthSpec =
+				getChildMeasureSpec(lp.width, nEnd - nStart - lp.leftMargin - lp.rightMargin, bFillWidth, nWidthMode);
+		final int nChildHeightSpec =
+				getChildMeasureSpec(lp.height, nBottomEdge - nTopEdge - lp.topMargin - lp.bottomMargin, bFillHeight, nHeightMode);
+
+		// View#measure only runs onMeasure if the specs changed or the child asked for a layout
+		if ((mLastChildren[nIndex] == child) && (mnLastChildWidthSpec[nIndex] == nChildWidthSpec) &&
+				(mnLastChildHeightSpec[nIndex] == nChildHeightSpec) && !child.isLayoutRequested()) {
+			mnMeasureCacheHits++;
+		}
+		else {
+			mnMeasureCacheMisses++;
+		}
+		mLastChildren[nIndex] = child;
+		mnLastChildWidthSpec[nIndex] = nChildWidthSpec;
+		mnLastChildHeightSpec[nIndex] = nChildHeightSpec;
+		child.measure(nChildWidthSpec, nChildHeightSpec);
+
+		final int nChildWidth = child.getMeasuredWidth();
+		final int nChildHeight = child.getMeasuredHeight();
+
+		if ((rules[RelativeLayout.ALIGN_PARENT_RIGHT] != 0) && !bFillWidth) {
+			mnChildLeft[nIndex] = nEnd - lp.rightMargin - nChildWidth;
+		}
+		else if ((rules[RelativeLayout.CENTER_IN_PARENT] != 0) || (rules[RelativeLayout.CENTER_HORIZONTAL] != 0)) {
+			mnChildLeft[nIndex] = (nWidth - nChildWidth) / 2;
+		}
+		else {
+			mnChildLeft[nIndex] = nStart + lp.leftMargin;
+		}
+
+		if ((rules[RelativeLayout.ALIGN_PARENT_BOTTOM] != 0) && !bFillHeight) {
+			mnChildTop[nIndex] = nBottomEdge - lp.bottomMargin - nChildHeight;
+		}
+		else if ((rules[RelativeLayout.CENTER_IN_PARENT] != 0) || (rules[RelativeLayout.CENTER_VERTICAL] != 0)) {
+			mnChildTop[nIndex] = (nHeight - nChildHeight) / 2;
+		}
+		else {
+			mnChildTop[nIndex] = nTopEdge + lp.topMargin;
+		}
+
+		if (info != null) {
+			info.restoreMarginLayoutParams(lp);
+		}
+	}
+
+	/**
+	 * Get the measure spec of a child for the space it has, the way RelativeLayout does
+	 *
+	 * @param nChildSize
+	 *      The size in the layout params of the child
+	 * @param nAvailable
+	 *      The space available to the child
+	 * @param bFill
+	 *      True if the child is pinned on both sides and has to fill the space
+	 * @param nParentMode
+	 *      The measure spec mode of the parent along this axis
+	 * @return
+	 *      The measure spec of the child
+	 *
+	 * @author Melvin Lobo
+	 */
+	private static int getChildMeasureSpec(int nChildSize, int nAvailable, boolean bFill, int nParentMode) {
+		nAvailable = Math.max(0, nAvailable);
+		if (bFill) {
+			return MeasureSpec.makeMeasureSpec(nAvailable, MeasureSpec.EXACTLY);
+		}
+		if (nChildSize >= 0) {
+			return MeasureSpec.makeMeasureSpec(nChildSize, MeasureSpec.EXACTLY);
+		}
+		if (nParentMode == MeasureSpec.UNSPECIFIED) {
+			return MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED);
+		}
+		return MeasureSpec.makeMeasureSpec(nAvailable,
+				(nChildSize == ViewGroup.LayoutParams.MATCH_PARENT) ? MeasureSpec.EXACTLY : MeasureSpec.AT_MOST);
+	}
+
+	/**
+	 * Find the index of the child with the given id
+	 *
+	 * @return
+	 *      The index of the child, or -1 if there is none
+	 *
+	 * @author Melvin Lobo
+	 */
+	private static int findChild(ViewGroup parent, int nId) {
+		for (int nCtr = 0, count = parent.getChildCount(); nCtr < count; nCtr++) {
+			if (parent.getChildAt(nCtr).getId() == nId) {
+				return nCtr;
+			}
+		}
+		return -1;
+	}
+
+	private static int[] getRules(View child) {
+		return ((RelativeLayout.LayoutParams) child.getLayoutParams()).getRules();
+	}
+
+	private static boolean isDependent(int[] rules) {
+		return (rules[RelativeLayout.RIGHT_OF] != 0) || (rules[RelativeLayout.BELOW] != 0);
+	}
+
+	private static boolean isSupported(int nRule) {
+		for (int nSupported : SUPPORTED_RULES) {
+			if (nSupported == nRule) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
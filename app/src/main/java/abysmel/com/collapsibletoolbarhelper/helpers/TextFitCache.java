@@ -0,0 +1,216 @@
+package abysmel.com.collapsibletoolbarhelper.helpers;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Created by Melvin Lobo on 12/02/2015.
+ *
+ * A least recently used cache of text size fits, in front of {@link TextSizeFitter}. A fit is keyed by
+ * the text, the typeface it is measured in, the width, the size bounds and the strategy of the search,
+ * so measuring the same title again (another measure pass, a configuration change, a header bound again
+ * in a list) costs one lookup instead of a search. A lookup does not allocate, only storing a new fit
+ * does.
+ *
+ * The typeface is compared by identity, as the framework hands out shared instances. The cache is not
+ * thread safe, it is meant to be used from the UI thread.
+ */
+public class TextFitCache {
+	//////////////////////////////////// CLASS MEMBERS /////////////////////////////////////////////
+	/**
+	 * The fits, least recently used first
+	 */
+	private final LinkedHashMap<Key, Float> mFits;
+
+	/**
+	 * The key used for lookups, so that a hit does not allocate
+	 */
+	private final Key mProbe = new Key();
+
+	/**
+	 * Lookup statistics
+	 */
+	private long mlHitCount = 0;
+	private long mlMissCount = 0;
+
+	//////////////////////////////////// CLASS METHODS /////////////////////////////////////////////
+
+	/**
+	 * Create a cache
+	 *
+	 * @param nMaxSize
+	 *      The number of fits kept. The least recently used one is dropped beyond this
+	 *
+	 * @author Melvin Lobo
+	 */
+	public TextFitCache(final int nMaxSize) {
+		if (nMaxSize <= 0) {
+			throw new IllegalArgumentException("The cache size has to be positive");
+		}
+
+		mFits = new LinkedHashMap<Key, Float>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Float> eldest) {
+				return size() > nMaxSize;
+			}
+		};
+	}
+
+	/**
+	 * Get the largest text size at which the text fits the width, from the cache if it has been worked out
+	 * before, or with the binary search of {@link TextSizeFitter#fitSingleLine} otherwise
+	 *
+	 * @see #fitSingleLine(String, Object, TextSizeFitter.Measurer, float, float, float, float, int)
+	 *
+	 * @author Melvin Lobo
+	 */
+	public float fitSingleLine(String text, Object typeface, TextSizeFitter.Measurer measurer, float targetWidth,
+			float low, float high, float precision) {
+		return fitSingleLine(text, typeface, measurer, targetWidth, low, high, precision, TextSizeFitter.STRATEGY_BINARY_SEARCH);
+	}
+
+	/**
+	 * Get the largest text size at which the text fits the width, from the cache if it has been worked out
+	 * before, or with {@link TextSizeFitter#fit} otherwise
+	 *
+	 * @param text
+	 *      The text to fit
+	 * @param typeface
+	 *      The typeface the text is measured in. May be null for the default one
+	 * @param measurer
+	 *      Measures the width of the text at a size, on a miss
+	 * @param targetWidth
+	 *      The width to fit the text into
+	 * @param low
+	 *      The smallest size to search
+	 * @param high
+	 *      The largest size to search
+	 * @param precision
+	 *      The search stops once the range is narrower than this
+	 * @param nStrategy
+	 *      The strategy of the search on a miss, {@link TextSizeFitter#STRATEGY_BINARY_SEARCH} or
+	 *      {@link TextSizeFitter#STRATEGY_ANALYTIC}
+	 * @return
+	 *      The text size
+	 *
+	 * @author Melvin Lobo
+	 */
+	public float fitSingleLine(String text, Object typeface, TextSizeFitter.Measurer measurer, float targetWidth,
+			float low, float high, float precision, int nStrategy) {
+		mProbe.set(text, typeface, targetWidth, low, high, precision, nStrategy);
+		final Float fit = mFits.get(mProbe);
+		if (fit != null) {
+			mlHitCount++;
+			return fit;
+		}
+
+		mlMissCount++;
+		final float fSize = TextSizeFitter.fit(nStrategy, text, measurer, targetWidth, low, high, precision);
+		final Key key = new Key();
+		key.set(text, typeface, targetWidth, low, high, precision, nStrategy);
+		mFits.put(key, fSize);
+		return fSize;
+	}
+
+	/**
+	 * @return The number of fits in the cache
+	 */
+	public int size() {
+		return mFits.size();
+	}
+
+	/**
+	 * @return The number of lookups answered from the cache
+	 */
+	public long getHitCount() {
+		return mlHitCount;
+	}
+
+	/**
+	 * @return The number of lookups which had to search
+	 */
+	public long getMissCount() {
+		return mlMissCount;
+	}
+
+	/**
+	 * @return The share of the lookups answered from the cache, between 0 and 1. 0 if there was no lookup
+	 */
+	public float getHitRate() {
+		final long lLookups = mlHitCount + mlMissCount;
+		return (lLookups == 0) ? 0.0f : mlHitCount / (float) lLookups;
+	}
+
+	/**
+	 * Drop all the fits. The statistics are kept
+	 *
+	 * @author Melvin Lobo
+	 */
+	public void clear() {
+		mFits.clear();
+	}
+
+	/**
+	 * Reset the hit and miss counts
+	 *
+	 * @author Melvin Lobo
+	 */
+	public void resetStatistics() {
+		mlHitCount = 0;
+		mlMissCount = 0;
+	}
+
+	/**
+	 * The inputs of a fit
+	 *
+	 * @author Melvin Lobo
+	 */
+	private static class Key {
+		private String  msText;
+		private Object  mTypeface;
+		private float   mfWidth;
+		private float   mfLow;
+		private float   mfHigh;
+		private float   mfPrecision;
+		private int     mnStrategy;
+		private int     mnHash;
+
+		void set(String text, Object typeface, float fWidth, float fLow, float fHigh, float fPrecision, int nStrategy) {
+			msText = text;
+			mTypeface = typeface;
+			mfWidth = fWidth;
+			mfLow = fLow;
+			mfHigh = fHigh;
+			mfPrecision = fPrecision;
+			mnStrategy = nStrategy;
+
+			int nHash = text.hashCode();
+			nHash = 31 * nHash + System.identityHashCode(typeface);
+			nHash = 31 * nHash + Float.floatToIntBits(fWidth);
+			nHash = 31 * nHash + Float.floatToIntBits(fLow);
+			nHash = 31 * nHash + Float.floatToIntBits(fHigh);
+			nHash = 31 * nHash + Float.floatToIntBits(fPrecision);
+			nHash = 31 * nHash + nStrategy;
+			mnHash = nHash;
+		}
+
+		@Override
+		public int hashCode() {
+			return mnHash;
+		}
+
+		@Override
+		public boolean equals(Object object) {
+			if (this == object) {
+				return true;
+			}
+			if (!(object instanceof Key)) {
+				return false;
+			}
+			final Key key = (Key) object;
+			return (mnHash == key.mnHash) && (mTypeface == key.mTypeface) && (mfWidth == key.mfWidth) &&
+					(mfLow == key.mfLow) && (mfHigh == key.mfHigh) && (mfPrecision == key.mfPrecision) &&
+					(mnStrategy == key.mnStrategy) && msText.equals(key.msText);
+		}
+	}
+}
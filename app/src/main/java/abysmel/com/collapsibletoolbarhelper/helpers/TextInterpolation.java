@@ -0,0 +1,62 @@
+package abysmel.com.collapsibletoolbarhelper.helpers;
+
+/**
+ * Created by Melvin Lobo on 12/02/2015.
+ *
+ * The interpolation math of the collapsing text, on plain numbers: the linear interpolation of the
+ * positions and sizes, the decelerate curve applied to the fraction, and the blend of the expanded and
+ * collapsed text colors.
+ */
+public class TextInterpolation {
+	//////////////////////////////////// CLASS METHODS /////////////////////////////////////////////
+
+	/**
+	 * Adapted from AnimationUtils. This function calculates the linear interpolation between the
+	 * start value and end value by fraction
+	 *
+	 * @param startValue
+	 *            The start value
+	 * @param endValue
+	 *            The end value
+	 * @param fraction
+	 *            The fraction to be used for calculation
+	 * @return The interpolated value between the start and the end based on the fraction
+	 *
+	 * @author Melvin Lobo
+	 */
+	public static float lerp(float startValue, float endValue, float fraction) {
+		return (startValue + (fraction * (endValue - startValue)));
+	}
+
+	/**
+	 * The curve of a DecelerateInterpolator with the default factor of 1: fast at first, slowing down
+	 * towards the end
+	 *
+	 * @param fraction
+	 *            The fraction, from 0 to 1
+	 * @return The interpolated fraction
+	 *
+	 * @author Melvin Lobo
+	 */
+	public static float decelerate(float fraction) {
+		return (1.0f - (1.0f - fraction) * (1.0f - fraction));
+	}
+
+	/**
+	 * Blend {@code color1} and {@code color2} using the given ratio.
+	 *
+	 * @param ratio
+	 *            of which to blend. 0.0 will return {@code color1}, 0.5 will give an even blend,
+	 *            1.0 will return {@code color2}.
+	 *
+	 * @author Melvin Lobo
+	 */
+	public static int blendColors(int color1, int color2, float ratio) {
+		final float inverseRatio = 1f - ratio;
+		float a = ((color1 >>> 24) * inverseRatio) + ((color2 >>> 24) * ratio);
+		float r = (((color1 >> 16) & 0xFF) * inverseRatio) + (((color2 >> 16) & 0xFF) * ratio);
+		float g = (((color1 >> 8) & 0xFF) * inverseRatio) + (((color2 >> 8) & 0xFF) * ratio);
+		float b = ((color1 & 0xFF) * inverseRatio) + ((color2 & 0xFF) * ratio);
+		return ((int) a << 24) | ((int) r << 16) | ((int) g << 8) | (int) b;
+	}
+}
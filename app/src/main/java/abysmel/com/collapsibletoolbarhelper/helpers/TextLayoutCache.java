@@ -0,0 +1,143 @@
+package abysmel.com.collapsibletoolbarhelper.helpers;
+
+import android.graphics.Typeface;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+
+/**
+ * Created by Melvin Lobo on 12/02/2015.
+ *
+ * A small cache of the StaticLayouts of one text, so that the text is laid out (line breaks, spans
+ * measured) once per text size and width instead of on every measure, layout or draw pass. A layout is
+ * keyed by the identity of the text, the text size and typeface of the paint, and the width. The text
+ * itself can change in place (spans set on a SpannableStringBuilder), so the owner has to
+ * {@link #invalidate()} the cache whenever it does.
+ *
+ * The layouts keep a reference to the paint they were built with. The paint has to be set to the same
+ * text size before a cached layout is drawn, which its key guarantees as long as the size is set before
+ * the lookup. Changes of color do not need a new layout.
+ *
+ * The most recently used layouts are kept, up to {@link #CAPACITY}: one text usually needs one at the
+ * collapsed size, one at the expanded size and one to draw with.
+ */
+public class TextLayoutCache {
+	//////////////////////////////////// CLASS MEMBERS /////////////////////////////////////////////
+	/**
+	 * Static Definitions
+	 */
+	public static final int     CAPACITY        = 4;
+
+	/**
+	 * The cached layouts and their keys, most recently used first
+	 */
+	private final StaticLayout[]    mLayouts    = new StaticLayout[CAPACITY];
+	private final CharSequence[]    mTexts      = new CharSequence[CAPACITY];
+	private final float[]           mfTextSizes = new float[CAPACITY];
+	private final Typeface[]        mTypefaces  = new Typeface[CAPACITY];
+	private final int[]             mnWidths    = new int[CAPACITY];
+	private int                     mnCount     = 0;
+
+	/**
+	 * Lookup statistics
+	 */
+	private long mlHitCount = 0;
+	private long mlMissCount = 0;
+
+	//////////////////////////////////// CLASS METHODS /////////////////////////////////////////////
+
+	/**
+	 * Get a layout of the text with the current text size and typeface of the paint. It is built only if
+	 * it is not in the cache already
+	 *
+	 * @param text
+	 *      The text to lay out
+	 * @param paint
+	 *      The paint to lay it out with
+	 * @param nWidth
+	 *      The width to lay it out in
+	 * @return
+	 *      The layout
+	 *
+	 * @author Melvin Lobo
+	 */
+	public StaticLayout get(CharSequence text, TextPaint paint, int nWidth) {
+		final float fTextSize = paint.getTextSize();
+		final Typeface typeface = paint.getTypeface();
+
+		for (int nCtr = 0; nCtr < mnCount; nCtr++) {
+			if ((mTexts[nCtr] == text) && (mfTextSizes[nCtr] == fTextSize) && (mTypefaces[nCtr] == typeface) &&
+					(mnWidths[nCtr] == nWidth)) {
+				mlHitCount++;
+				final StaticLayout layout = mLayouts[nCtr];
+				moveToFront(nCtr, layout, text, fTextSize, typeface, nWidth);
+				return layout;
+			}
+		}
+
+		mlMissCount++;
+		final StaticLayout layout = new StaticLayout(text, paint, nWidth, Layout.Alignment.ALIGN_NORMAL, 1.0f, 0.0f, false);
+		if (mnCount < CAPACITY) {
+			mnCount++;
+		}
+		moveToFront(mnCount - 1, layout, text, fTextSize, typeface, nWidth);
+		return layout;
+	}
+
+	/**
+	 * Drop all the layouts. To be called whenever the text changes in place
+	 *
+	 * @author Melvin Lobo
+	 */
+	public void invalidate() {
+		for (int nCtr = 0; nCtr < mnCount; nCtr++) {
+			mLayouts[nCtr] = null;
+			mTexts[nCtr] = null;
+			mTypefaces[nCtr] = null;
+		}
+		mnCount = 0;
+	}
+
+	/**
+	 * @return The number of layouts in the cache
+	 */
+	public int size() {
+		return mnCount;
+	}
+
+	/**
+	 * @return The number of lookups answered from the cache
+	 */
+	public long getHitCount() {
+		return mlHitCount;
+	}
+
+	/**
+	 * @return The number of lookups which had to build a layout
+	 */
+	public long getMissCount() {
+		return mlMissCount;
+	}
+
+	/**
+	 * Shift the entries before a slot down by one and put the given entry first. The entry in the slot
+	 * is overwritten, which drops the least recently used one when the slot is the last
+	 *
+	 * @author Melvin Lobo
+	 */
+	private void moveToFront(int nSlot, StaticLayout layout, CharSequence text, float fTextSize, Typeface typeface,
+			int nWidth) {
+		for (int nCtr = nSlot; nCtr > 0; nCtr--) {
+			mLayouts[nCtr] = mLayouts[nCtr - 1];
+			mTexts[nCtr] = mTexts[nCtr - 1];
+			mfTextSizes[nCtr] = mfTextSizes[nCtr - 1];
+			mTypefaces[nCtr] = mTypefaces[nCtr - 1];
+			mnWidths[nCtr] = mnWidths[nCtr - 1];
+		}
+		mLayouts[0] = layout;
+		mTexts[0] = text;
+		mfTextSizes[0] = fTextSize;
+		mTypefaces[0] = typeface;
+		mnWidths[0] = nWidth;
+	}
+}
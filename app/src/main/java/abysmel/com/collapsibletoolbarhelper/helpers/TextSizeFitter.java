@@ -0,0 +1,191 @@
+package abysmel.com.collapsibletoolbarhelper.helpers;
+
+/**
+ * Created by Melvin Lobo on 12/02/2015.
+ *
+ * Finds the largest text size at which a single line of text fits a width. The text is measured
+ * through a {@link Measurer}, so the search runs without a Paint (on a plain JVM with a stub measurer,
+ * for instance).
+ *
+ * There are two strategies. The binary search measures the text about log2((high - low) / precision)
+ * times. The analytic fit relies on the width of a line growing almost linearly with the text size: it
+ * measures once at the largest size, scales the size to the width, and then only verifies the estimate.
+ * Both land within the precision of the largest size that fits.
+ */
+public class TextSizeFitter {
+	//////////////////////////////////// CLASS MEMBERS /////////////////////////////////////////////
+	/**
+	 * The fitting strategies
+	 */
+	public static final int     STRATEGY_BINARY_SEARCH  = 0;
+	public static final int     STRATEGY_ANALYTIC       = 1;
+
+	/**
+	 * The number of times the analytic estimate is scaled down again before falling back to a search
+	 */
+	private static final int    MAX_CORRECTIONS         = 2;
+
+	//////////////////////////////////// CLASS METHODS /////////////////////////////////////////////
+
+	/**
+	 * Find the best size for the text with the given strategy
+	 *
+	 * @param nStrategy
+	 *      {@link #STRATEGY_BINARY_SEARCH} or {@link #STRATEGY_ANALYTIC}
+	 *
+	 * @see #fitSingleLine(String, Measurer, float, float, float, float)
+	 * @see #fitSingleLineAnalytic(String, Measurer, float, float, float, float)
+	 *
+	 * @author Melvin Lobo
+	 */
+	public static float fit(int nStrategy, String text, Measurer measurer, float targetWidth, float low, float high, float precision) {
+		if (nStrategy == STRATEGY_ANALYTIC) {
+			return fitSingleLineAnalytic(text, measurer, targetWidth, low, high, precision);
+		}
+		return fitSingleLine(text, measurer, targetWidth, low, high, precision);
+	}
+
+	/**
+	 * Binary search to find the best size for the text. The range is halved in a loop, and the search
+	 * stops before measuring once the range is narrower than the precision.
+	 *
+	 * Adapted from https://github.com/grantland/android-autofittextview
+	 *
+	 * @param text
+	 *      The text to fit
+	 * @param measurer
+	 *      Measures the width of the text at a size
+	 * @param targetWidth
+	 *      The width to fit the text into
+	 * @param low
+	 *      The smallest size to search
+	 * @param high
+	 *      The largest size to search
+	 * @param precision
+	 *      The search stops once the range is narrower than this
+	 * @return
+	 *      The text size
+	 *
+	 * @author Melvin Lobo
+	 */
+	public static float fitSingleLine(String text, Measurer measurer, float targetWidth, float low, float high, float precision) {
+		while ((high - low) >= precision) {
+			// Find the mid
+			final float mid = (low + high) / 2.0f;
+
+			// Get the maximum text width for the Mid
+			final float maxLineWidth = measurer.measureText(text, mid);
+
+			// Based on if its greater than or less than the target width, we move to either side of the
+			// scale divided by the mid and repeat the process again
+			if (maxLineWidth > targetWidth) {
+				high = mid;
+			} else if (maxLineWidth < targetWidth) {
+				low = mid;
+			} else {
+				return mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Estimate the best size for the text from a single measurement, and verify it. The text is measured
+	 * at the largest size and the size is scaled by the ratio of the target width to that width. If the
+	 * estimate does not fit (hinting makes the width only nearly linear), it is scaled down again. Once
+	 * it fits, the next size up by the precision is measured to make sure the estimate is not too small.
+	 * Whenever the estimate cannot be confirmed this way, the binary search finishes the job in the
+	 * range left.
+	 *
+	 * Usually three measurements instead of the eight or so of the binary search.
+	 *
+	 * The binary search never measures the largest size, so when the text fits there it ends up just
+	 * below it, within the precision. The analytic fit returns that same size then, so that both
+	 * strategies agree whenever the text is narrower than the width at the largest size. (At exactly the
+	 * width, the search may stop early on a size which measures the same.)
+	 *
+	 * @param text
+	 *      The text to fit
+	 * @param measurer
+	 *      Measures the width of the text at a size
+	 * @param targetWidth
+	 *      The width to fit the text into
+	 * @param low
+	 *      The smallest size to search
+	 * @param high
+	 *      The largest size to search
+	 * @param precision
+	 *      The size returned is within this of the largest size that fits
+	 * @return
+	 *      The text size
+	 *
+	 * @author Melvin Lobo
+	 */
+	public static float fitSingleLineAnalytic(String text, Measurer measurer, float targetWidth, float low, float high, float precision) {
+		if ((high - low) < precision) {
+			return low;
+		}
+
+		// Reference measurement at the largest size. If that fits, every size below does, and we land
+		// where the binary search would
+		final float referenceWidth = measurer.measureText(text, high);
+		if (referenceWidth <= targetWidth) {
+			return searchTop(low, high, precision);
+		}
+
+		float size = clamp(high * (targetWidth / referenceWidth), low, high);
+		float tooWide = high;
+		for (int nCtr = 0; nCtr <= MAX_CORRECTIONS; nCtr++) {
+			final float width = measurer.measureText(text, size);
+			if (width <= targetWidth) {
+				// It fits. Make sure that the next size up does not
+				final float nextSize = size + precision;
+				if ((nextSize > high) || (measurer.measureText(text, nextSize) > targetWidth)) {
+					return size;
+				}
+				return fitSingleLine(text, measurer, targetWidth, nextSize, high, precision);
+			}
+
+			// Too wide. Nothing smaller than the lowest size
+			if (size <= low) {
+				return low;
+			}
+			tooWide = size;
+			size = clamp(Math.min(size * (targetWidth / width), size - (precision / 2)), low, high);
+		}
+
+		// The estimate keeps missing, search what is left below the last size that was too wide
+		return fitSingleLine(text, measurer, targetWidth, low, tooWide, precision);
+	}
+
+	/**
+	 * @return The size the binary search ends at when the text fits at every size it measures
+	 */
+	private static float searchTop(float low, float high, float precision) {
+		while ((high - low) >= precision) {
+			low = (low + high) / 2.0f;
+		}
+		return low;
+	}
+
+	private static float clamp(float value, float low, float high) {
+		return Math.max(low, Math.min(high, value));
+	}
+
+	/**
+	 * Measures the width of a single line of text
+	 *
+	 * @author Melvin Lobo
+	 */
+	public interface Measurer {
+		/**
+		 * @param text
+		 *      The text to measure
+		 * @param textSize
+		 *      The text size in pixels
+		 * @return
+		 *      The width of the text in pixels
+		 */
+		float measureText(String text, float textSize);
+	}
+}
@@ -0,0 +1,422 @@
+package abysmel.com.collapsibletoolbarhelper.helpers;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.Typeface;
+import android.text.TextPaint;
+
+/**
+ * Created by Melvin Lobo on 12/02/2015.
+ *
+ * A title split into segments drawn on one baseline, each with its own typeface, color and size (as a
+ * ratio of the title size). A segment runs from the end of the previous one to its own end, and the
+ * last one always runs to the end of the title, so an ellipsized title keeps its ellipsis in the last
+ * segment it reaches.
+ *
+ * The paint and the x offset of each segment are worked out by {@link #prepare} whenever the title or
+ * its size changes. Drawing a frame is then a loop of drawText calls that does not allocate.
+ */
+public class TitleSegments {
+	//////////////////////////////////// CLASS MEMBERS /////////////////////////////////////////////
+	/**
+	 * Static Definitions
+	 */
+	private static final int    INITIAL_CAPACITY = 2;
+	private static final String ELLIPSIS         = "\u2026";
+
+	/**
+	 * The segments as they were added
+	 */
+	private int[]       mnEnds          = new int[INITIAL_CAPACITY];
+	private Typeface[]  mTypefaces      = new Typeface[INITIAL_CAPACITY];
+	private int[]       mnColors        = new int[INITIAL_CAPACITY];
+	private boolean[]   mbOwnColors     = new boolean[INITIAL_CAPACITY];
+	private float[]     mfSizeRatios    = new float[INITIAL_CAPACITY];
+	private int         mnCount         = 0;
+
+	/**
+	 * The paint of each segment
+	 */
+	private TextPaint[] mPaints         = new TextPaint[INITIAL_CAPACITY];
+
+	/**
+	 * The prepared segments, those with a part of the title to draw: the segment each one is, the range
+	 * of the title it draws and its x offset
+	 */
+	private int[]       mnSegments      = new int[INITIAL_CAPACITY];
+	private int[]       mnStarts        = new int[INITIAL_CAPACITY];
+	private int[]       mnPreparedEnds  = new int[INITIAL_CAPACITY];
+	private float[]     mfOffsets       = new float[INITIAL_CAPACITY];
+	private int         mnPreparedCount = 0;
+	private float       mfWidth         = 0.0f;
+
+	/**
+	 * Scratch space to work out the bounds of the title
+	 */
+	private final Paint.FontMetrics mFontMetrics = new Paint.FontMetrics();
+	private final Rect  mTextBounds     = new Rect();
+
+	/**
+	 * Measures the title in the paint of each segment without touching the prepared segments
+	 */
+	private final TextPaint mMeasurePaint = new TextPaint();
+
+	//////////////////////////////////// CLASS METHODS /////////////////////////////////////////////
+
+	/**
+	 * Add a segment drawn in the color of the title
+	 *
+	 * @see #add(int, Typeface, int, boolean, float)
+	 *
+	 * @author Melvin Lobo
+	 */
+	public void add(int nEnd, Typeface typeface, float fSizeRatio) {
+		add(nEnd, typeface, 0, false, fSizeRatio);
+	}
+
+	/**
+	 * Add a segment after the ones added so far
+	 *
+	 * @param nEnd
+	 *      The index in the title the segment ends at, exclusive. Ignored for the last segment, which runs
+	 *      to the end of the title
+	 * @param typeface
+	 *      The typeface of the segment, or null for the typeface of the title
+	 * @param nColor
+	 *      The color of the segment
+	 * @param bOwnColor
+	 *      True to draw the segment in nColor, false to draw it in the color of the title, which blends
+	 *      as it collapses
+	 * @param fSizeRatio
+	 *      The size of the segment as a ratio of the title size
+	 *
+	 * @author Melvin Lobo
+	 */
+	public void add(int nEnd, Typeface typeface, int nColor, boolean bOwnColor, float fSizeRatio) {
+		if (mnCount == mnEnds.length) {
+			grow();
+		}
+		mnEnds[mnCount] = nEnd;
+		mTypefaces[mnCount] = typeface;
+		mnColors[mnCount] = nColor;
+		mbOwnColors[mnCount] = bOwnColor;
+		mfSizeRatios[mnCount] = fSizeRatio;
+		mPaints[mnCount] = new TextPaint();
+		mnCount++;
+		mnPreparedCount = 0;
+	}
+
+	/**
+	 * Remove all the segments
+	 *
+	 * @author Melvin Lobo
+	 */
+	public void clear() {
+		for (int nCtr = 0; nCtr < mnCount; nCtr++) {
+			mTypefaces[nCtr] = null;
+			mPaints[nCtr] = null;
+		}
+		mnCount = 0;
+		mnPreparedCount = 0;
+		mfWidth = 0.0f;
+	}
+
+	/**
+	 * @return The number of segments added
+	 */
+	public int size() {
+		return mnCount;
+	}
+
+	/**
+	 * Work out the paint and the x offset of each segment for a title at a size
+	 *
+	 * @param text
+	 *      The title as it will be drawn (ellipsized if need be)
+	 * @param basePaint
+	 *      The paint of the title. The segments start from a copy of it
+	 * @param fTextSize
+	 *      The size of the title
+	 *
+	 * @author Melvin Lobo
+	 */
+	public void prepare(CharSequence text, TextPaint basePaint, float fTextSize) {
+		final int nLength = (text == null) ? 0 : text.length();
+		int nStart = 0;
+		float fOffset = 0.0f;
+		mnPreparedCount = 0;
+
+		for (int nCtr = 0; (nCtr < mnCount) && (nStart < nLength); nCtr++) {
+			final int nEnd = (nCtr == mnCount - 1) ? nLength : Math.max(nStart, Math.min(mnEnds[nCtr], nLength));
+			if (nEnd == nStart) {
+				continue;
+			}
+
+			final TextPaint paint = mPaints[nCtr];
+			paint.set(basePaint);
+			if (mTypefaces[nCtr] != null) {
+				paint.setTypeface(mTypefaces[nCtr]);
+			}
+			paint.setTextSize(fTextSize * mfSizeRatios[nCtr]);
+
+			final int nSlot = mnPreparedCount++;
+			mnSegments[nSlot] = nCtr;
+			mnStarts[nSlot] = nStart;
+			mnPreparedEnds[nSlot] = nEnd;
+			mfOffsets[nSlot] = fOffset;
+
+			fOffset += paint.measureText(text, nStart, nEnd);
+			nStart = nEnd;
+		}
+		mfWidth = fOffset;
+	}
+
+	/**
+	 * Measure a title the way {@link #prepare} lays it out, each segment in its own typeface and size,
+	 * without preparing it. The title size can be searched for with this
+	 *
+	 * @param text
+	 *      The title
+	 * @param basePaint
+	 *      The paint of the title
+	 * @param fTextSize
+	 *      The size of the title
+	 * @return
+	 *      The sum of the advances of the segments
+	 *
+	 * @author Melvin Lobo
+	 */
+	public float measure(CharSequence text, TextPaint basePaint, float fTextSize) {
+		return measure(text, (text == null) ? 0 : text.length(), false, basePaint, fTextSize);
+	}
+
+	/**
+	 * Ellipsize a title at its end so that it fits a width, measuring each segment in its own typeface
+	 * and size. The ellipsis is measured in the segment it falls in, as {@link #prepare} will draw it
+	 *
+	 * @param text
+	 *      The title
+	 * @param basePaint
+	 *      The paint of the title
+	 * @param fTextSize
+	 *      The size of the title
+	 * @param fAvailableWidth
+	 *      The width to fit the title into
+	 * @return
+	 *      The title if it fits, the longest start of it followed by an ellipsis that fits otherwise, or
+	 *      an empty string if not even the ellipsis fits
+	 *
+	 * @author Melvin Lobo
+	 */
+	public CharSequence ellipsize(CharSequence text, TextPaint basePaint, float fTextSize, float fAvailableWidth) {
+		final int nLength = text.length();
+		if (measure(text, nLength, false, basePaint, fTextSize) <= fAvailableWidth) {
+			return text;
+		}
+
+		// The width only grows with the number of characters kept, so search for the most that fit
+		int nLow = 0;
+		int nHigh = nLength - 1;
+		while (nLow < nHigh) {
+			final int nMid = (nLow + nHigh + 1) >>> 1;
+			if (measure(text, nMid, true, basePaint, fTextSize) <= fAvailableWidth) {
+				nLow = nMid;
+			}
+			else {
+				nHigh = nMid - 1;
+			}
+		}
+		if (measure(text, nLow, true, basePaint, fTextSize) > fAvailableWidth) {
+			return "";
+		}
+		return new StringBuilder(nLow + 1).append(text, 0, nLow).append(ELLIPSIS).toString();
+	}
+
+	/**
+	 * Measure the start of a title, optionally followed by an ellipsis
+	 *
+	 * @param text
+	 *      The title
+	 * @param nLength
+	 *      The number of characters of the title to measure
+	 * @param bEllipsis
+	 *      True to add the width of an ellipsis after them, in the segment it would fall in
+	 *
+	 * @author Melvin Lobo
+	 */
+	private float measure(CharSequence text, int nLength, boolean bEllipsis, TextPaint basePaint, float fTextSize) {
+		int nStart = 0;
+		float fWidth = 0.0f;
+		for (int nCtr = 0; nCtr < mnCount; nCtr++) {
+			final boolean bLast = (nCtr == mnCount - 1);
+			final int nEnd = bLast ? nLength : Math.max(nStart, Math.min(mnEnds[nCtr], nLength));
+			final boolean bEllipsisHere = bEllipsis && (bLast || (mnEnds[nCtr] > nLength));
+			if ((nEnd > nStart) || bEllipsisHere) {
+				mMeasurePaint.set(basePaint);
+				if (mTypefaces[nCtr] != null) {
+					mMeasurePaint.setTypeface(mTypefaces[nCtr]);
+				}
+				mMeasurePaint.setTextSize(fTextSize * mfSizeRatios[nCtr]);
+				if (nEnd > nStart) {
+					fWidth += mMeasurePaint.measureText(text, nStart, nEnd);
+				}
+				if (bEllipsisHere) {
+					return fWidth + mMeasurePaint.measureText(ELLIPSIS);
+				}
+			}
+			nStart = nEnd;
+			if (!bEllipsis && (nStart >= nLength)) {
+				break;
+			}
+		}
+		return fWidth;
+	}
+
+	/**
+	 * @return The width of the prepared title
+	 */
+	public float getWidth() {
+		return mfWidth;
+	}
+
+	/**
+	 * Work out the area the prepared title covers around the point it is drawn at: the union of the
+	 * ascent and descent of each segment and of the bounds of its glyphs. A taller typeface or a larger
+	 * segment reaches above the ascent of the title, and a glyph with a negative left bearing starts
+	 * before the title does
+	 *
+	 * @param text
+	 *      The title given to {@link #prepare}
+	 * @param outBounds
+	 *      Receives the area, relative to the start of the title on its baseline
+	 *
+	 * @author Melvin Lobo
+	 */
+	public void getBounds(CharSequence text, RectF outBounds) {
+		outBounds.set(0.0f, 0.0f, mfWidth, 0.0f);
+		if (mnPreparedCount == 0) {
+			return;
+		}
+
+		final String sText = text.toString();
+		for (int nCtr = 0; nCtr < mnPreparedCount; nCtr++) {
+			final TextPaint paint = mPaints[mnSegments[nCtr]];
+			final float fOffset = mfOffsets[nCtr];
+			paint.getFontMetrics(mFontMetrics);
+			paint.getTextBounds(sText, mnStarts[nCtr], mnPreparedEnds[nCtr], mTextBounds);
+			outBounds.left = Math.min(outBounds.left, fOffset + mTextBounds.left);
+			outBounds.top = Math.min(outBounds.top, Math.min(mFontMetrics.ascent, mTextBounds.top));
+			outBounds.right = Math.max(outBounds.right, fOffset + mTextBounds.right);
+			outBounds.bottom = Math.max(outBounds.bottom, Math.max(mFontMetrics.descent, mTextBounds.bottom));
+		}
+	}
+
+	/**
+	 * @return The number of prepared segments, those with a part of the title to draw
+	 */
+	public int getPreparedCount() {
+		return mnPreparedCount;
+	}
+
+	/**
+	 * @return True if a prepared segment is drawn in its own color rather than in the color of the title
+	 */
+	public boolean hasOwnColors() {
+		for (int nCtr = 0; nCtr < mnPreparedCount; nCtr++) {
+			if (mbOwnColors[mnSegments[nCtr]]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return The largest size ratio of the prepared segments, 1 if there is none
+	 */
+	public float getMaxSizeRatio() {
+		float fMax = (mnPreparedCount == 0) ? 1.0f : 0.0f;
+		for (int nCtr = 0; nCtr < mnPreparedCount; nCtr++) {
+			fMax = Math.max(fMax, mfSizeRatios[mnSegments[nCtr]]);
+		}
+		return fMax;
+	}
+
+	/**
+	 * @return The x offset of a prepared segment from the start of the title
+	 */
+	public float getOffset(int nIndex) {
+		return mfOffsets[nIndex];
+	}
+
+	/**
+	 * @return The index in the title a prepared segment starts at
+	 */
+	public int getStart(int nIndex) {
+		return mnStarts[nIndex];
+	}
+
+	/**
+	 * @return The index in the title a prepared segment ends at, exclusive
+	 */
+	public int getEnd(int nIndex) {
+		return mnPreparedEnds[nIndex];
+	}
+
+	/**
+	 * Draw the prepared segments
+	 *
+	 * @param canvas
+	 *      The canvas to draw on
+	 * @param text
+	 *      The title given to {@link #prepare}
+	 * @param fX
+	 *      The x co-ordinate the title starts at
+	 * @param fY
+	 *      The baseline of the title
+	 * @param nTitleColor
+	 *      The current color of the title, for the segments which do not have their own
+	 *
+	 * @author Melvin Lobo
+	 */
+	public void draw(Canvas canvas, CharSequence text, float fX, float fY, int nTitleColor) {
+		for (int nCtr = 0; nCtr < mnPreparedCount; nCtr++) {
+			final int nSegment = mnSegments[nCtr];
+			final TextPaint paint = mPaints[nSegment];
+			paint.setColor(mbOwnColors[nSegment] ? mnColors[nSegment] : nTitleColor);
+			canvas.drawText(text, mnStarts[nCtr], mnPreparedEnds[nCtr], fX + mfOffsets[nCtr], fY, paint);
+		}
+	}
+
+	/**
+	 * Double the capacity of the arrays
+	 *
+	 * @author Melvin Lobo
+	 */
+	private void grow() {
+		final int nCapacity = mnEnds.length * 2;
+		final int[] nEnds = new int[nCapacity];
+		final Typeface[] typefaces = new Typeface[nCapacity];
+		final int[] nColors = new int[nCapacity];
+		final boolean[] bOwnColors = new boolean[nCapacity];
+		final float[] fSizeRatios = new float[nCapacity];
+		final TextPaint[] paints = new TextPaint[nCapacity];
+		System.arraycopy(mnEnds, 0, nEnds, 0, mnCount);
+		System.arraycopy(mTypefaces, 0, typefaces, 0, mnCount);
+		System.arraycopy(mnColors, 0, nColors, 0, mnCount);
+		System.arraycopy(mbOwnColors, 0, bOwnColors, 0, mnCount);
+		System.arraycopy(mfSizeRatios, 0, fSizeRatios, 0, mnCount);
+		System.arraycopy(mPaints, 0, paints, 0, mnCount);
+		mnEnds = nEnds;
+		mTypefaces = typefaces;
+		mnColors = nColors;
+		mbOwnColors = bOwnColors;
+		mfSizeRatios = fSizeRatios;
+		mPaints = paints;
+		mnSegments = new int[nCapacity];
+		mnStarts = new int[nCapacity];
+		mnPreparedEnds = new int[nCapacity];
+		mfOffsets = new float[nCapacity];
+	}
+}
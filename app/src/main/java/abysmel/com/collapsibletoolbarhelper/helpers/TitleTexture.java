@@ -0,0 +1,162 @@
+package abysmel.com.collapsibletoolbarhelper.helpers;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+/**
+ * Created by Melvin Lobo on 12/02/2015.
+ *
+ * A title rendered once into an alpha only bitmap, so that it can be drawn scaled on every frame of a
+ * transition without the glyphs being rasterized again. The bitmap holds the coverage of the glyphs and
+ * is drawn in the color of a paint, so a color that blends as the title collapses still blends.
+ *
+ * The owner renders into the canvas returned by {@link #begin} whenever the title, its size or its
+ * typeface change, and {@link #invalidate()}s the texture then. The bitmap is kept and drawn into again
+ * as long as the title fits it, and is only dropped by {@link #release()}.
+ */
+public class TitleTexture {
+	//////////////////////////////////// CLASS MEMBERS /////////////////////////////////////////////
+	/**
+	 * The bitmap and the canvas to render the title into
+	 */
+	private Bitmap          mBitmap         = null;
+	private final Canvas    mCanvas         = new Canvas();
+
+	/**
+	 * The part of the bitmap the title takes, and where it is drawn
+	 */
+	private final Rect      mSource         = new Rect();
+	private final RectF     mDestination    = new RectF();
+
+	/**
+	 * Draws the bitmap filtered, as it is always scaled
+	 */
+	private final Paint     mPaint          = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.FILTER_BITMAP_FLAG);
+
+	/**
+	 * The distance from the left of the texture to the start of the title, and from its top to the
+	 * baseline of the title
+	 */
+	private float           mfLeft          = 0.0f;
+	private float           mfBaseline      = 0.0f;
+	private boolean         mbValid         = false;
+
+	//////////////////////////////////// CLASS METHODS /////////////////////////////////////////////
+
+	/**
+	 * Get a canvas to render a title which starts at the left of the texture
+	 *
+	 * @see #begin(int, int, float, float)
+	 *
+	 * @author Melvin Lobo
+	 */
+	public Canvas begin(int nWidth, int nHeight, float fBaseline) {
+		return begin(nWidth, nHeight, 0.0f, fBaseline);
+	}
+
+	/**
+	 * Get a canvas to render the title into, cleared. The bitmap is reused if the title fits it, and
+	 * replaced by a larger one otherwise. The texture is valid once this returns
+	 *
+	 * @param nWidth
+	 *      The width of the title, from the leftmost to the rightmost pixel of its glyphs
+	 * @param nHeight
+	 *      The height of the title, from the top of its tallest glyph or ascent to the bottom of its
+	 *      lowest glyph or descent
+	 * @param fLeft
+	 *      The distance from the left of the title to its start, where it has to be drawn on the canvas.
+	 *      Positive when a glyph reaches before the start of the title
+	 * @param fBaseline
+	 *      The distance from the top of the title to its baseline, where it has to be drawn on the canvas
+	 * @return
+	 *      The canvas, or null if the title is empty
+	 *
+	 * @author Melvin Lobo
+	 */
+	public Canvas begin(int nWidth, int nHeight, float fLeft, float fBaseline) {
+		mbValid = false;
+		if ((nWidth <= 0) || (nHeight <= 0)) {
+			return null;
+		}
+
+		if ((mBitmap == null) || (mBitmap.getWidth() < nWidth) || (mBitmap.getHeight() < nHeight)) {
+			release();
+			mBitmap = Bitmap.createBitmap(nWidth, nHeight, Bitmap.Config.ALPHA_8);
+			mCanvas.setBitmap(mBitmap);
+		}
+		else {
+			mBitmap.eraseColor(0);
+		}
+
+		mSource.set(0, 0, nWidth, nHeight);
+		mfLeft = fLeft;
+		mfBaseline = fBaseline;
+		mbValid = true;
+		return mCanvas;
+	}
+
+	/**
+	 * Draw the title scaled, with its baseline where the vector title would have it
+	 *
+	 * @param canvas
+	 *      The canvas to draw on
+	 * @param fX
+	 *      The x co-ordinate the title starts at
+	 * @param fY
+	 *      The baseline of the title
+	 * @param fScale
+	 *      The scale of the title from the size it was rendered at
+	 * @param nColor
+	 *      The current color of the title
+	 *
+	 * @author Melvin Lobo
+	 */
+	public void draw(Canvas canvas, float fX, float fY, float fScale, int nColor) {
+		final float fLeft = fX - (mfLeft * fScale);
+		final float fTop = fY - (mfBaseline * fScale);
+		mDestination.set(fLeft, fTop, fLeft + (mSource.width() * fScale), fTop + (mSource.height() * fScale));
+		mPaint.setColor(nColor);
+		canvas.drawBitmap(mBitmap, mSource, mDestination, mPaint);
+	}
+
+	/**
+	 * @return True if the title has been rendered since the texture was last invalidated
+	 */
+	public boolean isValid() {
+		return mbValid;
+	}
+
+	/**
+	 * Mark the texture as out of date, so that the title is rendered again before it is drawn. The
+	 * bitmap is kept
+	 *
+	 * @author Melvin Lobo
+	 */
+	public void invalidate() {
+		mbValid = false;
+	}
+
+	/**
+	 * Drop the bitmap. It is created again the next time the title is rendered
+	 *
+	 * @author Melvin Lobo
+	 */
+	public void release() {
+		mbValid = false;
+		if (mBitmap != null) {
+			mCanvas.setBitmap(null);
+			mBitmap.recycle();
+			mBitmap = null;
+		}
+	}
+
+	/**
+	 * @return The bitmap the title is rendered into, or null if there is none
+	 */
+	public Bitmap getBitmap() {
+		return mBitmap;
+	}
+}
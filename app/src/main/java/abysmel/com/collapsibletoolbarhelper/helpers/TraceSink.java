@@ -0,0 +1,31 @@
+package abysmel.com.collapsibletoolbarhelper.helpers;
+
+/**
+ * Created by Melvin Lobo on 12/02/2015.
+ *
+ * A destination for the trace sections emitted by the widgets. Sections are identified by one of the
+ * section ids of {@link Tracing}, so that a sink can record them without touching any strings. A
+ * section is always ended on the thread that began it, and sections nest.
+ */
+public interface TraceSink {
+
+	/**
+	 * Begin a trace section
+	 *
+	 * @param nSection
+	 *      One of the section ids of {@link Tracing}
+	 *
+	 * @author Melvin Lobo
+	 */
+	void beginSection(int nSection);
+
+	/**
+	 * End the trace section last begun on this thread
+	 *
+	 * @param nSection
+	 *      The section id it was begun with
+	 *
+	 * @author Melvin Lobo
+	 */
+	void endSection(int nSection);
+}
@@ -0,0 +1,136 @@
+package abysmel.com.collapsibletoolbarhelper.helpers;
+
+import android.os.Build;
+import android.os.Trace;
+
+/**
+ * Created by Melvin Lobo on 12/02/2015.
+ *
+ * The trace sections emitted by the widgets, and the sink they go to. The default sink forwards to
+ * systrace ({@link android.os.Trace}) on Jelly Bean MR2 and above. Set a {@link RingBufferTraceSink}
+ * to record the sections on devices where systrace is not available, or null to turn tracing off.
+ */
+public final class Tracing {
+	//////////////////////////////////// CLASS MEMBERS /////////////////////////////////////////////
+	/**
+	 * The section ids
+	 */
+	public static final int SECTION_OFFSET_DISPATCH    = 0;
+	public static final int SECTION_LAYOUT             = 1;
+	public static final int SECTION_METABALL_FRAME     = 2;
+	public static final int SECTION_TEXT_FIT           = 3;
+	public static final int SECTION_BACKGROUND_REBUILD = 4;
+	public static final int SECTION_COUNT              = 5;
+
+	/**
+	 * The names of the sections, indexed by their ids
+	 */
+	private static final String[] SECTION_NAMES = {
+			"CTH:offsetDispatch",
+			"CTH:layout",
+			"CTH:metaballFrame",
+			"CTH:textFit",
+			"CTH:backgroundRebuild"
+	};
+
+	/**
+	 * The current sink. Null if tracing is off
+	 */
+	private static volatile TraceSink sSink = new SystraceSink();
+
+	//////////////////////////////////// CLASS METHODS /////////////////////////////////////////////
+
+	private Tracing() {
+	}
+
+	/**
+	 * Set the sink the trace sections go to
+	 *
+	 * @param sink
+	 *      The sink, or null to turn tracing off
+	 *
+	 * @author Melvin Lobo
+	 */
+	public static void setSink(TraceSink sink) {
+		sSink = sink;
+	}
+
+	/**
+	 * Get the sink the trace sections go to
+	 *
+	 * @return
+	 *      The sink, or null if tracing is off
+	 *
+	 * @author Melvin Lobo
+	 */
+	public static TraceSink getSink() {
+		return sSink;
+	}
+
+	/**
+	 * Begin a trace section
+	 *
+	 * @param nSection
+	 *      One of the section ids
+	 *
+	 * @author Melvin Lobo
+	 */
+	public static void beginSection(int nSection) {
+		final TraceSink sink = sSink;
+		if (sink != null) {
+			sink.beginSection(nSection);
+		}
+	}
+
+	/**
+	 * End the trace section last begun on this thread
+	 *
+	 * @param nSection
+	 *      The section id it was begun with
+	 *
+	 * @author Melvin Lobo
+	 */
+	public static void endSection(int nSection) {
+		final TraceSink sink = sSink;
+		if (sink != null) {
+			sink.endSection(nSection);
+		}
+	}
+
+	/**
+	 * Get the name of a section
+	 *
+	 * @param nSection
+	 *      The section id
+	 * @return
+	 *      The name of the section
+	 *
+	 * @author Melvin Lobo
+	 */
+	public static String getSectionName(int nSection) {
+		return SECTION_NAMES[nSection];
+	}
+
+	/**
+	 * The default sink, which forwards the sections to systrace. Does nothing below Jelly Bean MR2,
+	 * where {@link android.os.Trace} is not available
+	 *
+	 * @author Melvin Lobo
+	 */
+	public static class SystraceSink implements TraceSink {
+
+		@Override
+		public void beginSection(int nSection) {
+			if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+				Trace.beginSection(SECTION_NAMES[nSection]);
+			}
+		}
+
+		@Override
+		public void endSection(int nSection) {
+			if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+				Trace.endSection();
+			}
+		}
+	}
+}
@@ -21,29 +21,51 @@ import android.support.v4.view.ViewCompat;
 import android.view.View;
 import android.view.ViewParent;
 
+import java.util.ArrayList;
+
 /**
  * Utility helper for moving a {@link View} around using {@link View#offsetLeftAndRight(int)} and
  * {@link View#offsetTopAndBottom(int)}.
  * <p>
  * Also the setting of absolute offsets (similar to translationX/Y), rather than additive offsets.
+ * <p>
+ * The offsets can also be expressed through the translationX/Y render properties
+ * ({@link #OFFSET_MODE_TRANSLATION}). The view then keeps its layout position and only its display
+ * list is moved, which does not re-record the content of the view. Touch events follow the
+ * translation, so hit testing stays correct. In this mode the helper owns the translation of the view.
+ * <p>
+ * Offsets can be collected in a {@link Batch}, so that the offsets of several views are applied
+ * together and their common parent is invalidated only once.
  */
 public class ViewOffsetHelper {
 
+	/**
+	 * Move the view with {@link View#offsetTopAndBottom(int)} and {@link View#offsetLeftAndRight(int)}
+	 */
+	public static final int OFFSET_MODE_LAYOUT = 0;
+
+	/**
+	 * Move the view with translationX/Y, leaving its layout position alone
+	 */
+	public static final int OFFSET_MODE_TRANSLATION = 1;
+
 	private final View	mView;
 
 	private int			mLayoutTop;
 	private int			mLayoutLeft;
 	private int			mOffsetTop;
 	private int			mOffsetLeft;
+	private boolean		mPendingInBatch;
+	private int			mOffsetMode = OFFSET_MODE_LAYOUT;
 
 	public ViewOffsetHelper(View view) {
 		mView = view;
 	}
 
 	private static void tickleInvalidationFlag(View view) {
-		final float x = ViewCompat.getTranslationX(view);
-		ViewCompat.setTranslationY(view, x + 1);
-		ViewCompat.setTranslationY(view, x);
+		final float y = ViewCompat.getTranslationY(view);
+		ViewCompat.setTranslationY(view, y + 1);
+		ViewCompat.setTranslationY(view, y);
 	}
 
 	public void onViewLayout() {
@@ -56,17 +78,66 @@ public class ViewOffsetHelper {
 	}
 
 	private void updateOffsets() {
+		// Manually invalidate the parent to make sure we get drawn pre-M
+		if (applyOffsets() && Build.VERSION.SDK_INT < 23) {
+			final ViewParent vp = mView.getParent();
+			if (vp instanceof View) {
+				tickleInvalidationFlag((View) vp);
+			}
+		}
+	}
+
+	/**
+	 * Move the view to its offsets and invalidate the view itself pre-M. The parent is left to the
+	 * caller
+	 *
+	 * @return true if the parent needs the manual invalidation pre-M
+	 */
+	private boolean applyOffsets() {
+		if (mOffsetMode == OFFSET_MODE_TRANSLATION) {
+			// Render property changes invalidate correctly on their own
+			ViewCompat.setTranslationY(mView, mOffsetTop);
+			ViewCompat.setTranslationX(mView, mOffsetLeft);
+			return false;
+		}
+
 		ViewCompat.offsetTopAndBottom(mView, mOffsetTop - (mView.getTop() - mLayoutTop));
 		ViewCompat.offsetLeftAndRight(mView, mOffsetLeft - (mView.getLeft() - mLayoutLeft));
 
-		// Manually invalidate the view and parent to make sure we get drawn pre-M
 		if (Build.VERSION.SDK_INT < 23) {
 			tickleInvalidationFlag(mView);
-			final ViewParent vp = mView.getParent();
-			if (vp instanceof View) {
-				tickleInvalidationFlag((View) vp);
-			}
 		}
+		return true;
+	}
+
+	/**
+	 * Set how the offsets are applied to the view. The current offsets are moved over to the new
+	 * mode, so the view stays where it is.
+	 *
+	 * @param mode
+	 *            {@link #OFFSET_MODE_LAYOUT} or {@link #OFFSET_MODE_TRANSLATION}
+	 */
+	public void setOffsetMode(int mode) {
+		if (mOffsetMode == mode) {
+			return;
+		}
+
+		// Take the view back to its plain layout position before switching
+		if (mOffsetMode == OFFSET_MODE_TRANSLATION) {
+			ViewCompat.setTranslationY(mView, 0);
+			ViewCompat.setTranslationX(mView, 0);
+		}
+		else if (mOffsetTop != 0 || mOffsetLeft != 0) {
+			ViewCompat.offsetTopAndBottom(mView, mLayoutTop - mView.getTop());
+			ViewCompat.offsetLeftAndRight(mView, mLayoutLeft - mView.getLeft());
+		}
+
+		mOffsetMode = mode;
+		updateOffsets();
+	}
+
+	public int getOffsetMode() {
+		return mOffsetMode;
 	}
 
 	/**
@@ -101,6 +172,50 @@ public class ViewOffsetHelper {
 		return false;
 	}
 
+	/**
+	 * Set the top and bottom offset for this {@link ViewOffsetHelper}'s view. If the batch is open,
+	 * the offset is only recorded and is applied when the batch is committed.
+	 *
+	 * @param offset
+	 *            the offset in px.
+	 * @param batch
+	 *            the batch collecting the offsets, may be null
+	 * @return true if the offset has changed
+	 */
+	public boolean setTopAndBottomOffset(int offset, Batch batch) {
+		if ((batch == null) || !batch.isOpen()) {
+			return setTopAndBottomOffset(offset);
+		}
+		if (mOffsetTop != offset) {
+			mOffsetTop = offset;
+			batch.add(this);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Set the left and right offset for this {@link ViewOffsetHelper}'s view. If the batch is open,
+	 * the offset is only recorded and is applied when the batch is committed.
+	 *
+	 * @param offset
+	 *            the offset in px.
+	 * @param batch
+	 *            the batch collecting the offsets, may be null
+	 * @return true if the offset has changed
+	 */
+	public boolean setLeftAndRightOffset(int offset, Batch batch) {
+		if ((batch == null) || !batch.isOpen()) {
+			return setLeftAndRightOffset(offset);
+		}
+		if (mOffsetLeft != offset) {
+			mOffsetLeft = offset;
+			batch.add(this);
+			return true;
+		}
+		return false;
+	}
+
 	public int getTopAndBottomOffset() {
 		return mOffsetTop;
 	}
@@ -108,4 +223,69 @@ public class ViewOffsetHelper {
 	public int getLeftAndRightOffset() {
 		return mOffsetLeft;
 	}
+
+	/**
+	 * Collects the offsets of several {@link ViewOffsetHelper}s sharing a parent. Between
+	 * {@link #begin()} and {@link #commit()} the offsets are only recorded. The commit moves every
+	 * changed view once and invalidates the parent once, instead of once per view and per offset.
+	 */
+	public static class Batch {
+
+		private final View							mParent;
+		private final ArrayList<ViewOffsetHelper>	mPending = new ArrayList<>();
+		private boolean								mOpen;
+
+		/**
+		 * @param parent
+		 *            the common parent of the views, invalidated once per commit
+		 */
+		public Batch(View parent) {
+			mParent = parent;
+		}
+
+		/**
+		 * Start recording offsets
+		 */
+		public void begin() {
+			mOpen = true;
+		}
+
+		/**
+		 * Apply all the recorded offsets and invalidate the parent once
+		 *
+		 * @return the number of views that were moved
+		 */
+		public int commit() {
+			mOpen = false;
+			final int count = mPending.size();
+			if (count == 0) {
+				return 0;
+			}
+
+			boolean invalidateParent = false;
+			for (int i = 0; i < count; i++) {
+				final ViewOffsetHelper helper = mPending.get(i);
+				helper.mPendingInBatch = false;
+				invalidateParent |= helper.applyOffsets();
+			}
+			mPending.clear();
+
+			// Manually invalidate the parent to make sure we get drawn pre-M
+			if (invalidateParent && Build.VERSION.SDK_INT < 23) {
+				tickleInvalidationFlag(mParent);
+			}
+			return count;
+		}
+
+		public boolean isOpen() {
+			return mOpen;
+		}
+
+		void add(ViewOffsetHelper helper) {
+			if (!helper.mPendingInBatch) {
+				helper.mPendingInBatch = true;
+				mPending.add(helper);
+			}
+		}
+	}
 }
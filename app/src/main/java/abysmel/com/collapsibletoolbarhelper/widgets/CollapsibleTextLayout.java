@@ -6,11 +6,11 @@ import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Rect;
+import android.graphics.RectF;
 import android.graphics.Typeface;
 import android.support.annotation.FloatRange;
 import android.support.v4.content.ContextCompat;
 import android.support.v4.view.ViewCompat;
-import android.text.Layout;
 import android.text.Spannable;
 import android.text.SpannableStringBuilder;
 import android.text.Spanned;
@@ -20,11 +20,16 @@ import android.text.TextUtils;
 import android.util.AttributeSet;
 import android.util.DisplayMetrics;
 import android.util.TypedValue;
-import android.view.animation.DecelerateInterpolator;
-import android.view.animation.Interpolator;
 import android.widget.FrameLayout;
 
 import abysmel.com.collapsibletoolbarhelper.R;
+import abysmel.com.collapsibletoolbarhelper.helpers.TextFitCache;
+import abysmel.com.collapsibletoolbarhelper.helpers.TextInterpolation;
+import abysmel.com.collapsibletoolbarhelper.helpers.TextLayoutCache;
+import abysmel.com.collapsibletoolbarhelper.helpers.TitleSegments;
+import abysmel.com.collapsibletoolbarhelper.helpers.TitleTexture;
+import abysmel.com.collapsibletoolbarhelper.helpers.TextSizeFitter;
+import abysmel.com.collapsibletoolbarhelper.helpers.Tracing;
 
 /**
  * Created by Melvin Lobo on 11/21/2015.
@@ -36,6 +41,20 @@ public class CollapsibleTextLayout extends FrameLayout {
 	// /////////////////////////////////////// CLASS MEMBERS ////////////////////////////////////////
 	private static final int		COLLAPSED_TEXT_SIZE		= 32;
 	private static final int		EXPANDED_TEXT_SIZE		= 62;
+	private static final int		TEXT_FIT_CACHE_SIZE		= 64;
+	private static final float		TEXT_FIT_PRECISION		= 0.5f;
+
+	/**
+	 * The expanded text sizes worked out so far, shared by all the layouts so that a title bound again
+	 * (in a list header, or after a configuration change) does not search again
+	 */
+	private static final TextFitCache sTextFitCache		= new TextFitCache(TEXT_FIT_CACHE_SIZE);
+
+	/**
+	 * The measurer of {@link #getSingleLineTextSize}, pointed at the paint of each call
+	 */
+	private static final PaintMeasurer sSingleLineMeasurer = new PaintMeasurer(null, null, null);
+
 	private final Rect				mExpandedBounds;
 	private final Rect				mCollapsedBounds;
 	private float					mfCollapsedTextSize		= 0.0f;
@@ -45,11 +64,14 @@ public class CollapsibleTextLayout extends FrameLayout {
 	private int						mCollapsedTextColor		= Color.WHITE;
 	private CharSequence			msText					= "StoreTools";
 	private SpannableStringBuilder	msDisplayText;
+	private String					msFitText				= "";
+	private PaintMeasurer			mFitMeasurer			= null;
+	private int						mnTextFitStrategy		= TextSizeFitter.STRATEGY_BINARY_SEARCH;
 	private TextPaint				mTextPaint;
 	private int						mnCalculatedWithWidth	= 0;
 	private int						mnCalculatedWithHeight	= 0;
 	private StaticLayout			mStaticMeasuringLayout	= null;
-	private StaticLayout			mStaticSpannableLayout	= null;
+	private final TextLayoutCache	mTextLayoutCache		= new TextLayoutCache();
 	private float					mExpandedFraction		= 0.0f;
 	private float					mExpandedDrawY			= 0.0f;
 	private float					mCollapsedDrawY			= 0.0f;
@@ -65,9 +87,12 @@ public class CollapsibleTextLayout extends FrameLayout {
 	private Typeface				mSecondaryTypeface		= null;
 	private boolean					mbShouldDrawTitle		= false;
 	private boolean					mbDrawSpannable			= false;
-	private boolean					mbIsMultifacetedString	= false;
-	private int						mnSplitStringAtPosition = 0;
-	private Interpolator 			mSizeInterpolator 		= null;
+	private final TitleSegments		mTitleSegments			= new TitleSegments();
+	private boolean					mbTitleSegmentsChanged	= false;
+	private boolean					mbUseTextureWhileScaling	= false;
+	private final TitleTexture		mTitleTexture			= new TitleTexture();
+	private final RectF				mTextureBounds			= new RectF();
+	private final Rect				mGlyphBounds			= new Rect();
 
 	// /////////////////////////////////////// CLASS METHODS ////////////////////////////////////////
 
@@ -120,9 +145,6 @@ public class CollapsibleTextLayout extends FrameLayout {
 		// Initialize the bounds
 		mCollapsedBounds = new Rect();
 		mExpandedBounds = new Rect();
-
-		//Initialize the interpolator
-		mSizeInterpolator = new DecelerateInterpolator();
 	}
 
 	/**
@@ -141,6 +163,7 @@ public class CollapsibleTextLayout extends FrameLayout {
 
 			msText = a.getString(R.styleable.CollapsibleTextLayout_textToShow);
 			msDisplayText = new SpannableStringBuilder(msText);
+			msFitText = msDisplayText.toString();
 			mExpandedTextColor = a.getColor(R.styleable.CollapsibleTextLayout_expandedTextColor, ContextCompat.getColor(context, android.R.color.white));
 			mCollapsedTextColor = a.getColor(R.styleable.CollapsibleTextLayout_collapsedTextColor, ContextCompat.getColor(context, android.R.color.white));
 			String typeFace = a.getString(R.styleable.CollapsibleTextLayout_typefaceFamilyPrimary);
@@ -150,8 +173,14 @@ public class CollapsibleTextLayout extends FrameLayout {
 			mfCollapsedTextSize = a.getDimension(R.styleable.CollapsibleTextLayout_collapsedTextSize, d2x(COLLAPSED_TEXT_SIZE));
 			mfMaxExpandedTextSize = a.getDimension(R.styleable.CollapsibleTextLayout_maxExpandedTextSize, d2x(EXPANDED_TEXT_SIZE));
 			mfExpandedTextSize = a.getDimension(R.styleable.CollapsibleTextLayout_expandedTextSize, d2x(EXPANDED_TEXT_SIZE));
-			mbIsMultifacetedString = a.getBoolean(R.styleable.CollapsibleTextLayout_isMultiFaceted, false);
-			mnSplitStringAtPosition = a.getInteger(R.styleable.CollapsibleTextLayout_typefaceSplitPosition, 0);
+			mbUseTextureWhileScaling = a.getBoolean(R.styleable.CollapsibleTextLayout_useTextureWhileScaling, false);
+
+			// A multi faceted title is two segments: the primary typeface up to the split and the secondary one after.
+			// The first one follows the typeface of the paint, which starts as the primary, so that setTypeface() changes it
+			if (a.getBoolean(R.styleable.CollapsibleTextLayout_isMultiFaceted, false)) {
+				mTitleSegments.add(a.getInteger(R.styleable.CollapsibleTextLayout_typefaceSplitPosition, 0), null, 1.0f);
+				mTitleSegments.add(Integer.MAX_VALUE, mSecondaryTypeface, 1.0f);
+			}
 
 			//Initialize Paint values
 			mTextPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
@@ -165,33 +194,16 @@ public class CollapsibleTextLayout extends FrameLayout {
 	}
 
 	/**
-	 * Recursive binary search to find the best size for the text.
-	 *
-	 * Adapted from https://github.com/grantland/android-autofittextview
+	 * Binary search to find the best size for the text, without the cache. Check {@link TextSizeFitter}
 	 *
 	 * @author Melvin Lobo
 	 */
 	public static float getSingleLineTextSize(String text, TextPaint paint, float targetWidth, float low, float high, float precision,
 			DisplayMetrics metrics) {
-
-		// Find the mid
-		final float mid = (low + high) / 2.0f;
-
-		// Get the maximum text width for the Mid
-		paint.setTextSize(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_PX, mid, metrics));
-		final float maxLineWidth = paint.measureText(text);
-
-		// If the value is not close to precision, based on if its greater than or less than the target width,
-		// we move to either side of the scle divided by the mid and repeat the process again
-		if ((high - low) < precision) {
-			return low;
-		} else if (maxLineWidth > targetWidth) {
-			return getSingleLineTextSize(text, paint, targetWidth, low, mid, precision, metrics);
-		} else if (maxLineWidth < targetWidth) {
-			return getSingleLineTextSize(text, paint, targetWidth, mid, high, precision, metrics);
-		} else {
-			return mid;
-		}
+		sSingleLineMeasurer.set(paint, metrics, null);
+		final float fSize = TextSizeFitter.fitSingleLine(text, sSingleLineMeasurer, targetWidth, low, high, precision);
+		sSingleLineMeasurer.set(null, null, null);
+		return fSize;
 	}
 
 	/**
@@ -204,15 +216,12 @@ public class CollapsibleTextLayout extends FrameLayout {
 	 *            The end value
 	 * @param fraction
 	 *            The fraction to be used for calculation
-	 * @return The interpolated value between the start and the end based on the fraction
+	 * @return The interpolated value between the start and the end based on the decelerated fraction
 	 *
 	 * @author Melvin Lobo
 	 */
 	private float interpolate(float startValue, float endValue, float fraction) {
-		if(mSizeInterpolator != null)
-			fraction = mSizeInterpolator.getInterpolation(fraction);
-
-		return (startValue + (fraction * (endValue - startValue)));
+		return TextInterpolation.lerp(startValue, endValue, TextInterpolation.decelerate(fraction));
 	}
 
 	/**
@@ -256,12 +265,7 @@ public class CollapsibleTextLayout extends FrameLayout {
 	 *
 	 */
 	private static int blendColors(int color1, int color2, float ratio) {
-		final float inverseRatio = 1f - ratio;
-		float a = (Color.alpha(color1) * inverseRatio) + (Color.alpha(color2) * ratio);
-		float r = (Color.red(color1) * inverseRatio) + (Color.red(color2) * ratio);
-		float g = (Color.green(color1) * inverseRatio) + (Color.green(color2) * ratio);
-		float b = (Color.blue(color1) * inverseRatio) + (Color.blue(color2) * ratio);
-		return Color.argb((int) a, (int) r, (int) g, (int) b);
+		return TextInterpolation.blendColors(color1, color2, ratio);
 	}
 
 	/**
@@ -275,6 +279,9 @@ public class CollapsibleTextLayout extends FrameLayout {
 	public void setText(CharSequence sText) {
 		msText = sText;
 		msDisplayText = new SpannableStringBuilder(msText);
+		msFitText = msDisplayText.toString();
+		mTextLayoutCache.invalidate();
+		mTitleTexture.invalidate();
 	}
 
 	/**
@@ -442,14 +449,26 @@ public class CollapsibleTextLayout extends FrameLayout {
 		}
 
 		// Need to draw text
-		if (mTextToDraw == null || updateDrawText) {
+		if (mTextToDraw == null || updateDrawText || mbTitleSegmentsChanged) {
 			mTextPaint.setTextSize(mCurrentTextSize);
 
-			// If we don't currently have text to draw, or the text size has changed, ellipsize...
-			final CharSequence title = TextUtils.ellipsize(msText, mTextPaint, availableWidth, TextUtils.TruncateAt.END);
+			// If we don't currently have text to draw, or the text size has changed, ellipsize. A title in
+			// segments is measured segment by segment, in the typeface and size each one is drawn in
+			final CharSequence title = (mTitleSegments.size() > 0) ?
+					mTitleSegments.ellipsize(msText, mTextPaint, mCurrentTextSize, availableWidth) :
+					TextUtils.ellipsize(msText, mTextPaint, availableWidth, TextUtils.TruncateAt.END);
 			if (!TextUtils.equals(title, mTextToDraw)) {
 				mTextToDraw = title;
 			}
+			mTitleTexture.invalidate();
+		}
+
+		// Work out the segments of the title once per text or size, not on every frame
+		if ((updateDrawText || mbTitleSegmentsChanged) && (mTitleSegments.size() > 0)) {
+			mTextPaint.setTextSize(mCurrentTextSize);
+			mTitleSegments.prepare(mTextToDraw, mTextPaint, mCurrentTextSize);
+			mbTitleSegmentsChanged = false;
+			mTitleTexture.invalidate();
 		}
 	}
 
@@ -489,43 +508,98 @@ public class CollapsibleTextLayout extends FrameLayout {
 			// Update the TextPaint to the current text size
 			mTextPaint.setTextSize(mCurrentTextSize);
 
-			if (mScale != 1f) {
+			// Between the sizes, the title can be scaled from a texture instead of being rasterized again.
+			// At either size, it is drawn as text
+			final boolean bDrawTexture = (mScale != 1f) && mbUseTextureWhileScaling && ensureTitleTexture();
+
+			if ((mScale != 1f) && !bDrawTexture) {
 				canvas.scale(mScale, mScale, x, y);
 			}
 
 			//Draw the text or Spannable, depending on which has been initialized
 			//canvas.drawText(mTextToDraw, 0, mTextToDraw.length(), x, y, mTextPaint);
-			if(!mbDrawSpannable) {
-				if(!mbIsMultifacetedString) {
+			if(bDrawTexture) {
+				mTitleTexture.draw(canvas, x, y, mScale, mTextPaint.getColor());
+			}
+			else if(!mbDrawSpannable) {
+				if(mTitleSegments.size() == 0) {
 					canvas.drawText(mTextToDraw, 0, mTextToDraw.length(), x, y, mTextPaint);
 				}
 				else {
-					// Split the string
-					String part1 = mTextToDraw.toString().substring(0, mnSplitStringAtPosition);
-					String part2 = mTextToDraw.toString().substring(mnSplitStringAtPosition, mTextToDraw.length());
-					// Draw first part
-					canvas.drawText(part1, 0, part1.length(), x, y, mTextPaint);
-
-					// Get the X Offset to move by
-					Rect r = new Rect();
-					mTextPaint.getTextBounds(part1, 0, part1.length(), r);
-					float offset = r.width();
-
-					// Use the new TextPaint with new typeFace
-					TextPaint p2p = new TextPaint(mTextPaint);
-					p2p.setTypeface(mSecondaryTypeface);
-					canvas.drawText(part2, 0, part2.length(), x + offset, y, p2p);
+					// Each segment in its own typeface, color and size, at the offsets prepared with the text
+					mTitleSegments.draw(canvas, mTextToDraw, x, y, mTextPaint.getColor());
 				}
 			}
 			else {
-				mStaticSpannableLayout = new StaticLayout(msDisplayText, mTextPaint, canvas.getWidth(), Layout.Alignment.ALIGN_NORMAL, 1.0f, 0.0f, false);
-				mStaticSpannableLayout.draw(canvas);
-				mStaticMeasuringLayout = null;
+				// Laid out once per size and width, not on every frame
+				mTextLayoutCache.get(msDisplayText, mTextPaint, canvas.getWidth()).draw(canvas);
 			}
 		}
 		canvas.restoreToCount(saveCount);
 	}
 
+	/**
+	 * Render the title at the current text size into the texture, if it has changed since it was last
+	 * rendered. The texture only holds the coverage of the glyphs, so a title laid out with spans or with
+	 * segments in their own colors is always drawn as text
+	 *
+	 * @return True if the title can be drawn from the texture, false otherwise
+	 *
+	 * @author Melvin Lobo
+	 */
+	private boolean ensureTitleTexture() {
+		if (mbDrawSpannable || mTitleSegments.hasOwnColors()) {
+			return false;
+		}
+		if (mTitleTexture.isValid()) {
+			return true;
+		}
+
+		// The texture has to hold every pixel of the glyphs: the tallest segment, and any glyph which
+		// reaches before the start of the title
+		final boolean bSegmented = (mTitleSegments.size() > 0);
+		if (bSegmented) {
+			mTitleSegments.getBounds(mTextToDraw, mTextureBounds);
+		}
+		else {
+			final String sText = mTextToDraw.toString();
+			mTextPaint.getTextBounds(sText, 0, sText.length(), mGlyphBounds);
+			mTextureBounds.set(Math.min(0, mGlyphBounds.left), Math.min(mTextPaint.ascent(), mGlyphBounds.top),
+					Math.max(mTextPaint.measureText(sText), mGlyphBounds.right), Math.max(mTextPaint.descent(), mGlyphBounds.bottom));
+		}
+		final float fLeft = -(float) Math.floor(mTextureBounds.left);
+		final float fBaseline = -(float) Math.floor(mTextureBounds.top);
+
+		final Canvas textureCanvas = mTitleTexture.begin((int) Math.ceil(mTextureBounds.right + fLeft),
+				(int) Math.ceil(mTextureBounds.bottom + fBaseline), fLeft, fBaseline);
+		if (textureCanvas == null) {
+			return false;
+		}
+
+		// Only the alpha is kept, the color is applied when the texture is drawn
+		if (bSegmented) {
+			mTitleSegments.draw(textureCanvas, mTextToDraw, fLeft, fBaseline, Color.WHITE);
+		}
+		else {
+			final int nColor = mTextPaint.getColor();
+			mTextPaint.setColor(Color.WHITE);
+			textureCanvas.drawText(mTextToDraw, 0, mTextToDraw.length(), fLeft, fBaseline, mTextPaint);
+			mTextPaint.setColor(nColor);
+		}
+		return true;
+	}
+
+	/**
+	 * Release the texture of the title. It is rendered again if the title scales after being attached again
+	 *
+	 * @author Melvin Lobo
+	 */
+	@Override
+	protected void onDetachedFromWindow() {
+		super.onDetachedFromWindow();
+		mTitleTexture.release();
+	}
+
 	/**
 	 * Try and get the size for the expanded bounds. We need the height though, not only for the expanded font, but for vertical movement of the
 	 * {@code mText}. We also keep a check for future reference so that we don't recalculate for the same width and height due to multiple measure
@@ -548,8 +622,7 @@ public class CollapsibleTextLayout extends FrameLayout {
 
 		if ((mnCalculatedWithWidth != width) || (mnCalculatedWithHeight != height)) {
 			// Calculate the size required for the expanded size (If not the exact, then a precision will do)
-			mfExpandedTextSize = getSingleLineTextSize(msDisplayText.toString(), mTextPaint, width, mfCollapsedTextSize, mfMaxExpandedTextSize, 0.5f,
-					getResources().getDisplayMetrics());
+			mfExpandedTextSize = fitExpandedTextSize(width);
 
 			ensureStaticLayout(width, true);
 
@@ -562,6 +635,43 @@ public class CollapsibleTextLayout extends FrameLayout {
 		setMeasuredDimension(mnCalculatedWithWidth, mnCalculatedWithHeight);
 	}
 
+	/**
+	 * Find the largest text size, up to the maximum expanded size, at which the text fits the width on a
+	 * single line. The fit comes from the shared cache when the same text has been fit to the same width
+	 * in the same typeface before. A title in segments is measured segment by segment, and is not cached
+	 * as its fit depends on the segments of this layout
+	 *
+	 * @param width
+	 *            The width to fit the text into
+	 * @return The expanded text size
+	 *
+	 * @author Melvin Lobo
+	 */
+	private float fitExpandedTextSize(int width) {
+		Tracing.beginSection(Tracing.SECTION_TEXT_FIT);
+		if (mFitMeasurer == null) {
+			mFitMeasurer = new PaintMeasurer(mTextPaint, getResources().getDisplayMetrics(), mTitleSegments);
+		}
+		final float fSize = (mTitleSegments.size() > 0) ?
+				TextSizeFitter.fit(mnTextFitStrategy, msFitText, mFitMeasurer, width, mfCollapsedTextSize,
+						mfMaxExpandedTextSize, TEXT_FIT_PRECISION) :
+				sTextFitCache.fitSingleLine(msFitText, mTextPaint.getTypeface(), mFitMeasurer, width,
+						mfCollapsedTextSize, mfMaxExpandedTextSize, TEXT_FIT_PRECISION, mnTextFitStrategy);
+		Tracing.endSection(Tracing.SECTION_TEXT_FIT);
+		return fSize;
+	}
+
+	/**
+	 * Get the cache of expanded text sizes shared by all the layouts, to read its hit rate
+	 *
+	 * @return The cache
+	 *
+	 * @author Melvin Lobo
+	 */
+	public static TextFitCache getTextFitCache() {
+		return sTextFitCache;
+	}
+
 	/**
 	 * Get the optimum desired values based on the Mode recommendation during onMeasure
 	 *
@@ -593,7 +703,8 @@ public class CollapsibleTextLayout extends FrameLayout {
 	}
 
 	/**
-	 * Ensure that the Static layout is created with the given value
+	 * Ensure that the Static layout is created with the given value. The layout comes from the layout cache
+	 * when the text has been laid out at that size and width before
 	 *
 	 * @param width
 	 *            The width constraint
@@ -603,11 +714,8 @@ public class CollapsibleTextLayout extends FrameLayout {
 	 * @author Melvin Lobo
 	 */
 	private void ensureStaticLayout(int width, boolean bUseExpandedSize) {
-		if (mStaticMeasuringLayout != null)
-			mStaticMeasuringLayout = null;
-
 		mTextPaint.setTextSize((bUseExpandedSize) ? mfExpandedTextSize : mfCollapsedTextSize);
-		mStaticMeasuringLayout = new StaticLayout(msDisplayText, mTextPaint, width, Layout.Alignment.ALIGN_NORMAL, 1.0f, 0.0f, false);
+		mStaticMeasuringLayout = mTextLayoutCache.get(msDisplayText, mTextPaint, width);
 	}
 
     /**
@@ -636,8 +744,7 @@ public class CollapsibleTextLayout extends FrameLayout {
 		if (mfExpandedTextSize == 0.0f) {
 			// Expanded bounds: We already calculated it. We keep a bottom gravity
 			// Calculate the size required for the expanded size (If not the exact, then a precision will do)
-			mfExpandedTextSize = getSingleLineTextSize(msDisplayText.toString(), mTextPaint, getMeasuredWidth(), mfCollapsedTextSize,
-					mfMaxExpandedTextSize, 0.5f, getResources().getDisplayMetrics());
+			mfExpandedTextSize = fitExpandedTextSize(getMeasuredWidth());
 		}
 
 		// Collapsed bounds: Create the static layout with the collapsed text size and use the calculated
@@ -687,10 +794,66 @@ public class CollapsibleTextLayout extends FrameLayout {
 		}
 		if (mTextPaint.getTypeface() != typeface) {
 			mTextPaint.setTypeface(typeface);
+			mTextLayoutCache.invalidate();
+			mTitleTexture.invalidate();
+			mbTitleSegmentsChanged = true;
 			recalculate();
 		}
 	}
 
+	public boolean isUseTextureWhileScaling() {
+		return mbUseTextureWhileScaling;
+	}
+
+	/**
+	 * Draw the title from a bitmap rendered once at the expanded size while it scales between the collapsed
+	 * and expanded sizes, rather than rasterizing the glyphs on every frame. It is drawn as text again once
+	 * the fraction settles at either end. Check {@link TitleTexture}
+	 *
+	 * @author Melvin Lobo
+	 */
+	public void setUseTextureWhileScaling(boolean bUseTexture) {
+		if (mbUseTextureWhileScaling != bUseTexture) {
+			mbUseTextureWhileScaling = bUseTexture;
+			if (!bUseTexture) {
+				mTitleTexture.release();
+			}
+			invalidate();
+		}
+	}
+
+	/**
+	 * Get the texture the title is drawn from while it scales
+	 *
+	 * @return The texture
+	 *
+	 * @author Melvin Lobo
+	 */
+	public TitleTexture getTitleTexture() {
+		return mTitleTexture;
+	}
+
+	public int getTextFitStrategy() {
+		return mnTextFitStrategy;
+	}
+
+	/**
+	 * Set how the expanded text size is searched for, {@link TextSizeFitter#STRATEGY_BINARY_SEARCH} (the
+	 * default) or {@link TextSizeFitter#STRATEGY_ANALYTIC}, which measures the text far fewer times
+	 *
+	 * @author Melvin Lobo
+	 */
+	public void setTextFitStrategy(int nStrategy) {
+		if (mnTextFitStrategy != nStrategy) {
+			mnTextFitStrategy = nStrategy;
+
+			// Fit again on the next measure pass
+			mnCalculatedWithWidth = 0;
+			mnCalculatedWithHeight = 0;
+			requestLayout();
+		}
+	}
+
 	public float getCollapsedTextSize() {
 		return mfCollapsedTextSize;
 	}
@@ -698,6 +861,7 @@ public class CollapsibleTextLayout extends FrameLayout {
 	public void setCollapsedTextSize(float textSize) {
 		if (mfCollapsedTextSize != textSize) {
 			mfCollapsedTextSize = textSize;
+			mTextLayoutCache.invalidate();
 			recalculate();
 		}
 	}
@@ -709,6 +873,7 @@ public class CollapsibleTextLayout extends FrameLayout {
 	public void setExpandedTextSize(float textSize) {
 		if (mfExpandedTextSize != textSize) {
 			mfExpandedTextSize = textSize;
+			mTextLayoutCache.invalidate();
 			recalculate();
 		}
 	}
@@ -738,12 +903,115 @@ public class CollapsibleTextLayout extends FrameLayout {
 	public void setSpan(Spannable spannable) {
 		mbDrawSpannable = true;
 		msDisplayText.setSpan(spannable, 0, msDisplayText.length(), Spanned.SPAN_INCLUSIVE_INCLUSIVE);
+		mTextLayoutCache.invalidate();
 	}
 
 	public void clearSpan() {
 		mbDrawSpannable = false;
 		msDisplayText = null;
 		msDisplayText = new SpannableStringBuilder(msText);
+		mTextLayoutCache.invalidate();
+	}
+
+	/**
+	 * Add a segment to the title, after the ones added so far. The segment runs from the end of the
+	 * previous one to nEnd, and the last segment runs to the end of the title. Check {@link TitleSegments}
+	 *
+	 * @param nEnd
+	 *            The index in the title the segment ends at, exclusive
+	 * @param typeface
+	 *            The typeface of the segment, or null for the typeface of the title
+	 * @param nColor
+	 *            The color of the segment
+	 * @param bOwnColor
+	 *            True to draw the segment in nColor, false to use the color of the title
+	 * @param fSizeRatio
+	 *            The size of the segment as a ratio of the title size
+	 *
+	 * @author Melvin Lobo
+	 */
+	public void addTitleSegment(int nEnd, Typeface typeface, int nColor, boolean bOwnColor, float fSizeRatio) {
+		mTitleSegments.add(nEnd, typeface, nColor, bOwnColor, fSizeRatio);
+		mbTitleSegmentsChanged = true;
+		refitTitleSegments();
+	}
+
+	/**
+	 * Remove all the segments of the title, so that it is drawn in one piece again
+	 *
+	 * @author Melvin Lobo
+	 */
+	public void clearTitleSegments() {
+		mTitleSegments.clear();
+		mbTitleSegmentsChanged = true;
+		refitTitleSegments();
 	}
 
+	/**
+	 * The segments of the title change the width it takes, so fit the expanded size again on the next
+	 * measure pass, and ellipsize it again now
+	 *
+	 * @author Melvin Lobo
+	 */
+	private void refitTitleSegments() {
+		mnCalculatedWithWidth = 0;
+		mnCalculatedWithHeight = 0;
+		requestLayout();
+		recalculate();
+	}
+
+	/**
+	 * Get the cache of the layouts of the text, to read its hit count
+	 *
+	 * @return The cache
+	 *
+	 * @author Melvin Lobo
+	 */
+	public TextLayoutCache getTextLayoutCache() {
+		return mTextLayoutCache;
+	}
+
+	public float getScrollOffsetFraction() {
+		return mExpandedFraction;
+	}
+
+	public float getCurrentDrawX() {
+		return mCurrentDrawX;
+	}
+
+	public float getCurrentDrawY() {
+		return mCurrentDrawY;
+	}
+
+	/**
+	 * Measures the text with the paint of the layout, for the text size search. A title in segments is
+	 * measured as the sum of the advances of its segments
+	 *
+	 * @author Melvin Lobo
+	 */
+	private static class PaintMeasurer implements TextSizeFitter.Measurer {
+		private TextPaint mPaint;
+		private DisplayMetrics mMetrics;
+		private TitleSegments mSegments;
+
+		PaintMeasurer(TextPaint paint, DisplayMetrics metrics, TitleSegments segments) {
+			set(paint, metrics, segments);
+		}
+
+		void set(TextPaint paint, DisplayMetrics metrics, TitleSegments segments) {
+			mPaint = paint;
+			mMetrics = metrics;
+			mSegments = segments;
+		}
+
+		@Override
+		public float measureText(String text, float textSize) {
+			final float fSize = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_PX, textSize, mMetrics);
+			mPaint.setTextSize(fSize);
+			if ((mSegments != null) && (mSegments.size() > 0)) {
+				return mSegments.measure(text, mPaint, fSize);
+			}
+			return mPaint.measureText(text);
+		}
+	}
 }
@@ -4,12 +4,6 @@ import android.animation.ObjectAnimator;
 import android.animation.ValueAnimator;
 import android.content.Context;
 import android.content.res.TypedArray;
-import android.graphics.Color;
-import android.graphics.drawable.Drawable;
-import android.graphics.drawable.LayerDrawable;
-import android.graphics.drawable.ShapeDrawable;
-import android.graphics.drawable.shapes.RectShape;
-import android.os.Build;
 import android.support.annotation.IntDef;
 import android.support.design.widget.AppBarLayout;
 import android.support.percent.PercentRelativeLayout;
@@ -18,15 +12,26 @@ import android.support.v4.view.WindowInsetsCompat;
 import android.support.v4.view.animation.FastOutSlowInInterpolator;
 import android.util.AttributeSet;
 import android.util.TypedValue;
+import android.view.Choreographer;
+import android.view.Gravity;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.ViewParent;
+import android.view.animation.Interpolator;
 import android.widget.FrameLayout;
 
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 
 import abysmel.com.collapsibletoolbarhelper.R;
+import abysmel.com.collapsibletoolbarhelper.helpers.CollapseMetrics;
+import abysmel.com.collapsibletoolbarhelper.helpers.CollapseModel;
+import abysmel.com.collapsibletoolbarhelper.helpers.ElevationController;
+import abysmel.com.collapsibletoolbarhelper.helpers.LayoutRequestAuditor;
+import abysmel.com.collapsibletoolbarhelper.helpers.MeasureCacheTracker;
+import abysmel.com.collapsibletoolbarhelper.helpers.SinglePassLayoutEngine;
+import abysmel.com.collapsibletoolbarhelper.helpers.ScrollTrace;
+import abysmel.com.collapsibletoolbarhelper.helpers.Tracing;
 import abysmel.com.collapsibletoolbarhelper.helpers.ViewOffsetHelper;
 
 
@@ -43,9 +48,13 @@ public class CollapsibleToolbarHelper extends android.support.percent.PercentRel
 	 */
 	private static final int    ALPHA_ANIMATION_DURATION           = 600;
 	private static final int    DEFAULT_PADDING_SPACE_FOR_COLLAPSE = 10;
-	private static final String SHAPE_1_COLOR                      = "#10000000";
-	private static final String SHAPE_2_COLOR                      = "#13000000";
-	private static final String SHAPE_3_COLOR                      = "#20000000";
+	private static final int    DEFAULT_SHOW_HIDE_HYSTERESIS       = 4;
+	private static final int    DEFAULT_FADE_RANGE                 = 24;
+
+	/**
+	 * The interpolator for the alpha animations. It holds no state, so a single instance is shared
+	 */
+	private static final Interpolator ALPHA_INTERPOLATOR = new FastOutSlowInInterpolator();
 
 	/**
 	 * Store the inset based on the fitSystemWindows value. Although we do not draw a status bar scrim
@@ -57,7 +66,7 @@ public class CollapsibleToolbarHelper extends android.support.percent.PercentRel
 	 * The OnOffsetChangedListener to be passed on to AppBarLayout. We rely heavily on this listener
 	 * to make transitional changes to the children based on events sent by AppBarLayout
 	 */
-	private AppBarLayout.OnOffsetChangedListener mOnOffsetChangedListener;
+	private OffsetChangedListener mOnOffsetChangedListener;
 
 	/**
 	 * The minimum height that the control will collapse to. This is ideally the bottom of the
@@ -66,11 +75,118 @@ public class CollapsibleToolbarHelper extends android.support.percent.PercentRel
 	private float mfMinimumCollapsibleHeight = 0.0f;
 
 	/**
-	 * Store the AppBar Layout drawable to add an "Elevation" in pre lollipop devices
-	 * We place the background on a layer drawable to show an elevation. If the toolbar
-	 * expands, we replace the original drawable back
+	 * True if the minimum height is worked out from the children (the user has not provided one).
+	 * It is only worked out again when one of its inputs changes: a child added or removed (from the
+	 * hierarchy listener), or a collapse mode set or a child measured to a different height (or gone),
+	 * both noted in onMeasure. The measured heights of the last measure pass are kept to compare against,
+	 * so the layout pass only checks the dirty flag
+	 */
+	private boolean mbAutoMinimumHeight = true;
+	private boolean mbMinimumHeightDirty = true;
+	private int[]   mnMinimumHeightInputs = new int[0];
+	private int     mnMinimumHeightInputCount = 0;
+
+	/**
+	 * Listener for changes to the minimum collapse height, and the hierarchy listener set by the user,
+	 * which we chain to since we need the hierarchy changes ourselves
+	 */
+	private OnMinimumCollapseHeightChangedListener mMinimumHeightListener = null;
+	private OnHierarchyChangeListener mUserHierarchyChangeListener = null;
+
+	/**
+	 * Controls the "Elevation" of the AppBar Layout. On pre lollipop devices, it places the AppBar
+	 * background on a layer drawable to show an elevation, and puts the original drawable back when
+	 * the toolbar expands. The AppBar Layout is only touched when the pinned state flips
+	 */
+	private ElevationController mElevationController = null;
+
+	/**
+	 * Animate the elevation change of the AppBar Layout (Lollipop and above)
+	 */
+	private boolean mbAnimateElevation = false;
+
+	/**
+	 * Coalesce the offset updates of the AppBarLayout so that the children are moved at most once per
+	 * frame, and the number of events that were folded into an earlier one
+	 */
+	private boolean mbCoalesceOffsetUpdates = false;
+	private int     mnCoalescedOffsetEvents = 0;
+
+	/**
+	 * How the children are moved, either through their layout position or through their translation.
+	 * One of {@link ViewOffsetHelper#OFFSET_MODE_LAYOUT} or {@link ViewOffsetHelper#OFFSET_MODE_TRANSLATION}
+	 */
+	private int mnOffsetMode = ViewOffsetHelper.OFFSET_MODE_LAYOUT;
+
+	/**
+	 * The single pass layout engine, if enabled, and whether it measured the last pass. If it could
+	 * not (the children use rules it does not support), the PercentRelativeLayout does the job
+	 */
+	private SinglePassLayoutEngine mLayoutEngine = null;
+	private boolean mbLaidOutByEngine = false;
+
+	/**
+	 * Counts the measure cache hits and misses of the children when the PercentRelativeLayout
+	 * measures them
+	 */
+	private final MeasureCacheTracker mMeasureCacheTracker = new MeasureCacheTracker();
+
+	/**
+	 * The gravity of the layout, kept in step with the one of the RelativeLayout for the single pass
+	 * engine, as RelativeLayout only has a getter for it from API 24
+	 */
+	private int mnGravity = Gravity.START | Gravity.TOP;
+
+	/**
+	 * The padding space around the minimum height used for the show / hide trigger, converted to
+	 * pixels once so that the offset dispatch does not have to go through TypedValue
+	 */
+	private float mfCollapsePaddingSpace = 0.0f;
+
+	/**
+	 * The band (in pixels) on either side of the show / hide trigger height within which a child
+	 * keeps its current collapse state. This stops the alpha animations from thrashing when the
+	 * toolbar sits around the trigger height
 	 */
-	private Drawable mAppBarDrawable = null;
+	private int mnShowHideHysteresis = 0;
+
+	/**
+	 * The fade range (in pixels) used by {@link LayoutParams#ALPHA_MODE_SCRUB} children that have not
+	 * specified their own
+	 */
+	private int mnDefaultFadeRange = 0;
+
+	/**
+	 * The collapse plan. It is built once per layout pass: the views of the children are kept here,
+	 * and their geometry goes into the collapse model, which works out the offsets, alphas and text
+	 * fraction for each offset. The dispatch just applies what the model wrote
+	 */
+	private int                mnPlanCount          = 0;
+	private View[]             mPlanViews           = new View[0];
+	private ViewOffsetHelper[] mPlanHelpers         = new ViewOffsetHelper[0];
+	private CollapsibleTextLayout[] mPlanTextViews  = new CollapsibleTextLayout[0];   // Non null only for CollapsibleTextLayout children
+	private final CollapseModel mCollapseModel      = new CollapseModel();
+
+	/**
+	 * Collects the child offsets of one offset dispatch, so that they are applied together and this
+	 * layout is invalidated once per dispatch rather than once per child
+	 */
+	private final ViewOffsetHelper.Batch mOffsetBatch = new ViewOffsetHelper.Batch(this);
+
+	/**
+	 * Debug auditor which records the layout requests reaching this view (from itself or any child)
+	 */
+	private LayoutRequestAuditor mLayoutRequestAuditor = null;
+
+	/**
+	 * The frame cost metrics, if enabled
+	 */
+	private CollapseMetrics mMetrics = null;
+
+	/**
+	 * The trace the offset events are recorded into, if any
+	 */
+	private ScrollTrace mScrollTraceRecorder = null;
 
 	//////////////////////////////////// CLASS METHODS /////////////////////////////////////////////
 
@@ -134,26 +250,81 @@ public class CollapsibleToolbarHelper extends android.support.percent.PercentRel
 	private
 	void init(Context context, AttributeSet attrs) {
 
+		mnShowHideHysteresis = (int) d2x(DEFAULT_SHOW_HIDE_HYSTERESIS);
+		mnDefaultFadeRange = (int) d2x(DEFAULT_FADE_RANGE);
+
 		if (attrs != null) {
 			TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.CollapsibleToolbarHelper, 0, 0);
 
 			//Get the min height
 			mfMinimumCollapsibleHeight = a.getDimension(R.styleable.CollapsibleToolbarHelper_minCollapseHeight, 0.0f);
+			mbAutoMinimumHeight = (mfMinimumCollapsibleHeight == 0);
+
+			//Get the hysteresis around the show / hide trigger
+			mnShowHideHysteresis = a.getDimensionPixelSize(R.styleable.CollapsibleToolbarHelper_showHideHysteresis,
+					mnShowHideHysteresis);
+
+			//Check if the offset updates should be coalesced per frame
+			mbCoalesceOffsetUpdates = a.getBoolean(R.styleable.CollapsibleToolbarHelper_coalesceOffsetUpdates, false);
+
+			//Get the way the children are moved
+			mnOffsetMode = a.getInt(R.styleable.CollapsibleToolbarHelper_offsetMode, ViewOffsetHelper.OFFSET_MODE_LAYOUT);
+
+			//Check if the single pass layout engine should be used
+			if (a.getBoolean(R.styleable.CollapsibleToolbarHelper_singlePassLayout, false)) {
+				mLayoutEngine = new SinglePassLayoutEngine();
+			}
+
+			//RelativeLayout reads its gravity without going through setGravity, so read it here as well
+			mnGravity = resolveGravity(a.getInt(R.styleable.CollapsibleToolbarHelper_android_gravity, mnGravity));
 
 			a.recycle();
 		}
 
+		mfCollapsePaddingSpace = d2x(DEFAULT_PADDING_SPACE_FOR_COLLAPSE);
+
 		// Notify the parent that we will be handling the onDraw function
 		setWillNotDraw(false);
 
+		// Children coming and going change the minimum height. Pass the events on to the user's listener
+		super.setOnHierarchyChangeListener(new OnHierarchyChangeListener() {
+			@Override
+			public void onChildViewAdded(View parent, View child) {
+				mbMinimumHeightDirty = true;
+				if (child.getLayoutParams() instanceof LayoutParams) {
+					((LayoutParams) child.getLayoutParams()).mParent = CollapsibleToolbarHelper.this;
+				}
+				if (mUserHierarchyChangeListener != null) {
+					mUserHierarchyChangeListener.onChildViewAdded(parent, child);
+				}
+			}
+
+			@Override
+			public void onChildViewRemoved(View parent, View child) {
+				mbMinimumHeightDirty = true;
+				if (child.getLayoutParams() instanceof LayoutParams) {
+					((LayoutParams) child.getLayoutParams()).mParent = null;
+				}
+				if (mUserHierarchyChangeListener != null) {
+					mUserHierarchyChangeListener.onChildViewRemoved(parent, child);
+				}
+			}
+		});
+
 		// Store the insets if the hierarchy has a fitSystemWindows
 		ViewCompat.setOnApplyWindowInsetsListener(this, new android.support.v4.view.OnApplyWindowInsetsListener() {
 
 			@Override
 			public
 			WindowInsetsCompat onApplyWindowInsets(View v, WindowInsetsCompat insets) {
+				// Only the top inset goes into the layout, so only ask for a layout if that has changed.
+				// The insets are dispatched again on every frame of some transitions
+				final boolean bChanged = (mSystemInsets == null) ||
+						(mSystemInsets.getSystemWindowInsetTop() != insets.getSystemWindowInsetTop());
 				mSystemInsets = insets;
-				requestLayout();
+				if (bChanged) {
+					requestLayout();
+				}
 				return insets.consumeSystemWindowInsets();
 			}
 		});
@@ -177,27 +348,70 @@ public class CollapsibleToolbarHelper extends android.support.percent.PercentRel
 			((AppBarLayout) parent).addOnOffsetChangedListener(mOnOffsetChangedListener);
 
 			//Store the background to show an elevation on pre lollipop devices
-			mAppBarDrawable = ((AppBarLayout) parent).getBackground();
+			mElevationController = new ElevationController((AppBarLayout) parent);
+			mElevationController.setPinnedElevation(((AppBarLayout) parent).getTargetElevation());
+			mElevationController.setAnimate(mbAnimateElevation);
 		}
 	}
 
-	/**
-	 * On Detached from window. Remove the listener
-	 *
-	 * @author Melvin Lobo
-	 */
-	@Override
-	protected
-	void onDetachedFromWindow() {
-		// Remove our OnOffsetChangedListener if possible and it exists
-		final ViewParent parent = getParent();
-		if (mOnOffsetChangedListener != null && parent instanceof AppBarLayout) {
-			((AppBarLayout) parent).removeOnOffsetChangedListener(mOnOffsetChangedListener);
+    /**
+     * On Detached from window. Remove the listener
+     *
+     * @author Melvin Lobo
+     */
+    @Override
+    protected
+    void onDetachedFromWindow() {
+        // Remove our OnOffsetChangedListener if possible and it exists
+        final ViewParent parent = getParent();
+        if (mOnOffsetChangedListener != null && parent instanceof AppBarLayout) {
+            ((AppBarLayout) parent).removeOnOffsetChangedListener(mOnOffsetChangedListener);
+        }
+
+        // A frame that runs after we are gone has nothing to move
+        if (mOnOffsetChangedListener != null) {
+            mOnOffsetChangedListener.cancelPendingFrame();
+        }
+
+        // Put the AppBar Layout back the way we found it
+        if (mElevationController != null) {
+            mElevationController.release();
+            mElevationController = null;
         }
 
         super.onDetachedFromWindow();
     }
 
+    /**
+     * Measure the children with the single pass layout engine if it is enabled and can handle them,
+     * and with the PercentRelativeLayout otherwise
+     *
+     * @param widthMeasureSpec
+     *      The width measure spec
+     * @param heightMeasureSpec
+     *      The height measure spec
+     *
+     * @author Melvin Lobo
+     */
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        mbLaidOutByEngine = (mLayoutEngine != null) && mLayoutEngine.measure(this, mnGravity, widthMeasureSpec, heightMeasureSpec);
+        if (mbLaidOutByEngine) {
+            setMeasuredDimension(mLayoutEngine.getMeasuredWidth(), mLayoutEngine.getMeasuredHeight());
+            mMeasureCacheTracker.forgetLastPass();
+        }
+        else {
+            mMeasureCacheTracker.onMeasureStart(this, widthMeasureSpec, heightMeasureSpec);
+            super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+            mMeasureCacheTracker.onMeasureEnd(this);
+        }
+
+        // The children have just been measured, so this is where a change of their height shows
+        if (mbAutoMinimumHeight) {
+            checkMinimumHeightInputs();
+        }
+    }
+
     /**
      * Layout the children by taking care that their rects do not overlap the parent insets if
      * fistSystemWindows is true
@@ -209,10 +423,16 @@ public class CollapsibleToolbarHelper extends android.support.percent.PercentRel
      */
     @Override
     protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
-        super.onLayout(changed, left, top, right, bottom);
+        Tracing.beginSection(Tracing.SECTION_LAYOUT);
+        final long lStartNanos = (mMetrics != null) ? System.nanoTime() : 0;
+
+        if (mbLaidOutByEngine) {
+            mLayoutEngine.layout(this);
+        }
+        else {
+            super.onLayout(changed, left, top, right, bottom);
+        }
 
-        int nBiggestChildHeight = 0;
-        View biggestChild = null;
         for (int nCtr = 0, count = getChildCount(); nCtr < count; nCtr++) {
             final View child = getChildAt(nCtr);
 
@@ -224,319 +444,850 @@ public class CollapsibleToolbarHelper extends android.support.percent.PercentRel
                 }
             }
 
-            //Calculate only once, if the user has not provided the minimum height
-            if(mfMinimumCollapsibleHeight == 0) {
-                // Check for the child with the biggest height which is not hiding on scroll. We want to collapse to that height
-                // We exclude CollapsingText if it's present as it can collapse to a smaller height
-                // which would give a false representation now
-                CollapsibleToolbarHelper.LayoutParams params = (LayoutParams) child.getLayoutParams();
-
-                if ((params.getCollapseMode() != LayoutParams.PARALLAX_ON_SCROLL) &&
-                        (params.getCollapseMode() != LayoutParams.HIDE_ON_COLLAPSE) &&
-                        (child.getMeasuredHeight() > nBiggestChildHeight) &&
-                        !(child instanceof CollapsibleTextLayout)) {
-                    nBiggestChildHeight = child.getMeasuredHeight();
-                    biggestChild = child;
+            final ViewOffsetHelper offsetHelper = getViewOffsetHelper(child);
+            offsetHelper.onViewLayout();
+            offsetHelper.setOffsetMode(mnOffsetMode);
+        }
+
+        // Work out the minimum height from the children if the user has not provided us with one. Only
+        // if one of its inputs has changed since the last time
+        if (mbAutoMinimumHeight && mbMinimumHeightDirty) {
+            updateMinimumCollapsibleHeight();
+            mbMinimumHeightDirty = false;
+        }
+
+        // Set the minimum height so that the AppBarLayout does not collapse beyond that. setMinimumHeight
+        // always asks for a layout, so only call it when the height actually changes
+        final int nMinimumHeight = getMinimumCollapsibleHeight();
+        if (ViewCompat.getMinimumHeight(this) != nMinimumHeight) {
+            setMinimumHeight(nMinimumHeight);
+        }
+
+        buildCollapsePlan();
+
+        if (mMetrics != null) {
+            mMetrics.recordLayout(System.nanoTime() - lStartNanos);
+        }
+        Tracing.endSection(Tracing.SECTION_LAYOUT);
+    }
+
+    /**
+     * Mark the minimum height dirty if a collapse mode was set or a child was measured to a different
+     * height (or gone) since the last measure pass. This only compares a few ints per child, and the
+     * layout pass that follows does not look at the children unless something changed
+     *
+     * @author Melvin Lobo
+     */
+    private void checkMinimumHeightInputs() {
+        final int count = getChildCount();
+        if (mnMinimumHeightInputs.length < count) {
+            mnMinimumHeightInputs = new int[count];
+            mbMinimumHeightDirty = true;
+        }
+        if (count != mnMinimumHeightInputCount) {
+            mnMinimumHeightInputCount = count;
+            mbMinimumHeightDirty = true;
+        }
+
+        for (int nCtr = 0; nCtr < count; nCtr++) {
+            final View child = getChildAt(nCtr);
+            final LayoutParams params = (LayoutParams) child.getLayoutParams();
+            if (params.mbCollapseModeChanged) {
+                params.mbCollapseModeChanged = false;
+                mbMinimumHeightDirty = true;
+            }
+
+            final int nInput = (child.getVisibility() == View.GONE) ? -1 : child.getMeasuredHeight();
+            if (mnMinimumHeightInputs[nCtr] != nInput) {
+                mnMinimumHeightInputs[nCtr] = nInput;
+                mbMinimumHeightDirty = true;
+            }
+        }
+    }
+
+    /**
+     * Work out the minimum height from the children, and let the listener know if it has changed
+     *
+     * @author Melvin Lobo
+     */
+    private void updateMinimumCollapsibleHeight() {
+        int nBiggestChildHeight = 0;
+        View biggestChild = null;
+        for (int nCtr = 0, count = getChildCount(); nCtr < count; nCtr++) {
+            final View child = getChildAt(nCtr);
+
+            // Check for the child with the biggest height which is not hiding on scroll. We want to collapse to that height
+            // We exclude CollapsingText if it's present as it can collapse to a smaller height
+            // which would give a false representation now
+            CollapsibleToolbarHelper.LayoutParams params = (LayoutParams) child.getLayoutParams();
+
+            if ((child.getVisibility() != View.GONE) &&
+                    (params.getCollapseMode() != LayoutParams.PARALLAX_ON_SCROLL) &&
+                    (params.getCollapseMode() != LayoutParams.HIDE_ON_COLLAPSE) &&
+                    (child.getMeasuredHeight() > nBiggestChildHeight) &&
+                    !(child instanceof CollapsibleTextLayout)) {
+                nBiggestChildHeight = child.getMeasuredHeight();
+                biggestChild = child;
+            }
+        }
+
+        // Add the margins of the largest child
+        int margins = 0;
+        if(biggestChild != null) {
+            CollapsibleToolbarHelper.LayoutParams params = (LayoutParams) biggestChild.getLayoutParams();
+            margins += params.topMargin + params.bottomMargin;
+        }
+
+        final float fMinimumHeight = nBiggestChildHeight + margins;
+        if (fMinimumHeight != mfMinimumCollapsibleHeight) {
+            mfMinimumCollapsibleHeight = fMinimumHeight;
+            if (mMinimumHeightListener != null) {
+                mMinimumHeightListener.onMinimumCollapseHeightChanged(this, getMinimumCollapsibleHeight());
+            }
+        }
+    }
+
+    /**
+     * Get the minimum height that this control collapses to. Either the one provided by the user, or
+     * the one worked out from the children in the last layout pass
+     *
+     * @return
+     *      The minimum collapse height in pixels
+     *
+     * @author Melvin Lobo
+     */
+    public int getMinimumCollapsibleHeight() {
+        return (int) Math.ceil(mfMinimumCollapsibleHeight);
+    }
+
+    /**
+     * Set a listener to be told when the minimum collapse height worked out from the children changes
+     *
+     * @param listener
+     *      The listener, or null
+     *
+     * @author Melvin Lobo
+     */
+    public void setOnMinimumCollapseHeightChangedListener(OnMinimumCollapseHeightChangedListener listener) {
+        mMinimumHeightListener = listener;
+    }
+
+    /**
+     * We listen to the hierarchy changes ourselves, so keep the user's listener and pass the events on
+     *
+     * @param listener
+     *      The hierarchy change listener
+     *
+     * @author Melvin Lobo
+     */
+    @Override
+    public void setOnHierarchyChangeListener(OnHierarchyChangeListener listener) {
+        mUserHierarchyChangeListener = listener;
+    }
+
+    /**
+     * Build the collapse plan for the offset dispatch. Everything that only changes with a layout
+     * pass (the helpers, the collapse modes, the multipliers, the trigger heights, the insets) is
+     * resolved here once into the collapse model, so that {@link OffsetChangedListener} just applies
+     * what the model works out.
+     *
+     * @author Melvin Lobo
+     */
+    private void buildCollapsePlan() {
+        final int count = getChildCount();
+        ensurePlanCapacity(count);
+
+        final int nInsetTop = (mSystemInsets != null) ? mSystemInsets.getSystemWindowInsetTop() : 0;
+        mCollapseModel.beginTable(count, getHeight(), ViewCompat.getMinimumHeight(this), nInsetTop, getShowHideTriggerHeight());
+        mCollapseModel.setShowHideHysteresis(mnShowHideHysteresis);
+
+        for (int nCtr = 0; nCtr < count; nCtr++) {
+            final View child = getChildAt(nCtr);
+            final LayoutParams params = (LayoutParams) child.getLayoutParams();
+
+            // A different child (or collapse / alpha mode) in this slot has to work out its state afresh
+            if ((mPlanViews[nCtr] != child) || (mCollapseModel.getMode(nCtr) != params.mnCollapseMode) ||
+                    (mCollapseModel.getAlphaMode(nCtr) != params.mnAlphaMode)) {
+                mCollapseModel.resetCollapseState(nCtr);
+
+                // A scrubbed alpha is owned by the scroll position. Don't let an old animation fight it
+                if (params.mnAlphaMode == LayoutParams.ALPHA_MODE_SCRUB) {
+                    ViewCompat.animate(child).cancel();
                 }
             }
 
-            getViewOffsetHelper(child).onViewLayout();
+            // The params may have been replaced since the child was added
+            params.mParent = this;
+            mPlanViews[nCtr] = child;
+            mPlanHelpers[nCtr] = getViewOffsetHelper(child);
+            mPlanTextViews[nCtr] = (child instanceof CollapsibleTextLayout) ? (CollapsibleTextLayout) child : null;
+            mCollapseModel.setChild(nCtr, params.mnCollapseMode, params.mfParallaxMultiplier, child.getHeight(),
+                    params.mnAlphaMode, (params.mnFadeRange >= 0) ? params.mnFadeRange : mnDefaultFadeRange,
+                    mPlanTextViews[nCtr] != null);
+        }
+
+        // Drop the references to children that are no longer part of the plan
+        for (int nCtr = count; nCtr < mnPlanCount; nCtr++) {
+            mPlanViews[nCtr] = null;
+            mPlanHelpers[nCtr] = null;
+            mPlanTextViews[nCtr] = null;
+        }
+
+        mnPlanCount = count;
+        mCollapseModel.endTable();
+    }
+
+    /**
+     * Grow the plan arrays if the child count has outgrown them. The arrays are never shrunk, so a
+     * relayout with the same children does not allocate
+     *
+     * @param nCapacity
+     *      The number of children the plan should hold
+     *
+     * @author Melvin Lobo
+     */
+    private void ensurePlanCapacity(int nCapacity) {
+        if (mPlanViews.length >= nCapacity) {
+            return;
+        }
+
+        mPlanViews = new View[nCapacity];
+        mPlanHelpers = new ViewOffsetHelper[nCapacity];
+        mPlanTextViews = new CollapsibleTextLayout[nCapacity];
+    }
+
+
+    /**
+     * Get the trigger height for hiding / showing views. Build a minimum space around the min height
+     * so that the views don't look cramped. (ToDo - get this value from the user)
+     *
+     * @author Melvin lobo
+     */
+    final private int getShowHideTriggerHeight() {
+        return Math.round(mfMinimumCollapsibleHeight + getPaddingTop() + (mfCollapsePaddingSpace * 2));
+    }
+
+    /**
+     * Set the hysteresis band around the show / hide trigger height. A child has to move this many
+     * pixels past the trigger before its collapse state (and hence its alpha) changes.
+     *
+     * @param nHysteresis
+     *      The band in pixels. 0 means the trigger height is used as is
+     *
+     * @author Melvin Lobo
+     */
+    public void setShowHideHysteresis(int nHysteresis) {
+        mnShowHideHysteresis = Math.max(0, nHysteresis);
+        mCollapseModel.setShowHideHysteresis(mnShowHideHysteresis);
+    }
+
+    /**
+     * Get the hysteresis band around the show / hide trigger height
+     *
+     * @return
+     *      The band in pixels
+     *
+     * @author Melvin Lobo
+     */
+    public int getShowHideHysteresis() {
+        return mnShowHideHysteresis;
+    }
+
+    ///////////////////////////////////// INNER CLASSES ////////////////////////////////////////////
+
+    /**
+     * Use the View Offset Helper to help with the View translations.
+     * Check{@link abysmel.com.collapsibletoolbarhelper.helpers.ViewOffsetHelper}. Reference AOSP.
+     *
+     * @param view
+     *      The View whose Offset has to be changed
+     *
+     * @return
+     */
+    private static ViewOffsetHelper getViewOffsetHelper(View view) {
+        ViewOffsetHelper offsetHelper = (ViewOffsetHelper) view.getTag(android.support.design.R.id.view_offset_helper);
+        if (offsetHelper == null) {
+            offsetHelper = new ViewOffsetHelper(view);
+            view.setTag(android.support.design.R.id.view_offset_helper, offsetHelper);
+        }
+        return offsetHelper;
+    }
+
+    /**
+     * Move the children for the given offset of the AppBarLayout. Everything comes from the collapse
+     * plan built in onLayout, so this is a single pass over the plan arrays
+     *
+     * @param verticalOffset
+     *      The vertical offset of the AppBarLayout
+     * @param scrollRange
+     *      The total scroll range of the AppBarLayout when the offset was reported
+     *
+     * @author Melvin Lobo
+     */
+    private void dispatchOffsetChanged(int verticalOffset, int scrollRange) {
+        Tracing.beginSection(Tracing.SECTION_OFFSET_DISPATCH);
+        final CollapseMetrics metrics = mMetrics;
+        final long lStartNanos = (metrics != null) ? System.nanoTime() : 0;
+
+        // Everything below comes from the collapse model, fed with the plan built in onLayout
+        final CollapseModel model = mCollapseModel;
+        model.applyOffset(verticalOffset);
+
+        //Modify the offset of the children based on the current scroll value. The offsets are only
+        //recorded in the batch and applied together once the offsets are done
+        mOffsetBatch.begin();
+        for (int nCtr = 0, count = model.getOffsetChildCount(); nCtr < count; nCtr++) {
+            final int nIndex = model.getOffsetChild(nCtr);
+            mPlanHelpers[nIndex].setTopAndBottomOffset(model.getOffset(nIndex), mOffsetBatch);
+        }
+
+        //If a child is a collapsing text, then set the fraction as a function of the scroll offset
+        for (int nCtr = 0, count = model.getTextChildCount(); nCtr < count; nCtr++) {
+            final CollapsibleTextLayout textView = mPlanTextViews[model.getTextChild(nCtr)];
+            if (metrics != null) {
+                final long lTextStartNanos = System.nanoTime();
+                textView.setScrollOffsetFraction(model.getTextFraction());
+                metrics.recordTextUpdate(System.nanoTime() - lTextStartNanos);
+            }
+            else {
+                textView.setScrollOffsetFraction(model.getTextFraction());
+            }
+        }
+
+        //Show / hide the children that crossed their trigger, or follow the scroll if scrubbed
+        for (int nCtr = 0, count = model.getAlphaChildCount(); nCtr < count; nCtr++) {
+            final int nIndex = model.getAlphaChild(nCtr);
+            final View child = mPlanViews[nIndex];
+            final float fAlpha = model.getAlpha(nIndex);
+
+            switch (model.getAlphaAction(nIndex)) {
+                case CollapseModel.ALPHA_ACTION_SET:
+                    if (child.getAlpha() != fAlpha) {
+                        ViewCompat.setAlpha(child, fAlpha);
+                    }
+                    break;
+                case CollapseModel.ALPHA_ACTION_ANIMATE:
+                    startAlphaAnimation(child, (fAlpha > 0.0f) ? View.VISIBLE : View.GONE);
+                    break;
+            }
+        }
+        mOffsetBatch.commit();
+
+        /*
+         * Set the elevation on the AppBar so that the content can scroll below it. If we have some
+         * pinned children, and we're offset to only show those views, we want to be elevated.
+         * Otherwise, we're inline with the content. The controller ignores repeats of the same state
+         */
+        if ((mElevationController != null) && mElevationController.setPinned(Math.abs(verticalOffset) == scrollRange) &&
+                (metrics != null)) {
+            metrics.countElevationSwap();
+        }
+
+        if (metrics != null) {
+            metrics.recordOffsetDispatch(System.nanoTime() - lStartNanos);
+        }
+        Tracing.endSection(Tracing.SECTION_OFFSET_DISPATCH);
+    }
+
+    /**
+     * An inner class which implements the AppBarLayout.OnOffsetChangedListener. Movement events are
+     * sent to this listener so that transitional changes can be made.
+     *
+     * When the offset updates are coalesced, only the latest offset is stored and the children are
+     * moved once per frame from the Choreographer callback, no matter how many events the
+     * AppBarLayout sent in that frame
+     *
+     * @author Melvin Lobo
+     */
+    private class OffsetChangedListener implements AppBarLayout.OnOffsetChangedListener, Choreographer.FrameCallback {
+        /**
+         * The latest offset and scroll range waiting for the next frame
+         */
+        private int mnPendingOffset = 0;
+        private int mnPendingScrollRange = 0;
+
+        /**
+         * True if a frame callback has been posted and has not run yet
+         */
+        private boolean mbFramePending = false;
+
+        @Override
+        public void onOffsetChanged(AppBarLayout layout, int verticalOffset) {
+            //Get the scroll range of the this control
+            onOffsetChanged(verticalOffset, layout.getTotalScrollRange());
+        }
+
+        /**
+         * Handle an offset event, whether it comes from the AppBarLayout or from a replayed trace
+         *
+         * @param verticalOffset
+         *      The vertical offset of the AppBarLayout
+         * @param scrollRange
+         *      The total scroll range of the AppBarLayout
+         *
+         * @author Melvin Lobo
+         */
+        void onOffsetChanged(int verticalOffset, int scrollRange) {
+            if (mMetrics != null) {
+                mMetrics.countOffsetEvent();
+            }
+            if (mScrollTraceRecorder != null) {
+                mScrollTraceRecorder.record(System.nanoTime(), verticalOffset, scrollRange);
+            }
+
+            if (!mbCoalesceOffsetUpdates) {
+                dispatchOffsetChanged(verticalOffset, scrollRange);
+                return;
+            }
+
+            // Keep only the latest offset. An event that arrives while a frame is pending replaces
+            // the previous one, which is never applied
+            mnPendingOffset = verticalOffset;
+            mnPendingScrollRange = scrollRange;
+            if (mbFramePending) {
+                mnCoalescedOffsetEvents++;
+            }
+            else {
+                mbFramePending = true;
+                Choreographer.getInstance().postFrameCallback(this);
+            }
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mbFramePending = false;
+            dispatchOffsetChanged(mnPendingOffset, mnPendingScrollRange);
+        }
+
+        /**
+         * Apply the pending offset right away, if there is one, and drop the frame callback
+         *
+         * @author Melvin Lobo
+         */
+        void flushPendingFrame() {
+            if (mbFramePending) {
+                Choreographer.getInstance().removeFrameCallback(this);
+                doFrame(0);
+            }
+        }
+
+        /**
+         * Drop the pending offset, if there is one
+         *
+         * @author Melvin Lobo
+         */
+        void cancelPendingFrame() {
+            if (mbFramePending) {
+                Choreographer.getInstance().removeFrameCallback(this);
+                mbFramePending = false;
+            }
+        }
+    }
+
+    /**
+     * Convert dip to pixels
+     *
+     * param size
+     *            The size to be converted
+     *
+     * @author Melvin Lobo
+     */
+    private float d2x(int size) {
+        return TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, size, getResources().getDisplayMetrics());
+    }
+
+
+    /**
+     * Start the alpha animation on a view.
+     *
+     * @param view
+     *      The view on which the alpha animation is to be done
+     * @param visibility
+     *      The visibility of the view, based on which, the alpha will be set
+     *
+     *  @author Melvin Lobo
+     */
+    private void startAlphaAnimation(final View view, final int visibility) {
+        final float fTargetAlpha = (visibility == View.GONE) ? 0.0f : 1.0f;
+
+        //If we have already met our objective, just make sure that no animation takes us away from it
+        if(view.getAlpha() == fTargetAlpha) {
+            ViewCompat.animate(view).cancel();
+        }
+        else {
+            // Animate from wherever the alpha is right now, so that a reversal mid-way does not jump
+            ViewCompat.animate(view)
+                    .alpha(fTargetAlpha)
+                    .setDuration(ALPHA_ANIMATION_DURATION)
+                    .setInterpolator(ALPHA_INTERPOLATOR);
+
+            if (mMetrics != null) {
+                mMetrics.countAlphaAnimation();
+            }
+        }
+    }
+
+    /**
+     * Request a layout. Reported to the layout request auditor, if any, before going up the hierarchy.
+     * Requests from the children reach here as well, since they travel up through their parent, but
+     * only the first one until the next layout: after that, this view has a layout pending and View
+     * stops passing them on
+     *
+     * @author Melvin Lobo
+     */
+    @Override
+    public void requestLayout() {
+        if (mLayoutRequestAuditor != null) {
+            mLayoutRequestAuditor.onLayoutRequested(this);
         }
+        super.requestLayout();
+    }
 
-        // Calculate the minimum height by adding the margins of the largest child if the user has not provided
-        // us with one
-        if(mfMinimumCollapsibleHeight == 0) {
-            int margins = 0;
-            if(biggestChild != null) {
-                CollapsibleToolbarHelper.LayoutParams params = (LayoutParams) biggestChild.getLayoutParams();
-                margins += params.topMargin + params.bottomMargin;
-            }
-            mfMinimumCollapsibleHeight += nBiggestChildHeight + margins;        //Set the minimum height
+    /**
+     * Turn the frame cost metrics on or off. While on, the offset dispatch, the layout passes and the
+     * collapsing text updates are timed into histograms, and the offset events, alpha animations and
+     * elevation swaps are counted. Recording does not allocate, so the metrics can stay on in
+     * production. Turning them off drops what was recorded
+     *
+     * @param bEnabled
+     *      True to record the metrics, false otherwise
+     *
+     * @author Melvin Lobo
+     */
+    public void setMetricsEnabled(boolean bEnabled) {
+        if (bEnabled != (mMetrics != null)) {
+            mMetrics = bEnabled ? new CollapseMetrics() : null;
         }
-
-        // Set the minimum height so that the AppBarLayout does not collapse beyond that
-        setMinimumHeight((int)Math.ceil(mfMinimumCollapsibleHeight));
     }
 
-
     /**
-     * Get the trigger height for hiding / showing views. Build a minimum space around the min height
-     * so that the views don't look cramped. (ToDo - get this value from the user)
+     * Get the frame cost metrics. Use {@link CollapseMetrics#snapshot()} to export them and
+     * {@link CollapseMetrics#reset()} to start over
      *
-     * @author Melvin lobo
+     * @return
+     *      The metrics, or null if they are not enabled
+     *
+     * @author Melvin Lobo
      */
-    final private int getShowHideTriggerHeight() {
-        return Math.round(mfMinimumCollapsibleHeight + getPaddingTop() + (d2x(DEFAULT_PADDING_SPACE_FOR_COLLAPSE) * 2));
+    public CollapseMetrics getMetrics() {
+        return mMetrics;
     }
 
-    ///////////////////////////////////// INNER CLASSES ////////////////////////////////////////////
+    /**
+     * Record every offset event of the AppBarLayout, with its time and the total scroll range in
+     * effect, into a trace. Save the trace with {@link ScrollTrace#write(java.io.OutputStream)} to
+     * replay the same scroll later in a test
+     *
+     * @param trace
+     *      The trace to record into, or null to stop recording
+     *
+     * @author Melvin Lobo
+     */
+    public void setScrollTraceRecorder(ScrollTrace trace) {
+        mScrollTraceRecorder = trace;
+    }
 
     /**
-     * Use the View Offset Helper to help with the View translations.
-     * Check{@link abysmel.com.collapsibletoolbarhelper.helpers.ViewOffsetHelper}. Reference AOSP.
+     * Feed an offset event to this control as if the AppBarLayout had sent it. The event takes the
+     * same path as a live one, coalescing included, so a recorded trace can be replayed in tests
+     * without an AppBarLayout. Only the tests reach it, through the fixtures of this package
      *
-     * @param view
-     *      The View whose Offset has to be changed
+     * @param verticalOffset
+     *      The vertical offset of the AppBarLayout
+     * @param scrollRange
+     *      The total scroll range of the AppBarLayout
      *
-     * @return
+     * @author Melvin Lobo
      */
-    private static ViewOffsetHelper getViewOffsetHelper(View view) {
-        ViewOffsetHelper offsetHelper = (ViewOffsetHelper) view.getTag(android.support.design.R.id.view_offset_helper);
-        if (offsetHelper == null) {
-            offsetHelper = new ViewOffsetHelper(view);
-            view.setTag(android.support.design.R.id.view_offset_helper, offsetHelper);
+    void replayOffsetChanged(int verticalOffset, int scrollRange) {
+        if (mOnOffsetChangedListener == null) {
+            mOnOffsetChangedListener = new OffsetChangedListener();
         }
-        return offsetHelper;
+        mOnOffsetChangedListener.onOffsetChanged(verticalOffset, scrollRange);
     }
 
     /**
-     * An inner class which implements the AppBarLayout.OnOffsetChangedListener. Movement events are
-     * sent to this listener so that transitional changes can be made
+     * Set a debug auditor to record the layout requests raised by this control and its children. A
+     * pure scroll should never raise any, so arm the auditor around a scroll in tests to catch
+     * regressions. Between two layout passes, only the first request from the children is seen (see
+     * {@link LayoutRequestAuditor})
+     *
+     * @param auditor
+     *      The auditor, or null to stop auditing
      *
      * @author Melvin Lobo
      */
-    private class OffsetChangedListener implements AppBarLayout.OnOffsetChangedListener {
-        @Override
-        public void onOffsetChanged(AppBarLayout layout, int verticalOffset) {
+    public void setLayoutRequestAuditor(LayoutRequestAuditor auditor) {
+        mLayoutRequestAuditor = auditor;
+    }
 
-            //Set the inset according to fitSystemWindows flag
-            final int insetTop = (mSystemInsets != null) ? mSystemInsets.getSystemWindowInsetTop() : 0;
+    /**
+     * Coalesce the offset updates of the AppBarLayout. The AppBarLayout can report several offsets
+     * within one frame (nested scroll, fling and insets changes together). When coalesced, only the
+     * latest offset is kept and the children are moved once per vsync from a Choreographer callback.
+     * Turning it off applies any pending offset right away.
+     *
+     * @param bCoalesce
+     *      True to coalesce the updates, false to apply every update as it comes
+     *
+     * @author Melvin Lobo
+     */
+    public void setCoalesceOffsetUpdates(boolean bCoalesce) {
+        mbCoalesceOffsetUpdates = bCoalesce;
+        if (!bCoalesce && (mOnOffsetChangedListener != null)) {
+            mOnOffsetChangedListener.flushPendingFrame();
+        }
+    }
 
-            //Get the scroll range of the this control
-            final int scrollRange = layout.getTotalScrollRange();
+    /**
+     * Check if the offset updates are coalesced per frame
+     *
+     * @return
+     *      True if coalesced, false otherwise
+     *
+     * @author Melvin Lobo
+     */
+    public boolean isCoalesceOffsetUpdates() {
+        return mbCoalesceOffsetUpdates;
+    }
 
-            //Modify the offset and alpha of the child based on the current scroll value
-            for (int nCtr = 0, count = getChildCount(); nCtr < count; nCtr++) {
-                final View child = getChildAt(nCtr);
-                final LayoutParams params = (LayoutParams) child.getLayoutParams();
-                final ViewOffsetHelper offsetHelper = getViewOffsetHelper(child);
-
-                switch (params.mnCollapseMode) {
-                    case LayoutParams.MOVE_ON_SCROLL:
-
-                        /*
-                         * The idea is to avoid movement till the size of the collapse reached the bottom
-                         * of children with these collapse mode options. Once it hits their bottom, these
-                         * children will move up / down to / from the min height of the collapse
-                         */
-                        if (getHeight() - insetTop + verticalOffset >= child.getHeight()) {
-                            offsetHelper.setTopAndBottomOffset(-verticalOffset);
-                        }
-
-                        break;
-                    case LayoutParams.PARALLAX_ON_SCROLL:
-
-                        /* Move the child with respect to the parallax multiplier only if visible. Note that we offset this child even
-                         * if the alpha is zero because we need it to be in the right position when the control expands it self
-                         * and all child views are visible
-                         */
-                        offsetHelper.setTopAndBottomOffset(Math.round(-verticalOffset * LayoutParams.DEFAULT_PARALLAX_MULTIPLIER));
-
-                        /* If the height of this control crosses the threshold trigger value, show / hide the
-                         * child if it has a PARALLAX_ON_SCROLL flag set
-                         */
-                        if((getHeight() + verticalOffset) < (getShowHideTriggerHeight() + insetTop)) {
-                            startAlphaAnimation(child, View.GONE);
-                        }
-                        else {
-                            startAlphaAnimation(child, View.VISIBLE);
-                        }
-                        break;
-                    case LayoutParams.PIN_ON_SCROLL:
-
-                        /*
-                         * Keep offsetting the view in the opposite direction of the movement so that
-                         * it looks pinned
-                         */
-                        offsetHelper.setTopAndBottomOffset(-verticalOffset);
-                        break;
-                    case LayoutParams.HIDE_ON_COLLAPSE:
-
-                        /*
-                         * Show / Hide the control if the min trigger has been set
-                         */
-                        if((getHeight() + verticalOffset) < (getShowHideTriggerHeight() + insetTop)) {
-                            startAlphaAnimation(child, View.GONE);
-                        }
-                        else {
-                            startAlphaAnimation(child, View.VISIBLE);
-                        }
-
-                        //Also, keep negating the offset
-                        offsetHelper.setTopAndBottomOffset(-verticalOffset);
-                        break;
-					case LayoutParams.SHOW_ON_COLLAPSE:
-
-                        /*
-                         * Show / Hide the control if the min trigger has been set
-                         */
-						if((getHeight() + verticalOffset) < (getShowHideTriggerHeight() + insetTop)) {
-							startAlphaAnimation(child, View.VISIBLE);
-						}
-						else {
-							startAlphaAnimation(child, View.GONE);
-						}
-
-						//Also, keep negating the offset
-						offsetHelper.setTopAndBottomOffset(-verticalOffset);
-						break;
-                }
+    /**
+     * Get the number of offset updates that were replaced by a later update within the same frame,
+     * and so never moved the children
+     *
+     * @return
+     *      The number of coalesced offset updates
+     *
+     * @author Melvin Lobo
+     */
+    public int getCoalescedOffsetEventCount() {
+        return mnCoalescedOffsetEvents;
+    }
 
-                //If the child is a collapsing text, then set the fraction as a function of the scroll offset
-				if (child instanceof CollapsibleTextLayout) {
-					final int expandRange = getHeight() - ViewCompat.getMinimumHeight(CollapsibleToolbarHelper.this) - insetTop;
-					((CollapsibleTextLayout) child).setScrollOffsetFraction(Math.abs(verticalOffset) / (float) expandRange);
-				}
-            }
+    /**
+     * Reset the number of coalesced offset updates
+     *
+     * @author Melvin Lobo
+     */
+    public void resetCoalescedOffsetEventCount() {
+        mnCoalescedOffsetEvents = 0;
+    }
 
-            /*
-             * Set the elevation on the AppBar so that the content can scroll below it
-             */
-            if (Math.abs(verticalOffset) == scrollRange) {
-                // If we have some pinned children, and we're offset to only show those views,
-                // we want to be elevate
-                if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP)
-                    ViewCompat.setElevation(layout, layout.getTargetElevation());
-                else
-	                setBackgroundResource(layout, mAppBarDrawable, true);
-            }
-            else {
-                // Otherwise, we're inline with the content
-                if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP)
-                    ViewCompat.setElevation(layout, 0f);
-                else
-	                setBackgroundResource(layout, mAppBarDrawable, false);
-            }
+    /**
+     * Measure and lay out the children with a single pass engine instead of the PercentRelativeLayout.
+     * The engine measures each child exactly once, but only supports percent sizes, the align parent
+     * and center rules, and below / toRightOf a single level deep. Children using anything else make
+     * it fall back to the PercentRelativeLayout
+     *
+     * @param bSinglePass
+     *      True to use the single pass engine, false otherwise
+     *
+     * @author Melvin Lobo
+     */
+    public void setSinglePassLayout(boolean bSinglePass) {
+        if (bSinglePass != (mLayoutEngine != null)) {
+            mLayoutEngine = bSinglePass ? new SinglePassLayoutEngine() : null;
+            requestLayout();
         }
     }
 
     /**
-     * Convert dip to pixels
+     * Set the gravity of the children, and keep it for the single pass engine, which only handles the
+     * default of start and top
      *
-     * param size
-     *            The size to be converted
+     * @param gravity
+     *      The gravity
      *
      * @author Melvin Lobo
      */
-    private float d2x(int size) {
-        return TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, size, getResources().getDisplayMetrics());
+    @Override
+    public void setGravity(int gravity) {
+        super.setGravity(gravity);
+        mnGravity = resolveGravity(gravity);
     }
 
+    /**
+     * Set the horizontal gravity of the children, and keep it for the single pass engine
+     *
+     * @param horizontalGravity
+     *      The horizontal gravity
+     *
+     * @author Melvin Lobo
+     */
+    @Override
+    public void setHorizontalGravity(int horizontalGravity) {
+        super.setHorizontalGravity(horizontalGravity);
+        mnGravity = (mnGravity & ~Gravity.RELATIVE_HORIZONTAL_GRAVITY_MASK) |
+                (horizontalGravity & Gravity.RELATIVE_HORIZONTAL_GRAVITY_MASK);
+    }
 
     /**
-     * Start the alpha animation on a view.
+     * Set the vertical gravity of the children, and keep it for the single pass engine
      *
-     * @param view
-     *      The view on which the alpha animation is to be done
-     * @param visibility
-     *      The visibility of the view, based on which, the alpha will be set
+     * @param verticalGravity
+     *      The vertical gravity
      *
-     *  @author Melvin Lobo
+     * @author Melvin Lobo
      */
-    private void startAlphaAnimation(final View view, final int visibility) {
-        //return if we have already met our objective
-        if((visibility == View.GONE && (view.getAlpha() == 0.0f)) || (visibility == View.VISIBLE && (view.getAlpha() == 1.0f))) {
-            return;
+    @Override
+    public void setVerticalGravity(int verticalGravity) {
+        super.setVerticalGravity(verticalGravity);
+        mnGravity = (mnGravity & ~Gravity.VERTICAL_GRAVITY_MASK) | (verticalGravity & Gravity.VERTICAL_GRAVITY_MASK);
+    }
+
+    /**
+     * Fill in the default start and top for the axes a gravity leaves out, the way RelativeLayout does
+     *
+     * @author Melvin Lobo
+     */
+    private static int resolveGravity(int gravity) {
+        if ((gravity & Gravity.RELATIVE_HORIZONTAL_GRAVITY_MASK) == 0) {
+            gravity |= Gravity.START;
         }
-        else {
-			ViewCompat.setAlpha(view,(visibility == View.GONE) ? 1.0f : 0.0f);
-			ViewCompat.animate(view)
-					  .alpha((visibility == View.GONE) ? 0.0f : 1.0f)
-					  .setDuration(ALPHA_ANIMATION_DURATION)
-					  .setInterpolator(new FastOutSlowInInterpolator());
+        if ((gravity & Gravity.VERTICAL_GRAVITY_MASK) == 0) {
+            gravity |= Gravity.TOP;
         }
+        return gravity;
     }
 
-	/**
-	 * Set the background drawable
-	 *
-	 * @param layout
-	 *      The layout whose background needs to be set
-	 * @param backgroundDrawable
-	 *      The background drawable
-	 * @param bCreateBackground
-	 *      Create the background, else, just assign the drawable
-	 *
-	 * @author Melvin Lobo
-	 */
-	private void setBackgroundResource(View layout, Drawable backgroundDrawable, boolean bCreateBackground) {
-
-        /*
-         * A very nasty bug that exists pre-kitkat which I spent hours figuring out. If we assign a
-         * Layerdrawable or a 9-patch, the view loses its padding (weird!). It works for a png or a shape
-         * as expected. So, we need to get the padding, set the background resource and re-set the padding
-         * back to the original values we retrieved. This should give the background shapre to pre-lollipop devices
-         */
-		int pL = layout.getPaddingLeft();
-		int pR = layout.getPaddingRight();
-		int pT = layout.getPaddingTop();
-		int pB = layout.getPaddingBottom();
-
-		layout.setBackground((bCreateBackground) ? createElevatedBackgroundShape(backgroundDrawable) : backgroundDrawable);
-
-		//Re-set the padding back again
-		layout.setPadding(pL, pT, pR, pB);
-	}
-
     /**
-     * Create the background shape / Layer -List programmatically. TO have the shadow effect, we need
-     * shapes placed on top of the other with varying Alphas and with an inset, to give an illusion of elevation
-     * An xml can also be provided to do this statically
-     * The shape stack (starting from bottom) is: Shape1, Shape2, Shape3, Shape4, foreground
+     * Check if the single pass layout engine is enabled
+     *
+     * @return
+     *      True if enabled, false otherwise
      *
      * @author Melvin Lobo
      */
-    private Drawable createElevatedBackgroundShape(Drawable foreground) {
-        Drawable backgroundDrawable = null;
-
-	    //Get our own version of the foreground in case things go south
-	    if(foreground == null) {
-		    //Foreground Shape
-		    RectShape foregroundRect = new RectShape();
-		    ShapeDrawable foregroundShape = new ShapeDrawable(foregroundRect);
-		    foregroundShape.getPaint().setColor(Color.TRANSPARENT);
-		    foreground = foregroundShape;
-	    }
+    public boolean isSinglePassLayout() {
+        return mLayoutEngine != null;
+    }
 
-        //First Shape
-        RectShape rect1 = new RectShape();
-        ShapeDrawable shape1 = new ShapeDrawable(rect1);
-        shape1.getPaint().setColor(Color.parseColor(SHAPE_1_COLOR));
-        shape1.invalidateSelf();
+    /**
+     * Get the single pass layout engine, if enabled
+     *
+     * @return
+     *      The engine, or null if the PercentRelativeLayout is used
+     *
+     * @author Melvin Lobo
+     */
+    public SinglePassLayoutEngine getSinglePassLayoutEngine() {
+        return mLayoutEngine;
+    }
 
-        //Second Shape
-        RectShape rect2 = new RectShape();
-        ShapeDrawable shape2 = new ShapeDrawable(rect2);
-        shape2.getPaint().setColor(Color.parseColor(SHAPE_2_COLOR));
-        shape2.invalidateSelf();
+    /**
+     * Get the number of children measured with the same specs as in the last pass, which had not asked
+     * for a layout. View#measure returns right away for these without running their onMeasure. Counts
+     * the passes of both the single pass engine and the PercentRelativeLayout
+     *
+     * @return
+     *      The number of measure cache hits since the last reset
+     *
+     * @author Melvin Lobo
+     */
+    public int getMeasureCacheHitCount() {
+        return mMeasureCacheTracker.getMeasureCacheHitCount() +
+                ((mLayoutEngine != null) ? mLayoutEngine.getMeasureCacheHitCount() : 0);
+    }
 
-        //Third Shape
-        RectShape rect3 = new RectShape();
-        ShapeDrawable shape3 = new ShapeDrawable(rect3);
-        shape3.getPaint().setColor(Color.parseColor(SHAPE_3_COLOR));
-        shape3.invalidateSelf();
+    /**
+     * Get the number of children measured with new specs, or which had asked for a layout, and so ran
+     * their onMeasure. Counts the passes of both the single pass engine and the PercentRelativeLayout
+     *
+     * @return
+     *      The number of measure cache misses since the last reset
+     *
+     * @author Melvin Lobo
+     */
+    public int getMeasureCacheMissCount() {
+        return mMeasureCacheTracker.getMeasureCacheMissCount() +
+                ((mLayoutEngine != null) ? mLayoutEngine.getMeasureCacheMissCount() : 0);
+    }
 
-        //Fourth Shape
-        RectShape rect4 = new RectShape();
-        ShapeDrawable shape4 = new ShapeDrawable(rect4);
-        shape4.getPaint().setColor(Color.parseColor(SHAPE_2_COLOR));
-        shape4.invalidateSelf();
+    /**
+     * Reset the measure cache hit and miss counts
+     *
+     * @author Melvin Lobo
+     */
+    public void resetMeasureCacheCounts() {
+        mMeasureCacheTracker.resetMeasureCounts();
+        if (mLayoutEngine != null) {
+            mLayoutEngine.resetMeasureCounts();
+        }
+    }
 
-        //Create an array of shapes for the layer list
-        Drawable[] layerArray = {shape1, shape2, shape3, shape4, foreground};
+    /**
+     * Set how the children are moved. {@link ViewOffsetHelper#OFFSET_MODE_LAYOUT} moves their layout
+     * position, which makes the children draw again. {@link ViewOffsetHelper#OFFSET_MODE_TRANSLATION}
+     * moves them through translationX/Y, which only updates their display lists. In the translation
+     * mode, the children should not set their own translation. The current offsets are kept when the
+     * mode changes
+     *
+     * @param nOffsetMode
+     *      The offset mode
+     *
+     * @author Melvin Lobo
+     */
+    public void setOffsetMode(int nOffsetMode) {
+        if (mnOffsetMode != nOffsetMode) {
+            mnOffsetMode = nOffsetMode;
+            for (int nCtr = 0, count = getChildCount(); nCtr < count; nCtr++) {
+                getViewOffsetHelper(getChildAt(nCtr)).setOffsetMode(nOffsetMode);
+            }
+        }
+    }
 
-        LayerDrawable drawable = new LayerDrawable(layerArray);
+    /**
+     * Get how the children are moved
+     *
+     * @return
+     *      The offset mode
+     *
+     * @author Melvin Lobo
+     */
+    public int getOffsetMode() {
+        return mnOffsetMode;
+    }
 
-        //Set the insets to get the elevated shadow effect
-        drawable.setLayerInset(0, 0, 0, 0, 0);
-        drawable.setLayerInset(1, 0, 0, 0, (int) d2x(1));
-        drawable.setLayerInset(2, 0, 0, 0, (int) d2x(2));
-        drawable.setLayerInset(3, 0, 0, 0, (int) d2x(3));
-        drawable.setLayerInset(4, 0, 0, 0, (int) d2x(4));
+    /**
+     * Animate the elevation change of the AppBar Layout when the toolbar gets pinned / unpinned. Only
+     * applies to Lollipop and above, the pre lollipop background swap is never animated
+     *
+     * @param bAnimate
+     *      True to animate, false otherwise
+     *
+     * @author Melvin Lobo
+     */
+    public void setAnimateElevation(boolean bAnimate) {
+        mbAnimateElevation = bAnimate;
+        if (mElevationController != null) {
+            mElevationController.setAnimate(bAnimate);
+        }
+    }
 
-        backgroundDrawable = drawable;
+    /**
+     * Set the fade range used by {@link LayoutParams#ALPHA_MODE_SCRUB} children which have not
+     * specified their own. Takes effect on the next layout pass
+     *
+     * @param nFadeRange
+     *      The fade range in pixels
+     *
+     * @author Melvin Lobo
+     */
+    public void setDefaultFadeRange(int nFadeRange) {
+        mnDefaultFadeRange = Math.max(0, nFadeRange);
+    }
 
-        return backgroundDrawable;
+    /**
+     * Get the fade range used by {@link LayoutParams#ALPHA_MODE_SCRUB} children which have not
+     * specified their own
+     *
+     * @return
+     *      The fade range in pixels
+     *
+     * @author Melvin Lobo
+     */
+    public int getDefaultFadeRange() {
+        return mnDefaultFadeRange;
     }
 
     @Override
@@ -590,51 +1341,98 @@ public class CollapsibleToolbarHelper extends android.support.percent.PercentRel
                 MOVE_ON_SCROLL,
                 PIN_ON_SCROLL,
                 HIDE_ON_COLLAPSE,
-				SHOW_ON_COLLAPSE
+                SHOW_ON_COLLAPSE
         })
         @Retention(RetentionPolicy.SOURCE)
         @interface CollapseMode {}
 
+        /**
+         * The ways in which the alpha of the showing / hiding children can change
+         */
+        @IntDef({
+                ALPHA_MODE_ANIMATE,
+                ALPHA_MODE_SCRUB
+        })
+        @Retention(RetentionPolicy.SOURCE)
+        @interface AlphaMode {}
+
         /**
          * The view will parallax and then eventually fade out when the min height trigger is set
          * {@link CollapsibleToolbarHelper}.
          */
-        public static final int PARALLAX_ON_SCROLL = 0;
+        public static final int PARALLAX_ON_SCROLL = CollapseModel.MODE_PARALLAX_ON_SCROLL;
 
         /**
          * The view will move on scroll till the min height and then stay there
          * {@link CollapsibleToolbarHelper}.
          */
-        public static final int MOVE_ON_SCROLL = 1;
+        public static final int MOVE_ON_SCROLL = CollapseModel.MODE_MOVE_ON_SCROLL;
 
         /**
          * The view will pin to its position
          * {@link CollapsibleToolbarHelper}.
          */
-        public static final int PIN_ON_SCROLL = 2;
+        public static final int PIN_ON_SCROLL = CollapseModel.MODE_PIN_ON_SCROLL;
 
         /**
          * The view will pin to its position and hide after the layout reaches its min height
          * {@link CollapsibleToolbarHelper}.
          */
-        public static final int HIDE_ON_COLLAPSE = 3;
+        public static final int HIDE_ON_COLLAPSE = CollapseModel.MODE_HIDE_ON_COLLAPSE;
 
         /**
          * The view will show after the layout reaches its min height / collapses
          * {@link CollapsibleToolbarHelper}.
          */
-        public static final int SHOW_ON_COLLAPSE = 4;
+        public static final int SHOW_ON_COLLAPSE = CollapseModel.MODE_SHOW_ON_COLLAPSE;
+
+        /**
+         * The view fades in / out with a timed animation once the layout crosses the trigger height
+         * {@link CollapsibleToolbarHelper}.
+         */
+        public static final int ALPHA_MODE_ANIMATE = CollapseModel.ALPHA_MODE_ANIMATE;
+
+        /**
+         * The view's alpha follows the scroll position over its fade range around the trigger height.
+         * No animation is used.
+         * {@link CollapsibleToolbarHelper}.
+         */
+        public static final int ALPHA_MODE_SCRUB = CollapseModel.ALPHA_MODE_SCRUB;
 
         /**
          * The current collapse mode
          */
         private int mnCollapseMode = PIN_ON_SCROLL;
 
+        /**
+         * Set when the collapse mode, the alpha mode or the fade range changes, so that the
+         * {@link CollapsibleToolbarHelper} works out its minimum height again after its next measure
+         * pass. New params start out changed
+         */
+        boolean mbCollapseModeChanged = true;
+
+        /**
+         * The {@link CollapsibleToolbarHelper} whose child uses these params, if any. A change of the
+         * collapse settings asks it for a layout, so that it plans the collapse again
+         */
+        private CollapsibleToolbarHelper mParent = null;
+
         /**
          * The parallax multipler if applicable
          */
         private float mfParallaxMultiplier = DEFAULT_PARALLAX_MULTIPLIER;
 
+        /**
+         * The current alpha mode
+         */
+        private int mnAlphaMode = ALPHA_MODE_ANIMATE;
+
+        /**
+         * The fade range for {@link #ALPHA_MODE_SCRUB} in pixels. A negative value means that the
+         * default of the {@link CollapsibleToolbarHelper} is used
+         */
+        private int mnFadeRange = -1;
+
         ////////////////////////////////////// CLASS METHODS ///////////////////////////////////////
 
         /**
@@ -699,6 +1497,9 @@ public class CollapsibleToolbarHelper extends android.support.percent.PercentRel
                     R.styleable.CollapsibleToolbarHelper);
             mnCollapseMode = a.getInt(R.styleable.CollapsibleToolbarHelper_collapseMode,
                     PIN_ON_SCROLL);
+            mnAlphaMode = a.getInt(R.styleable.CollapsibleToolbarHelper_alphaMode,
+                    ALPHA_MODE_ANIMATE);
+            mnFadeRange = a.getDimensionPixelSize(R.styleable.CollapsibleToolbarHelper_fadeRange, -1);
             a.recycle();
         }
 
@@ -708,7 +1509,10 @@ public class CollapsibleToolbarHelper extends android.support.percent.PercentRel
          * @param collapseMode one of {@link #MOVE_ON_SCROLL} or {@link #PARALLAX_ON_SCROLL}
          */
         public void setCollapseMode(@CollapseMode int collapseMode) {
-            mnCollapseMode = collapseMode;
+            if (mnCollapseMode != collapseMode) {
+                mnCollapseMode = collapseMode;
+                onCollapseSettingChanged();
+            }
         }
 
         /**
@@ -740,6 +1544,86 @@ public class CollapsibleToolbarHelper extends android.support.percent.PercentRel
         public float getParallaxMultiplier() {
             return mfParallaxMultiplier;
         }
+
+        /**
+         * Set the alpha mode used for {@link #PARALLAX_ON_SCROLL}, {@link #HIDE_ON_COLLAPSE} and
+         * {@link #SHOW_ON_COLLAPSE}.
+         *
+         * @param alphaMode one of {@link #ALPHA_MODE_ANIMATE} or {@link #ALPHA_MODE_SCRUB}
+         */
+        public void setAlphaMode(@AlphaMode int alphaMode) {
+            if (mnAlphaMode != alphaMode) {
+                mnAlphaMode = alphaMode;
+                onCollapseSettingChanged();
+            }
+        }
+
+        /**
+         * Returns the requested alpha mode.
+         *
+         * @return the current mode. One of {@link #ALPHA_MODE_ANIMATE} or {@link #ALPHA_MODE_SCRUB}
+         */
+        @AlphaMode
+        public int getAlphaMode() {
+            return mnAlphaMode;
+        }
+
+        /**
+         * Set the range over which the view fades in {@link #ALPHA_MODE_SCRUB}. The range is
+         * centered on the show / hide trigger height.
+         *
+         * @param fadeRange the range in pixels, or a negative value to use the default of the
+         *                  {@link CollapsibleToolbarHelper}
+         */
+        public void setFadeRange(int fadeRange) {
+            if (mnFadeRange != fadeRange) {
+                mnFadeRange = fadeRange;
+                onCollapseSettingChanged();
+            }
+        }
+
+        /**
+         * Returns the range over which the view fades in {@link #ALPHA_MODE_SCRUB}.
+         *
+         * @return the range in pixels. Negative if the default is used
+         */
+        public int getFadeRange() {
+            return mnFadeRange;
+        }
+
+        /**
+         * Mark the params changed and ask the {@link CollapsibleToolbarHelper} for a layout, as the
+         * collapse plan is built in its layout pass
+         *
+         * @author Melvin Lobo
+         */
+        private void onCollapseSettingChanged() {
+            mbCollapseModeChanged = true;
+            if (mParent != null) {
+                mParent.requestLayout();
+            }
+        }
+    }
+
+    /**
+     * Interface definition for a callback to be invoked when the minimum collapse height worked out
+     * from the children changes
+     *
+     * @author Melvin Lobo
+     */
+    public interface OnMinimumCollapseHeightChangedListener {
+
+        /**
+         * Called when the minimum collapse height has changed
+         *
+         * @param helper
+         *      The CollapsibleToolbarHelper whose minimum height changed
+         * @param nMinimumHeight
+         *      The new minimum collapse height in pixels
+         *
+         * @author Melvin Lobo
+         */
+        public void onMinimumCollapseHeightChanged(CollapsibleToolbarHelper helper, int nMinimumHeight);
     }
 
 }
\ No newline at end of file
@@ -3,11 +3,9 @@ package abysmel.com.collapsibletoolbarhelper.widgets;
 import android.content.Context;
 import android.content.res.TypedArray;
 import android.graphics.Canvas;
-import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Path;
 import android.graphics.drawable.Drawable;
-import android.graphics.drawable.LayerDrawable;
 import android.graphics.drawable.ShapeDrawable;
 import android.graphics.drawable.shapes.RoundRectShape;
 import android.os.Build;
@@ -23,6 +21,9 @@ import android.view.animation.Transformation;
 import android.widget.LinearLayout;
 
 import abysmel.com.collapsibletoolbarhelper.R;
+import abysmel.com.collapsibletoolbarhelper.helpers.MetaballGeometry;
+import abysmel.com.collapsibletoolbarhelper.helpers.ShadowCache;
+import abysmel.com.collapsibletoolbarhelper.helpers.Tracing;
 
 
 /**
@@ -41,9 +42,9 @@ public class MetaballMenu extends LinearLayout {
     /**
      * Static definitions
      */
-    private static final String SHAPE_1_COLOR = "#10000000";
-    private static final String SHAPE_2_COLOR = "#13000000";
-    private static final String SHAPE_3_COLOR = "#20000000";
+    private static final int SHAPE_1_COLOR = 0x10000000;
+    private static final int SHAPE_2_COLOR = 0x13000000;
+    private static final int SHAPE_3_COLOR = 0x20000000;
     private static final int DEFAULT_BACKGROUND_RADIUS = 20;
     private static final float ELEVATION = 6.0f;
 
@@ -85,6 +86,12 @@ public class MetaballMenu extends LinearLayout {
      */
     private Circle mTransitionalCircle = null;
 
+    /**
+     * The contour of the blob between the transitional and the destination circle, reused on every frame.
+     * Check {@link MetaballGeometry#CONTOUR_SIZE}
+     */
+    private final float[] mfContour = new float[MetaballGeometry.CONTOUR_SIZE];
+
     /**
      * The current destination point to move to. This is used to avoid repeated calls for getting
      * the point when performing calculations
@@ -298,6 +305,7 @@ public class MetaballMenu extends LinearLayout {
      * @author Melvin Lobo
      */
     private void setBackgroundResource() {
+        Tracing.beginSection(Tracing.SECTION_BACKGROUND_REBUILD);
 
         /*
          * A very nasty bug that exists pre-kitkat which I spent hours figuring out. If we assign a
@@ -327,13 +335,15 @@ public class MetaballMenu extends LinearLayout {
 
         //Re-set the padding back again
         setPadding(pL, pT, pR, pB);
+        Tracing.endSection(Tracing.SECTION_BACKGROUND_REBUILD);
     }
 
     /**
      * Create the background shape / Layer -List programmatically. TO have the shadow effect, we need
      * shapes placed on top of the other with varying Alphas and with an inset, to give an illusion of elevation
      * An xml can also be provided to do this statically (included: menu_shape_shadow)
-     * The shape stack (starting from bottom) is: Shape1, Shape2, Shape3, foreground
+     * The shape stack (starting from bottom) is: Shape1, Shape2, Shape3, Shape4, foreground. With an elevation,
+     * the whole stack is drawn from one cached bitmap ({@link ShadowCache}), so there is a single layer to draw
      *
      * @author Melvin Lobo
      */
@@ -349,43 +359,20 @@ public class MetaballMenu extends LinearLayout {
         foregroundShape.getPaint().setColor(mnBackgroundColor);
 
         if(mbElevationRequired) {
-            //First Shape
-            RoundRectShape rect1 = new RoundRectShape(radiiFloat, null, null);
-            ShapeDrawable shape1 = new ShapeDrawable(rect1);
-            shape1.getPaint().setColor(Color.parseColor(SHAPE_1_COLOR));
-            shape1.invalidateSelf();
-
-            //Second Shape
-            RoundRectShape rect2 = new RoundRectShape(radiiFloat, null, null);
-            ShapeDrawable shape2 = new ShapeDrawable(rect2);
-            shape2.getPaint().setColor(Color.parseColor(SHAPE_2_COLOR));
-            shape2.invalidateSelf();
-
-            //Third Shape
-            RoundRectShape rect3 = new RoundRectShape(radiiFloat, null, null);
-            ShapeDrawable shape3 = new ShapeDrawable(rect3);
-            shape3.getPaint().setColor(Color.parseColor(SHAPE_3_COLOR));
-            shape3.invalidateSelf();
-
-            //Fourth Shape
-            RoundRectShape rect4 = new RoundRectShape(radiiFloat, null, null);
-            ShapeDrawable shape4 = new ShapeDrawable(rect4);
-            shape4.getPaint().setColor(Color.parseColor(SHAPE_2_COLOR));
-            shape4.invalidateSelf();
-
-            //Create an array of shapes for the layer list
-            Drawable[] layerArray = {shape1, shape2, shape3, shape4, foregroundShape};
-
-            LayerDrawable drawable = new LayerDrawable(layerArray);
-
-            //Set the insets to get the elevates shadow effect (refer to the menu_shape_xml for better understanding)
-            drawable.setLayerInset(0, 0, 0, 0, 0);
-            drawable.setLayerInset(1, (int) d2x(1), (int) d2x(1), (int) d2x(1), (int) d2x(1));
-            drawable.setLayerInset(2, (int) d2x(2), (int) d2x(2), (int) d2x(2), (int) d2x(2));
-            drawable.setLayerInset(3, (int) d2x(3), (int) d2x(3), (int) d2x(3), (int) d2x(3));
-            drawable.setLayerInset(4, (int) d2x(2), (int) d2x(2), (int) d2x(2), (int) d2x(4));
-
-            backgroundDrawable = drawable;
+            // The shadow shapes and the foreground are pre-rendered into a single stretchable bitmap
+            // that is shared by every menu with the same look (refer to the menu_shape_xml for better understanding)
+            final int[] colors = {SHAPE_1_COLOR, SHAPE_2_COLOR, SHAPE_3_COLOR, SHAPE_2_COLOR, mnBackgroundColor};
+            final int nInset1 = (int) d2x(1), nInset2 = (int) d2x(2), nInset3 = (int) d2x(3), nInset4 = (int) d2x(4);
+            final int[] insets = {
+                    0, 0, 0, 0,
+                    nInset1, nInset1, nInset1, nInset1,
+                    nInset2, nInset2, nInset2, nInset2,
+                    nInset3, nInset3, nInset3, nInset3,
+                    nInset2, nInset2, nInset2, nInset4
+            };
+
+            backgroundDrawable = ShadowCache.getDrawable(new ShadowCache.Key(mfBackgroundShapeRadius,
+                    getResources().getDisplayMetrics().density, colors, insets));
         }
         else {
             backgroundDrawable = foregroundShape;
@@ -404,8 +391,11 @@ public class MetaballMenu extends LinearLayout {
 
         if(!mbShowAnimation)
             drawSelector(canvas);
-        else
+        else {
+            Tracing.beginSection(Tracing.SECTION_METABALL_FRAME);
             drawMetaballTransition(canvas);
+            Tracing.endSection(Tracing.SECTION_METABALL_FRAME);
+        }
 
 
         super.onDraw(canvas);
@@ -463,9 +453,6 @@ public class MetaballMenu extends LinearLayout {
      * @author Melvin Lobo
      */
     public void drawMetaballTransition(Canvas canvas) {
-        final float v = 0.5f;           //??
-        final float handleLenRate = 2.4f;
-
         // No destination to go to??
         if(mDestinationPoint == null) {
             if(mSelectedView == null)       //No View selected. Do Nothing
@@ -506,94 +493,31 @@ public class MetaballMenu extends LinearLayout {
         // Get the distance between the two circles (straight line length between two points)
         float nDistance = getDistance(mTransitionalCircle.getCenterPoint(), mDestinationPoint);
 
-        // Get the radius sum
-        float radiusSum = originRadius + destinationRadius;
-
-        // Calculate the bezier curves for covering the path between the two circles to form a blob
-        float arc1, arc2 = 0.0f;
-
         /*
-         * Note:
-         * The remainder of the math calculations are based on the references mentioned above.
-         * I'm not a math enthusiast.
-         * Will try to comment where it makes sense to me.
+         * Calculate the bezier curves for covering the path between the two circles to form a blob.
+         * Nothing to draw if one of the circles has no radius
          */
-        if((originRadius == 0) || (destinationRadius == 0))
+        final float[] contour = mfContour;
+        if (!MetaballGeometry.computeContour(mTransitionalCircle.getCenterX(), mTransitionalCircle.getCenterY(), originRadius,
+                mDestinationPoint.getX(), mDestinationPoint.getY(), destinationRadius, nDistance, contour))
             return;
-        else if(nDistance < radiusSum) {
-            arc1 = (float) Math.acos(( (originRadius * originRadius) + (nDistance * nDistance) - (destinationRadius * destinationRadius)) /
-                    (2 * originRadius * nDistance));
-
-            arc2 = (float) Math.acos(( (destinationRadius * destinationRadius) + (nDistance * nDistance) - (originRadius * originRadius)) /
-                    (2 * destinationRadius * nDistance));
-        }
-        else {
-            arc1 = arc2 = 0.0f;
-        }
-
-        // Get the difference of the two centres
-        Point diffPoint = new Point(mDestinationPoint.getX() - mTransitionalCircle.getCenterX(),
-                                    mDestinationPoint.getY() - mTransitionalCircle.getCenterY());
-
-        // Get the angle in radians
-        float angle1 = (float) Math.atan2(diffPoint.getY(), diffPoint.getX());
-        float angle2 = (float) Math.acos((originRadius - destinationRadius) / nDistance);
-
-        // ??
-        float angle1a = angle1 + arc1 + (angle2 - arc1) * v;
-        float angle1b = angle1 - arc1 - (angle2 - arc1) * v;
-        float angle2a = (float) (angle1 + Math.PI - arc2 - (Math.PI - arc2 - angle2) * v);
-        float angle2b = (float) (angle1 - Math.PI + arc2 + (Math.PI - arc2 - angle2) * v);
-
-        // Get the vectors
-        Point p1aTemp = getVector(angle1a, originRadius);
-        Point p1bTemp = getVector(angle1b, originRadius);
-        Point p2aTemp = getVector(angle2a, destinationRadius);
-        Point p2bTemp = getVector(angle2b, destinationRadius);
-
-        // Calculate points
-        Point p1a = new Point(p1aTemp.getX() + mTransitionalCircle.getCenterX(), p1aTemp.getY() + mTransitionalCircle.getCenterY());
-        Point p1b = new Point(p1bTemp.getX() + mTransitionalCircle.getCenterX(), p1bTemp.getY() + mTransitionalCircle.getCenterY());
-        Point p2a = new Point(p2aTemp.getX() + mDestinationPoint.getX(), p2aTemp.getY() + mDestinationPoint.getY());
-        Point p2b = new Point(p2bTemp.getX() + mDestinationPoint.getX(), p2bTemp.getY() + mDestinationPoint.getY());
-
-        // Define handle length by the distance between both ends of the curve to draw
-        Point diffp1p2 = new Point(p1a.getX() - p2a.getX(), p1a.getY() - p2a.getY());   //Diff point
-
-        float totalRadius = originRadius + destinationRadius;
-        float minDist = Math.min(v * handleLenRate, getLength(diffp1p2.getX(), diffp1p2.getY()) / totalRadius);
-
-        // In case circles are overlapping
-        minDist *= Math.min(1, (nDistance * 2) / radiusSum);
-
-        float radius1 = originRadius * minDist;
-        float radius2 = destinationRadius * minDist;
-        float pi2 = (float) (Math.PI / 2);
-
-        // Get the final segment vectors to draw the path
-        Point segment1 = getVector(angle1a - pi2, radius1);
-        Point segment2 = getVector(angle2a + pi2, radius2);
-        Point segment3 = getVector(angle2b - pi2, radius2);
-        Point segment4 = getVector(angle1b + pi2, radius1);
 
         // Trace the path. The path is like a rectangle with two of its sides curved. The vertices
         // lie on the circle circumference
         Path path = new Path();
-        path.moveTo(p1a.getX(), p1a.getY());
+        path.moveTo(contour[0], contour[1]);
 
         // Curve 1
-        path.cubicTo(p1a.getX() + segment1.getX(), p1a.getY() + segment1.getY(), p2a.getX() + segment2.getX(),
-                p2a.getY() + segment2.getY(), p2a.getX(), p2a.getY());
+        path.cubicTo(contour[2], contour[3], contour[4], contour[5], contour[6], contour[7]);
 
         // Line 1
-        path.lineTo(p2b.getX(), p2b.getY());
+        path.lineTo(contour[8], contour[9]);
 
         // Curve 2
-        path.cubicTo(p2b.getX() + segment3.getX(), p2b.getY() + segment3.getY(), p1b.getX() + segment4.getX(),
-                p1b.getY() + segment4.getY(), p1b.getX(), p1b.getY());
+        path.cubicTo(contour[10], contour[11], contour[12], contour[13], contour[14], contour[15]);
 
         // Line 2
-        path.lineTo(p1a.getX(), p1a.getY());
+        path.lineTo(contour[0], contour[1]);
 
         path.close();
 
@@ -601,15 +525,6 @@ public class MetaballMenu extends LinearLayout {
         canvas.drawPath(path, mMetaballDestination);
     }
 
-    /**
-     * Get the Vector point.
-     *
-     * @author Melvin Lobo
-     */
-    private Point getVector(float radianAngle, float length) {
-        return new Point((float) (Math.cos(radianAngle) * length), (float) (Math.sin(radianAngle) * length));
-    }
-
     /**
      * Get the distance between two points. The formula for two points (x0, y0) and (x1,y1) is
      *   _____________________
@@ -626,21 +541,6 @@ public class MetaballMenu extends LinearLayout {
         return (float)(Math.sqrt((distX * distX) + (distY * distY)));
     }
 
-    /**
-     * Get the length
-     *
-     * @param x1
-     *      Co-ordinate 1
-     *
-     *  @param x2
-     *      Co-ordinate 2
-     *
-     * @author Melvin Lobo
-     */
-    private float getLength(float x1, float x2) {
-        return (float) Math.sqrt((x1 * x1) + (x2 * x2));
-    }
-
     /**
      * Start the animation
      *
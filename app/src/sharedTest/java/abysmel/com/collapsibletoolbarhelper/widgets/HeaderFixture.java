@@ -0,0 +1,72 @@
+package abysmel.com.collapsibletoolbarhelper.widgets;
+
+import android.content.Context;
+import android.view.ContextThemeWrapper;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+import abysmel.com.collapsibletoolbarhelper.R;
+
+/**
+ * The header of the landing screen, inflated and laid out at a phone size off screen, shared by the
+ * Robolectric and the instrumentation tests
+ */
+public final class HeaderFixture {
+    public static final int WIDTH = 1080;
+    public static final int HEIGHT = 600;
+
+    private HeaderFixture() {
+    }
+
+    /**
+     * @return The context wrapped in the theme of the landing screen
+     */
+    public static Context createContext(Context base) {
+        return new ContextThemeWrapper(base, R.style.AppTheme_NoActionBar);
+    }
+
+    /**
+     * Inflate the header of the landing screen and lay it out at a phone size, off screen
+     *
+     * @param bScrubEditFade
+     *      True to scrub the fade of the edit button, so that its alpha follows the scroll frame by frame
+     *      instead of running an animation
+     */
+    public static CollapsibleToolbarHelper createHeader(Context base, boolean bScrubEditFade) {
+        final View root = LayoutInflater.from(createContext(base)).inflate(R.layout.activity_landing, null);
+        final CollapsibleToolbarHelper header = (CollapsibleToolbarHelper) root.findViewById(R.id.toolbar_layout);
+        ((ViewGroup) header.getParent()).removeView(header);
+
+        if (bScrubEditFade) {
+            ((CollapsibleToolbarHelper.LayoutParams) header.findViewById(R.id.hello_edit).getLayoutParams())
+                    .setAlphaMode(CollapsibleToolbarHelper.LayoutParams.ALPHA_MODE_SCRUB);
+        }
+
+        header.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY));
+        header.layout(0, 0, header.getMeasuredWidth(), header.getMeasuredHeight());
+        return header;
+    }
+
+    /**
+     * Inflate the title of the landing screen, in its header laid out at a phone size
+     */
+    public static CollapsibleTextLayout createTitle(Context base) {
+        return (CollapsibleTextLayout) createHeader(base, false).findViewById(R.id.hello_text);
+    }
+
+    /**
+     * Feed an offset event to the header as if its AppBarLayout had sent it
+     */
+    public static void dispatchOffset(CollapsibleToolbarHelper header, int nVerticalOffset, int nScrollRange) {
+        header.replayOffsetChanged(nVerticalOffset, nScrollRange);
+    }
+
+    /**
+     * @return The distance the header scrolls from expanded to collapsed
+     */
+    public static int getScrollRange(CollapsibleToolbarHelper header) {
+        return header.getHeight() - header.getMinimumHeight();
+    }
+}
@@ -0,0 +1,154 @@
+package abysmel.com.collapsibletoolbarhelper;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import abysmel.com.collapsibletoolbarhelper.helpers.CollapseMetrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Checks of the latency histograms and the counters of the collapse metrics, on a plain JVM
+ */
+public class CollapseMetricsTest {
+    private CollapseMetrics mMetrics;
+
+    @Before
+    public void setUp() {
+        mMetrics = new CollapseMetrics();
+    }
+
+    @Test
+    public void latenciesLandInTheirPowerOfTwoBucket() {
+        final long[] lNanos = {0, 1, 2, 3, 4, 7, 8, 1023, 1024, 16000000};
+        final int[] nBuckets = {0, 0, 1, 1, 2, 2, 3, 9, 10, 23};
+        for (long lLatency : lNanos) {
+            mMetrics.recordOffsetDispatch(lLatency);
+        }
+
+        final CollapseMetrics.LatencyHistogram histogram = mMetrics.snapshot().getOffsetDispatch();
+        final long[] lExpected = new long[CollapseMetrics.LatencyHistogram.BUCKET_COUNT];
+        for (int nBucket : nBuckets) {
+            lExpected[nBucket]++;
+        }
+        for (int nBucket = 0; nBucket < CollapseMetrics.LatencyHistogram.BUCKET_COUNT; nBucket++) {
+            assertEquals("Bucket " + nBucket, lExpected[nBucket], histogram.getBucketCount(nBucket));
+        }
+        assertEquals(lNanos.length, histogram.getCount());
+        assertEquals(16000000, histogram.getMaxNanos());
+    }
+
+    @Test
+    public void outOfRangeLatenciesAreClamped() {
+        mMetrics.recordLayout(-5);
+        mMetrics.recordLayout(Long.MAX_VALUE);
+
+        final CollapseMetrics.LatencyHistogram histogram = mMetrics.snapshot().getLayout();
+        assertEquals(1, histogram.getBucketCount(0));
+        assertEquals(1, histogram.getBucketCount(CollapseMetrics.LatencyHistogram.BUCKET_COUNT - 1));
+        assertEquals(Long.MAX_VALUE, histogram.getTotalNanos());
+        assertEquals(Long.MAX_VALUE, histogram.getMaxNanos());
+    }
+
+    @Test
+    public void percentilesAreTheUpperBoundOfTheirBucket() {
+        assertEquals(0, mMetrics.snapshot().getTextUpdate().getPercentileNanos(50.0f));
+
+        // 90 fast updates in [64, 128) and 10 slow ones in [8192, 16384)
+        for (int nCtr = 0; nCtr < 90; nCtr++) {
+            mMetrics.recordTextUpdate(100);
+        }
+        for (int nCtr = 0; nCtr < 10; nCtr++) {
+            mMetrics.recordTextUpdate(10000);
+        }
+
+        final CollapseMetrics.LatencyHistogram histogram = mMetrics.snapshot().getTextUpdate();
+        assertEquals(127, histogram.getPercentileNanos(0.0f));
+        assertEquals(127, histogram.getPercentileNanos(50.0f));
+        assertEquals(127, histogram.getPercentileNanos(90.0f));
+        // The bucket bound is capped at the largest latency
+        assertEquals(10000, histogram.getPercentileNanos(91.0f));
+        assertEquals(10000, histogram.getPercentileNanos(100.0f));
+        assertEquals(109000, histogram.getTotalNanos());
+        assertEquals(1090, histogram.getMeanNanos());
+    }
+
+    @Test
+    public void snapshotIsACopyAndResetClearsEverything() {
+        mMetrics.recordOffsetDispatch(500);
+        mMetrics.recordLayout(2000);
+        mMetrics.recordTextUpdate(300);
+        mMetrics.countOffsetEvent();
+        mMetrics.countOffsetEvent();
+        mMetrics.countAlphaAnimation();
+        mMetrics.countElevationSwap();
+        final CollapseMetrics.Snapshot snapshot = mMetrics.snapshot();
+
+        // Recording more does not change the snapshot taken
+        mMetrics.recordOffsetDispatch(700);
+        mMetrics.countOffsetEvent();
+        assertSnapshot(snapshot, 1, 1, 1, 2, 1, 1);
+        assertEquals(500, snapshot.getOffsetDispatch().getMaxNanos());
+        assertSnapshot(mMetrics.snapshot(), 2, 1, 1, 3, 1, 1);
+
+        // Nor does a reset, after which everything starts from zero
+        mMetrics.reset();
+        assertSnapshot(snapshot, 1, 1, 1, 2, 1, 1);
+        final CollapseMetrics.Snapshot cleared = mMetrics.snapshot();
+        assertSnapshot(cleared, 0, 0, 0, 0, 0, 0);
+        for (int nBucket = 0; nBucket < CollapseMetrics.LatencyHistogram.BUCKET_COUNT; nBucket++) {
+            assertEquals(0, cleared.getOffsetDispatch().getBucketCount(nBucket));
+        }
+        assertEquals(0, cleared.getOffsetDispatch().getMaxNanos());
+        assertEquals(0, cleared.getOffsetDispatch().getTotalNanos());
+    }
+
+    @Test
+    public void recordingDoesNotAllocate() {
+        final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        assumeTrue(threadBean instanceof com.sun.management.ThreadMXBean);
+        final com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) threadBean;
+        assumeTrue(sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled());
+        final long lThreadId = Thread.currentThread().getId();
+
+        for (int nCtr = 0; nCtr < 10000; nCtr++) {
+            record(nCtr);
+        }
+
+        // Reading the counter may allocate itself, so measure that first
+        final long lCalibrationStart = sunBean.getThreadAllocatedBytes(lThreadId);
+        final long lOverhead = sunBean.getThreadAllocatedBytes(lThreadId) - lCalibrationStart;
+
+        final long lStart = sunBean.getThreadAllocatedBytes(lThreadId);
+        for (int nCtr = 0; nCtr < 10000; nCtr++) {
+            record(nCtr);
+        }
+        final long lAllocated = sunBean.getThreadAllocatedBytes(lThreadId) - lStart - lOverhead;
+
+        assertEquals(0, lAllocated);
+    }
+
+    private void record(int nEvent) {
+        final long lNanos = (nEvent * 7919L) % 20000000L;
+        mMetrics.recordOffsetDispatch(lNanos);
+        mMetrics.recordLayout(lNanos * 2);
+        mMetrics.recordTextUpdate(lNanos / 3);
+        mMetrics.countOffsetEvent();
+        mMetrics.countAlphaAnimation();
+        mMetrics.countElevationSwap();
+    }
+
+    private static void assertSnapshot(CollapseMetrics.Snapshot snapshot, long lOffsetDispatches, long lLayouts,
+            long lTextUpdates, long lOffsetEvents, long lAlphaAnimations, long lElevationSwaps) {
+        assertEquals(lOffsetDispatches, snapshot.getOffsetDispatch().getCount());
+        assertEquals(lLayouts, snapshot.getLayout().getCount());
+        assertEquals(lTextUpdates, snapshot.getTextUpdate().getCount());
+        assertEquals(lOffsetEvents, snapshot.getOffsetEventCount());
+        assertEquals(lAlphaAnimations, snapshot.getAlphaAnimationCount());
+        assertEquals(lElevationSwaps, snapshot.getElevationSwapCount());
+    }
+}
@@ -0,0 +1,225 @@
+package abysmel.com.collapsibletoolbarhelper;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Random;
+
+import abysmel.com.collapsibletoolbarhelper.helpers.CollapseModel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Property checks of the collapse model over random scrolls, on a plain JVM
+ */
+public class CollapseModelTest {
+    private static final int HEIGHT = 600;
+    private static final int MINIMUM_HEIGHT = 160;
+    private static final int TRIGGER_HEIGHT = 200;
+    private static final int HYSTERESIS = 8;
+    private static final int FADE_RANGE = 24;
+
+    private static final int PARALLAX = 0;
+    private static final int MOVE = 1;
+    private static final int PIN = 2;
+    private static final int HIDE = 3;
+    private static final int SHOW_SCRUBBED = 4;
+    private static final int TEXT = 5;
+    private static final int CHILD_COUNT = 6;
+
+    private CollapseModel mModel;
+
+    @Before
+    public void setUp() {
+        mModel = new CollapseModel();
+        mModel.setShowHideHysteresis(HYSTERESIS);
+        mModel.beginTable(CHILD_COUNT, HEIGHT, MINIMUM_HEIGHT, 0, TRIGGER_HEIGHT);
+        mModel.setChild(PARALLAX, CollapseModel.MODE_PARALLAX_ON_SCROLL, 0.5f, HEIGHT, CollapseModel.ALPHA_MODE_ANIMATE, 0, false);
+        mModel.setChild(MOVE, CollapseModel.MODE_MOVE_ON_SCROLL, 0.0f, 300, CollapseModel.ALPHA_MODE_ANIMATE, 0, false);
+        mModel.setChild(PIN, CollapseModel.MODE_PIN_ON_SCROLL, 0.0f, 120, CollapseModel.ALPHA_MODE_ANIMATE, 0, false);
+        mModel.setChild(HIDE, CollapseModel.MODE_HIDE_ON_COLLAPSE, 0.0f, 80, CollapseModel.ALPHA_MODE_ANIMATE, 0, false);
+        mModel.setChild(SHOW_SCRUBBED, CollapseModel.MODE_SHOW_ON_COLLAPSE, 0.0f, 80, CollapseModel.ALPHA_MODE_SCRUB, FADE_RANGE, false);
+        mModel.setChild(TEXT, CollapseModel.MODE_PIN_ON_SCROLL, 0.0f, 100, CollapseModel.ALPHA_MODE_ANIMATE, 0, true);
+        mModel.endTable();
+    }
+
+    @Test
+    public void offsetsFollowTheScroll() {
+        final Random random = new Random(42);
+        final int nRange = HEIGHT - MINIMUM_HEIGHT;
+        for (int nCtr = 0; nCtr < 200000; nCtr++) {
+            final int nOffset = -random.nextInt(nRange + 1);
+            mModel.applyOffset(nOffset);
+
+            boolean bParallax = false;
+            boolean bPin = false;
+            boolean bMove = false;
+            for (int nChild = 0; nChild < mModel.getOffsetChildCount(); nChild++) {
+                final int nIndex = mModel.getOffsetChild(nChild);
+                bParallax |= (nIndex == PARALLAX);
+                bPin |= (nIndex == PIN);
+                bMove |= (nIndex == MOVE);
+            }
+            assertTrue(bParallax && bPin);
+            assertEquals(Math.round(-nOffset * 0.5f), mModel.getOffset(PARALLAX));
+            assertEquals(-nOffset, mModel.getOffset(PIN));
+
+            // A move child only moves once the visible height has reached its bottom
+            assertEquals(HEIGHT + nOffset >= 300, bMove);
+
+            final float fFraction = mModel.getTextFraction();
+            assertEquals(-nOffset / (float) nRange, fFraction, 0.0f);
+            assertTrue((fFraction >= 0.0f) && (fFraction <= 1.0f));
+        }
+    }
+
+    @Test
+    public void alphasHonourTheHysteresisAndTheFadeRange() {
+        final Random random = new Random(7);
+        final int nRange = HEIGHT - MINIMUM_HEIGHT;
+        float fHideTarget = -1.0f;
+        int nOffset = 0;
+        for (int nCtr = 0; nCtr < 200000; nCtr++) {
+            // Small steps, so that the trigger gets crossed back and forth
+            nOffset = Math.max(-nRange, Math.min(0, nOffset + random.nextInt(41) - 20));
+            mModel.applyOffset(nOffset);
+            final int nHeight = HEIGHT + nOffset;
+
+            for (int nChild = 0; nChild < mModel.getAlphaChildCount(); nChild++) {
+                final int nIndex = mModel.getAlphaChild(nChild);
+                final float fAlpha = mModel.getAlpha(nIndex);
+                if (nIndex == HIDE) {
+                    assertEquals(CollapseModel.ALPHA_ACTION_ANIMATE, mModel.getAlphaAction(nIndex));
+                    // Only a real change of state is reported, and never inside the band
+                    assertTrue(fAlpha != fHideTarget);
+                    assertTrue((fHideTarget < 0.0f) || (nHeight < TRIGGER_HEIGHT - HYSTERESIS) ||
+                            (nHeight >= TRIGGER_HEIGHT + HYSTERESIS));
+                    fHideTarget = fAlpha;
+                }
+                else if (nIndex == SHOW_SCRUBBED) {
+                    assertEquals(CollapseModel.ALPHA_ACTION_SET, mModel.getAlphaAction(nIndex));
+                    final float fExpected = 1.0f - Math.max(0.0f, Math.min(1.0f,
+                            (nHeight - (TRIGGER_HEIGHT - FADE_RANGE / 2)) / (float) FADE_RANGE));
+                    assertEquals(fExpected, fAlpha, 0.0f);
+                }
+            }
+
+            if (fHideTarget >= 0.0f) {
+                if (nHeight < TRIGGER_HEIGHT - HYSTERESIS) {
+                    assertEquals(0.0f, fHideTarget, 0.0f);
+                }
+                else if (nHeight >= TRIGGER_HEIGHT + HYSTERESIS) {
+                    assertEquals(1.0f, fHideTarget, 0.0f);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void offsetsVisitOnlyTheChildrenWithinTheirThresholds() {
+        // A few children of each continuous kind and many move children spread over the whole height
+        final int nPinned = 20;
+        final int nHidden = 20;
+        final int nScrubbed = 20;
+        final int nMoving = 940;
+        final int nCount = nPinned + nHidden + nScrubbed + nMoving;
+        final int[] nMoveHeights = new int[nMoving];
+
+        final CollapseModel model = new CollapseModel();
+        model.setShowHideHysteresis(HYSTERESIS);
+        model.beginTable(nCount, HEIGHT, MINIMUM_HEIGHT, 0, TRIGGER_HEIGHT);
+        int nIndex = 0;
+        for (int nCtr = 0; nCtr < nPinned; nCtr++) {
+            model.setChild(nIndex++, CollapseModel.MODE_PIN_ON_SCROLL, 0.0f, 100, CollapseModel.ALPHA_MODE_ANIMATE, 0, false);
+        }
+        for (int nCtr = 0; nCtr < nHidden; nCtr++) {
+            model.setChild(nIndex++, CollapseModel.MODE_HIDE_ON_COLLAPSE, 0.0f, 80, CollapseModel.ALPHA_MODE_ANIMATE, 0, false);
+        }
+        for (int nCtr = 0; nCtr < nScrubbed; nCtr++) {
+            model.setChild(nIndex++, CollapseModel.MODE_SHOW_ON_COLLAPSE, 0.0f, 80, CollapseModel.ALPHA_MODE_SCRUB, FADE_RANGE, false);
+        }
+        for (int nCtr = 0; nCtr < nMoving; nCtr++) {
+            nMoveHeights[nCtr] = MINIMUM_HEIGHT + (nCtr * 7) % (HEIGHT - MINIMUM_HEIGHT + 1);
+            model.setChild(nIndex++, CollapseModel.MODE_MOVE_ON_SCROLL, 0.0f, nMoveHeights[nCtr], CollapseModel.ALPHA_MODE_ANIMATE, 0, false);
+        }
+        model.endTable();
+
+        final int nContinuous = nPinned + nHidden + nScrubbed;
+        final int nToggles = nHidden + nScrubbed;
+        final int nBand = Math.max(HYSTERESIS, FADE_RANGE) + 1;
+        final int nRange = HEIGHT - MINIMUM_HEIGHT;
+        final Random random = new Random(11);
+        int nOffset = 0;
+        int nLastHeight = HEIGHT;
+        long lVisits = 0;
+        int nQuietEvents = 0;
+        final int nEvents = 20000;
+
+        for (int nEvent = 0; nEvent < nEvents; nEvent++) {
+            nOffset = Math.max(-nRange, Math.min(0, nOffset + random.nextInt(41) - 20));
+            model.applyOffset(nOffset);
+            final int nHeight = HEIGHT + nOffset;
+
+            int nExpectedMoving = 0;
+            for (int nMoveHeight : nMoveHeights) {
+                if (nHeight >= nMoveHeight) {
+                    nExpectedMoving++;
+                }
+            }
+            // The first offset after a table visits every toggle child. After that, only the ones whose
+            // trigger lies within the band of the heights covered since the last offset
+            final boolean bToggleInBand = (nEvent == 0) ||
+                    ((Math.min(nLastHeight, nHeight) - nBand <= TRIGGER_HEIGHT) &&
+                            (TRIGGER_HEIGHT <= Math.max(nLastHeight, nHeight) + nBand));
+            final int nExpectedVisits = nContinuous + nExpectedMoving + (bToggleInBand ? nToggles : 0);
+
+            assertEquals("Offset " + nOffset, nExpectedVisits, model.getVisitCount());
+            assertEquals(nContinuous + nExpectedMoving, model.getOffsetChildCount());
+            assertTrue(model.getAlphaChildCount() <= (bToggleInBand ? nToggles : 0));
+
+            lVisits += model.getVisitCount();
+            nQuietEvents += bToggleInBand ? 0 : 1;
+            nLastHeight = nHeight;
+        }
+
+        // Most of the scroll is away from the trigger, and most move children only move near the top
+        assertTrue(nQuietEvents > nEvents / 2);
+        assertTrue(lVisits < (long) nEvents * nCount * 3 / 4);
+    }
+
+    @Test
+    public void steadyScrollDoesNotAllocate() {
+        final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        assumeTrue(threadBean instanceof com.sun.management.ThreadMXBean);
+        final com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) threadBean;
+        assumeTrue(sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled());
+        final long lThreadId = Thread.currentThread().getId();
+
+        final int nRange = HEIGHT - MINIMUM_HEIGHT;
+        final int[] nOffsets = new int[10000];
+        for (int nCtr = 0; nCtr < nOffsets.length; nCtr++) {
+            // Back and forth over the whole range, crossing the triggers every time
+            final int nStep = nCtr % (nRange * 2);
+            nOffsets[nCtr] = -((nStep < nRange) ? nStep : ((nRange * 2) - nStep));
+        }
+        for (int nOffset : nOffsets) {
+            mModel.applyOffset(nOffset);
+        }
+
+        // Reading the counter may allocate itself, so measure that first
+        final long lCalibrationStart = sunBean.getThreadAllocatedBytes(lThreadId);
+        final long lOverhead = sunBean.getThreadAllocatedBytes(lThreadId) - lCalibrationStart;
+
+        final long lStart = sunBean.getThreadAllocatedBytes(lThreadId);
+        for (int nOffset : nOffsets) {
+            mModel.applyOffset(nOffset);
+        }
+        final long lAllocated = sunBean.getThreadAllocatedBytes(lThreadId) - lStart - lOverhead;
+
+        assertEquals(0, lAllocated);
+    }
+}
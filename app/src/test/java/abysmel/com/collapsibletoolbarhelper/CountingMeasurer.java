@@ -0,0 +1,29 @@
+package abysmel.com.collapsibletoolbarhelper;
+
+import abysmel.com.collapsibletoolbarhelper.helpers.TextSizeFitter;
+
+/**
+ * A stub measurer standing in for the Paint, which counts the measurements. The advance of each
+ * character is worked out from its code, so that every title has its own mix of narrow and wide glyphs.
+ * It is either exactly linear in the text size, or rounded to a whole pixel per glyph the way hinting
+ * does, which is only nearly linear.
+ */
+public class CountingMeasurer implements TextSizeFitter.Measurer {
+    public long mlCount = 0;
+    private final boolean mbHinted;
+
+    public CountingMeasurer(boolean bHinted) {
+        mbHinted = bHinted;
+    }
+
+    @Override
+    public float measureText(String text, float textSize) {
+        mlCount++;
+        float width = 0;
+        for (int nCtr = 0; nCtr < text.length(); nCtr++) {
+            final float fAdvance = (0.3f + ((text.charAt(nCtr) * 7) % 11) * 0.05f) * textSize;
+            width += mbHinted ? Math.round(fAdvance) : fAdvance;
+        }
+        return width;
+    }
+}
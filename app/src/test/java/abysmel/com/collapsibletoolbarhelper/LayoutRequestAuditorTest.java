@@ -0,0 +1,133 @@
+package abysmel.com.collapsibletoolbarhelper;
+
+import android.graphics.Rect;
+import android.view.View;
+import android.view.WindowInsets;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.util.ReflectionHelpers;
+
+import abysmel.com.collapsibletoolbarhelper.helpers.LayoutRequestAuditor;
+import abysmel.com.collapsibletoolbarhelper.widgets.CollapsibleToolbarHelper;
+import abysmel.com.collapsibletoolbarhelper.widgets.HeaderFixture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that the auditor records the layout requests reaching the header while armed, with the stack
+ * trace of the caller, and that the header only asks for a layout when the insets it lays out with change
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class LayoutRequestAuditorTest {
+    private CollapsibleToolbarHelper mHeader;
+    private LayoutRequestAuditor mAuditor;
+
+    @Before
+    public void setUp() {
+        mHeader = HeaderFixture.createHeader(RuntimeEnvironment.application, false);
+        mAuditor = new LayoutRequestAuditor();
+        mHeader.setLayoutRequestAuditor(mAuditor);
+    }
+
+    @Test
+    public void recordsTheRequestsOfAChildWithTheirTrace() {
+        final View child = mHeader.findViewById(R.id.hello_edit);
+
+        // Nothing is recorded until armed
+        child.requestLayout();
+        assertEquals(0, mAuditor.getRequestCount());
+        layOut();
+
+        mAuditor.arm();
+        assertTrue(mAuditor.isArmed());
+        child.requestLayout();
+        // The header has a layout pending now, so the requests of its children stop below it until then
+        mHeader.findViewById(R.id.hello_text).requestLayout();
+        mAuditor.disarm();
+        layOut();
+        child.requestLayout();
+
+        assertEquals(1, mAuditor.getRequestCount());
+        final LayoutRequestAuditor.Request request = mAuditor.getRequests().get(0);
+        assertEquals(CollapsibleToolbarHelper.class.getName(), request.getViewName());
+        assertTrue(hasFrame(request.getTrace(), getClass().getName(), "recordsTheRequestsOfAChildWithTheirTrace"));
+
+        // The failure carries the trace of the first request
+        try {
+            mAuditor.assertNoRequests();
+            fail("The recorded request was not reported");
+        } catch (IllegalStateException e) {
+            assertSame(request.getTrace(), e.getCause());
+        }
+
+        // Arming again starts over
+        mAuditor.arm();
+        assertEquals(0, mAuditor.getRequestCount());
+        mAuditor.assertNoRequests();
+    }
+
+    @Test
+    public void recordsOneRequestOfTheChildrenPerLayout() {
+        final View child = mHeader.findViewById(R.id.hello_edit);
+        mAuditor.arm();
+        for (int nCtr = 0; nCtr < 3; nCtr++) {
+            child.requestLayout();
+            child.requestLayout();
+            layOut();
+        }
+
+        // The header's own requests are always seen
+        mHeader.requestLayout();
+        mAuditor.disarm();
+        assertEquals(4, mAuditor.getRequestCount());
+    }
+
+    @Test
+    public void unchangedTopInsetDoesNotRequestLayout() {
+        dispatchInsets(63, 0);
+        layOut();
+
+        // The insets are dispatched again with the same top, and a bottom the header does not use
+        mAuditor.arm();
+        dispatchInsets(63, 0);
+        dispatchInsets(63, 126);
+        mAuditor.assertNoRequests();
+
+        // A new top inset moves the children, so it needs a layout
+        dispatchInsets(80, 126);
+        mAuditor.disarm();
+        assertEquals(1, mAuditor.getRequestCount());
+        assertFalse(mAuditor.isArmed());
+    }
+
+    private void dispatchInsets(int nTop, int nBottom) {
+        final WindowInsets insets = ReflectionHelpers.callConstructor(WindowInsets.class,
+                ReflectionHelpers.ClassParameter.from(Rect.class, new Rect(0, nTop, 0, nBottom)));
+        mHeader.dispatchApplyWindowInsets(insets);
+    }
+
+    private void layOut() {
+        mHeader.measure(View.MeasureSpec.makeMeasureSpec(HeaderFixture.WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(HeaderFixture.HEIGHT, View.MeasureSpec.EXACTLY));
+        mHeader.layout(0, 0, mHeader.getMeasuredWidth(), mHeader.getMeasuredHeight());
+    }
+
+    private static boolean hasFrame(Throwable trace, String className, String methodName) {
+        for (StackTraceElement element : trace.getStackTrace()) {
+            if (className.equals(element.getClassName()) && methodName.equals(element.getMethodName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,73 @@
+package abysmel.com.collapsibletoolbarhelper;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records the text runs and the bitmaps drawn on it instead of drawing them
+ */
+public class RecordingCanvas extends Canvas {
+    public final List<String> mRuns = new ArrayList<>();
+    public final List<Float> mXs = new ArrayList<>();
+    public final List<Float> mRights = new ArrayList<>();
+    public final List<Float> mSizes = new ArrayList<>();
+    public final List<Integer> mColors = new ArrayList<>();
+    public int mnBitmapCount = 0;
+
+    public RecordingCanvas() {
+    }
+
+    /**
+     * A canvas backed by a bitmap of a size, for the views which look at the size of the canvas
+     */
+    public RecordingCanvas(int nWidth, int nHeight) {
+        super(Bitmap.createBitmap(nWidth, nHeight, Bitmap.Config.ARGB_8888));
+    }
+
+    @Override
+    public void drawText(CharSequence text, int start, int end, float x, float y, Paint paint) {
+        mRuns.add(text.subSequence(start, end).toString());
+        mXs.add(x);
+        mRights.add(x + paint.measureText(text, start, end));
+        mSizes.add(paint.getTextSize());
+        mColors.add(paint.getColor());
+    }
+
+    @Override
+    public void drawBitmap(Bitmap bitmap, Rect src, RectF dst, Paint paint) {
+        mnBitmapCount++;
+    }
+
+    /**
+     * @return The number of text runs drawn
+     */
+    public int getTextCount() {
+        return mRuns.size();
+    }
+
+    /**
+     * @return The width from the start of the first text run to the end of the furthest one
+     */
+    public float getTextWidth() {
+        float fRight = mXs.isEmpty() ? 0.0f : mXs.get(0);
+        for (Float fRunRight : mRights) {
+            fRight = Math.max(fRight, fRunRight);
+        }
+        return mXs.isEmpty() ? 0.0f : fRight - mXs.get(0);
+    }
+
+    public void reset() {
+        mRuns.clear();
+        mXs.clear();
+        mRights.clear();
+        mSizes.clear();
+        mColors.clear();
+        mnBitmapCount = 0;
+    }
+}
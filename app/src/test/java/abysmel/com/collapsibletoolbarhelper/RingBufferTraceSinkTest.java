@@ -0,0 +1,135 @@
+package abysmel.com.collapsibletoolbarhelper;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+
+import abysmel.com.collapsibletoolbarhelper.helpers.RingBufferTraceSink;
+import abysmel.com.collapsibletoolbarhelper.helpers.Tracing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the ring buffer trace sink overwrites its oldest events once full, and that its binary dump
+ * reads back to the events recorded, on a plain JVM
+ */
+public class RingBufferTraceSinkTest {
+
+    @Test
+    public void capacityIsRoundedUpToAPowerOfTwo() {
+        assertEquals(1, new RingBufferTraceSink(1).getCapacity());
+        assertEquals(8, new RingBufferTraceSink(5).getCapacity());
+        assertEquals(8, new RingBufferTraceSink(8).getCapacity());
+        assertEquals(16, new RingBufferTraceSink(9).getCapacity());
+    }
+
+    @Test
+    public void dumpReadsBackToTheEventsRecorded() throws IOException {
+        final RingBufferTraceSink sink = new RingBufferTraceSink(16);
+        final long lBefore = System.nanoTime();
+        final int[] nEvents = record(sink, 6);
+        final long lAfter = System.nanoTime();
+
+        assertEquals(6, sink.getEventCount());
+        assertEquals(6, sink.getRecordedCount());
+        assertDump(sink, nEvents, 0, lBefore, lAfter);
+    }
+
+    @Test
+    public void fullBufferKeepsTheNewestEvents() throws IOException {
+        final RingBufferTraceSink sink = new RingBufferTraceSink(4);
+        record(sink, 6);
+        final long lBefore = System.nanoTime();
+        final int[] nEvents = record(sink, 5);
+        final long lAfter = System.nanoTime();
+
+        // 11 recorded, the last 4 kept, oldest first
+        assertEquals(4, sink.getEventCount());
+        assertEquals(11, sink.getRecordedCount());
+        assertDump(sink, nEvents, 1, lBefore, lAfter);
+    }
+
+    @Test
+    public void clearedBufferDumpsNoEvents() throws IOException {
+        final RingBufferTraceSink sink = new RingBufferTraceSink(4);
+        record(sink, 10);
+        sink.clear();
+
+        assertEquals(0, sink.getEventCount());
+        assertEquals(0, sink.getRecordedCount());
+        assertDump(sink, new int[0], 0, 0, 0);
+    }
+
+    /**
+     * Record a begin and an end of a section, in turn, over all the sections
+     *
+     * @return the events recorded, as they should be dumped
+     */
+    private static int[] record(RingBufferTraceSink sink, int nCount) {
+        final int[] nEvents = new int[nCount];
+        for (int nCtr = 0; nCtr < nCount; nCtr++) {
+            final int nSection = (nCtr / 2) % Tracing.SECTION_COUNT;
+            if ((nCtr % 2) == 0) {
+                sink.beginSection(nSection);
+                nEvents[nCtr] = nSection;
+            } else {
+                sink.endSection(nSection);
+                nEvents[nCtr] = nSection | RingBufferTraceSink.FLAG_END;
+            }
+        }
+        return nEvents;
+    }
+
+    /**
+     * Dump the sink and read it back, checking the header and that the events from {@code nFrom} on are
+     * the ones dumped, recorded on this thread between the two times given
+     */
+    private static void assertDump(RingBufferTraceSink sink, int[] nEvents, int nFrom, long lBefore, long lAfter)
+            throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        sink.dump(bytes);
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+
+        assertEquals(RingBufferTraceSink.MAGIC, in.readInt());
+        assertEquals(RingBufferTraceSink.VERSION, in.readByte());
+        assertEquals(Tracing.SECTION_COUNT, in.readByte());
+        for (int nSection = 0; nSection < Tracing.SECTION_COUNT; nSection++) {
+            assertEquals(Tracing.getSectionName(nSection), in.readUTF());
+        }
+
+        final int nCount = nEvents.length - nFrom;
+        assertEquals(nCount, in.readInt());
+        long lTimestamp = in.readLong();
+        for (int nCtr = 0; nCtr < nCount; nCtr++) {
+            assertEquals(nEvents[nFrom + nCtr], in.readUnsignedByte());
+            assertEquals(Thread.currentThread().getId(), readVarLong(in));
+            final long lZigZag = readVarLong(in);
+            final long lDelta = (lZigZag >>> 1) ^ -(lZigZag & 1);
+            if (nCtr == 0) {
+                assertEquals(0, lDelta);
+            }
+            assertTrue(lDelta >= 0);
+            lTimestamp += lDelta;
+            assertTrue((lTimestamp >= lBefore) && (lTimestamp <= lAfter));
+        }
+
+        // Nothing after the last event
+        assertEquals(-1, in.read());
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long lValue = 0;
+        int nShift = 0;
+        int nByte;
+        do {
+            nByte = in.readUnsignedByte();
+            lValue |= (long) (nByte & 0x7F) << nShift;
+            nShift += 7;
+        } while ((nByte & 0x80) != 0);
+        return lValue;
+    }
+}
@@ -0,0 +1,344 @@
+package abysmel.com.collapsibletoolbarhelper;
+
+import android.app.Activity;
+import android.content.Context;
+import android.graphics.Rect;
+import android.support.design.widget.AppBarLayout;
+import android.support.design.widget.CoordinatorLayout;
+import android.support.v7.app.AppCompatActivity;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewParent;
+import android.widget.FrameLayout;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import abysmel.com.collapsibletoolbarhelper.helpers.CollapseMetrics;
+import abysmel.com.collapsibletoolbarhelper.helpers.LayoutRequestAuditor;
+import abysmel.com.collapsibletoolbarhelper.widgets.CollapsibleToolbarHelper;
+import abysmel.com.collapsibletoolbarhelper.widgets.HeaderFixture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Scrolls the landing screen (CoordinatorLayout, AppBarLayout and the CollapsibleToolbarHelper) back and
+ * forth through the AppBarLayout behavior, the same way a nested scroll does, on a virtual clock of two
+ * events per 16ms frame. Fails if a steady scroll asks for a layout, or invalidates more than the
+ * children it actually moved or faded plus the fixed cost of an event.
+ *
+ * The helper records its frame cost metrics during the scroll. The mean and the 99th percentile of the
+ * offset dispatch, and the bytes allocated per event, are checked against a budget and written to
+ * build/reports/scroll-throughput so that the cost can be followed over time by the CI.
+ *
+ * The allocation is only bounded here, not zero: Robolectric's shadows box the arguments of the
+ * framework calls they intercept, so moving and fading real views allocates under the tests. The math
+ * of the dispatch is checked to allocate nothing at all by CollapseModelTest, on a plain JVM.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class ScrollThroughputTest {
+    private static final int WARMUP_EVENTS = 1000;
+    private static final int EVENTS = 10000;
+    private static final int STEP = 7;
+    private static final int EVENTS_PER_FRAME = 2;
+    private static final long FRAME_MILLIS = 16;
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 1920;
+    private static final File REPORT_DIR = new File("build/reports/scroll-throughput");
+
+    /**
+     * Budget of an offset dispatch, a quarter of a frame, which leaves the rest of the frame to drawing
+     */
+    private static final long MAX_DISPATCH_NANOS = 4000000L;
+
+    /**
+     * Bytes an event may allocate through the shadows, with the fades scrubbed and then with them
+     * animated, which also starts an animation whenever a child crosses its trigger
+     */
+    private static final long MAX_SCRUBBED_BYTES_PER_EVENT = 1024;
+    private static final long MAX_BYTES_PER_EVENT = 4096;
+
+    /**
+     * Invalidations an event causes besides the children of the helper it moves or fades: the app bar
+     * and the scrolling content moving, the tickle of the helper pre-M and the collapsing text redrawing
+     */
+    private static final int FIXED_INVALIDATIONS = 4;
+
+    @Test
+    public void steadyScrollDoesNotLayOut() {
+        final Hierarchy hierarchy = new Hierarchy();
+        hierarchy.scroll(WARMUP_EVENTS);
+
+        final LayoutRequestAuditor auditor = new LayoutRequestAuditor();
+        hierarchy.mHelper.setLayoutRequestAuditor(auditor);
+        auditor.arm();
+        hierarchy.mRoot.mlInvalidations = 0;
+        hierarchy.mlChangedChildren = 0;
+
+        final int nCyclesBefore = hierarchy.mnCollapseCycles;
+        hierarchy.scroll(EVENTS);
+        auditor.disarm();
+
+        // The scroll has to have gone all the way, both ways
+        assertTrue(hierarchy.mnCollapseCycles - nCyclesBefore > 0);
+
+        // Moving and fading the children never needs a layout
+        auditor.assertNoRequests();
+
+        // An event invalidates only the children it moved or faded, once each, plus the fixed cost
+        final long lAllowed = hierarchy.mlChangedChildren + ((long) EVENTS * FIXED_INVALIDATIONS);
+        assertTrue(hierarchy.mRoot.mlInvalidations + " invalidations for " + hierarchy.mlChangedChildren +
+                " changed children", hierarchy.mRoot.mlInvalidations <= lAllowed);
+    }
+
+    @Test
+    public void steadyScrollStaysWithinItsBudget() throws IOException {
+        final Hierarchy hierarchy = new Hierarchy();
+        hierarchy.mHelper.setCoalesceOffsetUpdates(false);
+        hierarchy.mHelper.setMetricsEnabled(true);
+        hierarchy.scroll(WARMUP_EVENTS);
+        hierarchy.mHelper.getMetrics().reset();
+
+        final AllocationCounter counter = new AllocationCounter();
+        counter.start();
+        hierarchy.scroll(EVENTS);
+        final long lBytesPerEvent = counter.stop() / EVENTS;
+        final CollapseMetrics.Snapshot snapshot = hierarchy.mHelper.getMetrics().snapshot();
+
+        final CollapseMetrics.LatencyHistogram dispatch = snapshot.getOffsetDispatch();
+        final long lMeanNanos = dispatch.getMeanNanos();
+        final long lP99Nanos = dispatch.getPercentileNanos(99.0f);
+        writeReport(new File(REPORT_DIR, "steadyScrollStaysWithinItsBudget.txt"), snapshot, lBytesPerEvent);
+        final String sCost = "dispatch mean " + lMeanNanos + " ns, p99 " + lP99Nanos + " ns, " + lBytesPerEvent +
+                " bytes / event";
+
+        // Every event that moved the bar was dispatched to the children right away
+        assertTrue(sCost, dispatch.getCount() > 0);
+        assertEquals(sCost, snapshot.getOffsetEventCount(), dispatch.getCount());
+        assertTrue(sCost, (lMeanNanos > 0) && (lP99Nanos <= MAX_DISPATCH_NANOS));
+        assertTrue(sCost, lBytesPerEvent <= MAX_BYTES_PER_EVENT);
+    }
+
+    @Test
+    public void scrubbedScrollAllocationIsBounded() {
+        // Scrub every fade, so that crossing the trigger sets the alphas rather than starting animations
+        final CollapsibleToolbarHelper header = HeaderFixture.createHeader(RuntimeEnvironment.application, true);
+        for (int nCtr = 0; nCtr < header.getChildCount(); nCtr++) {
+            ((CollapsibleToolbarHelper.LayoutParams) header.getChildAt(nCtr).getLayoutParams())
+                    .setAlphaMode(CollapsibleToolbarHelper.LayoutParams.ALPHA_MODE_SCRUB);
+        }
+        // The new alpha modes ask the header for the layout that plans the collapse again
+        assertTrue(header.isLayoutRequested());
+        header.measure(View.MeasureSpec.makeMeasureSpec(HeaderFixture.WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(HeaderFixture.HEIGHT, View.MeasureSpec.EXACTLY));
+        header.layout(0, 0, header.getMeasuredWidth(), header.getMeasuredHeight());
+        header.setCoalesceOffsetUpdates(false);
+
+        final int nScrollRange = HeaderFixture.getScrollRange(header);
+        final int[] nOffsets = new int[EVENTS];
+        for (int nCtr = 0; nCtr < nOffsets.length; nCtr++) {
+            // Back and forth over the whole range, crossing the trigger every time
+            final int nStep = (nCtr * STEP) % (nScrollRange * 2);
+            nOffsets[nCtr] = -((nStep < nScrollRange) ? nStep : ((nScrollRange * 2) - nStep));
+        }
+        for (int nCtr = 0; nCtr < WARMUP_EVENTS; nCtr++) {
+            HeaderFixture.dispatchOffset(header, nOffsets[nCtr], nScrollRange);
+        }
+
+        final AllocationCounter counter = new AllocationCounter();
+        counter.start();
+        for (int nOffset : nOffsets) {
+            HeaderFixture.dispatchOffset(header, nOffset, nScrollRange);
+        }
+        final long lBytesPerEvent = counter.stop() / nOffsets.length;
+
+        // The shadows box their arguments, so this is not zero, but nothing grows with the scroll either
+        assertTrue(lBytesPerEvent + " bytes / event", lBytesPerEvent <= MAX_SCRUBBED_BYTES_PER_EVENT);
+    }
+
+    private static void writeReport(File file, CollapseMetrics.Snapshot snapshot, long lBytesPerEvent)
+            throws IOException {
+        final File dir = file.getParentFile();
+        if ((dir != null) && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        final CollapseMetrics.LatencyHistogram dispatch = snapshot.getOffsetDispatch();
+        final Writer writer = new FileWriter(file);
+        try {
+            writer.write("events=" + snapshot.getOffsetEventCount() + "\n");
+            writer.write("dispatchMeanNanos=" + dispatch.getMeanNanos() + "\n");
+            writer.write("dispatchP99Nanos=" + dispatch.getPercentileNanos(99.0f) + "\n");
+            writer.write("dispatchMaxNanos=" + dispatch.getMaxNanos() + "\n");
+            writer.write("bytesPerEvent=" + lBytesPerEvent + "\n");
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Counts the bytes allocated by the test thread, skipping the test if the JVM cannot tell
+     */
+    private static class AllocationCounter {
+        final com.sun.management.ThreadMXBean mThreadBean;
+        final long mlThreadId = Thread.currentThread().getId();
+        long mlOverhead = 0;
+        long mlStart = 0;
+
+        AllocationCounter() {
+            final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+            assumeTrue(threadBean instanceof com.sun.management.ThreadMXBean);
+            mThreadBean = (com.sun.management.ThreadMXBean) threadBean;
+            assumeTrue(mThreadBean.isThreadAllocatedMemorySupported() && mThreadBean.isThreadAllocatedMemoryEnabled());
+        }
+
+        void start() {
+            // Reading the counter may allocate itself, so measure that first
+            final long lCalibrationStart = mThreadBean.getThreadAllocatedBytes(mlThreadId);
+            mlOverhead = mThreadBean.getThreadAllocatedBytes(mlThreadId) - lCalibrationStart;
+            mlStart = mThreadBean.getThreadAllocatedBytes(mlThreadId);
+        }
+
+        /**
+         * @return the bytes allocated since {@link #start()}
+         */
+        long stop() {
+            return mThreadBean.getThreadAllocatedBytes(mlThreadId) - mlStart - mlOverhead;
+        }
+    }
+
+    /**
+     * The landing screen in an activity, laid out at a phone size, and the nested scroll that drives it
+     */
+    private static class Hierarchy {
+        final CountingFrameLayout mRoot;
+        final CoordinatorLayout mCoordinator;
+        final AppBarLayout mAppBar;
+        final CollapsibleToolbarHelper mHelper;
+        final View mTarget;
+        final int[] mnConsumed = new int[2];
+        final int[] mnTops;
+        final float[] mfTranslationYs;
+        final float[] mfAlphas;
+        long mlChangedChildren = 0;
+        boolean mbCollapsing = true;
+        int mnCollapseCycles = 0;
+        int mnEvents = 0;
+
+        Hierarchy() {
+            final Activity activity = Robolectric.buildActivity(AppCompatActivity.class).create().start().resume().visible().get();
+            mRoot = new CountingFrameLayout(activity);
+            LayoutInflater.from(activity).inflate(R.layout.activity_landing, mRoot, true);
+            activity.setContentView(mRoot);
+
+            mCoordinator = (CoordinatorLayout) mRoot.getChildAt(0);
+            mAppBar = (AppBarLayout) mRoot.findViewById(R.id.app_bar);
+            mHelper = (CollapsibleToolbarHelper) mRoot.findViewById(R.id.toolbar_layout);
+            mTarget = mRoot.findViewById(R.id.base_container);
+
+            // Scrub the fade of the edit button, so that its alpha follows the scroll instead of animating
+            // over the frames that follow
+            ((CollapsibleToolbarHelper.LayoutParams) mHelper.findViewById(R.id.hello_edit).getLayoutParams())
+                    .setAlphaMode(CollapsibleToolbarHelper.LayoutParams.ALPHA_MODE_SCRUB);
+            mnTops = new int[mHelper.getChildCount()];
+            mfTranslationYs = new float[mHelper.getChildCount()];
+            mfAlphas = new float[mHelper.getChildCount()];
+
+            // The helper sets its minimum height on the first layout, which asks for another one
+            final View decor = activity.getWindow().getDecorView();
+            for (int nCtr = 0; (nCtr < 3) && ((nCtr == 0) || decor.isLayoutRequested()); nCtr++) {
+                decor.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                        View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY));
+                decor.layout(0, 0, WIDTH, HEIGHT);
+            }
+            assertTrue(mAppBar.getTotalScrollRange() > 0);
+        }
+
+        /**
+         * Send offset events through the behavior: nested pre scrolls up until the bar is collapsed,
+         * then unconsumed nested scrolls down until it is expanded again, and so on
+         */
+        void scroll(int nEvents) {
+            final AppBarLayout.Behavior behavior =
+                    (AppBarLayout.Behavior) ((CoordinatorLayout.LayoutParams) mAppBar.getLayoutParams()).getBehavior();
+
+            for (int nCtr = 0; nCtr < nEvents; nCtr++) {
+                snapshotChildren();
+                if (mbCollapsing) {
+                    behavior.onNestedPreScroll(mCoordinator, mAppBar, mTarget, 0, STEP, mnConsumed);
+                    if (mAppBar.getTop() <= -mAppBar.getTotalScrollRange()) {
+                        mbCollapsing = false;
+                    }
+                }
+                else {
+                    behavior.onNestedScroll(mCoordinator, mAppBar, mTarget, 0, 0, 0, -STEP);
+                    if (mAppBar.getTop() >= 0) {
+                        // The end of the nested scroll lets the next one pre scroll again
+                        behavior.onStopNestedScroll(mCoordinator, mAppBar, mTarget);
+                        mbCollapsing = true;
+                        mnCollapseCycles++;
+                    }
+                }
+
+                if ((++mnEvents % EVENTS_PER_FRAME) == 0) {
+                    Robolectric.getForegroundThreadScheduler().advanceBy(FRAME_MILLIS);
+                }
+                mlChangedChildren += countChangedChildren();
+            }
+        }
+
+        private void snapshotChildren() {
+            for (int nChild = 0; nChild < mnTops.length; nChild++) {
+                final View child = mHelper.getChildAt(nChild);
+                mnTops[nChild] = child.getTop();
+                mfTranslationYs[nChild] = child.getTranslationY();
+                mfAlphas[nChild] = child.getAlpha();
+            }
+        }
+
+        /**
+         * @return the number of children of the helper moved or faded since the last snapshot
+         */
+        private int countChangedChildren() {
+            int nChanged = 0;
+            for (int nChild = 0; nChild < mnTops.length; nChild++) {
+                final View child = mHelper.getChildAt(nChild);
+                if ((mnTops[nChild] != child.getTop()) || (mfTranslationYs[nChild] != child.getTranslationY()) ||
+                        (mfAlphas[nChild] != child.getAlpha())) {
+                    nChanged++;
+                }
+            }
+            return nChanged;
+        }
+    }
+
+    /**
+     * The root of the content, counting the invalidations that reach it from any view below
+     */
+    private static class CountingFrameLayout extends FrameLayout {
+        long mlInvalidations = 0;
+
+        CountingFrameLayout(Context context) {
+            super(context);
+        }
+
+        @Override
+        public ViewParent invalidateChildInParent(int[] location, Rect dirty) {
+            mlInvalidations++;
+            return super.invalidateChildInParent(location, dirty);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package abysmel.com.collapsibletoolbarhelper;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import abysmel.com.collapsibletoolbarhelper.helpers.LayoutRequestAuditor;
+import abysmel.com.collapsibletoolbarhelper.helpers.ScrollTrace;
+import abysmel.com.collapsibletoolbarhelper.widgets.CollapsibleToolbarHelper;
+import abysmel.com.collapsibletoolbarhelper.widgets.HeaderFixture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Replays a fling through the landing header, frame by frame, and checks where the children end up.
+ * The CPU time of each frame is written to build/reports/scroll-trace so that the cost can be followed
+ * over time by the CI.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class ScrollTraceReplayTest {
+    private static final File REPORT_DIR = new File("build/reports/scroll-trace");
+
+    @Test
+    public void traceSurvivesRoundTrip() throws IOException {
+        final ScrollTrace trace = flingTrace(420, 60);
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        trace.write(out);
+        final ScrollTrace read = ScrollTrace.read(new ByteArrayInputStream(out.toByteArray()));
+
+        assertEquals(trace.getCount(), read.getCount());
+        for (int nCtr = 0; nCtr < trace.getCount(); nCtr++) {
+            assertEquals(trace.getTimeNanos(nCtr), read.getTimeNanos(nCtr));
+            assertEquals(trace.getVerticalOffset(nCtr), read.getVerticalOffset(nCtr));
+            assertEquals(trace.getScrollRange(nCtr), read.getScrollRange(nCtr));
+        }
+        // Deltas keep it well under the 16 bytes per sample of the raw values
+        assertTrue(out.size() < trace.getCount() * 6);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherFiles() throws IOException {
+        ScrollTrace.read(new ByteArrayInputStream(new byte[] {'C', 'T', 'H', 'R', 1, 0, 0, 0, 0}));
+    }
+
+    @Test
+    public void recordsWhatIsReplayed() {
+        final CollapsibleToolbarHelper header = HeaderFixture.createHeader(RuntimeEnvironment.application, true);
+        final ScrollTrace recorded = new ScrollTrace();
+        header.setScrollTraceRecorder(recorded);
+
+        final ScrollTrace trace = flingTrace(HeaderFixture.getScrollRange(header), 30);
+        new ScrollTraceReplayer(header).replay(trace);
+
+        assertEquals(trace.getCount(), recorded.getCount());
+        for (int nCtr = 0; nCtr < trace.getCount(); nCtr++) {
+            assertEquals(trace.getVerticalOffset(nCtr), recorded.getVerticalOffset(nCtr));
+            assertEquals(trace.getScrollRange(nCtr), recorded.getScrollRange(nCtr));
+        }
+    }
+
+    @Test
+    public void replayIsDeterministic() {
+        final CollapsibleToolbarHelper first = HeaderFixture.createHeader(RuntimeEnvironment.application, true);
+        final CollapsibleToolbarHelper second = HeaderFixture.createHeader(RuntimeEnvironment.application, true);
+        final ScrollTrace trace = flingTrace(HeaderFixture.getScrollRange(first), 60);
+
+        final List<ScrollTraceReplayer.Frame> firstFrames = new ScrollTraceReplayer(first).replay(trace);
+        final List<ScrollTraceReplayer.Frame> secondFrames = new ScrollTraceReplayer(second).replay(trace);
+
+        assertEquals(firstFrames.size(), secondFrames.size());
+        for (int nCtr = 0; nCtr < firstFrames.size(); nCtr++) {
+            assertTrue(firstFrames.get(nCtr) + " / " + secondFrames.get(nCtr),
+                    firstFrames.get(nCtr).sameStateAs(secondFrames.get(nCtr)));
+        }
+    }
+
+    @Test
+    public void flingCollapsesTheHeader() throws IOException {
+        final CollapsibleToolbarHelper header = HeaderFixture.createHeader(RuntimeEnvironment.application, true);
+        final int nScrollRange = HeaderFixture.getScrollRange(header);
+        final int nTitle = header.indexOfChild(header.findViewById(R.id.hello_text));
+        final int nEdit = header.indexOfChild(header.findViewById(R.id.hello_edit));
+        final int nTitleTop = header.getChildAt(nTitle).getTop();
+
+        final LayoutRequestAuditor auditor = new LayoutRequestAuditor();
+        header.setLayoutRequestAuditor(auditor);
+        auditor.arm();
+        final List<ScrollTraceReplayer.Frame> frames = new ScrollTraceReplayer(header).replay(flingTrace(nScrollRange, 60));
+        auditor.disarm();
+
+        // A scroll moves and fades the children, it never lays them out again
+        auditor.assertNoRequests();
+
+        ScrollTraceReplayer.Frame previous = null;
+        for (ScrollTraceReplayer.Frame frame : frames) {
+            // The pinned title moves down exactly as much as the header scrolls up
+            assertEquals(frame.toString(), nTitleTop - frame.mnOffset, frame.mnTops[nTitle]);
+
+            if (previous != null) {
+                assertTrue(frame.toString(), frame.mfAlphas[nEdit] <= previous.mfAlphas[nEdit]);
+                assertTrue(frame.toString(), frame.mfTextFraction >= previous.mfTextFraction);
+            }
+            previous = frame;
+        }
+
+        final ScrollTraceReplayer.Frame last = frames.get(frames.size() - 1);
+        assertEquals(-nScrollRange, last.mnOffset);
+        assertTrue(last.toString(), last.mfAlphas[nEdit] < 1.0f);
+        assertTrue(last.toString(), last.mfTextFraction > 0.0f);
+
+        ScrollTraceReplayer.writeReport(frames, new File(REPORT_DIR, "flingCollapsesTheHeader.csv"));
+    }
+
+    /**
+     * A fling that collapses the header: one event every 8ms (two per frame), fast at first and slowing
+     * down as it reaches the end of the scroll range
+     */
+    private static ScrollTrace flingTrace(int nScrollRange, int nSamples) {
+        final ScrollTrace trace = new ScrollTrace();
+        final long lStartNanos = 1000000000L;
+        for (int nCtr = 0; nCtr < nSamples; nCtr++) {
+            final float fProgress = nCtr / (float) (nSamples - 1);
+            final float fRemaining = 1.0f - fProgress;
+            final int nOffset = -Math.round(nScrollRange * (1.0f - fRemaining * fRemaining * fRemaining));
+            trace.record(lStartNanos + nCtr * 8000000L, nOffset, nScrollRange);
+        }
+        return trace;
+    }
+}
@@ -0,0 +1,158 @@
+package abysmel.com.collapsibletoolbarhelper;
+
+import android.view.View;
+
+import org.robolectric.Robolectric;
+import org.robolectric.util.Scheduler;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import abysmel.com.collapsibletoolbarhelper.helpers.ScrollTrace;
+import abysmel.com.collapsibletoolbarhelper.widgets.CollapsibleTextLayout;
+import abysmel.com.collapsibletoolbarhelper.widgets.CollapsibleToolbarHelper;
+import abysmel.com.collapsibletoolbarhelper.widgets.HeaderFixture;
+
+/**
+ * Replays a recorded scroll trace into a laid out CollapsibleToolbarHelper under Robolectric.
+ *
+ * The trace is cut into frames on a virtual clock: the samples that fall within a frame are fed to the
+ * helper as offset events, then the main looper scheduler is advanced to the end of the frame so that
+ * anything the helper posted (coalesced offsets, animations) runs. The state of every child and the CPU
+ * time spent feeding the frame are captured once per frame.
+ */
+public class ScrollTraceReplayer {
+    public static final long FRAME_INTERVAL_NANOS = 16666667L;
+
+    private final CollapsibleToolbarHelper mHelper;
+
+    public ScrollTraceReplayer(CollapsibleToolbarHelper helper) {
+        mHelper = helper;
+    }
+
+    /**
+     * Replay the whole trace
+     *
+     * @return one frame per vsync interval from the first sample to the last one
+     */
+    public List<Frame> replay(ScrollTrace trace) {
+        final List<Frame> frames = new ArrayList<>();
+        if (trace.getCount() == 0) {
+            return frames;
+        }
+
+        final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        final boolean bCpuTime = threadBean.isCurrentThreadCpuTimeSupported();
+        final Scheduler scheduler = Robolectric.getForegroundThreadScheduler();
+        final long lStartMillis = scheduler.getCurrentTime();
+        final long lFirstNanos = trace.getTimeNanos(0);
+
+        int nSample = 0;
+        int nOffset = 0;
+        for (long lFrameEnd = lFirstNanos + FRAME_INTERVAL_NANOS; nSample < trace.getCount(); lFrameEnd += FRAME_INTERVAL_NANOS) {
+            final long lCpuStart = bCpuTime ? threadBean.getCurrentThreadCpuTime() : 0;
+            int nEvents = 0;
+            while ((nSample < trace.getCount()) && (trace.getTimeNanos(nSample) < lFrameEnd)) {
+                nOffset = trace.getVerticalOffset(nSample);
+                HeaderFixture.dispatchOffset(mHelper, nOffset, trace.getScrollRange(nSample));
+                nSample++;
+                nEvents++;
+            }
+            scheduler.advanceTo(lStartMillis + (lFrameEnd - lFirstNanos) / 1000000L);
+            final long lCpuNanos = bCpuTime ? (threadBean.getCurrentThreadCpuTime() - lCpuStart) : 0;
+
+            frames.add(capture(frames.size(), nOffset, nEvents, lCpuNanos));
+        }
+        return frames;
+    }
+
+    /**
+     * Write the cost of each frame to a CSV file, so that it can be followed over time by the CI
+     */
+    public static void writeReport(List<Frame> frames, File file) throws IOException {
+        final File dir = file.getParentFile();
+        if ((dir != null) && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        final Writer writer = new FileWriter(file);
+        try {
+            writer.write("frame,offset,events,cpuNanos\n");
+            for (Frame frame : frames) {
+                writer.write(frame.mnIndex + "," + frame.mnOffset + "," + frame.mnEvents + "," + frame.mlCpuNanos + "\n");
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    private Frame capture(int nIndex, int nOffset, int nEvents, long lCpuNanos) {
+        final int count = mHelper.getChildCount();
+        final Frame frame = new Frame(nIndex, nOffset, nEvents, lCpuNanos, count);
+        for (int nCtr = 0; nCtr < count; nCtr++) {
+            final View child = mHelper.getChildAt(nCtr);
+            frame.mnTops[nCtr] = child.getTop();
+            frame.mfTranslationYs[nCtr] = child.getTranslationY();
+            frame.mfAlphas[nCtr] = child.getAlpha();
+            if (child instanceof CollapsibleTextLayout) {
+                final CollapsibleTextLayout text = (CollapsibleTextLayout) child;
+                frame.mfTextFraction = text.getScrollOffsetFraction();
+                frame.mfTextX = text.getCurrentDrawX();
+                frame.mfTextY = text.getCurrentDrawY();
+            }
+        }
+        return frame;
+    }
+
+    /**
+     * The state of the helper at the end of one frame
+     */
+    public static class Frame {
+        public final int mnIndex;
+        public final int mnOffset;
+        public final int mnEvents;
+        public final long mlCpuNanos;
+        public final int[] mnTops;
+        public final float[] mfTranslationYs;
+        public final float[] mfAlphas;
+        public float mfTextFraction = 0.0f;
+        public float mfTextX = 0.0f;
+        public float mfTextY = 0.0f;
+
+        Frame(int nIndex, int nOffset, int nEvents, long lCpuNanos, int nChildCount) {
+            mnIndex = nIndex;
+            mnOffset = nOffset;
+            mnEvents = nEvents;
+            mlCpuNanos = lCpuNanos;
+            mnTops = new int[nChildCount];
+            mfTranslationYs = new float[nChildCount];
+            mfAlphas = new float[nChildCount];
+        }
+
+        /**
+         * Compare the state of the children, leaving out the CPU cost which changes from run to run
+         */
+        public boolean sameStateAs(Frame other) {
+            return (mnOffset == other.mnOffset) &&
+                    Arrays.equals(mnTops, other.mnTops) &&
+                    Arrays.equals(mfTranslationYs, other.mfTranslationYs) &&
+                    Arrays.equals(mfAlphas, other.mfAlphas) &&
+                    (mfTextFraction == other.mfTextFraction) &&
+                    (mfTextX == other.mfTextX) &&
+                    (mfTextY == other.mfTextY);
+        }
+
+        @Override
+        public String toString() {
+            return "Frame " + mnIndex + " offset " + mnOffset + " tops " + Arrays.toString(mnTops) +
+                    " alphas " + Arrays.toString(mfAlphas) + " text " + mfTextFraction + " (" + mfTextX +
+                    ", " + mfTextY + ")";
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package abysmel.com.collapsibletoolbarhelper;
+
+import android.content.Context;
+import android.view.Gravity;
+import android.view.View;
+import android.widget.RelativeLayout;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import abysmel.com.collapsibletoolbarhelper.helpers.SinglePassLayoutEngine;
+import abysmel.com.collapsibletoolbarhelper.widgets.CollapsibleToolbarHelper;
+import abysmel.com.collapsibletoolbarhelper.widgets.HeaderFixture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Counts the children which run their onMeasure across a collapse during which one of them asks for a
+ * layout, with the single pass engine and with the PercentRelativeLayout. Only the child which asked is
+ * measured again: the others are skipped by View#measure, and counted as measure cache hits
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class SinglePassLayoutEngineTest {
+    private static final int CHILD_COUNT = 8;
+    private static final int REQUESTING_CHILD = 3;
+
+    /**
+     * Counts its measure passes
+     */
+    private static class CountingView extends View {
+        int mnMeasureCount = 0;
+
+        CountingView(Context context) {
+            super(context);
+        }
+
+        @Override
+        protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+            mnMeasureCount++;
+            super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+        }
+    }
+
+    @Test
+    public void singlePassRemeasuresOnlyTheRequestingChild() {
+        final CollapsibleToolbarHelper header = createHeader(true);
+        assertTrue(header.isSinglePassLayout());
+
+        final int[] nBefore = getMeasureCounts(header);
+        header.resetMeasureCacheCounts();
+        collapseWithOneRequest(header);
+
+        assertOnlyRequestingChildMeasured(header, nBefore);
+        // The engine still hands every child its specs, View#measure returns right away for the others
+        assertEquals(CHILD_COUNT - 1, header.getSinglePassLayoutEngine().getMeasureCacheHitCount());
+        assertEquals(1, header.getSinglePassLayoutEngine().getMeasureCacheMissCount());
+        assertMeasureCacheCounts(header, CHILD_COUNT - 1, 1);
+    }
+
+    @Test
+    public void relativeLayoutRemeasuresOnlyTheRequestingChild() {
+        final CollapsibleToolbarHelper header = createHeader(false);
+        assertFalse(header.isSinglePassLayout());
+
+        final int[] nBefore = getMeasureCounts(header);
+        header.resetMeasureCacheCounts();
+        collapseWithOneRequest(header);
+
+        // RelativeLayout measures each child twice with different specs. From API 19, View#measure keeps
+        // the sizes of both, so the children that did not ask are not measured again either
+        assertOnlyRequestingChildMeasured(header, nBefore);
+        assertMeasureCacheCounts(header, CHILD_COUNT - 1, 1);
+    }
+
+    @Test
+    public void specsChangeMeasuresEveryChild() {
+        final CollapsibleToolbarHelper header = createHeader(true);
+        final int[] nBefore = getMeasureCounts(header);
+        header.resetMeasureCacheCounts();
+
+        layout(header, HeaderFixture.WIDTH / 2);
+        final int[] nAfter = getMeasureCounts(header);
+        for (int nCtr = 0; nCtr < CHILD_COUNT; nCtr++) {
+            assertTrue("child " + nCtr, nAfter[nCtr] > nBefore[nCtr]);
+        }
+        assertMeasureCacheCounts(header, 0, CHILD_COUNT);
+    }
+
+    @Test
+    public void gravityFallsBackToTheRelativeLayout() {
+        final CollapsibleToolbarHelper header = createHeader(true);
+        final SinglePassLayoutEngine engine = header.getSinglePassLayoutEngine();
+        header.resetMeasureCacheCounts();
+
+        // RelativeLayout has no getter for the gravity before API 24, the header keeps it for the engine
+        header.setVerticalGravity(Gravity.BOTTOM);
+        layout(header, HeaderFixture.WIDTH);
+        assertEquals(0, engine.getMeasureCacheHitCount() + engine.getMeasureCacheMissCount());
+
+        // Back to the engine, which cannot know what the RelativeLayout did in between
+        header.setGravity(Gravity.NO_GRAVITY);
+        layout(header, HeaderFixture.WIDTH);
+        assertEquals(0, engine.getMeasureCacheHitCount());
+        assertEquals(CHILD_COUNT, engine.getMeasureCacheMissCount());
+    }
+
+    /**
+     * Scroll the header all the way through, with one child asking for a layout half way and the header
+     * laid out again then, as the view root would
+     */
+    private static void collapseWithOneRequest(CollapsibleToolbarHelper header) {
+        final int nScrollRange = HeaderFixture.getScrollRange(header);
+        final int nHalfway = -(nScrollRange / 16) * 8;
+        for (int nOffset = 0; nOffset >= -nScrollRange; nOffset -= 8) {
+            HeaderFixture.dispatchOffset(header, nOffset, nScrollRange);
+            if (nOffset == nHalfway) {
+                header.getChildAt(REQUESTING_CHILD).requestLayout();
+                layout(header, HeaderFixture.WIDTH);
+            }
+        }
+        HeaderFixture.dispatchOffset(header, -nScrollRange, nScrollRange);
+    }
+
+    private static void assertOnlyRequestingChildMeasured(CollapsibleToolbarHelper header, int[] nBefore) {
+        final int[] nAfter = getMeasureCounts(header);
+        int nMisses = 0;
+        int nHits = 0;
+        for (int nCtr = 0; nCtr < CHILD_COUNT; nCtr++) {
+            if (nAfter[nCtr] == nBefore[nCtr]) {
+                nHits++;
+            }
+            else {
+                assertEquals("child " + nCtr, REQUESTING_CHILD, nCtr);
+                nMisses++;
+            }
+        }
+        assertEquals(1, nMisses);
+        assertEquals(CHILD_COUNT - 1, nHits);
+    }
+
+    private static void assertMeasureCacheCounts(CollapsibleToolbarHelper header, int nHits, int nMisses) {
+        assertEquals("hits", nHits, header.getMeasureCacheHitCount());
+        assertEquals("misses", nMisses, header.getMeasureCacheMissCount());
+    }
+
+    private static int[] getMeasureCounts(CollapsibleToolbarHelper header) {
+        final int[] nCounts = new int[CHILD_COUNT];
+        for (int nCtr = 0; nCtr < CHILD_COUNT; nCtr++) {
+            nCounts[nCtr] = ((CountingView) header.getChildAt(nCtr)).mnMeasureCount;
+        }
+        return nCounts;
+    }
+
+    /**
+     * A header of fixed size children pinned along the top, laid out at a phone size, off screen
+     */
+    private static CollapsibleToolbarHelper createHeader(boolean bSinglePass) {
+        final Context context = HeaderFixture.createContext(RuntimeEnvironment.application);
+        final CollapsibleToolbarHelper header = new CollapsibleToolbarHelper(context);
+        header.setSinglePassLayout(bSinglePass);
+        for (int nCtr = 0; nCtr < CHILD_COUNT; nCtr++) {
+            final CollapsibleToolbarHelper.LayoutParams params = new CollapsibleToolbarHelper.LayoutParams(100, 60);
+            params.addRule(RelativeLayout.ALIGN_PARENT_LEFT);
+            params.addRule(RelativeLayout.ALIGN_PARENT_TOP);
+            params.leftMargin = 110 * nCtr;
+            params.topMargin = 20 * nCtr;
+            header.addView(new CountingView(context), params);
+        }
+        layout(header, HeaderFixture.WIDTH);
+        return header;
+    }
+
+    private static void layout(CollapsibleToolbarHelper header, int nWidth) {
+        header.measure(View.MeasureSpec.makeMeasureSpec(nWidth, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(HeaderFixture.HEIGHT, View.MeasureSpec.EXACTLY));
+        header.layout(0, 0, header.getMeasuredWidth(), header.getMeasuredHeight());
+    }
+}
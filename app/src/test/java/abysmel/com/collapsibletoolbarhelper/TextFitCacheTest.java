@@ -0,0 +1,113 @@
+package abysmel.com.collapsibletoolbarhelper;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import abysmel.com.collapsibletoolbarhelper.helpers.TextFitCache;
+import abysmel.com.collapsibletoolbarhelper.helpers.TextSizeFitter;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks of the text size search and of the cache in front of it, with a stub measurer standing in for
+ * the Paint, on a plain JVM
+ */
+public class TextFitCacheTest {
+    private static final float COLLAPSED_SIZE = 64.0f;
+    private static final float MAX_EXPANDED_SIZE = 186.0f;
+    private static final float PRECISION = 0.5f;
+    private static final String TITLE = "Hello World";
+
+    private CountingMeasurer mMeasurer;
+
+    @Before
+    public void setUp() {
+        mMeasurer = new CountingMeasurer(false);
+    }
+
+    @Test
+    public void searchMatchesTheRecursiveOne() {
+        final String[] texts = {"A", "Hello World", "A much longer title that needs a much smaller size"};
+        for (String text : texts) {
+            for (int nWidth = 0; nWidth <= 2000; nWidth += 7) {
+                assertEquals(text + " in " + nWidth,
+                        recursiveFit(text, mMeasurer, nWidth, COLLAPSED_SIZE, MAX_EXPANDED_SIZE, PRECISION),
+                        TextSizeFitter.fitSingleLine(text, mMeasurer, nWidth, COLLAPSED_SIZE, MAX_EXPANDED_SIZE, PRECISION),
+                        0.0f);
+            }
+        }
+    }
+
+    @Test
+    public void secondFitIsOneLookup() {
+        final TextFitCache cache = new TextFitCache(8);
+        final Object typeface = new Object();
+
+        final float fFirst = cache.fitSingleLine(TITLE, typeface, mMeasurer, 1080, COLLAPSED_SIZE, MAX_EXPANDED_SIZE, PRECISION);
+        final long lMeasured = mMeasurer.mlCount;
+        final float fSecond = cache.fitSingleLine(TITLE, typeface, mMeasurer, 1080, COLLAPSED_SIZE, MAX_EXPANDED_SIZE, PRECISION);
+
+        assertEquals(fFirst, fSecond, 0.0f);
+        assertEquals(lMeasured, mMeasurer.mlCount);
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(0.5f, cache.getHitRate(), 0.0f);
+    }
+
+    @Test
+    public void keysOnEveryInput() {
+        final TextFitCache cache = new TextFitCache(8);
+        final Object typeface = new Object();
+
+        cache.fitSingleLine(TITLE, typeface, mMeasurer, 1080, COLLAPSED_SIZE, MAX_EXPANDED_SIZE, PRECISION);
+        cache.fitSingleLine(TITLE + "!", typeface, mMeasurer, 1080, COLLAPSED_SIZE, MAX_EXPANDED_SIZE, PRECISION);
+        cache.fitSingleLine(TITLE, new Object(), mMeasurer, 1080, COLLAPSED_SIZE, MAX_EXPANDED_SIZE, PRECISION);
+        cache.fitSingleLine(TITLE, typeface, mMeasurer, 480, COLLAPSED_SIZE, MAX_EXPANDED_SIZE, PRECISION);
+        cache.fitSingleLine(TITLE, typeface, mMeasurer, 1080, COLLAPSED_SIZE - 1, MAX_EXPANDED_SIZE, PRECISION);
+        cache.fitSingleLine(TITLE, typeface, mMeasurer, 1080, COLLAPSED_SIZE, MAX_EXPANDED_SIZE + 1, PRECISION);
+
+        assertEquals(0, cache.getHitCount());
+        assertEquals(6, cache.size());
+
+        // A new string with the same characters still hits
+        cache.fitSingleLine(new String(TITLE), typeface, mMeasurer, 1080, COLLAPSED_SIZE, MAX_EXPANDED_SIZE, PRECISION);
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void dropsTheLeastRecentlyUsedFit() {
+        final TextFitCache cache = new TextFitCache(2);
+
+        cache.fitSingleLine("One", null, mMeasurer, 1080, COLLAPSED_SIZE, MAX_EXPANDED_SIZE, PRECISION);
+        cache.fitSingleLine("Two", null, mMeasurer, 1080, COLLAPSED_SIZE, MAX_EXPANDED_SIZE, PRECISION);
+        cache.fitSingleLine("One", null, mMeasurer, 1080, COLLAPSED_SIZE, MAX_EXPANDED_SIZE, PRECISION);
+        cache.fitSingleLine("Three", null, mMeasurer, 1080, COLLAPSED_SIZE, MAX_EXPANDED_SIZE, PRECISION);
+        assertEquals(2, cache.size());
+        cache.resetStatistics();
+
+        // "Two" was the least recently used
+        cache.fitSingleLine("One", null, mMeasurer, 1080, COLLAPSED_SIZE, MAX_EXPANDED_SIZE, PRECISION);
+        cache.fitSingleLine("Three", null, mMeasurer, 1080, COLLAPSED_SIZE, MAX_EXPANDED_SIZE, PRECISION);
+        assertEquals(2, cache.getHitCount());
+        cache.fitSingleLine("Two", null, mMeasurer, 1080, COLLAPSED_SIZE, MAX_EXPANDED_SIZE, PRECISION);
+        assertEquals(1, cache.getMissCount());
+    }
+
+    /**
+     * The recursive search the layout used before, as the reference
+     */
+    private static float recursiveFit(String text, TextSizeFitter.Measurer measurer, float targetWidth, float low,
+            float high, float precision) {
+        final float mid = (low + high) / 2.0f;
+        final float maxLineWidth = measurer.measureText(text, mid);
+        if ((high - low) < precision) {
+            return low;
+        } else if (maxLineWidth > targetWidth) {
+            return recursiveFit(text, measurer, targetWidth, low, mid, precision);
+        } else if (maxLineWidth < targetWidth) {
+            return recursiveFit(text, measurer, targetWidth, mid, high, precision);
+        } else {
+            return mid;
+        }
+    }
+}
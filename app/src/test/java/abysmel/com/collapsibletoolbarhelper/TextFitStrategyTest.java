@@ -0,0 +1,119 @@
+package abysmel.com.collapsibletoolbarhelper;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import abysmel.com.collapsibletoolbarhelper.helpers.TextSizeFitter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the analytic text size fit with the binary search over a corpus of random titles and widths,
+ * on a plain JVM, with the linear and the hinted {@link CountingMeasurer} standing in for the Paint
+ */
+public class TextFitStrategyTest {
+    private static final float COLLAPSED_SIZE = 64.0f;
+    private static final float MAX_EXPANDED_SIZE = 186.0f;
+    private static final float PRECISION = 0.5f;
+    private static final int TITLE_COUNT = 300;
+    private static final int MAX_TITLE_LENGTH = 80;
+    private static final int MAX_WIDTH = 2400;
+    private static final int WIDTH_STEP = 37;
+
+    @Test
+    public void analyticFitMatchesTheSearchOnLinearText() {
+        compareOverCorpus(new CountingMeasurer(false));
+    }
+
+    @Test
+    public void analyticFitMatchesTheSearchOnHintedText() {
+        compareOverCorpus(new CountingMeasurer(true));
+    }
+
+    @Test
+    public void strategiesAreSelectable() {
+        final CountingMeasurer measurer = new CountingMeasurer(false);
+        final String title = "Hello World";
+        assertEquals(TextSizeFitter.fitSingleLine(title, measurer, 1080, COLLAPSED_SIZE, MAX_EXPANDED_SIZE, PRECISION),
+                TextSizeFitter.fit(TextSizeFitter.STRATEGY_BINARY_SEARCH, title, measurer, 1080, COLLAPSED_SIZE,
+                        MAX_EXPANDED_SIZE, PRECISION), 0.0f);
+        assertEquals(TextSizeFitter.fitSingleLineAnalytic(title, measurer, 1080, COLLAPSED_SIZE, MAX_EXPANDED_SIZE, PRECISION),
+                TextSizeFitter.fit(TextSizeFitter.STRATEGY_ANALYTIC, title, measurer, 1080, COLLAPSED_SIZE,
+                        MAX_EXPANDED_SIZE, PRECISION), 0.0f);
+    }
+
+    @Test
+    public void textWhichFitsTheLargestSizeGetsTheSizeTheSearchFinds() {
+        for (boolean bHinted : new boolean[] {false, true}) {
+            final CountingMeasurer measurer = new CountingMeasurer(bHinted);
+            for (String title : new String[] {"A", "Hello", "Hello World"}) {
+                final float fWidth = measurer.measureText(title, MAX_EXPANDED_SIZE);
+                for (float fExtra : new float[] {0.5f, 1.0f, 1000.0f}) {
+                    final float fSearched = TextSizeFitter.fitSingleLine(title, measurer, fWidth + fExtra,
+                            COLLAPSED_SIZE, MAX_EXPANDED_SIZE, PRECISION);
+                    measurer.mlCount = 0;
+                    final float fAnalytic = TextSizeFitter.fitSingleLineAnalytic(title, measurer, fWidth + fExtra,
+                            COLLAPSED_SIZE, MAX_EXPANDED_SIZE, PRECISION);
+
+                    // Just below the largest size, from the one measurement at the largest size
+                    assertEquals(fSearched, fAnalytic, 0.0f);
+                    assertTrue((fAnalytic < MAX_EXPANDED_SIZE) && (fAnalytic > MAX_EXPANDED_SIZE - PRECISION));
+                    assertEquals(1, measurer.mlCount);
+                }
+            }
+        }
+    }
+
+    /**
+     * Fit every title of the corpus to every width with both strategies. The analytic fit has to fit the
+     * width (unless even the smallest size does not), be within the precision of the largest size that
+     * fits, never be smaller than what the search finds by the precision, and measure far less
+     */
+    private static void compareOverCorpus(CountingMeasurer measurer) {
+        final Random random = new Random(42);
+        long lSearchMeasurements = 0;
+        long lAnalyticMeasurements = 0;
+
+        for (int nTitle = 0; nTitle < TITLE_COUNT; nTitle++) {
+            final String title = randomTitle(random);
+            for (int nWidth = 0; nWidth <= MAX_WIDTH; nWidth += WIDTH_STEP) {
+                final String label = "\"" + title + "\" in " + nWidth;
+
+                measurer.mlCount = 0;
+                final float fSearched = TextSizeFitter.fitSingleLine(title, measurer, nWidth, COLLAPSED_SIZE,
+                        MAX_EXPANDED_SIZE, PRECISION);
+                lSearchMeasurements += measurer.mlCount;
+
+                measurer.mlCount = 0;
+                final float fAnalytic = TextSizeFitter.fitSingleLineAnalytic(title, measurer, nWidth, COLLAPSED_SIZE,
+                        MAX_EXPANDED_SIZE, PRECISION);
+                lAnalyticMeasurements += measurer.mlCount;
+
+                assertTrue(label, (fAnalytic >= COLLAPSED_SIZE) && (fAnalytic <= MAX_EXPANDED_SIZE));
+                // The search stops early when a size happens to match the width exactly, which on hinted
+                // text can be anywhere on a plateau, so it is only a lower bound
+                assertTrue(label + ": " + fAnalytic + " < " + fSearched, fAnalytic > fSearched - PRECISION);
+
+                final boolean bFits = measurer.measureText(title, fAnalytic) <= nWidth;
+                assertTrue(label + " does not fit at " + fAnalytic, bFits || (fAnalytic == COLLAPSED_SIZE));
+                if (bFits && (fAnalytic + PRECISION <= MAX_EXPANDED_SIZE)) {
+                    assertTrue(label + " could be larger than " + fAnalytic,
+                            measurer.measureText(title, fAnalytic + PRECISION) > nWidth);
+                }
+            }
+        }
+
+        assertTrue(lAnalyticMeasurements * 2 < lSearchMeasurements);
+    }
+
+    private static String randomTitle(Random random) {
+        final int nLength = 1 + random.nextInt(MAX_TITLE_LENGTH);
+        final StringBuilder title = new StringBuilder(nLength);
+        for (int nCtr = 0; nCtr < nLength; nCtr++) {
+            title.append((char) ((random.nextInt(5) == 0) ? ' ' : 'A' + random.nextInt(58)));
+        }
+        return title.toString();
+    }
+}
@@ -0,0 +1,101 @@
+package abysmel.com.collapsibletoolbarhelper;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.text.SpannableString;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import abysmel.com.collapsibletoolbarhelper.helpers.TextLayoutCache;
+import abysmel.com.collapsibletoolbarhelper.widgets.CollapsibleTextLayout;
+import abysmel.com.collapsibletoolbarhelper.widgets.HeaderFixture;
+import abysmel.com.collapsibletoolbarhelper.widgets.CustomTypefaceSpan;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Checks that the layouts of a title are built once per text, size and width, and reused by the measure,
+ * layout and draw passes of the CollapsibleTextLayout
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class TextLayoutCacheTest {
+    private static final int WIDTH = HeaderFixture.WIDTH;
+    private static final int HEIGHT = HeaderFixture.HEIGHT;
+
+    @Test
+    public void reusesLayoutsUntilInvalidated() {
+        final TextLayoutCache cache = new TextLayoutCache();
+        final TextPaint paint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+        final CharSequence text = new SpannableStringBuilder("Hello World");
+
+        paint.setTextSize(32);
+        final StaticLayout collapsed = cache.get(text, paint, WIDTH);
+        paint.setTextSize(62);
+        final StaticLayout expanded = cache.get(text, paint, WIDTH);
+        assertNotSame(collapsed, expanded);
+
+        paint.setTextSize(32);
+        assertSame(collapsed, cache.get(text, paint, WIDTH));
+        paint.setTextSize(62);
+        assertSame(expanded, cache.get(text, paint, WIDTH));
+        assertEquals(2, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+
+        // Any other width, typeface or text is laid out again
+        assertNotSame(expanded, cache.get(text, paint, WIDTH / 2));
+        paint.setTypeface(Typeface.MONOSPACE);
+        assertNotSame(expanded, cache.get(text, paint, WIDTH));
+        paint.setTypeface(null);
+        assertNotSame(expanded, cache.get(new SpannableStringBuilder(text), paint, WIDTH));
+        assertEquals(TextLayoutCache.CAPACITY, cache.size());
+
+        cache.invalidate();
+        assertEquals(0, cache.size());
+        assertNotSame(expanded, cache.get(text, paint, WIDTH));
+    }
+
+    @Test
+    public void spannedTitleIsNotLaidOutPerFrame() {
+        final CollapsibleTextLayout title = HeaderFixture.createTitle(RuntimeEnvironment.application);
+        final SpannableString span = new SpannableString("Hello World");
+        span.setSpan(new CustomTypefaceSpan(Typeface.SERIF), 0, span.length(), Spanned.SPAN_INCLUSIVE_INCLUSIVE);
+        title.setSpan(span);
+
+        final Canvas canvas = new Canvas(Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888));
+        final TextLayoutCache cache = title.getTextLayoutCache();
+
+        // Draw the first frame of each size, then scroll back and forth through them
+        for (int nFrame = 0; nFrame <= 60; nFrame++) {
+            title.setScrollOffsetFraction(nFrame / 60.0f);
+            title.draw(canvas);
+        }
+        final long lMisses = cache.getMissCount();
+        for (int nFrame = 60; nFrame >= 0; nFrame--) {
+            title.setScrollOffsetFraction(nFrame / 60.0f);
+            title.draw(canvas);
+        }
+        for (int nFrame = 0; nFrame <= 60; nFrame++) {
+            title.setScrollOffsetFraction(nFrame / 60.0f);
+            title.draw(canvas);
+        }
+        assertEquals(lMisses, cache.getMissCount());
+
+        // A new span lays the title out again
+        title.setSpan(span);
+        title.draw(canvas);
+        assertEquals(lMisses + 1, cache.getMissCount());
+    }
+}
@@ -0,0 +1,126 @@
+package abysmel.com.collapsibletoolbarhelper;
+
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.text.TextPaint;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import abysmel.com.collapsibletoolbarhelper.helpers.TitleSegments;
+import abysmel.com.collapsibletoolbarhelper.widgets.CollapsibleTextLayout;
+import abysmel.com.collapsibletoolbarhelper.widgets.HeaderFixture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks where the segments of a title are drawn, and in which paint
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class TitleSegmentsTest {
+    private static final String TITLE = "Hello Big World";
+    private static final float TEXT_SIZE = 40.0f;
+
+    @Test
+    public void drawsEachSegmentAfterThePreviousOne() {
+        final TextPaint paint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+        final TitleSegments segments = new TitleSegments();
+        segments.add(6, Typeface.SANS_SERIF, 1.0f);
+        segments.add(10, Typeface.SERIF, Color.RED, true, 0.5f);
+        segments.add(0, null, 1.0f);
+        segments.prepare(TITLE, paint, TEXT_SIZE);
+
+        final RecordingCanvas canvas = new RecordingCanvas();
+        segments.draw(canvas, TITLE, 10.0f, 50.0f, Color.WHITE);
+
+        assertEquals(3, canvas.mRuns.size());
+        assertEquals("Hello ", canvas.mRuns.get(0));
+        assertEquals("Big ", canvas.mRuns.get(1));
+        assertEquals("World", canvas.mRuns.get(2));
+
+        // Each run starts where the previous one ends, measured in its own paint
+        final TextPaint measure = new TextPaint(paint);
+        measure.setTextSize(TEXT_SIZE);
+        measure.setTypeface(Typeface.SANS_SERIF);
+        final float fFirst = measure.measureText(TITLE, 0, 6);
+        measure.setTextSize(TEXT_SIZE * 0.5f);
+        measure.setTypeface(Typeface.SERIF);
+        final float fSecond = measure.measureText(TITLE, 6, 10);
+        assertEquals(10.0f, canvas.mXs.get(0), 0.001f);
+        assertEquals(10.0f + fFirst, canvas.mXs.get(1), 0.001f);
+        assertEquals(10.0f + fFirst + fSecond, canvas.mXs.get(2), 0.001f);
+
+        assertEquals(TEXT_SIZE, canvas.mSizes.get(0), 0.0f);
+        assertEquals(TEXT_SIZE * 0.5f, canvas.mSizes.get(1), 0.0f);
+        assertEquals(Color.WHITE, (int) canvas.mColors.get(0));
+        assertEquals(Color.RED, (int) canvas.mColors.get(1));
+        assertEquals(Color.WHITE, (int) canvas.mColors.get(2));
+    }
+
+    @Test
+    public void ellipsizedTitleEndsInTheSegmentItReaches() {
+        final TitleSegments segments = new TitleSegments();
+        segments.add(6, Typeface.SANS_SERIF, 1.0f);
+        segments.add(10, Typeface.SERIF, 1.0f);
+        segments.add(0, Typeface.MONOSPACE, 1.0f);
+
+        final String ellipsized = "Hello B\u2026";
+        segments.prepare(ellipsized, new TextPaint(), TEXT_SIZE);
+        assertEquals(2, segments.getPreparedCount());
+        assertEquals(6, segments.getStart(1));
+        assertEquals(ellipsized.length(), segments.getEnd(1));
+
+        final RecordingCanvas canvas = new RecordingCanvas();
+        segments.draw(canvas, ellipsized, 0.0f, 0.0f, Color.WHITE);
+        assertEquals("B\u2026", canvas.mRuns.get(1));
+    }
+
+    @Test
+    public void ellipsizesEachSegmentInItsOwnSize() {
+        final TextPaint paint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+        final TitleSegments segments = new TitleSegments();
+        segments.add(6, null, 1.0f);
+        segments.add(0, Typeface.SERIF, 1.5f);
+
+        final float fAvailable = segments.measure(TITLE, paint, TEXT_SIZE) * 0.75f;
+        final CharSequence ellipsized = segments.ellipsize(TITLE, paint, TEXT_SIZE, fAvailable);
+        assertTrue(ellipsized.length() < TITLE.length());
+        assertEquals('\u2026', ellipsized.charAt(ellipsized.length() - 1));
+
+        segments.prepare(ellipsized, paint, TEXT_SIZE);
+        assertTrue(segments.getWidth() <= fAvailable);
+
+        // A title which fits is left alone
+        assertSame(TITLE, segments.ellipsize(TITLE, paint, TEXT_SIZE, fAvailable * 2.0f));
+    }
+
+    @Test
+    public void largerSegmentIsDrawnWithinTheAvailableWidth() {
+        final CollapsibleTextLayout title = HeaderFixture.createTitle(RuntimeEnvironment.application);
+        title.setText("Hello World, and a great deal more than the header has room for");
+        title.clearTitleSegments();
+        title.addTitleSegment(6, null, 0, false, 1.0f);
+        title.addTitleSegment(Integer.MAX_VALUE, Typeface.SERIF, 0, false, 1.5f);
+
+        final int nAvailable = 300;
+        title.setExpandedBounds(0, 0, nAvailable, 100);
+        title.setCollapsedBounds(0, 0, nAvailable, 100);
+        title.recalculate();
+
+        // Expanded and collapsed, the title is drawn at its size, unscaled
+        for (float fFraction : new float[] {0.0f, 1.0f}) {
+            title.setScrollOffsetFraction(fFraction);
+            final RecordingCanvas canvas = new RecordingCanvas(HeaderFixture.WIDTH, HeaderFixture.HEIGHT);
+            title.draw(canvas);
+            assertEquals(2, canvas.getTextCount());
+            assertTrue(canvas.getTextWidth() + " > " + nAvailable, canvas.getTextWidth() <= nAvailable);
+        }
+    }
+}
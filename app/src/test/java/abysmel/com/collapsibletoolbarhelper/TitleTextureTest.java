@@ -0,0 +1,179 @@
+package abysmel.com.collapsibletoolbarhelper;
+
+import android.app.Activity;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.text.TextPaint;
+import android.view.ViewGroup;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import abysmel.com.collapsibletoolbarhelper.helpers.TitleTexture;
+import abysmel.com.collapsibletoolbarhelper.widgets.CollapsibleTextLayout;
+import abysmel.com.collapsibletoolbarhelper.widgets.CollapsibleToolbarHelper;
+import abysmel.com.collapsibletoolbarhelper.widgets.HeaderFixture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that a CollapsibleTextLayout in texture mode draws its title from a bitmap only while it scales,
+ * renders the bitmap once per title and size, sized to hold every segment, and reuses it until it is
+ * released or the title is detached
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class TitleTextureTest {
+    private static final int WIDTH = HeaderFixture.WIDTH;
+    private static final int HEIGHT = HeaderFixture.HEIGHT;
+
+    @Test
+    public void drawsTextureOnlyWhileScaling() {
+        final CollapsibleTextLayout title = HeaderFixture.createTitle(RuntimeEnvironment.application);
+        title.setUseTextureWhileScaling(true);
+        final RecordingCanvas canvas = new RecordingCanvas(WIDTH, HEIGHT);
+        int nTextureFrames = 0;
+
+        for (int nFrame = 1; nFrame < 60; nFrame++) {
+            title.setScrollOffsetFraction(nFrame / 60.0f);
+            canvas.reset();
+            title.draw(canvas);
+            if (canvas.mnBitmapCount == 0) {
+                // Snapped to a size, drawn as text
+                assertTrue(canvas.getTextCount() > 0);
+            } else {
+                assertEquals(1, canvas.mnBitmapCount);
+                assertEquals(0, canvas.getTextCount());
+                nTextureFrames++;
+            }
+        }
+        assertTrue(nTextureFrames > 0);
+
+        // Settled at either end, the title is text again
+        for (float fFraction : new float[] {0.0f, 1.0f}) {
+            title.setScrollOffsetFraction(fFraction);
+            canvas.reset();
+            title.draw(canvas);
+            assertEquals(0, canvas.mnBitmapCount);
+            assertTrue(canvas.getTextCount() > 0);
+        }
+    }
+
+    @Test
+    public void reusesTheBitmapUntilReleased() {
+        final TitleTexture texture = new TitleTexture();
+        assertNull(texture.begin(0, 40, 30.0f));
+        assertFalse(texture.isValid());
+
+        assertNotNull(texture.begin(400, 80, 60.0f));
+        assertTrue(texture.isValid());
+        final Bitmap bitmap = texture.getBitmap();
+        assertEquals(400, bitmap.getWidth());
+        assertEquals(80, bitmap.getHeight());
+
+        // A title which fits is rendered again into the same bitmap
+        texture.invalidate();
+        assertFalse(texture.isValid());
+        assertNotNull(texture.begin(250, 60, 45.0f));
+        assertTrue(texture.isValid());
+        assertSame(bitmap, texture.getBitmap());
+
+        // A larger one needs a larger bitmap
+        assertNotNull(texture.begin(500, 80, 60.0f));
+        assertEquals(500, texture.getBitmap().getWidth());
+
+        texture.release();
+        assertNull(texture.getBitmap());
+        assertFalse(texture.isValid());
+    }
+
+    @Test
+    public void textureIsKeptWhileTheTitleScales() {
+        final CollapsibleTextLayout title = HeaderFixture.createTitle(RuntimeEnvironment.application);
+        title.setUseTextureWhileScaling(true);
+        final TitleTexture texture = title.getTitleTexture();
+        final RecordingCanvas canvas = new RecordingCanvas(WIDTH, HEIGHT);
+
+        title.setScrollOffsetFraction(0.2f);
+        title.draw(canvas);
+        final Bitmap bitmap = texture.getBitmap();
+        assertTrue(texture.isValid());
+        assertNotNull(bitmap);
+
+        // Scrubbing through the transition does not render the title again
+        for (int nFrame = 13; nFrame < 30; nFrame++) {
+            title.setScrollOffsetFraction(nFrame / 60.0f);
+            title.draw(canvas);
+            assertTrue(texture.isValid());
+            assertSame(bitmap, texture.getBitmap());
+        }
+
+        // Turning the mode off drops the bitmap
+        title.setUseTextureWhileScaling(false);
+        assertNull(texture.getBitmap());
+    }
+
+    @Test
+    public void detachingRecyclesTheBitmap() {
+        final CollapsibleToolbarHelper header = HeaderFixture.createHeader(RuntimeEnvironment.application, false);
+        final CollapsibleTextLayout title = (CollapsibleTextLayout) header.findViewById(R.id.hello_text);
+        title.setUseTextureWhileScaling(true);
+        title.setScrollOffsetFraction(0.2f);
+        title.draw(new RecordingCanvas(WIDTH, HEIGHT));
+        final Bitmap bitmap = title.getTitleTexture().getBitmap();
+        assertNotNull(bitmap);
+
+        final Activity activity = Robolectric.setupActivity(Activity.class);
+        activity.setContentView(header);
+        ((ViewGroup) header.getParent()).removeView(header);
+
+        assertTrue(bitmap.isRecycled());
+        assertNull(title.getTitleTexture().getBitmap());
+        assertFalse(title.getTitleTexture().isValid());
+    }
+
+    @Test
+    public void textureHoldsTheTallestSegment() {
+        final CollapsibleTextLayout title = HeaderFixture.createTitle(RuntimeEnvironment.application);
+        title.setUseTextureWhileScaling(true);
+        title.clearTitleSegments();
+        title.addTitleSegment(5, null, 0, false, 1.0f);
+        title.addTitleSegment(Integer.MAX_VALUE, Typeface.SERIF, 0, false, 1.5f);
+        title.setScrollOffsetFraction(0.2f);
+        title.draw(new RecordingCanvas(WIDTH, HEIGHT));
+
+        // Between the sizes, the title is rendered at the expanded size
+        final TextPaint tall = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+        tall.setTextSize(title.getExpandedTextSize() * 1.5f);
+        tall.setTypeface(Typeface.SERIF);
+        final Bitmap bitmap = title.getTitleTexture().getBitmap();
+        assertNotNull(bitmap);
+        assertTrue(bitmap.getHeight() >= Math.ceil(tall.descent() - tall.ascent()));
+    }
+
+    @Test
+    public void ownColoredSegmentsAreDrawnAsText() {
+        final CollapsibleTextLayout title = HeaderFixture.createTitle(RuntimeEnvironment.application);
+        title.setUseTextureWhileScaling(true);
+        title.clearTitleSegments();
+        title.addTitleSegment(5, null, Color.RED, true, 1.0f);
+        title.addTitleSegment(Integer.MAX_VALUE, null, 0, false, 1.0f);
+        final RecordingCanvas canvas = new RecordingCanvas(WIDTH, HEIGHT);
+
+        title.setScrollOffsetFraction(0.2f);
+        title.draw(canvas);
+        assertEquals(0, canvas.mnBitmapCount);
+        assertEquals(2, canvas.getTextCount());
+    }
+}
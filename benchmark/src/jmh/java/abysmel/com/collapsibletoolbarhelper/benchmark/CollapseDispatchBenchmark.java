@@ -0,0 +1,61 @@
+package abysmel.com.collapsibletoolbarhelper.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import abysmel.com.collapsibletoolbarhelper.helpers.CollapseModel;
+
+/**
+ * One offset dispatch of the collapse model, on headers of 10, 100 and 1000 children with a mix of
+ * all the collapse modes. The offsets follow a fling back and forth over the whole scroll range, so
+ * the show / hide triggers get crossed
+ */
+@State(Scope.Thread)
+public class CollapseDispatchBenchmark {
+    private static final int HEIGHT = 600;
+    private static final int MINIMUM_HEIGHT = 160;
+    private static final int TRIGGER_HEIGHT = 200;
+    private static final int FLING_STEPS = 120;
+
+    @Param({"10", "100", "1000"})
+    public int childCount;
+
+    private final CollapseModel mModel = new CollapseModel();
+    private final int[] mnFling = new int[FLING_STEPS * 2];
+    private int mnStep = 0;
+
+    @Setup
+    public void setUp() {
+        mModel.setShowHideHysteresis(8);
+        mModel.beginTable(childCount, HEIGHT, MINIMUM_HEIGHT, 0, TRIGGER_HEIGHT);
+        for (int nCtr = 0; nCtr < childCount; nCtr++) {
+            final int nMode = nCtr % 5;
+            final int nAlphaMode = ((nCtr / 5) % 2 == 0) ? CollapseModel.ALPHA_MODE_ANIMATE : CollapseModel.ALPHA_MODE_SCRUB;
+            mModel.setChild(nCtr, nMode, 0.5f, 40 + ((nCtr * 37) % (HEIGHT - 40)), nAlphaMode, 24, (nCtr % 50) == 7);
+        }
+        mModel.endTable();
+
+        // Collapse and expand again, fast at first and slowing down at the ends
+        final int nRange = HEIGHT - MINIMUM_HEIGHT;
+        for (int nCtr = 0; nCtr < FLING_STEPS; nCtr++) {
+            final float fRemaining = 1.0f - (nCtr / (float) (FLING_STEPS - 1));
+            final int nOffset = -Math.round(nRange * (1.0f - fRemaining * fRemaining * fRemaining));
+            mnFling[nCtr] = nOffset;
+            mnFling[(FLING_STEPS * 2) - 1 - nCtr] = nOffset;
+        }
+    }
+
+    @Benchmark
+    public void applyOffset(Blackhole blackhole) {
+        mModel.applyOffset(mnFling[mnStep]);
+        mnStep = (mnStep + 1) % mnFling.length;
+
+        blackhole.consume(mModel.getOffsetChildCount());
+        blackhole.consume(mModel.getAlphaChildCount());
+        blackhole.consume(mModel.getTextFraction());
+    }
+}
@@ -0,0 +1,37 @@
+package abysmel.com.collapsibletoolbarhelper.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import abysmel.com.collapsibletoolbarhelper.helpers.MetaballGeometry;
+
+/**
+ * The contour of the metaball transition, over a whole transition of 64 frames between two menu items
+ */
+@State(Scope.Thread)
+public class MetaballBenchmark {
+    private static final int FRAMES = 64;
+    private static final float SELECTOR_RADIUS = 48.0f;
+    private static final float ORIGIN_X = 120.0f;
+    private static final float DESTINATION_X = 600.0f;
+    private static final float CENTER_Y = 96.0f;
+
+    private final float[] mfContour = new float[MetaballGeometry.CONTOUR_SIZE];
+    private int mnFrame = 0;
+
+    @Benchmark
+    public float[] contour() {
+        final float fTime = mnFrame / (float) FRAMES;
+        mnFrame = (mnFrame + 1) % (FRAMES + 1);
+
+        final float fOriginRadius = SELECTOR_RADIUS - (SELECTOR_RADIUS * fTime);
+        final float fDestinationRadius = SELECTOR_RADIUS * fTime;
+        final float fOriginX = ORIGIN_X + ((DESTINATION_X - ORIGIN_X) * fTime);
+        final float fDistance = DESTINATION_X - fOriginX;
+
+        MetaballGeometry.computeContour(fOriginX, CENTER_Y, fOriginRadius, DESTINATION_X, CENTER_Y, fDestinationRadius,
+                fDistance, mfContour);
+        return mfContour;
+    }
+}
@@ -0,0 +1,51 @@
+package abysmel.com.collapsibletoolbarhelper.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import abysmel.com.collapsibletoolbarhelper.helpers.TextFitCache;
+import abysmel.com.collapsibletoolbarhelper.helpers.TextSizeFitter;
+
+/**
+ * The search for the expanded text size of the collapsing text, with a stub measurer standing in for
+ * the Paint: a fixed advance per character, proportional to the text size. The cached run is a title
+ * measured again, as on a re-bind or a second measure pass
+ */
+@State(Scope.Thread)
+public class TextFitBenchmark {
+    private static final float COLLAPSED_SIZE = 64.0f;
+    private static final float MAX_EXPANDED_SIZE = 186.0f;
+    private static final float PRECISION = 0.5f;
+
+    @Param({"Hello World", "A much longer title that needs a much smaller size"})
+    public String text;
+
+    @Param({"480", "1080"})
+    public float width;
+
+    private final TextSizeFitter.Measurer mMeasurer = new TextSizeFitter.Measurer() {
+        @Override
+        public float measureText(String text, float textSize) {
+            return text.length() * textSize * 0.55f;
+        }
+    };
+
+    private final TextFitCache mCache = new TextFitCache(64);
+
+    @Benchmark
+    public float fitSingleLine() {
+        return TextSizeFitter.fitSingleLine(text, mMeasurer, width, COLLAPSED_SIZE, MAX_EXPANDED_SIZE, PRECISION);
+    }
+
+    @Benchmark
+    public float fitSingleLineAnalytic() {
+        return TextSizeFitter.fitSingleLineAnalytic(text, mMeasurer, width, COLLAPSED_SIZE, MAX_EXPANDED_SIZE, PRECISION);
+    }
+
+    @Benchmark
+    public float fitSingleLineCached() {
+        return mCache.fitSingleLine(text, null, mMeasurer, width, COLLAPSED_SIZE, MAX_EXPANDED_SIZE, PRECISION);
+    }
+}
@@ -0,0 +1,41 @@
+package abysmel.com.collapsibletoolbarhelper.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import abysmel.com.collapsibletoolbarhelper.helpers.TextInterpolation;
+
+/**
+ * The per offset math of the collapsing text: the color blend alone, and the whole chain the text goes
+ * through for a new fraction (decelerated x, y and size, then the color blend)
+ */
+@State(Scope.Thread)
+public class TextInterpolationBenchmark {
+    private static final int STEPS = 256;
+    private static final int EXPANDED_COLOR = 0xFFFFFFFF;
+    private static final int COLLAPSED_COLOR = 0xCC3F51B5;
+
+    private int mnStep = 0;
+
+    private float nextFraction() {
+        mnStep = (mnStep + 1) % (STEPS + 1);
+        return mnStep / (float) STEPS;
+    }
+
+    @Benchmark
+    public int blendColors() {
+        return TextInterpolation.blendColors(EXPANDED_COLOR, COLLAPSED_COLOR, nextFraction());
+    }
+
+    @Benchmark
+    public void interpolationChain(Blackhole blackhole) {
+        final float fFraction = nextFraction();
+        final float fEased = TextInterpolation.decelerate(fFraction);
+        blackhole.consume(TextInterpolation.lerp(48.0f, 160.0f, fEased));
+        blackhole.consume(TextInterpolation.lerp(520.0f, 96.0f, fEased));
+        blackhole.consume(TextInterpolation.lerp(186.0f, 64.0f, fEased));
+        blackhole.consume(TextInterpolation.blendColors(EXPANDED_COLOR, COLLAPSED_COLOR, fFraction));
+    }
+}